@@ -103,16 +103,21 @@ def call_tool(tool_name: str, arguments: Dict[str, Any]) -> Any:
         "find_user_by_id": "/find_user_by_id",
         "update_user": "/update_user",
         "delete_user": "/delete_user",
+        "find_users_by_ids": "/find_users_by_ids",
+        "delete_users_by_ids": "/delete_users_by_ids",
         "find_all_users": "/find_all_users",
         "find_users_by_department": "/find_users_by_department",
         "search_users": "/search_users",
+        "search_users_text": "/search_users_text",
         "find_users_with_pagination": "/find_users_with_pagination",
         "transfer_data": "/transfer_data",
         "batch_insert_users": "/batch_insert_users",
+        "upsert_users": "/upsert_users",
         "get_connection_info": "/get_connection_info",
         "get_database_info": "/get_database_info",
         "get_table_columns": "/get_table_columns",
-        "execute_count_by_department": "/execute_count_by_department"
+        "execute_count_by_department": "/execute_count_by_department",
+        "get_user_histogram": "/get_user_histogram"
     }
 
     endpoint = endpoint_map.get(tool_name)
@@ -185,6 +190,12 @@ def handle_tools_list(params: Dict[str, Any]) -> Dict[str, Any]:
             }
             mcp_tool["inputSchema"]["required"] = ["userId"]
 
+        elif tool["name"] in ["find_users_by_ids", "delete_users_by_ids"]:
+            mcp_tool["inputSchema"]["properties"] = {
+                "userIds": {"type": "array", "items": {"type": "number"}, "description": "IDs de los usuarios"}
+            }
+            mcp_tool["inputSchema"]["required"] = ["userIds"]
+
         elif tool["name"] == "update_user":
             mcp_tool["inputSchema"]["properties"] = {
                 "userId": {"type": "number", "description": "ID del usuario"},
@@ -201,6 +212,47 @@ def handle_tools_list(params: Dict[str, Any]) -> Dict[str, Any]:
             }
             mcp_tool["inputSchema"]["required"] = ["department"]
 
+        elif tool["name"] == "search_users":
+            mcp_tool["inputSchema"]["properties"] = {
+                "department": {"type": "string", "description": "Departamento (opcional)"},
+                "role": {"type": "string", "description": "Rol (opcional)"},
+                "active": {"type": "boolean", "description": "Solo activos/inactivos (opcional)"},
+                "limit": {"type": "number", "description": "Usuarios por página (por defecto 10)"},
+                "after": {"type": "string", "description": "next_cursor de la página anterior para continuar"}
+            }
+
+        elif tool["name"] == "search_users_text":
+            mcp_tool["inputSchema"]["properties"] = {
+                "text": {"type": "string", "description": "Fragmento a buscar en el nombre o el email"},
+                "limit": {"type": "number", "description": "Número máximo de resultados (por defecto 10)"}
+            }
+            mcp_tool["inputSchema"]["required"] = ["text"]
+
+        elif tool["name"] == "upsert_users":
+            mcp_tool["inputSchema"]["properties"] = {
+                "users": {
+                    "type": "array",
+                    "description": "Usuarios a insertar o actualizar (clave: email)",
+                    "items": {
+                        "type": "object",
+                        "properties": {
+                            "name": {"type": "string", "description": "Nombre del usuario"},
+                            "email": {"type": "string", "description": "Email del usuario (clave)"},
+                            "department": {"type": "string", "description": "Departamento"},
+                            "role": {"type": "string", "description": "Rol del usuario"},
+                            "active": {"type": "boolean", "description": "Usuario activo"}
+                        },
+                        "required": ["name", "email", "department", "role"]
+                    }
+                }
+            }
+            mcp_tool["inputSchema"]["required"] = ["users"]
+
+        elif tool["name"] == "get_user_histogram":
+            mcp_tool["inputSchema"]["properties"] = {
+                "maxStalenessMs": {"type": "number", "description": "Antigüedad máxima aceptada del recuento en ms (0 = siempre fresco)"}
+            }
+
         elif tool["name"] == "find_all_users":
             pass  # No requiere parámetros
 
@@ -234,6 +286,10 @@ def handle_tools_call(params: Dict[str, Any]) -> Dict[str, Any]:
         else:
             content_str = str(content)
 
+        # Búsquedas paginadas: indicar cómo pedir la página siguiente
+        if isinstance(result, dict) and result.get("next_cursor"):
+            content_str += f"\n\nnext_cursor: {result['next_cursor']}"
+
         return {
             "content": [
                 {
@@ -1,11 +1,17 @@
 package com.dam.accesodatos;
 
 import com.dam.accesodatos.config.DatabaseConfig;
+import com.dam.accesodatos.ra2.MetadataCache;
+import com.dam.accesodatos.ra2.SearchPlanCache;
 import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.ai.mcp.server.annotation.EnableMcpServer;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.boot.autoconfigure.jdbc.DataSourceAutoConfiguration;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 
 
 
@@ -22,7 +28,7 @@ import org.springframework.boot.autoconfigure.jdbc.DataSourceAutoConfiguration;
  * - Servidor MCP con herramientas JDBC para interactuar con LLMs
  * - API REST para testing manual (opcional)
  * - Base de datos H2 en memoria (sin pool de Spring)
- * - 15 herramientas (5 ejemplos implementados + 10 TODOs para estudiantes)
+ * - 18 herramientas MCP (5 ejemplos implementados + TODOs para estudiantes)
  *
  * Configuración:
  * - Puerto HTTP: 8082 (para no conflictir con RA1 que usa 8081)
@@ -40,6 +46,8 @@ import org.springframework.boot.autoconfigure.jdbc.DataSourceAutoConfiguration;
 @EnableMcpServer
 public class McpAccesoDatosRa2Application {
 
+    private static final Logger logger = LoggerFactory.getLogger(McpAccesoDatosRa2Application.class);
+
     public static void main(String[] args) {
         SpringApplication.run(McpAccesoDatosRa2Application.class, args);
     }
@@ -56,4 +64,23 @@ public class McpAccesoDatosRa2Application {
     public void initializeDatabase() {
         DatabaseConfig.initializeDatabase();
     }
+
+    /**
+     * Precompila las consultas de search_users en las conexiones del pool
+     * cuando la aplicación ya está lista (pool configurado y BD inicializada).
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUpSearchPlans() {
+        int prepared = SearchPlanCache.warmUp();
+        logger.info("Consultas de búsqueda precompiladas: {}", prepared);
+    }
+
+    /**
+     * Lee los metadatos (get_database_info, get_table_columns) antes de la primera llamada
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUpMetadata() {
+        int tables = MetadataCache.warmUp();
+        logger.info("Metadatos cargados: {} tablas", tables);
+    }
 }
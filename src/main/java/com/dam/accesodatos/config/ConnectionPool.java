@@ -0,0 +1,350 @@
+package com.dam.accesodatos.config;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Pool de conexiones JDBC acotado, sin dependencias externas.
+ *
+ * Funcionamiento:
+ * - Un Semaphore con maxSize permisos limita las conexiones prestadas a la vez
+ * - Las conexiones libres se guardan en una pila (LIFO) para reutilizar las más "calientes"
+ * - borrow() entrega un proxy de Connection: al llamar a close() la conexión física
+ *   NO se cierra, se resetea (auto-commit, read-only) y vuelve al pool
+ * - Cada conexión física tiene su propia caché LRU de PreparedStatement (StatementCache),
+ *   así que las consultas repetidas no se vuelven a parsear ni planificar
+ *
+ * Así el código cliente sigue usando el patrón habitual:
+ *
+ * try (Connection conn = DatabaseConfig.getConnection()) {
+ *     // ...
+ * } // close() devuelve la conexión al pool
+ */
+public class ConnectionPool implements AutoCloseable {
+
+    private final String url;
+    private final String user;
+    private final String password;
+    private final Ra2Properties.Pool settings;
+
+    private final Semaphore permits;
+    private final Deque<PooledConnection> idle = new ConcurrentLinkedDeque<>();
+    private final AtomicInteger openConnections = new AtomicInteger();
+    private volatile boolean closed = false;
+
+    // Estadísticas
+    private final LongAdder borrowCount = new LongAdder();
+    private final LongAdder createdCount = new LongAdder();
+    private final LongAdder discardedCount = new LongAdder();
+    private final LongAdder timeoutCount = new LongAdder();
+    private final LongAdder statementCacheHits = new LongAdder();
+    private final LongAdder statementCacheMisses = new LongAdder();
+    private final LongAdder statementCacheEvictions = new LongAdder();
+
+    public ConnectionPool(String url, String user, String password, Ra2Properties.Pool settings) {
+        if (settings.getMaxSize() < 1) {
+            throw new IllegalArgumentException("ra2.pool.max-size debe ser >= 1");
+        }
+        this.url = url;
+        this.user = user;
+        this.password = password;
+        this.settings = settings;
+        this.permits = new Semaphore(settings.getMaxSize(), true);
+    }
+
+    /**
+     * Abre minIdle conexiones por adelantado.
+     * Si falla, el pool sigue siendo usable: las conexiones se abrirán bajo demanda.
+     */
+    public void warmUp() throws SQLException {
+        int target = Math.min(settings.getMinIdle(), settings.getMaxSize());
+        while (idle.size() < target && openConnections.get() < settings.getMaxSize()) {
+            idle.offerLast(openPhysical());
+        }
+    }
+
+    /**
+     * Presta una conexión del pool, esperando como máximo borrowTimeoutMs.
+     *
+     * @return Proxy de Connection cuyo close() devuelve la conexión al pool
+     * @throws SQLTransientConnectionException si no queda ninguna libre a tiempo
+     */
+    public Connection borrow() throws SQLException {
+        if (closed) {
+            throw new SQLException("El pool de conexiones está cerrado");
+        }
+
+        boolean acquired;
+        try {
+            acquired = permits.tryAcquire(settings.getBorrowTimeoutMs(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrumpido esperando una conexión del pool", e);
+        }
+        if (!acquired) {
+            timeoutCount.increment();
+            throw new SQLTransientConnectionException("Timeout: no hay conexiones libres tras "
+                    + settings.getBorrowTimeoutMs() + " ms (max-size=" + settings.getMaxSize() + ")");
+        }
+
+        try {
+            PooledConnection pooled;
+            while ((pooled = idle.pollFirst()) != null) {
+                if (isUsable(pooled)) {
+                    break;
+                }
+                discard(pooled);
+            }
+            if (pooled == null) {
+                pooled = openPhysical();
+            }
+            borrowCount.increment();
+            return pooled.lease();
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Cierra todas las conexiones libres. Las prestadas se cierran al devolverse.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        PooledConnection pooled;
+        while ((pooled = idle.pollFirst()) != null) {
+            discard(pooled);
+        }
+    }
+
+    public int getMaxSize() {
+        return settings.getMaxSize();
+    }
+
+    public int getOpenConnections() {
+        return openConnections.get();
+    }
+
+    public int getIdleConnections() {
+        return idle.size();
+    }
+
+    public int getActiveConnections() {
+        return settings.getMaxSize() - permits.availablePermits();
+    }
+
+    public long getBorrowCount() {
+        return borrowCount.sum();
+    }
+
+    public long getCreatedCount() {
+        return createdCount.sum();
+    }
+
+    public long getDiscardedCount() {
+        return discardedCount.sum();
+    }
+
+    public long getTimeoutCount() {
+        return timeoutCount.sum();
+    }
+
+    public long getStatementCacheHits() {
+        return statementCacheHits.sum();
+    }
+
+    public long getStatementCacheMisses() {
+        return statementCacheMisses.sum();
+    }
+
+    public long getStatementCacheEvictions() {
+        return statementCacheEvictions.sum();
+    }
+
+    /**
+     * Estadísticas del pool y de la caché de statements, para el endpoint /mcp/metrics
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("max_size", settings.getMaxSize());
+        stats.put("open", getOpenConnections());
+        stats.put("active", getActiveConnections());
+        stats.put("idle", getIdleConnections());
+        stats.put("borrows", getBorrowCount());
+        stats.put("created", getCreatedCount());
+        stats.put("discarded", getDiscardedCount());
+        stats.put("timeouts", getTimeoutCount());
+
+        long hits = getStatementCacheHits();
+        long misses = getStatementCacheMisses();
+        Map<String, Object> statementCache = new LinkedHashMap<>();
+        statementCache.put("size_per_connection", settings.getStatementCacheSize());
+        statementCache.put("hits", hits);
+        statementCache.put("misses", misses);
+        statementCache.put("evictions", getStatementCacheEvictions());
+        statementCache.put("hit_ratio", hits + misses == 0 ? 0.0 : (double) hits / (hits + misses));
+        stats.put("statement_cache", statementCache);
+        return stats;
+    }
+
+    // ========== Gestión interna ==========
+
+    private PooledConnection openPhysical() throws SQLException {
+        Connection physical = DriverManager.getConnection(url, user, password);
+        openConnections.incrementAndGet();
+        createdCount.increment();
+        return new PooledConnection(physical);
+    }
+
+    /**
+     * Valida una conexión ociosa: solo se llama a isValid() si lleva
+     * más de validateAfterIdleMs sin usarse (validarla siempre costaría un round-trip).
+     */
+    private boolean isUsable(PooledConnection pooled) {
+        try {
+            if (pooled.physical.isClosed()) {
+                return false;
+            }
+            long idleMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - pooled.lastUsedNanos);
+            if (idleMs >= settings.getValidateAfterIdleMs()) {
+                return pooled.physical.isValid(settings.getValidationTimeoutSeconds());
+            }
+            return true;
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Devuelve la conexión al pool dejando su estado como recién abierta.
+     * Si no se puede resetear, se descarta en lugar de contaminar al siguiente usuario.
+     */
+    private void release(PooledConnection pooled) {
+        try {
+            Connection physical = pooled.physical;
+            if (!closed && !physical.isClosed()) {
+                if (!physical.getAutoCommit()) {
+                    // Transacción sin terminar: se deshace antes de reutilizar la conexión
+                    physical.rollback();
+                    physical.setAutoCommit(true);
+                }
+                if (physical.isReadOnly()) {
+                    physical.setReadOnly(false);
+                }
+                physical.clearWarnings();
+                pooled.statements.reset();
+                pooled.lastUsedNanos = System.nanoTime();
+                idle.offerFirst(pooled);
+            } else {
+                discard(pooled);
+            }
+        } catch (SQLException e) {
+            discard(pooled);
+        } finally {
+            permits.release();
+        }
+    }
+
+    private void discard(PooledConnection pooled) {
+        openConnections.decrementAndGet();
+        discardedCount.increment();
+        pooled.statements.clear();
+        try {
+            pooled.physical.close();
+        } catch (SQLException e) {
+            System.err.println("Error al cerrar conexión física del pool: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Conexión física que vive en el pool
+     */
+    private final class PooledConnection {
+        private final Connection physical;
+        private final StatementCache statements;
+        private volatile long lastUsedNanos = System.nanoTime();
+
+        private PooledConnection(Connection physical) {
+            this.physical = physical;
+            this.statements = new StatementCache(settings.getStatementCacheSize(),
+                    statementCacheHits, statementCacheMisses, statementCacheEvictions);
+        }
+
+        /**
+         * Cada préstamo crea su propio proxy: si alguien sigue usando una conexión
+         * después de cerrarla, recibe un error en lugar de la conexión del siguiente usuario.
+         */
+        private Connection lease() {
+            return (Connection) Proxy.newProxyInstance(
+                    Connection.class.getClassLoader(),
+                    new Class<?>[]{Connection.class},
+                    new Lease(this));
+        }
+    }
+
+    /**
+     * InvocationHandler del proxy: intercepta close() y prepareStatement()
+     * y delega el resto en la conexión física
+     */
+    private final class Lease implements InvocationHandler {
+        private final PooledConnection pooled;
+        private boolean returned = false;
+
+        private Lease(PooledConnection pooled) {
+            this.pooled = pooled;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (!returned) {
+                        returned = true;
+                        release(pooled);
+                    }
+                    return null;
+                case "isClosed":
+                    return returned || pooled.physical.isClosed();
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "PooledConnection[" + pooled.physical + "]";
+                default:
+                    break;
+            }
+
+            if (returned) {
+                throw new SQLException("La conexión ya fue devuelta al pool");
+            }
+            if ("prepareStatement".equals(method.getName())) {
+                PreparedStatement cached = pooled.statements.prepare(pooled.physical, (Connection) proxy, args);
+                if (cached != null) {
+                    return cached;
+                }
+            }
+            try {
+                return method.invoke(pooled.physical, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+}
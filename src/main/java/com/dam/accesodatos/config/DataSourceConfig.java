@@ -1,30 +1,44 @@
 package com.dam.accesodatos.config;
 
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Configuration;
 
 /**
- * Configuración del DataSource para H2 Database
+ * Configuración de las conexiones JDBC a H2 Database
  *
- * En este proyecto, la configuración del DataSource se realiza
- * automáticamente por Spring Boot a través de application.yml.
+ * En este proyecto NO se usa el DataSource de Spring Boot: el código
+ * obtiene las conexiones con DatabaseConfig.getConnection().
  *
- * Este archivo está aquí por completitud, pero no es necesario
- * configurar nada manualmente para H2.
- *
- * Si en el futuro se necesita personalizar el DataSource
- * (ej: pool de conexiones HikariCP), se puede hacer aquí:
- *
- * @Bean
- * public DataSource dataSource() {
- *     HikariConfig config = new HikariConfig();
- *     config.setJdbcUrl("jdbc:h2:mem:ra2db");
- *     config.setUsername("sa");
- *     config.setPassword("");
- *     config.setMaximumPoolSize(10);
- *     return new HikariDataSource(config);
- * }
+ * Esta clase solo traslada las secciones "ra2.pool" y "ra2.health" de
+ * application.yml al pool de conexiones propio (ConnectionPool) y al
+ * HealthMonitor que hay detrás de DatabaseConfig, y los cierra al parar
+ * la aplicación.
  */
 @Configuration
+@EnableConfigurationProperties(Ra2Properties.class)
 public class DataSourceConfig {
-    // Configuración automática por Spring Boot via application.yml
+
+    private final Ra2Properties properties;
+
+    public DataSourceConfig(Ra2Properties properties) {
+        this.properties = properties;
+    }
+
+    /**
+     * Un único @PostConstruct: el pool tiene que estar configurado antes de que la
+     * comprobación periódica de HealthMonitor pida su primera conexión
+     */
+    @PostConstruct
+    public void configureConnectionPool() {
+        DatabaseConfig.configurePool(properties.getPool());
+        DatabaseConfig.configureHealth(properties.getHealth());
+    }
+
+    @PreDestroy
+    public void closeConnectionPool() {
+        DatabaseConfig.shutdownHealth();
+        DatabaseConfig.shutdownPool();
+    }
 }
@@ -4,6 +4,9 @@ import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * Configuración de base de datos para JDBC puro (sin Spring DataSource)
@@ -12,8 +15,9 @@ import java.sql.Statement;
  * usen DriverManager.getConnection() directamente, aprendiendo JDBC vanilla.
  *
  * IMPORTANTE PEDAGÓGICO:
- * - Los estudiantes usarán DriverManager.getConnection() en cada método
- * - NO hay pool de conexiones de Spring
+ * - Los estudiantes usarán DatabaseConfig.getConnection() en cada método
+ * - NO hay pool de conexiones de Spring: el pool es una clase propia (ConnectionPool)
+ *   que se puede desactivar con ra2.pool.enabled=false para volver a DriverManager
  * - Deben cerrar conexiones manualmente con try-with-resources
  * - Aprenden el ciclo completo de JDBC sin abstracciones
  */
@@ -25,7 +29,27 @@ public class DatabaseConfig {
     public static final String DB_PASSWORD = "";
     public static final String DB_DRIVER = "org.h2.Driver";
 
-    private static boolean initialized = false;
+    private static volatile boolean initialized = false;
+
+    // Aumenta cada vez que se ejecuta DDL: las cachés que dependen de la estructura
+    // de las tablas (metadatos, mapeadores de filas) se descartan al verlo cambiar
+    private static final AtomicLong SCHEMA_VERSION = new AtomicLong();
+
+    // Se usa ReentrantLock en lugar de synchronized: un virtual thread que se bloquea
+    // haciendo I/O dentro de un bloque synchronized queda "pinned" a su hilo portador
+    private static final ReentrantLock LOCK = new ReentrantLock();
+
+    // Pool de conexiones (se crea en el primer getConnection())
+    private static volatile Ra2Properties.Pool poolSettings = new Ra2Properties.Pool();
+    private static volatile ConnectionPool pool;
+
+    // Estado de la conexión para /mcp/health (sin comprobación periódica hasta configureHealth()).
+    // Con shards, ShardedDatabaseUserService cambia los orígenes por uno por shard
+    private static volatile Ra2Properties.Health healthSettings = noBackgroundRefresh();
+    private static volatile List<HealthMonitor.ConnectionSource> healthSources =
+            List.of(DatabaseConfig::getConnection);
+    private static volatile HealthMonitor healthMonitor = new HealthMonitor(healthSources, healthSettings);
+    private static volatile boolean healthStarted = false;
 
     /**
      * Carga el driver JDBC de H2.
@@ -49,9 +73,13 @@ public class DatabaseConfig {
     }
 
     /**
-     * Obtiene una conexión a la base de datos usando DriverManager.
+     * Obtiene una conexión a la base de datos.
+     *
+     * Con el pool activo (por defecto) la conexión se toma prestada de ConnectionPool,
+     * evitando parsear la URL y abrir una sesión H2 nueva en cada llamada.
+     * Con ra2.pool.enabled=false se usa DriverManager directamente.
      *
-     * PATRÓN EDUCATIVO para estudiantes:
+     * PATRÓN EDUCATIVO para estudiantes (igual en ambos casos):
      *
      * try (Connection conn = DatabaseConfig.getConnection()) {
      *     // Usar la conexión
@@ -59,13 +87,156 @@ public class DatabaseConfig {
      *     throw new RuntimeException("Error: " + e.getMessage(), e);
      * }
      *
-     * @return Connection JDBC
+     * @return Connection JDBC (close() la devuelve al pool)
      * @throws SQLException si no se puede conectar
      */
     public static Connection getConnection() throws SQLException {
+        // Dentro de ShardSet.on() la conexión es la del shard elegido
+        Connection sharded = ShardSet.currentConnection();
+        if (sharded != null) {
+            return QueryCancellation.track(sharded);
+        }
+        ConnectionPool current = getPool();
+        // Dentro de un QueryCancellation, sus Statement se pueden cancelar desde otro hilo
+        if (current == null) {
+            return QueryCancellation.track(openPhysicalConnection());
+        }
+        return QueryCancellation.track(current.borrow());
+    }
+
+    /**
+     * Abre una conexión física nueva con DriverManager, sin pasar por el pool.
+     */
+    public static Connection openPhysicalConnection() throws SQLException {
         return DriverManager.getConnection(DB_URL, DB_USER, DB_PASSWORD);
     }
 
+    /**
+     * Aplica la configuración del pool leída de application.yml (ra2.pool.*).
+     * El pool anterior, si existía, se cierra; el siguiente getConnection() crea uno nuevo.
+     */
+    public static void configurePool(Ra2Properties.Pool settings) {
+        LOCK.lock();
+        try {
+            shutdownPool();
+            poolSettings = settings;
+        } finally {
+            LOCK.unlock();
+        }
+    }
+
+    /**
+     * Cierra el pool actual y sus conexiones libres.
+     */
+    public static void shutdownPool() {
+        LOCK.lock();
+        try {
+            if (pool != null) {
+                pool.close();
+                pool = null;
+            }
+        } finally {
+            LOCK.unlock();
+        }
+    }
+
+    /**
+     * Aplica la configuración de ra2.health y arranca la comprobación periódica.
+     */
+    public static void configureHealth(Ra2Properties.Health settings) {
+        LOCK.lock();
+        try {
+            healthSettings = settings;
+            healthStarted = true;
+            replaceHealthMonitor();
+        } finally {
+            LOCK.unlock();
+        }
+    }
+
+    /**
+     * Cambia las conexiones que comprueba /mcp/health (una por shard, por ejemplo).
+     * El estado es DOWN si falla cualquiera de ellas.
+     */
+    public static void configureHealthSources(List<HealthMonitor.ConnectionSource> sources) {
+        LOCK.lock();
+        try {
+            healthSources = List.copyOf(sources);
+            replaceHealthMonitor();
+        } finally {
+            LOCK.unlock();
+        }
+    }
+
+    /**
+     * Vuelve a comprobar solo la base de datos por defecto
+     */
+    public static void resetHealthSources() {
+        configureHealthSources(List.of(DatabaseConfig::getConnection));
+    }
+
+    private static void replaceHealthMonitor() {
+        healthMonitor.stop();
+        healthMonitor = new HealthMonitor(healthSources, healthSettings);
+        // Tras shutdownHealth() no se vuelve a lanzar el hilo de comprobación
+        if (healthStarted) {
+            healthMonitor.start();
+        }
+    }
+
+    /**
+     * Detiene la comprobación periódica del estado de la conexión.
+     */
+    public static void shutdownHealth() {
+        LOCK.lock();
+        try {
+            healthStarted = false;
+            healthMonitor.stop();
+        } finally {
+            LOCK.unlock();
+        }
+    }
+
+    public static HealthMonitor getHealthMonitor() {
+        return healthMonitor;
+    }
+
+    private static Ra2Properties.Health noBackgroundRefresh() {
+        Ra2Properties.Health settings = new Ra2Properties.Health();
+        settings.setRefreshIntervalMs(0);
+        return settings;
+    }
+
+    /**
+     * Pool en uso, creándolo si hace falta. Retorna null si el pool está desactivado.
+     */
+    public static ConnectionPool getPool() {
+        ConnectionPool current = pool;
+        if (current != null || !poolSettings.isEnabled()) {
+            return current;
+        }
+        return createPool();
+    }
+
+    private static ConnectionPool createPool() {
+        LOCK.lock();
+        try {
+            if (pool == null && poolSettings.isEnabled()) {
+                loadDriver();
+                ConnectionPool created = new ConnectionPool(DB_URL, DB_USER, DB_PASSWORD, poolSettings);
+                try {
+                    created.warmUp();
+                } catch (SQLException e) {
+                    System.err.println("No se pudieron precrear conexiones del pool: " + e.getMessage());
+                }
+                pool = created;
+            }
+            return pool;
+        } finally {
+            LOCK.unlock();
+        }
+    }
+
     /**
      * Inicializa la base de datos ejecutando scripts SQL.
      * Este método se llama una vez al arrancar la aplicación.
@@ -73,33 +244,58 @@ public class DatabaseConfig {
      * NOTA: En producción, esto se haría con herramientas como Flyway o Liquibase,
      * pero aquí lo hacemos manualmente para propósitos educativos.
      */
-    public static synchronized void initializeDatabase() {
+    public static void initializeDatabase() {
         if (initialized) {
             return;
         }
 
-        loadDriver();
+        LOCK.lock();
+        try {
+            if (initialized) {
+                return;
+            }
+
+            loadDriver();
 
-        try (Connection conn = getConnection();
-             Statement stmt = conn.createStatement()) {
+            try (Connection conn = getConnection();
+                 Statement stmt = conn.createStatement()) {
 
-            // Ejecutar schema.sql
-            executeScript(stmt, getSchemaSQL());
+                // Ejecutar schema.sql
+                executeScript(stmt, getSchemaSQL());
 
-            // Ejecutar data.sql
-            executeScript(stmt, getDataSQL());
+                // Ejecutar data.sql
+                executeScript(stmt, getDataSQL());
 
-            initialized = true;
+                schemaChanged();
+                initialized = true;
 
-        } catch (SQLException e) {
-            throw new RuntimeException("Error inicializando base de datos: " + e.getMessage(), e);
+            } catch (SQLException e) {
+                throw new RuntimeException("Error inicializando base de datos: " + e.getMessage(), e);
+            }
+        } finally {
+            LOCK.unlock();
         }
     }
 
+    /**
+     * Versión actual del esquema (cambia con cada DDL ejecutado desde aquí o con schemaChanged())
+     */
+    public static long getSchemaVersion() {
+        return SCHEMA_VERSION.get();
+    }
+
+    /**
+     * Avisa de que la estructura de las tablas ha cambiado. Lo llama initializeDatabase()
+     * después de su DDL; quien ejecute DDL por otro camino debe llamarlo también.
+     */
+    public static void schemaChanged() {
+        SCHEMA_VERSION.incrementAndGet();
+    }
+
     /**
      * Ejecuta un script SQL compuesto de múltiples statements
      */
-    private static void executeScript(Statement stmt, String script) throws SQLException {
+    static void executeScript(Statement stmt, String script) throws SQLException {
         String[] statements = script.split(";");
         for (String sql : statements) {
             sql = sql.trim();
@@ -112,7 +308,7 @@ public class DatabaseConfig {
     /**
      * Retorna el SQL del schema (CREATE TABLE, etc.)
      */
-    private static String getSchemaSQL() {
+    static String getSchemaSQL() {
         return """
             DROP TABLE IF EXISTS user_statistics CASCADE;
             DROP TABLE IF EXISTS users CASCADE;
@@ -132,6 +328,7 @@ public class DatabaseConfig {
             CREATE INDEX idx_users_role ON users(role);
             CREATE INDEX idx_users_active ON users(active);
             CREATE INDEX idx_users_email ON users(email);
+            CREATE INDEX idx_users_created_at ON users(created_at DESC, id DESC);
 
             CREATE TABLE user_statistics (
                 id BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
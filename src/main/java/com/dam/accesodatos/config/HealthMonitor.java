@@ -0,0 +1,207 @@
+package com.dam.accesodatos.config;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Estado de la base de datos para /mcp/health y test_connection
+ *
+ * La comprobación es Connection.isValid(), que en H2 no ejecuta ninguna consulta.
+ * El resultado se guarda y se reutiliza durante ttlMs: aunque el orquestador consulte
+ * /mcp/health cada segundo en cada instancia, la base de datos recibe como mucho una
+ * comprobación por intervalo. Con refreshIntervalMs > 0 un hilo daemon la repite en
+ * segundo plano, así que las peticiones casi nunca tienen que esperar a una.
+ *
+ * Con varios orígenes (un shard cada uno) se comprueban todos y el estado es DOWN
+ * si falla cualquiera de ellos.
+ *
+ * Solo una comprobación a la vez: si ya hay una en curso, quien llega se lleva el
+ * último resultado conocido en lugar de abrir otra conexión.
+ *
+ * El nombre y la versión del producto no cambian: se leen en la primera comprobación
+ * correcta y se guardan ya formateados.
+ */
+public class HealthMonitor {
+
+    /** Origen de las conexiones que se comprueban (DatabaseConfig::getConnection) */
+    @FunctionalInterface
+    public interface ConnectionSource {
+        Connection get() throws SQLException;
+    }
+
+    /**
+     * Resultado de una comprobación
+     *
+     * @param up             true si isValid() respondió a tiempo
+     * @param error          Motivo del fallo (null si up)
+     * @param latencyMicros  Duración de la comprobación, incluida la obtención de la conexión
+     * @param checkedAt      Momento de la comprobación
+     * @param checkedAtNanos System.nanoTime() de la comprobación, para calcular la antigüedad
+     */
+    public record Status(boolean up, String error, long latencyMicros, LocalDateTime checkedAt, long checkedAtNanos) {
+
+        /** Antigüedad del resultado */
+        public long ageMs() {
+            return (System.nanoTime() - checkedAtNanos) / 1_000_000;
+        }
+    }
+
+    private final List<ConnectionSource> connections;
+    private final Ra2Properties.Health settings;
+
+    private final AtomicReference<Status> last = new AtomicReference<>();
+    private final ReentrantLock probeLock = new ReentrantLock();
+    private volatile String description;
+    private ScheduledExecutorService refresher;
+
+    private final LongAdder probes = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder cachedReads = new LongAdder();
+
+    public HealthMonitor(ConnectionSource connections, Ra2Properties.Health settings) {
+        this(List.of(connections), settings);
+    }
+
+    public HealthMonitor(List<ConnectionSource> connections, Ra2Properties.Health settings) {
+        this.connections = List.copyOf(connections);
+        this.settings = settings;
+    }
+
+    /**
+     * Último estado si tiene menos de ttlMs; si no, comprueba la conexión ahora.
+     */
+    public Status check() {
+        Status status = last.get();
+        if (status != null && status.ageMs() < settings.getTtlMs()) {
+            cachedReads.increment();
+            return status;
+        }
+        if (status == null) {
+            // Aún no hay ningún resultado: hay que esperar a la comprobación
+            probeLock.lock();
+        } else if (!probeLock.tryLock()) {
+            // Otra petición ya está comprobando: vale el último resultado
+            cachedReads.increment();
+            return status;
+        }
+        try {
+            Status current = last.get();
+            if (current != null && current != status && current.ageMs() < settings.getTtlMs()) {
+                cachedReads.increment();
+                return current;
+            }
+            return probe();
+        } finally {
+            probeLock.unlock();
+        }
+    }
+
+    /**
+     * Comprueba la conexión ahora, sin mirar el último resultado
+     */
+    public Status refresh() {
+        probeLock.lock();
+        try {
+            return probe();
+        } finally {
+            probeLock.unlock();
+        }
+    }
+
+    /**
+     * Producto, versión y nombre de la base de datos (null hasta la primera comprobación correcta)
+     */
+    public String getDescription() {
+        return description;
+    }
+
+    /**
+     * Lanza la comprobación periódica en un hilo daemon (refreshIntervalMs = 0 la desactiva)
+     */
+    public void start() {
+        long intervalMs = settings.getRefreshIntervalMs();
+        if (intervalMs <= 0 || refresher != null) {
+            return;
+        }
+        refresher = Executors.newSingleThreadScheduledExecutor(
+                Thread.ofPlatform().daemon().name("ra2-health").factory());
+        refresher.scheduleWithFixedDelay(this::refresh, 0, intervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    public void stop() {
+        if (refresher != null) {
+            refresher.shutdownNow();
+            refresher = null;
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Status status = last.get();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("status", status == null ? "UNKNOWN" : status.up() ? "UP" : "DOWN");
+        stats.put("probes", probes.sum());
+        stats.put("failures", failures.sum());
+        stats.put("cached_reads", cachedReads.sum());
+        stats.put("ttl_ms", settings.getTtlMs());
+        stats.put("refresh_interval_ms", settings.getRefreshIntervalMs());
+        if (status != null) {
+            stats.put("last_latency_us", status.latencyMicros());
+            stats.put("age_ms", status.ageMs());
+        }
+        return stats;
+    }
+
+    // ========== Gestión interna ==========
+
+    private Status probe() {
+        long start = System.nanoTime();
+        String error = null;
+        for (int i = 0; i < connections.size() && error == null; i++) {
+            error = validate(i);
+        }
+        boolean up = error == null;
+
+        long end = System.nanoTime();
+        probes.increment();
+        if (!up) {
+            failures.increment();
+        }
+        Status status = new Status(up, error, (end - start) / 1_000, LocalDateTime.now(), end);
+        last.set(status);
+        return status;
+    }
+
+    /**
+     * Comprueba un origen con isValid()
+     *
+     * @return Motivo del fallo, o null si respondió a tiempo
+     */
+    private String validate(int source) {
+        // Con un solo origen el mensaje no lleva prefijo, como antes de los shards
+        String prefix = connections.size() > 1 ? "Shard " + source + ": " : "";
+        try (Connection conn = connections.get(source).get()) {
+            if (!conn.isValid(settings.getValidationTimeoutSeconds())) {
+                return prefix + "La conexión no respondió en " + settings.getValidationTimeoutSeconds() + " s";
+            }
+            if (description == null && source == 0) {
+                DatabaseMetaData metaData = conn.getMetaData();
+                description = metaData.getDatabaseProductName() + " " + metaData.getDatabaseProductVersion()
+                        + " | Base de datos: " + conn.getCatalog();
+            }
+            return null;
+        } catch (SQLException | RuntimeException e) {
+            return prefix + (e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName());
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package com.dam.accesodatos.config;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Ámbito de cancelación de las consultas que lanza un hilo
+ *
+ * Los métodos del servicio abren sus propios Statement, así que quien los llama no
+ * tiene forma de cancelarlos. Mientras un hilo ejecuta dentro de run(), cada conexión
+ * que obtiene con DatabaseConfig.getConnection() se envuelve en un proxy que apunta
+ * todos los Statement que crea. cancel(), llamado desde otro hilo, ejecuta
+ * Statement.cancel() sobre ellos: H2 aborta la consulta en curso con QUERY_CANCELED.
+ *
+ * Después de cancel() ya no se pueden crear Statement en el ámbito (SQLException), así
+ * que un método que todavía no había llegado a la base de datos tampoco lo hace.
+ *
+ * El ámbito se hereda (InheritableThreadLocal): los virtual threads que cree el
+ * servicio para trabajar en paralelo también quedan cubiertos.
+ *
+ * Quien espera algo que no es un Statement (por ejemplo, el resultado de otra llamada)
+ * puede registrarse con onCancel() para enterarse de la cancelación.
+ */
+public final class QueryCancellation {
+
+    private static final InheritableThreadLocal<QueryCancellation> CURRENT = new InheritableThreadLocal<>();
+
+    /** SQLState de una consulta cancelada (el mismo que usa H2 con QUERY_CANCELED) */
+    private static final String CANCELLED_STATE = "57014";
+
+    private final List<Statement> statements = new CopyOnWriteArrayList<>();
+    private final List<Runnable> callbacks = new CopyOnWriteArrayList<>();
+    private volatile boolean cancelled;
+
+    /**
+     * Ámbito del hilo actual (null fuera de run())
+     */
+    public static QueryCancellation current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * true si el error (o alguna de sus causas) viene de una cancelación: una consulta
+     * cancelada (SQLState 57014), un hilo interrumpido o una CancellationException
+     */
+    public static boolean isCancellation(Throwable error) {
+        for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+            if (cause instanceof InterruptedException || cause instanceof CancellationException) {
+                return true;
+            }
+            if (cause instanceof SQLException sql && CANCELLED_STATE.equals(sql.getSQLState())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Ejecuta la tarea dentro de este ámbito
+     */
+    public <T> T run(Callable<T> task) throws Exception {
+        QueryCancellation previous = CURRENT.get();
+        CURRENT.set(this);
+        try {
+            return task.call();
+        } finally {
+            if (previous != null) {
+                CURRENT.set(previous);
+            } else {
+                CURRENT.remove();
+            }
+        }
+    }
+
+    /**
+     * Cancela las consultas en curso del ámbito e impide que empiecen otras
+     */
+    public void cancel() {
+        cancelled = true;
+        for (Statement statement : statements) {
+            try {
+                statement.cancel();
+            } catch (SQLException e) {
+                // Ya cerrado o sin consulta en curso: no hay nada que cancelar
+            }
+        }
+        for (Runnable callback : callbacks) {
+            // remove() decide quién lo ejecuta si onCancel() llega a la vez
+            if (callbacks.remove(callback)) {
+                callback.run();
+            }
+        }
+    }
+
+    /**
+     * Ejecuta callback cuando se cancele el ámbito (enseguida si ya estaba cancelado)
+     *
+     * @return Acción que quita el registro cuando ya no hace falta
+     */
+    public Runnable onCancel(Runnable callback) {
+        callbacks.add(callback);
+        if (cancelled && callbacks.remove(callback)) {
+            callback.run();
+        }
+        return () -> callbacks.remove(callback);
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Envuelve la conexión si el hilo actual está dentro de un ámbito (la devuelve tal cual si no)
+     */
+    static Connection track(Connection conn) throws SQLException {
+        QueryCancellation scope = CURRENT.get();
+        if (scope == null) {
+            return conn;
+        }
+        if (scope.cancelled) {
+            conn.close();
+            throw cancelledException();
+        }
+        return (Connection) Proxy.newProxyInstance(
+                Connection.class.getClassLoader(),
+                new Class<?>[]{Connection.class},
+                new Tracker(scope, conn));
+    }
+
+    /**
+     * Excepción con la que falla una consulta del ámbito después de cancel()
+     */
+    public static SQLException cancelledException() {
+        return new SQLException("Consulta cancelada", CANCELLED_STATE);
+    }
+
+    /**
+     * InvocationHandler del proxy: apunta los Statement creados y delega todo lo demás
+     */
+    private static final class Tracker implements InvocationHandler {
+        private final QueryCancellation scope;
+        private final Connection target;
+
+        private Tracker(QueryCancellation scope, Connection target) {
+            this.scope = scope;
+            this.target = target;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if (name.equals("equals")) {
+                return proxy == args[0];
+            }
+            if (name.equals("hashCode")) {
+                return System.identityHashCode(proxy);
+            }
+            boolean createsStatement = name.equals("createStatement")
+                    || name.equals("prepareStatement") || name.equals("prepareCall");
+            if (createsStatement && scope.cancelled) {
+                throw cancelledException();
+            }
+
+            Object result;
+            try {
+                result = method.invoke(target, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+
+            if (createsStatement) {
+                Statement statement = (Statement) result;
+                scope.statements.add(statement);
+                // cancel() pudo llegar mientras se creaba: quien lo pidió ya no lo recibirá
+                if (scope.cancelled) {
+                    statement.close();
+                    throw cancelledException();
+                }
+            }
+            return result;
+        }
+    }
+}
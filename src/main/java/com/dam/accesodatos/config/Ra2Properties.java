@@ -0,0 +1,656 @@
+package com.dam.accesodatos.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * Propiedades de configuración propias del proyecto (prefijo "ra2" en application.yml)
+ *
+ * Agrupa los ajustes de la capa JDBC que no pertenecen a Spring Boot.
+ * Los valores por defecto permiten usar las clases sin Spring
+ * (por ejemplo, desde McpToolsDemo con new DatabaseUserServiceImpl()).
+ */
+@ConfigurationProperties(prefix = "ra2")
+public class Ra2Properties {
+
+    private final Pool pool = new Pool();
+
+    private final Stream stream = new Stream();
+
+    private final Batch batch = new Batch();
+
+    private final Ingest ingest = new Ingest();
+
+    private final Cache cache = new Cache();
+
+    private final Counters counters = new Counters();
+
+    private final Histogram histogram = new Histogram();
+
+    private final Snapshot snapshot = new Snapshot();
+
+    private final TextIndex textIndex = new TextIndex();
+
+    private final Health health = new Health();
+
+    private final Async async = new Async();
+
+    private final Coalescing coalescing = new Coalescing();
+
+    private final GroupCommit groupCommit = new GroupCommit();
+
+    private final Sharding sharding = new Sharding();
+
+    public Pool getPool() {
+        return pool;
+    }
+
+    public Stream getStream() {
+        return stream;
+    }
+
+    public Batch getBatch() {
+        return batch;
+    }
+
+    public Ingest getIngest() {
+        return ingest;
+    }
+
+    public Cache getCache() {
+        return cache;
+    }
+
+    public Counters getCounters() {
+        return counters;
+    }
+
+    public Histogram getHistogram() {
+        return histogram;
+    }
+
+    public Snapshot getSnapshot() {
+        return snapshot;
+    }
+
+    public TextIndex getTextIndex() {
+        return textIndex;
+    }
+
+    public Health getHealth() {
+        return health;
+    }
+
+    public Async getAsync() {
+        return async;
+    }
+
+    public Coalescing getCoalescing() {
+        return coalescing;
+    }
+
+    public GroupCommit getGroupCommit() {
+        return groupCommit;
+    }
+
+    public Sharding getSharding() {
+        return sharding;
+    }
+
+    /**
+     * Configuración del pool de conexiones que hay detrás de DatabaseConfig.getConnection()
+     *
+     * Ejemplo en application.yml:
+     *
+     * ra2:
+     *   pool:
+     *     enabled: true
+     *     max-size: 10
+     *     borrow-timeout-ms: 5000
+     */
+    public static class Pool {
+
+        /** Si es false, cada getConnection() abre una conexión nueva con DriverManager */
+        private boolean enabled = true;
+
+        /** Número máximo de conexiones físicas abiertas a la vez */
+        private int maxSize = 10;
+
+        /** Conexiones que se abren al crear el pool para evitar el coste en la primera petición */
+        private int minIdle = 2;
+
+        /** Tiempo máximo que un hilo espera a que quede libre una conexión */
+        private long borrowTimeoutMs = 5000;
+
+        /** Una conexión ociosa más tiempo que este se valida con isValid() antes de entregarla */
+        private long validateAfterIdleMs = 30000;
+
+        /** Timeout (segundos) que se pasa a Connection.isValid() */
+        private int validationTimeoutSeconds = 2;
+
+        /** PreparedStatement cacheados por conexión física (0 = sin caché) */
+        private int statementCacheSize = 32;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public int getMaxSize() {
+            return maxSize;
+        }
+
+        public void setMaxSize(int maxSize) {
+            this.maxSize = maxSize;
+        }
+
+        public int getMinIdle() {
+            return minIdle;
+        }
+
+        public void setMinIdle(int minIdle) {
+            this.minIdle = minIdle;
+        }
+
+        public long getBorrowTimeoutMs() {
+            return borrowTimeoutMs;
+        }
+
+        public void setBorrowTimeoutMs(long borrowTimeoutMs) {
+            this.borrowTimeoutMs = borrowTimeoutMs;
+        }
+
+        public long getValidateAfterIdleMs() {
+            return validateAfterIdleMs;
+        }
+
+        public void setValidateAfterIdleMs(long validateAfterIdleMs) {
+            this.validateAfterIdleMs = validateAfterIdleMs;
+        }
+
+        public int getValidationTimeoutSeconds() {
+            return validationTimeoutSeconds;
+        }
+
+        public void setValidationTimeoutSeconds(int validationTimeoutSeconds) {
+            this.validationTimeoutSeconds = validationTimeoutSeconds;
+        }
+
+        public int getStatementCacheSize() {
+            return statementCacheSize;
+        }
+
+        public void setStatementCacheSize(int statementCacheSize) {
+            this.statementCacheSize = statementCacheSize;
+        }
+    }
+
+    /**
+     * Configuración del recorrido en streaming (/mcp/find_all_users_stream)
+     *
+     * Ejemplo en application.yml:
+     *
+     * ra2:
+     *   stream:
+     *     fetch-size: 500
+     *     page-size: 10000
+     */
+    public static class Stream {
+
+        /** Filas que el driver trae en cada bloque del cursor */
+        private int fetchSize = 500;
+
+        /** Filas por llamada si el cliente no indica "limit"; después se continúa con el cursor */
+        private int pageSize = 10000;
+
+        public int getFetchSize() {
+            return fetchSize;
+        }
+
+        public void setFetchSize(int fetchSize) {
+            this.fetchSize = fetchSize;
+        }
+
+        public int getPageSize() {
+            return pageSize;
+        }
+
+        public void setPageSize(int pageSize) {
+            this.pageSize = pageSize;
+        }
+    }
+
+    /**
+     * Configuración de las inserciones por lotes (batch_insert_users)
+     *
+     * Ejemplo en application.yml:
+     *
+     * ra2:
+     *   batch:
+     *     chunk-size: 1000
+     *     parallelism: 1
+     */
+    public static class Batch {
+
+        /** Filas por executeBatch(); se hace commit después de cada bloque */
+        private int chunkSize = 1000;
+
+        /** Conexiones que insertan en paralelo (limitado por ra2.pool.max-size) */
+        private int parallelism = 1;
+
+        public int getChunkSize() {
+            return chunkSize;
+        }
+
+        public void setChunkSize(int chunkSize) {
+            this.chunkSize = chunkSize;
+        }
+
+        public int getParallelism() {
+            return parallelism;
+        }
+
+        public void setParallelism(int parallelism) {
+            this.parallelism = parallelism;
+        }
+    }
+
+    /**
+     * Configuración de la ingesta NDJSON (/mcp/ingest_users)
+     *
+     * Ejemplo en application.yml:
+     *
+     * ra2:
+     *   ingest:
+     *     flush-size: 1000
+     *     queue-capacity: 4000
+     */
+    public static class Ingest {
+
+        /** Filas por executeBatch() + commit; también cada cuánto se informa del progreso */
+        private int flushSize = 1000;
+
+        /** Filas ya leídas que pueden esperar a ser insertadas (limita la memoria usada) */
+        private int queueCapacity = 4000;
+
+        public int getFlushSize() {
+            return flushSize;
+        }
+
+        public void setFlushSize(int flushSize) {
+            this.flushSize = flushSize;
+        }
+
+        public int getQueueCapacity() {
+            return queueCapacity;
+        }
+
+        public void setQueueCapacity(int queueCapacity) {
+            this.queueCapacity = queueCapacity;
+        }
+    }
+
+    /**
+     * Configuración de la caché de usuarios por ID delante de find_user_by_id
+     *
+     * Ejemplo en application.yml:
+     *
+     * ra2:
+     *   cache:
+     *     enabled: true
+     *     max-entries: 10000
+     *     ttl-ms: 60000
+     */
+    public static class Cache {
+
+        /** Desactivada por defecto: las escrituras que no pasan por el servicio no la invalidan */
+        private boolean enabled = false;
+
+        /** Usuarios guardados como máximo; al superarlo se expulsa el menos usado (LRU) */
+        private int maxEntries = 10000;
+
+        /** Vida máxima de una entrada aunque no se invalide (0 = sin caducidad) */
+        private long ttlMs = 60000;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public int getMaxEntries() {
+            return maxEntries;
+        }
+
+        public void setMaxEntries(int maxEntries) {
+            this.maxEntries = maxEntries;
+        }
+
+        public long getTtlMs() {
+            return ttlMs;
+        }
+
+        public void setTtlMs(long ttlMs) {
+            this.ttlMs = ttlMs;
+        }
+    }
+
+    /**
+     * Configuración de los contadores de activos por departamento (execute_count_by_department)
+     *
+     * Ejemplo en application.yml:
+     *
+     * ra2:
+     *   counters:
+     *     enabled: true
+     *     reconcile-interval-ms: 60000
+     */
+    public static class Counters {
+
+        /** Desactivados por defecto: las escrituras que no pasan por el servicio los descuadran */
+        private boolean enabled = false;
+
+        /** Cada cuánto se comparan con un GROUP BY sobre la tabla (0 = nunca) */
+        private long reconcileIntervalMs = 60000;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public long getReconcileIntervalMs() {
+            return reconcileIntervalMs;
+        }
+
+        public void setReconcileIntervalMs(long reconcileIntervalMs) {
+            this.reconcileIntervalMs = reconcileIntervalMs;
+        }
+    }
+
+    /**
+     * Configuración de get_user_histogram
+     *
+     * Ejemplo en application.yml:
+     *
+     * ra2:
+     *   histogram:
+     *     max-staleness-ms: 5000
+     */
+    public static class Histogram {
+
+        /** Antigüedad máxima de la instantánea si el cliente no la indica (0 = consultar siempre) */
+        private long maxStalenessMs = 0;
+
+        public long getMaxStalenessMs() {
+            return maxStalenessMs;
+        }
+
+        public void setMaxStalenessMs(long maxStalenessMs) {
+            this.maxStalenessMs = maxStalenessMs;
+        }
+    }
+
+    /**
+     * Configuración de la réplica en columnas de users (ColumnarUserSnapshot)
+     *
+     * Ejemplo en application.yml:
+     *
+     * ra2:
+     *   snapshot:
+     *     enabled: true
+     */
+    public static class Snapshot {
+
+        /** Desactivada por defecto: las escrituras que no pasan por el servicio no le llegan */
+        private boolean enabled = false;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+    }
+
+    /**
+     * Configuración del índice de trigramas de search_users_text (TrigramIndex)
+     *
+     * Ejemplo en application.yml:
+     *
+     * ra2:
+     *   text-index:
+     *     enabled: true
+     */
+    public static class TextIndex {
+
+        /** Desactivado por defecto: sin índice, search_users_text usa LIKE sobre la tabla */
+        private boolean enabled = false;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+    }
+
+    /**
+     * Configuración de la comprobación de estado de /mcp/health y test_connection (HealthMonitor)
+     *
+     * Ejemplo en application.yml:
+     *
+     * ra2:
+     *   health:
+     *     ttl-ms: 5000
+     *     refresh-interval-ms: 1000
+     *     validation-timeout-seconds: 2
+     */
+    public static class Health {
+
+        /** Tiempo durante el que se reutiliza el último resultado sin volver a comprobar */
+        private long ttlMs = 5000;
+
+        /** Cada cuánto se comprueba en segundo plano (0 = solo cuando caduca el resultado) */
+        private long refreshIntervalMs = 1000;
+
+        /** Timeout (segundos) que se pasa a Connection.isValid() */
+        private int validationTimeoutSeconds = 2;
+
+        public long getTtlMs() {
+            return ttlMs;
+        }
+
+        public void setTtlMs(long ttlMs) {
+            this.ttlMs = ttlMs;
+        }
+
+        public long getRefreshIntervalMs() {
+            return refreshIntervalMs;
+        }
+
+        public void setRefreshIntervalMs(long refreshIntervalMs) {
+            this.refreshIntervalMs = refreshIntervalMs;
+        }
+
+        public int getValidationTimeoutSeconds() {
+            return validationTimeoutSeconds;
+        }
+
+        public void setValidationTimeoutSeconds(int validationTimeoutSeconds) {
+            this.validationTimeoutSeconds = validationTimeoutSeconds;
+        }
+    }
+
+    /**
+     * Configuración del ejecutor de AsyncDatabaseUserService
+     *
+     * Ejemplo en application.yml:
+     *
+     * ra2:
+     *   async:
+     *     virtual-threads: true
+     *     max-concurrency: 16
+     *     queue-capacity: 1000
+     */
+    public static class Async {
+
+        /** Un virtual thread por tarea (true) o un pool fijo de hilos de plataforma (false) */
+        private boolean virtualThreads = true;
+
+        /** Tareas ejecutándose a la vez; el resto espera en la cola */
+        private int maxConcurrency = 16;
+
+        /** Tareas que pueden esperar; con la cola llena el futuro falla con RejectedExecutionException */
+        private int queueCapacity = 1000;
+
+        public boolean isVirtualThreads() {
+            return virtualThreads;
+        }
+
+        public void setVirtualThreads(boolean virtualThreads) {
+            this.virtualThreads = virtualThreads;
+        }
+
+        public int getMaxConcurrency() {
+            return maxConcurrency;
+        }
+
+        public void setMaxConcurrency(int maxConcurrency) {
+            this.maxConcurrency = maxConcurrency;
+        }
+
+        public int getQueueCapacity() {
+            return queueCapacity;
+        }
+
+        public void setQueueCapacity(int queueCapacity) {
+            this.queueCapacity = queueCapacity;
+        }
+    }
+
+    /**
+     * Configuración de la agrupación de lecturas iguales simultáneas (SingleFlight)
+     *
+     * Ejemplo en application.yml:
+     *
+     * ra2:
+     *   coalescing:
+     *     enabled: true
+     */
+    public static class Coalescing {
+
+        /** Las escrituras del servicio cortan la agrupación, así que no devuelve datos anteriores a ellas */
+        private boolean enabled = true;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+    }
+
+    /**
+     * Configuración de la agrupación de create_user en transacciones compartidas (GroupCommitter)
+     *
+     * Ejemplo en application.yml:
+     *
+     * ra2:
+     *   group-commit:
+     *     enabled: true
+     *     window-micros: 500
+     *     max-rows: 100
+     */
+    public static class GroupCommit {
+
+        /** Desactivado por defecto: sin concurrencia, cada alta espera la ventana entera */
+        private boolean enabled = false;
+
+        /** Tiempo máximo que se esperan más altas desde la primera de la ventana */
+        private long windowMicros = 500;
+
+        /** Altas por transacción; al llegar a este número la ventana se cierra antes */
+        private int maxRows = 100;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public long getWindowMicros() {
+            return windowMicros;
+        }
+
+        public void setWindowMicros(long windowMicros) {
+            this.windowMicros = windowMicros;
+        }
+
+        public int getMaxRows() {
+            return maxRows;
+        }
+
+        public void setMaxRows(int maxRows) {
+            this.maxRows = maxRows;
+        }
+    }
+
+    /**
+     * Configuración del reparto de users entre varias bases de datos H2 (ShardSet)
+     *
+     * Ejemplo en application.yml (en memoria o en fichero, {n} es el número de shard):
+     *
+     * ra2:
+     *   sharding:
+     *     enabled: true
+     *     shards: 4
+     *     url-template: jdbc:h2:file:./data/ra2db_shard{n};MODE=PostgreSQL
+     */
+    public static class Sharding {
+
+        /** Desactivado por defecto: todo va a la base de datos de DatabaseConfig.DB_URL */
+        private boolean enabled = false;
+
+        /** Número de bases de datos; cada una tiene su propio pool de ra2.pool.max-size conexiones */
+        private int shards = 4;
+
+        /** URL JDBC de cada shard; {n} se sustituye por su número (0..shards-1) */
+        private String urlTemplate = "jdbc:h2:mem:ra2db_shard{n};MODE=PostgreSQL;DB_CLOSE_DELAY=-1;DB_CLOSE_ON_EXIT=FALSE";
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public int getShards() {
+            return shards;
+        }
+
+        public void setShards(int shards) {
+            this.shards = shards;
+        }
+
+        public String getUrlTemplate() {
+            return urlTemplate;
+        }
+
+        public void setUrlTemplate(String urlTemplate) {
+            this.urlTemplate = urlTemplate;
+        }
+    }
+}
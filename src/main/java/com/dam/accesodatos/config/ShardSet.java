@@ -0,0 +1,144 @@
+package com.dam.accesodatos.config;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Conjunto de bases de datos H2 entre las que se reparten los usuarios (ra2.sharding)
+ *
+ * Cada shard es una base de datos independiente (URL de url-template con {n} = 0..N-1)
+ * con su propio pool de conexiones, así que la carga y los bloqueos se reparten entre
+ * N motores H2 en lugar de concentrarse en uno.
+ *
+ * Enrutado:
+ * - Un usuario nuevo va al shard hash(email) % N, así que la restricción UNIQUE del email
+ *   sigue siendo global y un upsert por email encuentra su fila en un solo shard
+ * - La columna IDENTITY del shard i empieza en i+1 y avanza de N en N: el ID de cada fila
+ *   dice en qué shard está ((id - 1) % N) y los IDs no se repiten entre shards
+ *
+ * El código JDBC no cambia: dentro de on(shard, ...) DatabaseConfig.getConnection()
+ * devuelve conexiones de ese shard. El ámbito se hereda (InheritableThreadLocal), así que
+ * los hilos que cree el servicio mientras tanto también trabajan sobre el mismo shard.
+ */
+public final class ShardSet implements AutoCloseable {
+
+    private static final InheritableThreadLocal<Shard> CURRENT = new InheritableThreadLocal<>();
+
+    private final List<Shard> shards;
+
+    public ShardSet(Ra2Properties.Sharding settings, Ra2Properties.Pool poolSettings) {
+        int count = Math.max(1, settings.getShards());
+        DatabaseConfig.loadDriver();
+        List<Shard> created = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String url = settings.getUrlTemplate().replace("{n}", String.valueOf(i));
+            ConnectionPool pool = poolSettings.isEnabled()
+                    ? new ConnectionPool(url, DatabaseConfig.DB_USER, DatabaseConfig.DB_PASSWORD, poolSettings)
+                    : null;
+            created.add(new Shard(i, url, pool));
+        }
+        this.shards = List.copyOf(created);
+    }
+
+    public int size() {
+        return shards.size();
+    }
+
+    /**
+     * URL JDBC del shard
+     */
+    public String url(int shard) {
+        return shards.get(shard).url;
+    }
+
+    /**
+     * Conexión del shard indicado, fuera de on() (comprobaciones de estado, metadatos)
+     */
+    public Connection connect(int shard) throws SQLException {
+        return shards.get(shard).connect();
+    }
+
+    /**
+     * Shard donde se guarda un usuario nuevo con este email
+     */
+    public int shardForEmail(String email) {
+        if (email == null) {
+            return 0;
+        }
+        int hash = email.hashCode();
+        // Mezcla los bits altos: hashCode() de emails parecidos solo difiere en los bajos
+        return Math.floorMod(hash ^ (hash >>> 16), shards.size());
+    }
+
+    /**
+     * Shard que generó este ID (y donde está su fila)
+     */
+    public int shardForId(long id) {
+        return (int) Math.floorMod(id - 1, (long) shards.size());
+    }
+
+    /**
+     * Ejecuta la tarea con las conexiones de DatabaseConfig apuntando al shard indicado
+     */
+    public <T> T on(int shard, Supplier<T> task) {
+        Shard previous = CURRENT.get();
+        CURRENT.set(shards.get(shard));
+        try {
+            return task.get();
+        } finally {
+            if (previous != null) {
+                CURRENT.set(previous);
+            } else {
+                CURRENT.remove();
+            }
+        }
+    }
+
+    /**
+     * Crea las tablas en todos los shards (las borra si existían, igual que
+     * DatabaseConfig.initializeDatabase()) y ajusta la secuencia de IDs de cada uno.
+     */
+    public void initialize() {
+        for (Shard shard : shards) {
+            try (Connection conn = shard.connect();
+                 Statement stmt = conn.createStatement()) {
+                DatabaseConfig.executeScript(stmt, DatabaseConfig.getSchemaSQL());
+                stmt.execute("ALTER TABLE users ALTER COLUMN id RESTART WITH " + (shard.index + 1));
+                stmt.execute("ALTER TABLE users ALTER COLUMN id SET INCREMENT BY " + shards.size());
+            } catch (SQLException e) {
+                throw new RuntimeException("Error inicializando el shard " + shard.index + ": " + e.getMessage(), e);
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        for (Shard shard : shards) {
+            if (shard.pool != null) {
+                shard.pool.close();
+            }
+        }
+    }
+
+    /**
+     * Conexión del shard del hilo actual, o null si no está dentro de on()
+     */
+    static Connection currentConnection() throws SQLException {
+        Shard shard = CURRENT.get();
+        return shard != null ? shard.connect() : null;
+    }
+
+    private record Shard(int index, String url, ConnectionPool pool) {
+
+        Connection connect() throws SQLException {
+            return pool != null
+                    ? pool.borrow()
+                    : DriverManager.getConnection(url, DatabaseConfig.DB_USER, DatabaseConfig.DB_PASSWORD);
+        }
+    }
+}
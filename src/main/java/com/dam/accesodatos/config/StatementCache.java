@@ -0,0 +1,288 @@
+package com.dam.accesodatos.config;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Caché LRU de PreparedStatement para UNA conexión física del pool.
+ *
+ * Cuando el código llama a conn.prepareStatement(sql) con un SQL ya preparado
+ * en esa conexión, se reutiliza el PreparedStatement existente: H2 no vuelve a
+ * parsear ni a planificar la consulta.
+ *
+ * La clave incluye el texto SQL y las opciones del ResultSet (tipo, concurrencia,
+ * holdability) o RETURN_GENERATED_KEYS, porque cambian el statement que se prepara.
+ *
+ * El statement entregado es un proxy: su close() limpia los parámetros y lo deja
+ * en la caché en lugar de cerrarlo.
+ *
+ * No es thread-safe: una conexión solo la usa el hilo que la tiene prestada.
+ */
+class StatementCache {
+
+    private final int maxSize;
+    private final LongAdder hits;
+    private final LongAdder misses;
+    private final LongAdder evictions;
+    private final Map<Key, Entry> entries;
+
+    StatementCache(int maxSize, LongAdder hits, LongAdder misses, LongAdder evictions) {
+        this.maxSize = maxSize;
+        this.hits = hits;
+        this.misses = misses;
+        this.evictions = evictions;
+        // accessOrder = true: el orden de iteración es el de uso (LRU)
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+                if (size() > StatementCache.this.maxSize) {
+                    StatementCache.this.evictions.increment();
+                    eldest.getValue().evict();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Intenta servir conn.prepareStatement(...) desde la caché.
+     *
+     * @param physical Conexión física sobre la que se prepara el SQL
+     * @param logical  Proxy de conexión que verá el código cliente en getConnection()
+     * @param args     Argumentos originales de prepareStatement
+     * @return Statement cacheado, o null si esta variante de prepareStatement no se cachea
+     */
+    PreparedStatement prepare(Connection physical, Connection logical, Object[] args) throws SQLException {
+        Key key = Key.of(args);
+        if (key == null || maxSize <= 0) {
+            return null;
+        }
+
+        Entry entry = entries.get(key);
+        if (entry != null && entry.evicted) {
+            // No se pudo resetear en su último uso: se descarta
+            entries.remove(key);
+            entry = null;
+        }
+        if (entry != null && !entry.checkedOut) {
+            hits.increment();
+            return entry.checkOut(logical);
+        }
+
+        misses.increment();
+        PreparedStatement statement = key.prepare(physical);
+        if (entry != null) {
+            // El mismo SQL ya está en uso en esta conexión (statements anidados):
+            // se entrega uno nuevo que se cerrará de verdad al hacer close()
+            return statement;
+        }
+        Entry created = new Entry(statement);
+        entries.put(key, created);
+        return created.checkOut(logical);
+    }
+
+    /**
+     * Se llama al devolver la conexión al pool: los statements que el cliente
+     * olvidó cerrar se recuperan y los proxies antiguos dejan de funcionar.
+     */
+    void reset() {
+        for (Entry entry : entries.values()) {
+            if (entry.checkedOut) {
+                entry.checkIn();
+            }
+        }
+    }
+
+    /**
+     * Cierra todos los statements cacheados (la conexión física se va a descartar).
+     */
+    void clear() {
+        Iterator<Entry> it = entries.values().iterator();
+        while (it.hasNext()) {
+            it.next().evict();
+            it.remove();
+        }
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+    /**
+     * Clave de la caché: texto SQL + opciones con las que se preparó
+     */
+    private record Key(String sql, int autoGeneratedKeys, int resultSetType,
+                       int resultSetConcurrency, int resultSetHoldability) {
+
+        private static final int DEFAULT = -1;
+
+        /**
+         * Traduce las sobrecargas de prepareStatement a una clave.
+         * Las variantes con int[]/String[] de columnas generadas no se cachean.
+         */
+        static Key of(Object[] args) {
+            if (args == null || args.length == 0 || !(args[0] instanceof String sql)) {
+                return null;
+            }
+            switch (args.length) {
+                case 1:
+                    return new Key(sql, DEFAULT, DEFAULT, DEFAULT, DEFAULT);
+                case 2:
+                    return args[1] instanceof Integer autoKeys
+                            ? new Key(sql, autoKeys, DEFAULT, DEFAULT, DEFAULT) : null;
+                case 3:
+                    return new Key(sql, DEFAULT, (Integer) args[1], (Integer) args[2], DEFAULT);
+                case 4:
+                    return new Key(sql, DEFAULT, (Integer) args[1], (Integer) args[2], (Integer) args[3]);
+                default:
+                    return null;
+            }
+        }
+
+        PreparedStatement prepare(Connection physical) throws SQLException {
+            if (resultSetHoldability != DEFAULT) {
+                return physical.prepareStatement(sql, resultSetType, resultSetConcurrency, resultSetHoldability);
+            }
+            if (resultSetType != DEFAULT) {
+                return physical.prepareStatement(sql, resultSetType, resultSetConcurrency);
+            }
+            if (autoGeneratedKeys != DEFAULT) {
+                return physical.prepareStatement(sql, autoGeneratedKeys);
+            }
+            return physical.prepareStatement(sql);
+        }
+    }
+
+    /**
+     * Statement físico cacheado y su estado de préstamo
+     */
+    private static final class Entry {
+        private final PreparedStatement physical;
+        private boolean checkedOut = false;
+        private boolean evicted = false;
+        private boolean dirty = false;
+        private int generation = 0;
+
+        private Entry(PreparedStatement physical) {
+            this.physical = physical;
+        }
+
+        private PreparedStatement checkOut(Connection logical) {
+            checkedOut = true;
+            generation++;
+            return (PreparedStatement) Proxy.newProxyInstance(
+                    PreparedStatement.class.getClassLoader(),
+                    new Class<?>[]{PreparedStatement.class},
+                    new Handle(this, generation, logical));
+        }
+
+        /**
+         * Deja el statement listo para el siguiente uso: sin parámetros, sin batch
+         * y con los límites por defecto si el cliente los cambió.
+         */
+        private void checkIn() {
+            checkedOut = false;
+            generation++;
+            if (evicted) {
+                closeQuietly();
+                return;
+            }
+            try {
+                physical.clearParameters();
+                physical.clearBatch();
+                if (dirty) {
+                    physical.setMaxRows(0);
+                    physical.setFetchSize(0);
+                    physical.setQueryTimeout(0);
+                    dirty = false;
+                }
+                physical.clearWarnings();
+            } catch (SQLException e) {
+                evicted = true;
+                closeQuietly();
+            }
+        }
+
+        private void evict() {
+            evicted = true;
+            if (!checkedOut) {
+                closeQuietly();
+            }
+        }
+
+        private void closeQuietly() {
+            try {
+                physical.close();
+            } catch (SQLException e) {
+                System.err.println("Error al cerrar statement cacheado: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * InvocationHandler del PreparedStatement entregado al cliente
+     */
+    private static final class Handle implements InvocationHandler {
+        private final Entry entry;
+        private final int generation;
+        private final Connection logical;
+
+        private Handle(Entry entry, int generation, Connection logical) {
+            this.entry = entry;
+            this.generation = generation;
+            this.logical = logical;
+        }
+
+        private boolean isCurrent() {
+            return entry.checkedOut && entry.generation == generation;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (isCurrent()) {
+                        entry.checkIn();
+                    }
+                    return null;
+                case "isClosed":
+                    return !isCurrent() || entry.physical.isClosed();
+                case "getConnection":
+                    return logical;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "CachedPreparedStatement[" + entry.physical + "]";
+                case "setMaxRows":
+                case "setFetchSize":
+                case "setQueryTimeout":
+                case "setLargeMaxRows":
+                    entry.dirty = true;
+                    break;
+                default:
+                    break;
+            }
+
+            if (!isCurrent()) {
+                throw new SQLException("El PreparedStatement ya está cerrado");
+            }
+            try {
+                return method.invoke(entry.physical, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+}
@@ -3,15 +3,44 @@ package com.dam.accesodatos.mcp;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.dam.accesodatos.config.ConnectionPool;
+import com.dam.accesodatos.config.DatabaseConfig;
+import com.dam.accesodatos.config.HealthMonitor;
+import com.dam.accesodatos.config.Ra2Properties;
+import com.dam.accesodatos.ra2.AsyncDatabaseUserService;
 import com.dam.accesodatos.ra2.DatabaseUserService;
+import com.dam.accesodatos.ra2.MetadataCache;
+import com.dam.accesodatos.ra2.SearchPlanCache;
+import com.dam.accesodatos.model.BatchInsertResult;
+import com.dam.accesodatos.model.IngestResult;
+import com.dam.accesodatos.model.TransferResult;
+import com.dam.accesodatos.model.UpsertResult;
 import com.dam.accesodatos.model.User;
 import com.dam.accesodatos.model.UserCreateDto;
-
+import com.dam.accesodatos.model.UserHistogram;
+import com.dam.accesodatos.model.UserPage;
+import com.dam.accesodatos.model.UserTextMatch;
+import jakarta.servlet.http.HttpServletRequest;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
 
 /**
  * Controlador REST que expone las herramientas MCP via HTTP para operaciones JDBC.
@@ -31,19 +60,48 @@ public class McpServerController {
     @Autowired
     private DatabaseUserService databaseUserService;
 
+    @Autowired
+    private AsyncDatabaseUserService asyncDatabaseUserService;
+
     @Autowired
     private McpToolRegistry toolRegistry;
 
+    @Autowired
+    private Ra2Properties ra2Properties;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    // Respuestas JSON ya serializadas de get_database_info y get_table_columns. La clave
+    // incluye la versión del esquema: tras un DDL las anteriores dejan de usarse
+    private final Map<String, byte[]> metadataResponses = new ConcurrentHashMap<>();
+
     /**
      * Endpoint de health check
+     *
+     * Refleja el estado real de la base de datos (HealthMonitor), pero sin tocarla en
+     * cada petición: se devuelve el último resultado de isValid() mientras no caduque.
+     * Responde 503 si la base de datos no está disponible.
      */
     @GetMapping("/health")
-    public ResponseEntity<Map<String, String>> getHealth() {
-        Map<String, String> health = new HashMap<>();
-        health.put("status", "UP");
+    public ResponseEntity<Map<String, Object>> getHealth() {
+        HealthMonitor.Status status = DatabaseConfig.getHealthMonitor().check();
+
+        Map<String, Object> database = new LinkedHashMap<>();
+        database.put("status", status.up() ? "UP" : "DOWN");
+        database.put("checked_at", status.checkedAt());
+        database.put("age_ms", status.ageMs());
+        database.put("latency_us", status.latencyMicros());
+        if (status.error() != null) {
+            database.put("error", status.error());
+        }
+
+        Map<String, Object> health = new HashMap<>();
+        health.put("status", status.up() ? "UP" : "DOWN");
         health.put("service", "MCP Server RA2 JDBC");
+        health.put("database", database);
 
-        return ResponseEntity.ok(health);
+        return ResponseEntity.status(status.up() ? 200 : 503).body(health);
     }
 
     /**
@@ -73,6 +131,30 @@ public class McpServerController {
         return ResponseEntity.ok(response);
     }
 
+    /**
+     * Endpoint de métricas internas (pool de conexiones, caché de statements
+     * y uso de cada combinación de filtros de search_users)
+     */
+    @GetMapping("/metrics")
+    public ResponseEntity<Map<String, Object>> getMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+
+        ConnectionPool pool = DatabaseConfig.getPool();
+        metrics.put("pool", pool != null ? pool.getStats() : Map.of("enabled", false));
+        metrics.put("health", DatabaseConfig.getHealthMonitor().getStats());
+        metrics.put("search_plans", SearchPlanCache.getStats());
+        metrics.put("metadata", MetadataCache.getStats());
+        metrics.put("user_cache", databaseUserService.getUserCacheStats());
+        metrics.put("department_counters", databaseUserService.getDepartmentCounterStats());
+        metrics.put("columnar_snapshot", databaseUserService.getColumnarSnapshotStats());
+        metrics.put("text_index", databaseUserService.getTextIndexStats());
+        metrics.put("coalescing", databaseUserService.getCoalescingStats());
+        metrics.put("group_commit", databaseUserService.getGroupCommitStats());
+        metrics.put("async", asyncDatabaseUserService.getExecutorStats());
+
+        return ResponseEntity.ok(metrics);
+    }
+
     // ========== JDBC OPERATION ENDPOINTS ==========
 
     /**
@@ -230,6 +312,72 @@ public class McpServerController {
         }
     }
 
+    /**
+     * Busca varios usuarios por ID en una sola consulta
+     */
+    @PostMapping("/find_users_by_ids")
+    public ResponseEntity<Map<String, Object>> findUsersByIds(@RequestBody Map<String, Object> request) {
+        logger.debug("Buscando usuarios por IDs");
+
+        try {
+            @SuppressWarnings("unchecked")
+            List<Number> userIds = (List<Number>) request.get("userIds");
+            List<Long> ids = userIds.stream().map(Number::longValue).toList();
+            List<User> users = databaseUserService.findUsersByIds(ids);
+
+            Map<String, Object> response = new HashMap<>();
+            response.put("tool", "find_users_by_ids");
+            response.put("result", users);
+            response.put("count", users.size());
+            response.put("requested_count", ids.size());
+            response.put("status", "success");
+
+            return ResponseEntity.ok(response);
+        } catch (Exception e) {
+            logger.error("Error buscando usuarios", e);
+
+            Map<String, Object> error = new HashMap<>();
+            error.put("error", "Error buscando usuarios: " + e.getMessage());
+            error.put("tool", "find_users_by_ids");
+            error.put("status", "error");
+
+            return ResponseEntity.status(500).body(error);
+        }
+    }
+
+    /**
+     * Elimina varios usuarios por ID en una transacción
+     */
+    @PostMapping("/delete_users_by_ids")
+    public ResponseEntity<Map<String, Object>> deleteUsersByIds(@RequestBody Map<String, Object> request) {
+        logger.debug("Eliminando usuarios por IDs");
+
+        try {
+            @SuppressWarnings("unchecked")
+            List<Number> userIds = (List<Number>) request.get("userIds");
+            List<Long> ids = userIds.stream().map(Number::longValue).toList();
+            List<User> users = databaseUserService.deleteUsersByIds(ids);
+
+            Map<String, Object> response = new HashMap<>();
+            response.put("tool", "delete_users_by_ids");
+            response.put("result", users);
+            response.put("deleted_count", users.size());
+            response.put("requested_count", ids.size());
+            response.put("status", "success");
+
+            return ResponseEntity.ok(response);
+        } catch (Exception e) {
+            logger.error("Error eliminando usuarios", e);
+
+            Map<String, Object> error = new HashMap<>();
+            error.put("error", "Error eliminando usuarios: " + e.getMessage());
+            error.put("tool", "delete_users_by_ids");
+            error.put("status", "error");
+
+            return ResponseEntity.status(500).body(error);
+        }
+    }
+
     /**
      * Obtiene todos los usuarios
      */
@@ -259,6 +407,69 @@ public class McpServerController {
         }
     }
 
+    /**
+     * Obtiene todos los usuarios en streaming
+     *
+     * Las filas se escriben en la respuesta JSON según se leen del cursor,
+     * sin cargar la tabla en memoria. Si quedan filas, "next_cursor" indica
+     * desde dónde seguir en la siguiente llamada.
+     *
+     * Body opcional: {"after": "<cursor>", "limit": 10000, "fetchSize": 500}
+     */
+    @PostMapping(value = "/find_all_users_stream", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> findAllUsersStream(
+            @RequestBody(required = false) Map<String, Object> request) {
+        Map<String, Object> params = request != null ? request : Map.of();
+        String after = params.get("after") != null ? params.get("after").toString() : null;
+        int limit = intParam(params, "limit", ra2Properties.getStream().getPageSize());
+        int fetchSize = intParam(params, "fetchSize", ra2Properties.getStream().getFetchSize());
+        logger.debug("Recorriendo usuarios en streaming: after={}, limit={}, fetchSize={}", after, limit, fetchSize);
+
+        StreamingResponseBody body = outputStream -> {
+            try (JsonGenerator json = objectMapper.getFactory().createGenerator(outputStream)) {
+                json.writeStartObject();
+                json.writeStringField("tool", "find_all_users_stream");
+                json.writeArrayFieldStart("result");
+
+                int[] count = {0};
+                String nextCursor = null;
+                String error = null;
+                try {
+                    nextCursor = databaseUserService.streamAll(after, limit, fetchSize, user -> {
+                        try {
+                            json.writeObject(user);
+                            count[0]++;
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    });
+                } catch (UncheckedIOException e) {
+                    // El cliente cerró la conexión: no hay a quién responder
+                    throw e.getCause();
+                } catch (Exception e) {
+                    // Las cabeceras (200) ya se enviaron: el error se indica en el propio JSON
+                    logger.error("Error recorriendo usuarios en streaming", e);
+                    error = "Error obteniendo usuarios: " + e.getMessage();
+                }
+
+                json.writeEndArray();
+                json.writeNumberField("count", count[0]);
+                json.writeStringField("next_cursor", nextCursor);
+                if (error != null) {
+                    json.writeStringField("error", error);
+                    json.writeStringField("status", "error");
+                } else {
+                    json.writeStringField("status", "success");
+                }
+                json.writeEndObject();
+            }
+        };
+
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(body);
+    }
+
     /**
      * Busca usuarios por departamento
      */
@@ -314,13 +525,17 @@ public class McpServerController {
             if (request.containsKey("offset")) {
                 query.setOffset(((Number) request.get("offset")).intValue());
             }
+            if (request.containsKey("after")) {
+                query.setAfter((String) request.get("after"));
+            }
 
-            List<User> users = databaseUserService.searchUsers(query);
+            UserPage page = databaseUserService.searchUsersPage(query);
 
             Map<String, Object> response = new HashMap<>();
             response.put("tool", "search_users");
-            response.put("result", users);
-            response.put("count", users.size());
+            response.put("result", page.getItems());
+            response.put("count", page.getItems().size());
+            response.put("next_cursor", page.getNextCursor());
             response.put("status", "success");
 
             return ResponseEntity.ok(response);
@@ -336,6 +551,35 @@ public class McpServerController {
         }
     }
 
+    @PostMapping("/search_users_text")
+    public ResponseEntity<Map<String, Object>> searchUsersText(@RequestBody Map<String, Object> request) {
+        logger.debug("Buscando usuarios por texto: {}", request.get("text"));
+
+        try {
+            String text = (String) request.get("text");
+            Object limit = request.get("limit");
+            List<UserTextMatch> matches = databaseUserService.searchUsersText(
+                    text, limit instanceof Number number ? number.intValue() : null);
+
+            Map<String, Object> response = new HashMap<>();
+            response.put("tool", "search_users_text");
+            response.put("result", matches);
+            response.put("count", matches.size());
+            response.put("status", "success");
+
+            return ResponseEntity.ok(response);
+        } catch (Exception e) {
+            logger.error("Error buscando usuarios por texto", e);
+
+            Map<String, Object> error = new HashMap<>();
+            error.put("error", "Error buscando usuarios por texto: " + e.getMessage());
+            error.put("tool", "search_users_text");
+            error.put("status", "error");
+
+            return ResponseEntity.status(500).body(error);
+        }
+    }
+
     /**
      * Transfiere múltiples usuarios en una transacción
      */
@@ -361,12 +605,19 @@ public class McpServerController {
                     })
                     .collect(java.util.stream.Collectors.toList());
 
-            boolean result = databaseUserService.transferData(users);
+            // Modo batch: atomic (por defecto true) mantiene el todo o nada de transferData
+            boolean atomic = !Boolean.FALSE.equals(request.get("atomic"));
+            TransferResult result = databaseUserService.transferDataBatched(users,
+                    intParam(request, "chunkSize", ra2Properties.getBatch().getChunkSize()), atomic);
 
             Map<String, Object> response = new HashMap<>();
             response.put("tool", "transfer_data");
-            response.put("result", result);
-            response.put("inserted_count", users.size());
+            response.put("result", true);
+            response.put("inserted_count", result.getInsertedCount());
+            response.put("failed_rows", result.getFailedRows());
+            response.put("chunks", result.getChunks());
+            response.put("retried_chunks", result.getRetriedChunks());
+            response.put("elapsed_ms", result.getElapsedMs());
             response.put("status", "success");
 
             return ResponseEntity.ok(response);
@@ -407,11 +658,20 @@ public class McpServerController {
                     })
                     .collect(java.util.stream.Collectors.toList());
 
-            int insertedCount = databaseUserService.batchInsertUsers(users);
+            // chunkSize y parallelism opcionales; por defecto los de ra2.batch
+            BatchInsertResult result = databaseUserService.batchInsertUsersChunked(users,
+                    intParam(request, "chunkSize", ra2Properties.getBatch().getChunkSize()),
+                    intParam(request, "parallelism", ra2Properties.getBatch().getParallelism()));
 
             Map<String, Object> response = new HashMap<>();
             response.put("tool", "batch_insert_users");
-            response.put("result", insertedCount);
+            response.put("result", result.getInsertedCount());
+            response.put("generated_ids", result.getGeneratedIds());
+            response.put("chunk_size", result.getChunkSize());
+            response.put("chunks", result.getChunks());
+            response.put("parallelism", result.getParallelism());
+            response.put("elapsed_ms", result.getElapsedMs());
+            response.put("rows_per_second", Math.round(result.getRowsPerSecond()));
             response.put("status", "success");
 
             return ResponseEntity.ok(response);
@@ -428,21 +688,115 @@ public class McpServerController {
     }
 
     /**
-     * Obtiene metadatos de la base de datos
+     * Inserta o actualiza usuarios en bloque usando el email como clave (MERGE)
      */
-    @PostMapping("/get_database_info")
-    public ResponseEntity<Map<String, Object>> getDatabaseInfo() {
-        logger.debug("Obteniendo información de la base de datos");
+    @PostMapping("/upsert_users")
+    public ResponseEntity<Map<String, Object>> upsertUsers(@RequestBody Map<String, Object> request) {
+        logger.debug("Upsert de usuarios con MERGE");
 
         try {
-            String info = databaseUserService.getDatabaseInfo();
+            @SuppressWarnings("unchecked")
+            List<Map<String, Object>> usersData = (List<Map<String, Object>>) request.get("users");
+
+            List<User> users = usersData.stream()
+                    .map(userData -> {
+                        User user = new User();
+                        user.setName((String) userData.get("name"));
+                        user.setEmail((String) userData.get("email"));
+                        user.setDepartment((String) userData.get("department"));
+                        user.setRole((String) userData.get("role"));
+                        // Sin "active" el MERGE conserva el valor de la fila existente
+                        user.setActive((Boolean) userData.get("active"));
+                        return user;
+                    })
+                    .collect(java.util.stream.Collectors.toList());
+
+            UpsertResult result = databaseUserService.upsertUsers(users);
 
             Map<String, Object> response = new HashMap<>();
-            response.put("tool", "get_database_info");
-            response.put("result", info);
+            response.put("tool", "upsert_users");
+            response.put("result", result.getOutcomes());
+            response.put("inserted_count", result.getInsertedCount());
+            response.put("updated_count", result.getUpdatedCount());
+            response.put("batches", result.getBatches());
+            response.put("elapsed_ms", result.getElapsedMs());
             response.put("status", "success");
 
             return ResponseEntity.ok(response);
+        } catch (Exception e) {
+            logger.error("Error en upsert de usuarios", e);
+
+            Map<String, Object> error = new HashMap<>();
+            error.put("error", "Error en upsert: " + e.getMessage());
+            error.put("tool", "upsert_users");
+            error.put("status", "error");
+
+            return ResponseEntity.status(500).body(error);
+        }
+    }
+
+    /**
+     * Carga masiva de usuarios en formato NDJSON (un usuario JSON por línea)
+     *
+     * El cuerpo se lee línea a línea mientras se inserta, sin cargarlo entero en memoria.
+     * La respuesta también es NDJSON: una línea de progreso por cada bloque confirmado
+     * y una línea final con "status".
+     *
+     * curl -X POST -H "Content-Type: application/x-ndjson" --data-binary @usuarios.ndjson \
+     *      http://localhost:8082/mcp/ingest_users
+     */
+    @PostMapping(value = "/ingest_users", produces = "application/x-ndjson")
+    public ResponseEntity<StreamingResponseBody> ingestUsers(HttpServletRequest request) {
+        logger.debug("Ingesta NDJSON de usuarios");
+
+        StreamingResponseBody body = outputStream -> {
+            BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(request.getInputStream(), StandardCharsets.UTF_8));
+            NdjsonUserIterator rows = new NdjsonUserIterator(reader, objectMapper.readerFor(User.class));
+
+            Map<String, Object> last = new LinkedHashMap<>();
+            last.put("tool", "ingest_users");
+            try {
+                IngestResult result = databaseUserService.ingestUsers(rows, progress -> {
+                    try {
+                        writeNdjsonLine(outputStream, ingestStatus(progress));
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+                last.putAll(ingestStatus(result));
+                last.put("status", "success");
+            } catch (UncheckedIOException e) {
+                // El cliente cerró la conexión: no hay a quién responder
+                throw e.getCause();
+            } catch (Exception e) {
+                logger.error("Error en la ingesta de usuarios", e);
+                last.put("error", "Error en la ingesta: " + e.getMessage());
+                last.put("status", "error");
+            }
+            writeNdjsonLine(outputStream, last);
+        };
+
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType("application/x-ndjson"))
+                .body(body);
+    }
+
+    /**
+     * Obtiene metadatos de la base de datos
+     */
+    @PostMapping("/get_database_info")
+    public ResponseEntity<?> getDatabaseInfo() {
+        logger.debug("Obteniendo información de la base de datos");
+
+        try {
+            return metadataResponse("get_database_info", () -> {
+                Map<String, Object> response = new HashMap<>();
+                response.put("tool", "get_database_info");
+                response.put("result", databaseUserService.getDatabaseInfo());
+                response.put("status", "success");
+                return response;
+            });
         } catch (Exception e) {
             logger.error("Error obteniendo información de BD", e);
 
@@ -459,7 +813,7 @@ public class McpServerController {
      * Obtiene metadatos de las columnas de una tabla
      */
     @PostMapping("/get_table_columns")
-    public ResponseEntity<Map<String, Object>> getTableColumns(@RequestBody Map<String, String> request) {
+    public ResponseEntity<?> getTableColumns(@RequestBody Map<String, String> request) {
         logger.debug("Obteniendo columnas de tabla");
 
         try {
@@ -472,7 +826,12 @@ public class McpServerController {
             response.put("column_count", columns.size());
             response.put("status", "success");
 
-            return ResponseEntity.ok(response);
+            // Solo se guardan las tablas que existen: un nombre inventado no ocupa memoria
+            if (columns.isEmpty()) {
+                return ResponseEntity.ok(response);
+            }
+            return metadataResponse("get_table_columns:" + tableName.toUpperCase(Locale.ROOT),
+                    () -> response);
         } catch (Exception e) {
             logger.error("Error obteniendo columnas", e);
 
@@ -485,6 +844,34 @@ public class McpServerController {
         }
     }
 
+    /**
+     * Vuelve a leer los metadatos (tras un DDL hecho fuera de DatabaseConfig)
+     */
+    @PostMapping("/refresh_metadata")
+    public ResponseEntity<Map<String, Object>> refreshMetadata() {
+        logger.debug("Recargando metadatos de la base de datos");
+
+        try {
+            MetadataCache.refresh();
+
+            Map<String, Object> response = new HashMap<>();
+            response.put("tool", "refresh_metadata");
+            response.put("result", MetadataCache.getStats());
+            response.put("status", "success");
+
+            return ResponseEntity.ok(response);
+        } catch (Exception e) {
+            logger.error("Error recargando metadatos", e);
+
+            Map<String, Object> error = new HashMap<>();
+            error.put("error", "Error recargando metadatos: " + e.getMessage());
+            error.put("tool", "refresh_metadata");
+            error.put("status", "error");
+
+            return ResponseEntity.status(500).body(error);
+        }
+    }
+
     /**
      * Cuenta usuarios activos por departamento
      */
@@ -515,4 +902,85 @@ public class McpServerController {
         }
     }
 
+    /**
+     * Cuenta usuarios por departamento, rol y estado con un único GROUP BY
+     */
+    @PostMapping("/get_user_histogram")
+    public ResponseEntity<Map<String, Object>> getUserHistogram(
+            @RequestBody(required = false) Map<String, Object> request) {
+        logger.debug("Agrupando usuarios por departamento, rol y estado");
+
+        try {
+            Object maxStaleness = request != null ? request.get("maxStalenessMs") : null;
+            UserHistogram histogram = databaseUserService.getUserHistogram(
+                    maxStaleness instanceof Number number ? number.longValue() : null);
+
+            Map<String, Object> response = new HashMap<>();
+            response.put("tool", "get_user_histogram");
+            response.put("result", histogram.getGroups());
+            response.put("subtotals", histogram.getSubtotals());
+            response.put("total", histogram.getTotal());
+            response.put("generated_at", histogram.getGeneratedAt());
+            response.put("from_snapshot", histogram.isFromSnapshot());
+            response.put("age_ms", histogram.getAgeMs());
+            response.put("scan_ms", histogram.getScanMs());
+            response.put("status", "success");
+
+            return ResponseEntity.ok(response);
+        } catch (Exception e) {
+            logger.error("Error agrupando usuarios", e);
+
+            Map<String, Object> error = new HashMap<>();
+            error.put("error", "Error agrupando usuarios: " + e.getMessage());
+            error.put("tool", "get_user_histogram");
+            error.put("status", "error");
+
+            return ResponseEntity.status(500).body(error);
+        }
+    }
+
+    /**
+     * Lee un parámetro numérico opcional del body
+     */
+    private static int intParam(Map<String, Object> request, String name, int defaultValue) {
+        Object value = request.get(name);
+        return value instanceof Number number ? number.intValue() : defaultValue;
+    }
+
+    private static Map<String, Object> ingestStatus(IngestResult result) {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("received", result.getReceived());
+        status.put("inserted", result.getInserted());
+        status.put("rejected", result.getRejected());
+        status.put("flushes", result.getFlushes());
+        status.put("elapsed_ms", result.getElapsedMs());
+        status.put("rows_per_second", Math.round(result.getRowsPerSecond()));
+        if (!result.getErrors().isEmpty()) {
+            status.put("errors", result.getErrors());
+        }
+        return status;
+    }
+
+    private void writeNdjsonLine(OutputStream outputStream, Map<String, Object> line) throws IOException {
+        outputStream.write(objectMapper.writeValueAsBytes(line));
+        outputStream.write('\n');
+        outputStream.flush();
+    }
+
+    /**
+     * Respuesta de metadatos serializada una sola vez por versión del esquema
+     */
+    private ResponseEntity<byte[]> metadataResponse(String tool, Supplier<Map<String, Object>> response)
+            throws IOException {
+        long version = DatabaseConfig.getSchemaVersion();
+        String key = version + ":" + tool;
+        byte[] body = metadataResponses.get(key);
+        if (body == null) {
+            body = objectMapper.writeValueAsBytes(response.get());
+            if (metadataResponses.putIfAbsent(key, body) == null) {
+                metadataResponses.keySet().removeIf(cached -> !cached.startsWith(version + ":"));
+            }
+        }
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(body);
+    }
 }
@@ -0,0 +1,70 @@
+package com.dam.accesodatos.mcp;
+
+import com.dam.accesodatos.model.User;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectReader;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Lee usuarios de un texto NDJSON (un objeto JSON por línea) bajo demanda
+ *
+ * Solo se mantiene en memoria la línea actual. Las líneas en blanco se ignoran;
+ * una línea que no es un usuario válido hace que next() lance
+ * IllegalArgumentException y la lectura puede continuar con la siguiente.
+ */
+class NdjsonUserIterator implements Iterator<User> {
+
+    private final BufferedReader reader;
+    private final ObjectReader userReader;
+    private String nextLine;
+    private long lineNumber;
+
+    NdjsonUserIterator(BufferedReader reader, ObjectReader userReader) {
+        this.reader = reader;
+        this.userReader = userReader;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (nextLine != null) {
+            return true;
+        }
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (!line.isBlank()) {
+                    nextLine = line;
+                    return true;
+                }
+            }
+            return false;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public User next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        String line = nextLine;
+        nextLine = null;
+        try {
+            User user = userReader.readValue(line);
+            if (user.getEmail() == null || user.getName() == null) {
+                throw new IllegalArgumentException("Línea " + lineNumber + ": faltan name o email");
+            }
+            return user;
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Línea " + lineNumber + ": JSON inválido ("
+                    + e.getOriginalMessage() + ")", e);
+        }
+    }
+}
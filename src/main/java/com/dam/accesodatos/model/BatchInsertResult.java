@@ -0,0 +1,70 @@
+package com.dam.accesodatos.model;
+
+import java.util.List;
+
+/**
+ * Resultado detallado de una inserción por lotes
+ *
+ * generatedIds está en el mismo orden que la lista de usuarios recibida.
+ */
+public class BatchInsertResult {
+
+    private final int insertedCount;
+    private final List<Long> generatedIds;
+    private final int chunkSize;
+    private final int chunks;
+    private final int parallelism;
+    private final long elapsedMs;
+
+    public BatchInsertResult(int insertedCount, List<Long> generatedIds, int chunkSize,
+                             int chunks, int parallelism, long elapsedMs) {
+        this.insertedCount = insertedCount;
+        this.generatedIds = generatedIds;
+        this.chunkSize = chunkSize;
+        this.chunks = chunks;
+        this.parallelism = parallelism;
+        this.elapsedMs = elapsedMs;
+    }
+
+    public int getInsertedCount() {
+        return insertedCount;
+    }
+
+    public List<Long> getGeneratedIds() {
+        return generatedIds;
+    }
+
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    /** Número de bloques (executeBatch + commit) realizados */
+    public int getChunks() {
+        return chunks;
+    }
+
+    /** Conexiones que han insertado en paralelo */
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    public long getElapsedMs() {
+        return elapsedMs;
+    }
+
+    /** Filas insertadas por segundo */
+    public double getRowsPerSecond() {
+        return elapsedMs > 0 ? insertedCount * 1000.0 / elapsedMs : insertedCount;
+    }
+
+    @Override
+    public String toString() {
+        return "BatchInsertResult{" +
+                "insertedCount=" + insertedCount +
+                ", chunkSize=" + chunkSize +
+                ", chunks=" + chunks +
+                ", parallelism=" + parallelism +
+                ", elapsedMs=" + elapsedMs +
+                '}';
+    }
+}
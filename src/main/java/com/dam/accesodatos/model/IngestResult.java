@@ -0,0 +1,70 @@
+package com.dam.accesodatos.model;
+
+import java.util.List;
+
+/**
+ * Estado de una ingesta de usuarios (progreso parcial o resultado final)
+ *
+ * received cuenta las filas leídas correctamente; rejected, las que no se
+ * pudieron leer o insertar. errors guarda solo los primeros mensajes.
+ */
+public class IngestResult {
+
+    private final long received;
+    private final long inserted;
+    private final long rejected;
+    private final int flushes;
+    private final long elapsedMs;
+    private final List<String> errors;
+
+    public IngestResult(long received, long inserted, long rejected, int flushes,
+                        long elapsedMs, List<String> errors) {
+        this.received = received;
+        this.inserted = inserted;
+        this.rejected = rejected;
+        this.flushes = flushes;
+        this.elapsedMs = elapsedMs;
+        this.errors = errors;
+    }
+
+    public long getReceived() {
+        return received;
+    }
+
+    public long getInserted() {
+        return inserted;
+    }
+
+    public long getRejected() {
+        return rejected;
+    }
+
+    /** Bloques confirmados (executeBatch + commit) */
+    public int getFlushes() {
+        return flushes;
+    }
+
+    public long getElapsedMs() {
+        return elapsedMs;
+    }
+
+    public List<String> getErrors() {
+        return errors;
+    }
+
+    /** Filas insertadas por segundo */
+    public double getRowsPerSecond() {
+        return elapsedMs > 0 ? inserted * 1000.0 / elapsedMs : inserted;
+    }
+
+    @Override
+    public String toString() {
+        return "IngestResult{" +
+                "received=" + received +
+                ", inserted=" + inserted +
+                ", rejected=" + rejected +
+                ", flushes=" + flushes +
+                ", elapsedMs=" + elapsedMs +
+                '}';
+    }
+}
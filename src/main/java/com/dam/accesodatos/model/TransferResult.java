@@ -0,0 +1,77 @@
+package com.dam.accesodatos.model;
+
+import java.util.List;
+
+/**
+ * Resultado de una transferencia en modo batch (transferDataBatched)
+ *
+ * Si la transferencia no es atómica, las filas que fallaron se descartan
+ * y se devuelven en failedRows; el resto queda confirmado.
+ */
+public class TransferResult {
+
+    private final int requestedCount;
+    private final int insertedCount;
+    private final List<FailedRow> failedRows;
+    private final int chunks;
+    private final int retriedChunks;
+    private final long elapsedMs;
+
+    public TransferResult(int requestedCount, int insertedCount, List<FailedRow> failedRows,
+                          int chunks, int retriedChunks, long elapsedMs) {
+        this.requestedCount = requestedCount;
+        this.insertedCount = insertedCount;
+        this.failedRows = failedRows;
+        this.chunks = chunks;
+        this.retriedChunks = retriedChunks;
+        this.elapsedMs = elapsedMs;
+    }
+
+    public int getRequestedCount() {
+        return requestedCount;
+    }
+
+    public int getInsertedCount() {
+        return insertedCount;
+    }
+
+    public List<FailedRow> getFailedRows() {
+        return failedRows;
+    }
+
+    /** Bloques enviados con executeBatch() */
+    public int getChunks() {
+        return chunks;
+    }
+
+    /** Bloques que fallaron y se repitieron fila a fila para aislar las filas erróneas */
+    public int getRetriedChunks() {
+        return retriedChunks;
+    }
+
+    public long getElapsedMs() {
+        return elapsedMs;
+    }
+
+    @Override
+    public String toString() {
+        return "TransferResult{" +
+                "requestedCount=" + requestedCount +
+                ", insertedCount=" + insertedCount +
+                ", failedRows=" + failedRows.size() +
+                ", chunks=" + chunks +
+                ", retriedChunks=" + retriedChunks +
+                ", elapsedMs=" + elapsedMs +
+                '}';
+    }
+
+    /**
+     * Fila que no se pudo insertar
+     *
+     * @param index Posición en la lista recibida
+     * @param email Email del usuario (identifica la fila para el cliente)
+     * @param error Mensaje de la SQLException
+     */
+    public record FailedRow(int index, String email, String error) {
+    }
+}
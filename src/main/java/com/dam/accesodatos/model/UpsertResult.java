@@ -0,0 +1,71 @@
+package com.dam.accesodatos.model;
+
+import java.util.List;
+
+/**
+ * Resultado de un upsert masivo (MERGE INTO users KEY(email))
+ *
+ * outcomes tiene una entrada por usuario recibido, en el mismo orden.
+ */
+public class UpsertResult {
+
+    /** Qué hizo el MERGE con una fila */
+    public enum Action { INSERTED, UPDATED }
+
+    private final List<Outcome> outcomes;
+    private final int insertedCount;
+    private final int updatedCount;
+    private final int batches;
+    private final long elapsedMs;
+
+    public UpsertResult(List<Outcome> outcomes, int insertedCount, int updatedCount,
+                        int batches, long elapsedMs) {
+        this.outcomes = outcomes;
+        this.insertedCount = insertedCount;
+        this.updatedCount = updatedCount;
+        this.batches = batches;
+        this.elapsedMs = elapsedMs;
+    }
+
+    public List<Outcome> getOutcomes() {
+        return outcomes;
+    }
+
+    public int getInsertedCount() {
+        return insertedCount;
+    }
+
+    public int getUpdatedCount() {
+        return updatedCount;
+    }
+
+    /** Número de executeBatch() (con su commit) realizados */
+    public int getBatches() {
+        return batches;
+    }
+
+    public long getElapsedMs() {
+        return elapsedMs;
+    }
+
+    @Override
+    public String toString() {
+        return "UpsertResult{" +
+                "insertedCount=" + insertedCount +
+                ", updatedCount=" + updatedCount +
+                ", batches=" + batches +
+                ", elapsedMs=" + elapsedMs +
+                '}';
+    }
+
+    /**
+     * Resultado de una fila
+     *
+     * @param index Posición en la lista recibida
+     * @param email Clave del MERGE
+     * @param id ID del usuario insertado o actualizado
+     * @param action INSERTED o UPDATED
+     */
+    public record Outcome(int index, String email, Long id, Action action) {
+    }
+}
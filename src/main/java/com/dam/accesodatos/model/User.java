@@ -65,6 +65,23 @@ public class User {
         this.role = role;
     }
 
+    /**
+     * Constructor completo, usado al mapear filas de la base de datos.
+     * Asigna los campos directamente: no llama a LocalDateTime.now()
+     * porque las fechas ya vienen de las columnas created_at/updated_at.
+     */
+    public User(Long id, String name, String email, String department, String role,
+                Boolean active, LocalDateTime createdAt, LocalDateTime updatedAt) {
+        this.id = id;
+        this.name = name;
+        this.email = email;
+        this.department = department;
+        this.role = role;
+        this.active = active;
+        this.createdAt = createdAt;
+        this.updatedAt = updatedAt;
+    }
+
     public void setId(Long id) {
         this.id = id;
     }
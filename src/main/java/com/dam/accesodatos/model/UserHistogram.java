@@ -0,0 +1,88 @@
+package com.dam.accesodatos.model;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Recuento de usuarios por departamento, rol y estado (get_user_histogram)
+ *
+ * groups tiene una entrada por combinación (department, role, active) existente.
+ * subtotals son los niveles de un GROUP BY ROLLUP(department, role, active):
+ * primero (department, role) y después (department), con null en las columnas agregadas.
+ * total es el número de usuarios de la tabla.
+ */
+public class UserHistogram {
+
+    private final List<Group> groups;
+    private final List<Group> subtotals;
+    private final long total;
+    private final LocalDateTime generatedAt;
+    private final long scanMs;
+    private final boolean fromSnapshot;
+    private final long ageMs;
+
+    public UserHistogram(List<Group> groups, List<Group> subtotals, long total,
+                         LocalDateTime generatedAt, long scanMs, boolean fromSnapshot, long ageMs) {
+        this.groups = groups;
+        this.subtotals = subtotals;
+        this.total = total;
+        this.generatedAt = generatedAt;
+        this.scanMs = scanMs;
+        this.fromSnapshot = fromSnapshot;
+        this.ageMs = ageMs;
+    }
+
+    /**
+     * El mismo recuento, servido desde la instantánea con la antigüedad indicada
+     */
+    public UserHistogram fromSnapshot(long ageMs) {
+        return new UserHistogram(groups, subtotals, total, generatedAt, scanMs, true, ageMs);
+    }
+
+    public List<Group> getGroups() {
+        return groups;
+    }
+
+    public List<Group> getSubtotals() {
+        return subtotals;
+    }
+
+    public long getTotal() {
+        return total;
+    }
+
+    public LocalDateTime getGeneratedAt() {
+        return generatedAt;
+    }
+
+    /** Duración de la consulta GROUP BY que produjo el recuento */
+    public long getScanMs() {
+        return scanMs;
+    }
+
+    /** true si no se ha consultado la base de datos en esta llamada */
+    public boolean isFromSnapshot() {
+        return fromSnapshot;
+    }
+
+    /** Antigüedad del recuento al servirlo (0 si se acaba de calcular) */
+    public long getAgeMs() {
+        return ageMs;
+    }
+
+    @Override
+    public String toString() {
+        return "UserHistogram{" +
+                "groups=" + groups.size() +
+                ", total=" + total +
+                ", fromSnapshot=" + fromSnapshot +
+                ", ageMs=" + ageMs +
+                '}';
+    }
+
+    /**
+     * Número de usuarios de una combinación; null en una columna significa "todos"
+     */
+    public record Group(String department, String role, Boolean active, long count) {
+    }
+}
@@ -0,0 +1,40 @@
+package com.dam.accesodatos.model;
+
+import java.util.List;
+
+/**
+ * Página de resultados de una búsqueda paginada por cursor
+ *
+ * nextCursor es el valor que hay que enviar como "after" para pedir la página
+ * siguiente; es null cuando ya no quedan más resultados.
+ */
+public class UserPage {
+
+    private final List<User> items;
+    private final String nextCursor;
+
+    public UserPage(List<User> items, String nextCursor) {
+        this.items = items;
+        this.nextCursor = nextCursor;
+    }
+
+    public List<User> getItems() {
+        return items;
+    }
+
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    public boolean hasNext() {
+        return nextCursor != null;
+    }
+
+    @Override
+    public String toString() {
+        return "UserPage{" +
+                "items=" + items.size() +
+                ", nextCursor='" + nextCursor + '\'' +
+                '}';
+    }
+}
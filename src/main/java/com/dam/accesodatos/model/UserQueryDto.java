@@ -11,8 +11,7 @@ public class UserQueryDto {
     private Boolean active;
     private Integer limit;
     private Integer offset;
-    private int page = 0;
-    private int size = 0;
+    private String after;
 
     public UserQueryDto() {
         this.limit = 10; // Por defecto 10 registros
@@ -67,6 +66,18 @@ public class UserQueryDto {
         this.offset = offset;
     }
 
+    /**
+     * Cursor devuelto por la página anterior (next_cursor). Si está presente,
+     * la búsqueda continúa después de esa fila y se ignora offset.
+     */
+    public String getAfter() {
+        return after;
+    }
+
+    public void setAfter(String after) {
+        this.after = after;
+    }
+
     @Override
     public String toString() {
         return "UserQueryDto{" +
@@ -75,11 +86,8 @@ public class UserQueryDto {
                 ", active=" + active +
                 ", limit=" + limit +
                 ", offset=" + offset +
+                ", after='" + after + '\'' +
                 '}';
     }
-    public int getPage() { return page; }
-    public void setPage(int page) { this.page = page; }
-    public int getSize() { return size; }
-    public void setSize(int size) { this.size = size; }
 }
 
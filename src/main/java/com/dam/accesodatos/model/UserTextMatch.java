@@ -0,0 +1,35 @@
+package com.dam.accesodatos.model;
+
+/**
+ * Resultado de search_users_text: el usuario y su puntuación de relevancia
+ *
+ * La puntuación solo sirve para ordenar: 100+ coincidencia exacta, 60+ al principio
+ * del nombre o del email, 40+ al principio de una palabra y 20+ en medio. Se suma
+ * hasta 20 según la parte del campo que cubre el texto buscado.
+ */
+public class UserTextMatch {
+
+    private final User user;
+    private final int score;
+
+    public UserTextMatch(User user, int score) {
+        this.user = user;
+        this.score = score;
+    }
+
+    public User getUser() {
+        return user;
+    }
+
+    public int getScore() {
+        return score;
+    }
+
+    @Override
+    public String toString() {
+        return "UserTextMatch{" +
+                "id=" + user.getId() +
+                ", score=" + score +
+                '}';
+    }
+}
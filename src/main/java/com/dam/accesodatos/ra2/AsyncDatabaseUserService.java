@@ -0,0 +1,86 @@
+package com.dam.accesodatos.ra2;
+
+import com.dam.accesodatos.model.UpsertResult;
+import com.dam.accesodatos.model.User;
+import com.dam.accesodatos.model.UserCreateDto;
+import com.dam.accesodatos.model.UserHistogram;
+import com.dam.accesodatos.model.UserQueryDto;
+import com.dam.accesodatos.model.UserTextMatch;
+import com.dam.accesodatos.model.UserUpdateDto;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Versión asíncrona de las herramientas de DatabaseUserService
+ *
+ * Cada método lanza la operación síncrona equivalente en un ejecutor propio y acotado
+ * (ra2.async) y devuelve enseguida un CompletableFuture. Así se pueden lanzar varias
+ * consultas independientes a la vez y esperar solo a la más lenta:
+ *
+ * CompletableFuture<User> user = async.findUserById(1L);
+ * CompletableFuture<Integer> it = async.executeCountByDepartment("IT");
+ * CompletableFuture.allOf(user, it).join();
+ *
+ * - Los errores llegan como CompletionException con la excepción original como causa
+ * - Con el ejecutor lleno el futuro falla con RejectedExecutionException
+ * - future.cancel() cancela con Statement.cancel() las consultas que la tarea tenga en
+ *   curso y evita las siguientes (ver QueryCancellation); si aún no había empezado, no
+ *   llega a ejecutarse
+ */
+public interface AsyncDatabaseUserService {
+
+    // ========== CE2.a: Connection Management ==========
+
+    CompletableFuture<String> testConnection();
+
+    // ========== CE2.b: CRUD Operations ==========
+
+    CompletableFuture<User> createUser(UserCreateDto dto);
+
+    CompletableFuture<User> findUserById(Long id);
+
+    CompletableFuture<User> updateUser(Long id, UserUpdateDto dto);
+
+    CompletableFuture<Boolean> deleteUser(Long id);
+
+    CompletableFuture<List<User>> findUsersByIds(List<Long> ids);
+
+    CompletableFuture<List<User>> deleteUsersByIds(List<Long> ids);
+
+    CompletableFuture<List<User>> findAll();
+
+    // ========== CE2.c: Advanced Queries ==========
+
+    CompletableFuture<List<User>> findUsersByDepartment(String department);
+
+    CompletableFuture<List<User>> searchUsers(UserQueryDto query);
+
+    CompletableFuture<List<UserTextMatch>> searchUsersText(String text, Integer limit);
+
+    // ========== CE2.d: Transactions ==========
+
+    CompletableFuture<Boolean> transferData(List<User> users);
+
+    CompletableFuture<Integer> batchInsertUsers(List<User> users);
+
+    CompletableFuture<UpsertResult> upsertUsers(List<User> users);
+
+    // ========== CE2.e: Metadata ==========
+
+    CompletableFuture<String> getDatabaseInfo();
+
+    CompletableFuture<List<Map<String, Object>>> getTableColumns(String tableName);
+
+    // ========== CE2.f: Funciones de Agregación ==========
+
+    CompletableFuture<Integer> executeCountByDepartment(String department);
+
+    CompletableFuture<UserHistogram> getUserHistogram(Long maxStalenessMs);
+
+    /**
+     * Métricas del ejecutor: tareas en curso, en cola, completadas, canceladas y rechazadas
+     */
+    Map<String, Object> getExecutorStats();
+}
@@ -0,0 +1,320 @@
+package com.dam.accesodatos.ra2;
+
+import com.dam.accesodatos.config.QueryCancellation;
+import com.dam.accesodatos.config.Ra2Properties;
+import com.dam.accesodatos.model.UpsertResult;
+import com.dam.accesodatos.model.User;
+import com.dam.accesodatos.model.UserCreateDto;
+import com.dam.accesodatos.model.UserHistogram;
+import com.dam.accesodatos.model.UserQueryDto;
+import com.dam.accesodatos.model.UserTextMatch;
+import com.dam.accesodatos.model.UserUpdateDto;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+
+/**
+ * AsyncDatabaseUserService sobre el servicio síncrono
+ *
+ * Cada llamada se convierte en una tarea del ejecutor (ra2.async):
+ *
+ * - virtual-threads: true → un virtual thread por tarea; dos semáforos limitan las
+ *   tareas en ejecución (max-concurrency) y las admitidas en total (+ queue-capacity)
+ * - virtual-threads: false → ThreadPoolExecutor de max-concurrency hilos daemon; el
+ *   mismo semáforo de admisión limita la cola a queue-capacity tareas
+ *
+ * En ambos casos una tarea que no cabe se rechaza en lugar de acumularse sin límite.
+ * El hueco de una tarea se libera antes de completar su future: quien espera el
+ * resultado puede volver a enviar otra sin que la rechacen.
+ * Con más concurrencia que conexiones en ra2.pool, las tareas sobrantes esperan en el
+ * pool; conviene que max-concurrency no supere mucho ra2.pool.max-size.
+ *
+ * Cada tarea se ejecuta dentro de su propio QueryCancellation: future.cancel()
+ * llega hasta Statement.cancel() de la consulta que esté en curso.
+ */
+@Service
+public class AsyncDatabaseUserServiceImpl implements AsyncDatabaseUserService {
+
+    private final DatabaseUserService delegate;
+    private final TaskExecutor executor;
+
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder cancelled = new LongAdder();
+
+    @Autowired
+    public AsyncDatabaseUserServiceImpl(DatabaseUserService delegate, Ra2Properties properties) {
+        this.delegate = delegate;
+        Ra2Properties.Async async = properties.getAsync();
+        this.executor = new TaskExecutor(async.isVirtualThreads(),
+                Math.max(1, async.getMaxConcurrency()), Math.max(0, async.getQueueCapacity()));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    // ========== CE2.a: Connection Management ==========
+
+    @Override
+    public CompletableFuture<String> testConnection() {
+        return submit(delegate::testConnection);
+    }
+
+    // ========== CE2.b: CRUD Operations ==========
+
+    @Override
+    public CompletableFuture<User> createUser(UserCreateDto dto) {
+        return submit(() -> delegate.createUser(dto));
+    }
+
+    @Override
+    public CompletableFuture<User> findUserById(Long id) {
+        return submit(() -> delegate.findUserById(id));
+    }
+
+    @Override
+    public CompletableFuture<User> updateUser(Long id, UserUpdateDto dto) {
+        return submit(() -> delegate.updateUser(id, dto));
+    }
+
+    @Override
+    public CompletableFuture<Boolean> deleteUser(Long id) {
+        return submit(() -> delegate.deleteUser(id));
+    }
+
+    @Override
+    public CompletableFuture<List<User>> findUsersByIds(List<Long> ids) {
+        return submit(() -> delegate.findUsersByIds(ids));
+    }
+
+    @Override
+    public CompletableFuture<List<User>> deleteUsersByIds(List<Long> ids) {
+        return submit(() -> delegate.deleteUsersByIds(ids));
+    }
+
+    @Override
+    public CompletableFuture<List<User>> findAll() {
+        return submit(delegate::findAll);
+    }
+
+    // ========== CE2.c: Advanced Queries ==========
+
+    @Override
+    public CompletableFuture<List<User>> findUsersByDepartment(String department) {
+        return submit(() -> delegate.findUsersByDepartment(department));
+    }
+
+    @Override
+    public CompletableFuture<List<User>> searchUsers(UserQueryDto query) {
+        return submit(() -> delegate.searchUsers(query));
+    }
+
+    @Override
+    public CompletableFuture<List<UserTextMatch>> searchUsersText(String text, Integer limit) {
+        return submit(() -> delegate.searchUsersText(text, limit));
+    }
+
+    // ========== CE2.d: Transactions ==========
+
+    @Override
+    public CompletableFuture<Boolean> transferData(List<User> users) {
+        return submit(() -> delegate.transferData(users));
+    }
+
+    @Override
+    public CompletableFuture<Integer> batchInsertUsers(List<User> users) {
+        return submit(() -> delegate.batchInsertUsers(users));
+    }
+
+    @Override
+    public CompletableFuture<UpsertResult> upsertUsers(List<User> users) {
+        return submit(() -> delegate.upsertUsers(users));
+    }
+
+    // ========== CE2.e: Metadata ==========
+
+    @Override
+    public CompletableFuture<String> getDatabaseInfo() {
+        return submit(delegate::getDatabaseInfo);
+    }
+
+    @Override
+    public CompletableFuture<List<Map<String, Object>>> getTableColumns(String tableName) {
+        return submit(() -> delegate.getTableColumns(tableName));
+    }
+
+    // ========== CE2.f: Funciones de Agregación ==========
+
+    @Override
+    public CompletableFuture<Integer> executeCountByDepartment(String department) {
+        return submit(() -> delegate.executeCountByDepartment(department));
+    }
+
+    @Override
+    public CompletableFuture<UserHistogram> getUserHistogram(Long maxStalenessMs) {
+        return submit(() -> delegate.getUserHistogram(maxStalenessMs));
+    }
+
+    @Override
+    public Map<String, Object> getExecutorStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("virtual_threads", executor.virtual);
+        stats.put("max_concurrency", executor.maxConcurrency);
+        stats.put("queue_capacity", executor.queueCapacity);
+        stats.put("running", executor.running());
+        stats.put("queued", executor.queued());
+        stats.put("completed", completed.sum());
+        stats.put("failed", failed.sum());
+        stats.put("cancelled", cancelled.sum());
+        stats.put("rejected", executor.rejected.sum());
+        return stats;
+    }
+
+    // ========== Gestión interna ==========
+
+    /**
+     * Lanza la tarea en el ejecutor dentro de un QueryCancellation propio
+     */
+    <T> CompletableFuture<T> submit(Callable<T> task) {
+        QueryCancellation cancellation = new QueryCancellation();
+        CompletableFuture<T> future = new CompletableFuture<>();
+        future.whenComplete((result, error) -> {
+            if (future.isCancelled()) {
+                cancelled.increment();
+                cancellation.cancel();
+            }
+        });
+
+        try {
+            executor.execute(() -> {
+                // Cancelado mientras esperaba en la cola
+                if (future.isDone()) {
+                    return null;
+                }
+                return cancellation.run(task);
+            }, (result, error) -> {
+                if (error == null) {
+                    if (future.complete(result)) {
+                        completed.increment();
+                    }
+                } else if (future.completeExceptionally(error)) {
+                    failed.increment();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    /**
+     * Ejecutor acotado: virtual threads con semáforos o pool fijo de hilos de plataforma.
+     * En los dos casos el semáforo admitted cuenta las tareas en ejecución y en cola.
+     */
+    private static final class TaskExecutor {
+        private final boolean virtual;
+        private final int maxConcurrency;
+        private final int queueCapacity;
+        private final ExecutorService threads;
+        private final LongAdder rejected = new LongAdder();
+
+        // Tareas admitidas (en ejecución + en cola)
+        private final Semaphore admitted;
+        // Solo con virtual threads
+        private final Semaphore permits;
+        private final AtomicInteger runningTasks = new AtomicInteger();
+
+        private TaskExecutor(boolean virtual, int maxConcurrency, int queueCapacity) {
+            this.virtual = virtual;
+            this.maxConcurrency = maxConcurrency;
+            this.queueCapacity = queueCapacity;
+            this.admitted = new Semaphore(maxConcurrency + queueCapacity);
+            if (virtual) {
+                this.threads = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("ra2-async-", 0).factory());
+                this.permits = new Semaphore(maxConcurrency);
+            } else {
+                // La cola no necesita límite propio: admitted ya no deja pasar más de queue-capacity
+                this.threads = new ThreadPoolExecutor(maxConcurrency, maxConcurrency, 60, TimeUnit.SECONDS,
+                        new LinkedBlockingQueue<>(), Thread.ofPlatform().daemon().name("ra2-async-", 0).factory());
+                this.permits = null;
+            }
+        }
+
+        /**
+         * Ejecuta la tarea y después llama a done con su resultado o su excepción,
+         * ya con el hueco de la tarea devuelto
+         *
+         * @throws RejectedExecutionException si ya hay max-concurrency + queue-capacity tareas admitidas
+         */
+        <T> void execute(Callable<T> task, BiConsumer<T, Exception> done) {
+            if (!admitted.tryAcquire()) {
+                rejected.increment();
+                throw new RejectedExecutionException("Ejecutor asíncrono lleno: "
+                        + maxConcurrency + " en curso y " + queueCapacity + " en cola");
+            }
+            try {
+                threads.execute(() -> {
+                    T result = null;
+                    Exception error = null;
+                    try {
+                        if (virtual) {
+                            permits.acquire();
+                        }
+                        runningTasks.incrementAndGet();
+                        try {
+                            result = task.call();
+                        } catch (Exception e) {
+                            error = e;
+                        } finally {
+                            runningTasks.decrementAndGet();
+                            if (virtual) {
+                                permits.release();
+                            }
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        error = e;
+                    } finally {
+                        admitted.release();
+                    }
+                    done.accept(result, error);
+                });
+            } catch (RejectedExecutionException e) {
+                // Ejecutor ya cerrado
+                admitted.release();
+                rejected.increment();
+                throw e;
+            }
+        }
+
+        int running() {
+            return runningTasks.get();
+        }
+
+        int queued() {
+            return Math.max(0, maxConcurrency + queueCapacity - admitted.availablePermits() - runningTasks.get());
+        }
+
+        void shutdown() {
+            threads.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,529 @@
+package com.dam.accesodatos.ra2;
+
+import com.dam.accesodatos.config.DatabaseConfig;
+import com.dam.accesodatos.model.User;
+import com.dam.accesodatos.model.UserHistogram;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Réplica en memoria de las columnas de users que usan las búsquedas y los recuentos
+ *
+ * En lugar de un User por fila (objeto, Strings, dos LocalDateTime), cada columna
+ * es un array de primitivos indexado por número de fila:
+ *
+ * - ids:         long[]
+ * - department:  int[] con el código del valor en un diccionario (IT → 0, HR → 1, ...)
+ * - role:        int[] con el mismo esquema de diccionario
+ * - active:      BitSet (un bit por fila)
+ * - created_at:  long[] en milisegundos epoch (UTC)
+ *
+ * Además, cada valor de department y de role tiene su bitmap de filas (índice bitmap,
+ * como los de los almacenes analíticos). Un filtro combinado se resuelve con AND / AND NOT
+ * de bitmaps de 64 filas por operación, en vez de usar un índice y filtrar el resto
+ * como hace H2 con idx_users_department / idx_users_role / idx_users_active:
+ *
+ * department = 'IT' AND role = 'Developer' AND active = false
+ *   → bitmap(IT) & bitmap(Developer) & ~active
+ *
+ * searchIds(), countActive() y groups() no usan JDBC.
+ * Las columnas que no están aquí (name, email) se leen después por ID.
+ *
+ * Se carga con un SELECT completo la primera vez que se usa y después se mantiene
+ * con los eventos de UserChangeListener. Los eventos que llegan mientras dura el SELECT
+ * se guardan y se vuelven a aplicar sobre las filas leídas, así que una escritura
+ * confirmada durante la carga no se pierde. Las filas borradas quedan marcadas en
+ * "live" hasta que la mitad de la tabla son huecos; entonces se compacta.
+ * Un active NULL en la tabla se guarda como false. Las escrituras que no pasan por el
+ * servicio no llegan a la réplica: reload() la vuelve a leer entera.
+ */
+public final class ColumnarUserSnapshot implements UserChangeListener {
+
+    private static final String LOAD_SQL =
+            "SELECT id, department, role, active, created_at FROM users ORDER BY id";
+
+    /** Por debajo de este número de filas no merece la pena compactar */
+    private static final int MIN_COMPACT_ROWS = 1024;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final ReentrantLock loadLock = new ReentrantLock();
+    private volatile boolean loaded;
+
+    // Carga en curso y cambios recibidos mientras tanto (con el write lock)
+    private volatile boolean loading;
+    private final List<Runnable> pendingChanges = new ArrayList<>();
+
+    private final Dictionary departments = new Dictionary();
+    private final Dictionary roles = new Dictionary();
+
+    private long[] ids = new long[0];
+    private int[] departmentCodes = new int[0];
+    private int[] roleCodes = new int[0];
+    private long[] createdAt = new long[0];
+    private final BitSet active = new BitSet();
+    private final BitSet live = new BitSet();
+    private LongIntMap rowById = new LongIntMap(16);
+    private int size;
+    private int liveCount;
+
+    // true mientras las filas estén en orden creciente de id (permite cortar la búsqueda antes)
+    private boolean idOrdered = true;
+
+    /**
+     * IDs de los usuarios que cumplen los filtros, en orden de id.
+     *
+     * @param department Departamento exacto o null para cualquiera
+     * @param role       Rol exacto o null para cualquiera
+     * @param isActive   Estado o null para cualquiera
+     * @param afterId    Solo IDs mayores que este (cursor); Long.MIN_VALUE para empezar desde el principio
+     * @param offset     Coincidencias que se saltan antes de la primera devuelta
+     * @param limit      Número máximo de IDs devueltos
+     */
+    public long[] searchIds(String department, String role, Boolean isActive, long afterId, int offset, int limit) {
+        ensureLoaded();
+        lock.readLock().lock();
+        try {
+            int dept = department != null ? departments.codeOf(department) : -1;
+            int rl = role != null ? roles.codeOf(role) : -1;
+            if ((department != null && dept < 0) || (role != null && rl < 0) || limit <= 0) {
+                return new long[0];
+            }
+
+            BitSet candidates = matching(dept, rl, isActive);
+            int wanted = offset + limit;
+            long[] matches = new long[Math.min(wanted, 64)];
+            int found = 0;
+            int from = idOrdered ? firstRowAfter(afterId) : 0;
+            for (int row = candidates.nextSetBit(from); row >= 0; row = candidates.nextSetBit(row + 1)) {
+                if (ids[row] <= afterId) {
+                    continue;
+                }
+                if (found == matches.length) {
+                    matches = Arrays.copyOf(matches, found * 2);
+                }
+                matches[found++] = ids[row];
+                if (idOrdered && found == wanted) {
+                    break;
+                }
+            }
+
+            if (!idOrdered) {
+                Arrays.sort(matches, 0, found);
+            }
+            int first = Math.min(offset, found);
+            return Arrays.copyOfRange(matches, first, Math.min(found, wanted));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Usuarios activos del departamento
+     */
+    public int countActive(String department) {
+        ensureLoaded();
+        lock.readLock().lock();
+        try {
+            int dept = departments.codeOf(department);
+            if (dept < 0) {
+                return 0;
+            }
+            return matching(dept, -1, true).cardinality();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Recuento por (department, role, active), ordenado como el GROUP BY ... ORDER BY de SQL
+     */
+    public List<UserHistogram.Group> groups() {
+        ensureLoaded();
+        lock.readLock().lock();
+        try {
+            List<UserHistogram.Group> groups = new ArrayList<>();
+            for (int dept = 0; dept < departments.size(); dept++) {
+                if (departments.bitmap(dept).isEmpty()) {
+                    continue;
+                }
+                for (int rl = 0; rl < roles.size(); rl++) {
+                    BitSet combination = matching(dept, rl, null);
+                    int total = combination.cardinality();
+                    if (total == 0) {
+                        continue;
+                    }
+                    combination.and(active);
+                    int activeCount = combination.cardinality();
+                    String department = departments.valueOf(dept);
+                    String role = roles.valueOf(rl);
+                    if (total > activeCount) {
+                        groups.add(new UserHistogram.Group(department, role, false, total - activeCount));
+                    }
+                    if (activeCount > 0) {
+                        groups.add(new UserHistogram.Group(department, role, true, activeCount));
+                    }
+                }
+            }
+            groups.sort(Comparator.comparing(UserHistogram.Group::department)
+                    .thenComparing(UserHistogram.Group::role)
+                    .thenComparing(UserHistogram.Group::active));
+            return groups;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Vuelve a cargar todas las filas desde la base de datos
+     */
+    public void reload() {
+        loadLock.lock();
+        try {
+            startLoading();
+            List<User> rows = null;
+            try {
+                rows = readRows();
+            } finally {
+                finishLoading(rows);
+            }
+        } finally {
+            loadLock.unlock();
+        }
+    }
+
+    private static List<User> readRows() {
+        List<User> rows = new ArrayList<>();
+        try (Connection conn = DatabaseConfig.getConnection();
+             PreparedStatement ps = conn.prepareStatement(LOAD_SQL);
+             ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) {
+                rows.add(new User(rs.getLong(1), null, null, rs.getString(2), rs.getString(3),
+                        rs.getBoolean(4), rs.getObject(5, LocalDateTime.class), null));
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException("Error de base de datos al cargar la réplica en columnas.", e);
+        }
+        return rows;
+    }
+
+    /**
+     * A partir de aquí los eventos se guardan para aplicarlos también sobre la carga nueva
+     */
+    void startLoading() {
+        lock.writeLock().lock();
+        try {
+            pendingChanges.clear();
+            loading = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Sustituye las columnas por las filas leídas y les aplica los eventos llegados
+     * durante la lectura (rows null = la lectura falló y se deja todo como estaba)
+     */
+    void finishLoading(List<User> rows) {
+        lock.writeLock().lock();
+        try {
+            if (rows == null) {
+                return;
+            }
+            departments.clear();
+            roles.clear();
+            ids = new long[Math.max(16, rows.size())];
+            departmentCodes = new int[ids.length];
+            roleCodes = new int[ids.length];
+            createdAt = new long[ids.length];
+            active.clear();
+            live.clear();
+            rowById = new LongIntMap(rows.size());
+            size = 0;
+            liveCount = 0;
+            idOrdered = true;
+            for (User row : rows) {
+                append(row);
+            }
+            // Cada cambio es idempotente (upsert o borrado por id): da igual si el SELECT ya lo incluía
+            for (Runnable change : pendingChanges) {
+                change.run();
+            }
+            loaded = true;
+        } finally {
+            loading = false;
+            pendingChanges.clear();
+            lock.writeLock().unlock();
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        lock.readLock().lock();
+        try {
+            Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("loaded", loaded);
+            stats.put("rows", liveCount);
+            stats.put("deleted_slots", size - liveCount);
+            stats.put("departments", departments.size());
+            stats.put("roles", roles.size());
+            // Arrays de columnas + bitsets + índice id → fila (aproximado)
+            long bitmapBytes = departments.bitmapBytes() + roles.bitmapBytes();
+            long bytes = (long) ids.length * (8 + 4 + 4 + 8)
+                    + (active.size() + live.size()) / 8
+                    + bitmapBytes
+                    + rowById.capacity() * (8L + 4L);
+            stats.put("bitmap_bytes", bitmapBytes);
+            stats.put("approx_bytes", bytes);
+            return stats;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // ========== UserChangeListener ==========
+
+    @Override
+    public void usersInserted(List<User> users) {
+        onChange(() -> {
+            for (User user : users) {
+                upsert(user);
+            }
+        });
+    }
+
+    @Override
+    public void userUpdated(User before, User after) {
+        onChange(() -> upsert(after));
+    }
+
+    @Override
+    public void usersDeleted(List<User> users) {
+        onChange(() -> {
+            for (User user : users) {
+                int row = rowById.get(user.getId());
+                if (row >= 0) {
+                    rowById.remove(user.getId());
+                    live.clear(row);
+                    active.clear(row);
+                    departments.bitmap(departmentCodes[row]).clear(row);
+                    roles.bitmap(roleCodes[row]).clear(row);
+                    liveCount--;
+                }
+            }
+            if (size >= MIN_COMPACT_ROWS && liveCount < size / 2) {
+                compact();
+            }
+        });
+    }
+
+    // ========== Gestión interna ==========
+
+    /**
+     * Aplica un cambio con el write lock y, si hay una carga en curso, lo guarda para ella.
+     * Sin réplica cargada ni carga en curso no hace nada: la primera carga leerá la tabla.
+     */
+    private void onChange(Runnable change) {
+        if (!loaded && !loading) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            if (loading) {
+                pendingChanges.add(change);
+            }
+            if (loaded) {
+                change.run();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void ensureLoaded() {
+        if (loaded) {
+            return;
+        }
+        loadLock.lock();
+        try {
+            if (!loaded) {
+                reload();
+            }
+        } finally {
+            loadLock.unlock();
+        }
+    }
+
+    /**
+     * Filas vivas que cumplen los filtros (-1 / null = sin filtro). Devuelve un BitSet nuevo.
+     */
+    private BitSet matching(int dept, int rl, Boolean isActive) {
+        BitSet result = (BitSet) (dept >= 0 ? departments.bitmap(dept)
+                : rl >= 0 ? roles.bitmap(rl)
+                : live).clone();
+        if (dept >= 0 && rl >= 0) {
+            result.and(roles.bitmap(rl));
+        }
+        if (Boolean.TRUE.equals(isActive)) {
+            result.and(active);
+        } else if (Boolean.FALSE.equals(isActive)) {
+            result.andNot(active);
+        }
+        return result;
+    }
+
+    private void upsert(User user) {
+        int row = rowById.get(user.getId());
+        if (row < 0) {
+            append(user);
+        } else {
+            departments.bitmap(departmentCodes[row]).clear(row);
+            roles.bitmap(roleCodes[row]).clear(row);
+            setColumns(row, user);
+        }
+    }
+
+    private void append(User user) {
+        if (size == ids.length) {
+            int capacity = Math.max(16, size * 2);
+            ids = Arrays.copyOf(ids, capacity);
+            departmentCodes = Arrays.copyOf(departmentCodes, capacity);
+            roleCodes = Arrays.copyOf(roleCodes, capacity);
+            createdAt = Arrays.copyOf(createdAt, capacity);
+        }
+        int row = size++;
+        if (row > 0 && user.getId() < ids[row - 1]) {
+            idOrdered = false;
+        }
+        ids[row] = user.getId();
+        setColumns(row, user);
+        live.set(row);
+        rowById.put(user.getId(), row);
+        liveCount++;
+    }
+
+    private void setColumns(int row, User user) {
+        departmentCodes[row] = departments.encode(user.getDepartment());
+        roleCodes[row] = roles.encode(user.getRole());
+        departments.bitmap(departmentCodes[row]).set(row);
+        roles.bitmap(roleCodes[row]).set(row);
+        active.set(row, Boolean.TRUE.equals(user.getActive()));
+        createdAt[row] = user.getCreatedAt() != null ? user.getCreatedAt().toInstant(ZoneOffset.UTC).toEpochMilli() : 0;
+    }
+
+    /**
+     * Elimina los huecos de las filas borradas, conservando el orden
+     */
+    private void compact() {
+        int target = 0;
+        LongIntMap index = new LongIntMap(liveCount);
+        for (int row = live.nextSetBit(0); row >= 0; row = live.nextSetBit(row + 1)) {
+            ids[target] = ids[row];
+            departmentCodes[target] = departmentCodes[row];
+            roleCodes[target] = roleCodes[row];
+            createdAt[target] = createdAt[row];
+            active.set(target, active.get(row));
+            index.put(ids[target], target);
+            target++;
+        }
+        live.clear();
+        live.set(0, target);
+        active.clear(target, size);
+        size = target;
+        rowById = index;
+
+        departments.clearBitmaps();
+        roles.clearBitmaps();
+        for (int row = 0; row < size; row++) {
+            departments.bitmap(departmentCodes[row]).set(row);
+            roles.bitmap(roleCodes[row]).set(row);
+        }
+    }
+
+    /**
+     * Primera fila con id mayor que afterId (solo válido si idOrdered)
+     */
+    private int firstRowAfter(long afterId) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (ids[mid] <= afterId) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Diccionario String ↔ código entero de una columna, con el bitmap de filas de cada valor.
+     * Un BitSet solo ocupa hasta su último bit a 1.
+     */
+    private static final class Dictionary {
+
+        private final Map<String, Integer> codes = new HashMap<>();
+        private final List<String> values = new ArrayList<>();
+        private final List<BitSet> bitmaps = new ArrayList<>();
+
+        int encode(String value) {
+            Integer code = codes.get(value);
+            if (code == null) {
+                code = values.size();
+                codes.put(value, code);
+                values.add(value);
+                bitmaps.add(new BitSet());
+            }
+            return code;
+        }
+
+        BitSet bitmap(int code) {
+            return bitmaps.get(code);
+        }
+
+        void clearBitmaps() {
+            bitmaps.forEach(BitSet::clear);
+        }
+
+        long bitmapBytes() {
+            long bytes = 0;
+            for (BitSet bitmap : bitmaps) {
+                bytes += bitmap.size() / 8;
+            }
+            return bytes;
+        }
+
+        int codeOf(String value) {
+            Integer code = codes.get(value);
+            return code != null ? code : -1;
+        }
+
+        String valueOf(int code) {
+            return values.get(code);
+        }
+
+        int size() {
+            return values.size();
+        }
+
+        void clear() {
+            codes.clear();
+            values.clear();
+            bitmaps.clear();
+        }
+    }
+}
@@ -1,21 +1,30 @@
 package com.dam.accesodatos.ra2;
 
+import com.dam.accesodatos.model.BatchInsertResult;
+import com.dam.accesodatos.model.IngestResult;
+import com.dam.accesodatos.model.TransferResult;
+import com.dam.accesodatos.model.UpsertResult;
 import com.dam.accesodatos.model.User;
 import com.dam.accesodatos.model.UserCreateDto;
+import com.dam.accesodatos.model.UserHistogram;
+import com.dam.accesodatos.model.UserPage;
 import com.dam.accesodatos.model.UserQueryDto;
+import com.dam.accesodatos.model.UserTextMatch;
 import com.dam.accesodatos.model.UserUpdateDto;
 import org.springframework.ai.mcp.server.annotation.Tool;
 
 import java.sql.Connection;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
 
 /**
  * Interface de servicio para operaciones JDBC con usuarios
  *
  * RA2: Desarrolla aplicaciones que gestionan información almacenada mediante conectores
  *
- * Esta interface define 13 herramientas MCP (métodos @Tool) que los estudiantes deben implementar
+ * Esta interface define 18 herramientas MCP (métodos @Tool) que los estudiantes deben implementar
  * usando JDBC puro (Connection, PreparedStatement, ResultSet, etc.)
  *
  * Métodos organizados por criterios de evaluación:
@@ -100,6 +109,22 @@ public interface DatabaseUserService {
           description = "Busca un usuario por ID usando SELECT con PreparedStatement")
     User findUserById(Long id);
 
+    /**
+     * Métricas de la caché de findUserById() (ra2.cache): aciertos, expulsiones y
+     * tiempo medio de carga desde la base de datos.
+     *
+     * @return Mapa de métricas; solo "enabled" si la caché está desactivada
+     */
+    Map<String, Object> getUserCacheStats();
+
+    /**
+     * Registra un listener que recibirá cada inserción, actualización y borrado
+     * confirmado a través de este servicio.
+     *
+     * @param listener Implementación thread-safe de UserChangeListener
+     */
+    void addUserChangeListener(UserChangeListener listener);
+
     /**
      * CE2.b: Actualiza los datos de un usuario existente
      *
@@ -143,6 +168,38 @@ public interface DatabaseUserService {
           description = "Elimina un usuario usando DELETE statement")
     boolean deleteUser(Long id);
 
+    /**
+     * CE2.b: Busca varios usuarios por ID en una sola llamada
+     *
+     * Los IDs se envían como un único parámetro array (WHERE id = ANY(?)), en bloques
+     * de hasta 1000 IDs, todos por la misma conexión.
+     *
+     * Clases JDBC requeridas:
+     * - java.sql.Array (Connection.createArrayOf) y PreparedStatement.setArray()
+     *
+     * @param ids IDs a buscar (se ignoran los repetidos y los null)
+     * @return Usuarios encontrados, en el orden de ids; los IDs inexistentes se omiten
+     * @throws RuntimeException si hay error de BD
+     */
+    @Tool(name = "find_users_by_ids",
+          description = "Busca varios usuarios por sus IDs en una sola consulta (WHERE id = ANY(?))")
+    List<User> findUsersByIds(List<Long> ids);
+
+    /**
+     * CE2.b: Elimina varios usuarios por ID en una sola transacción
+     *
+     * Usa SELECT * FROM OLD TABLE (DELETE FROM users WHERE id = ANY(?)) para borrar
+     * y obtener a la vez las filas eliminadas, en bloques de hasta 1000 IDs.
+     * Si algún bloque falla no se elimina ningún usuario.
+     *
+     * @param ids IDs a eliminar
+     * @return Usuarios eliminados tal como estaban antes del DELETE; los IDs inexistentes se omiten
+     * @throws RuntimeException si hay error de BD (se hace rollback)
+     */
+    @Tool(name = "delete_users_by_ids",
+          description = "Elimina varios usuarios por sus IDs en una transacción y devuelve los eliminados")
+    List<User> deleteUsersByIds(List<Long> ids);
+
     /**
      * CE2.b: Obtiene todos los usuarios
      *
@@ -164,6 +221,29 @@ public interface DatabaseUserService {
           description = "Obtiene todos los usuarios de la base de datos")
     List<User> findAll();
 
+    /**
+     * CE2.b: Recorre todos los usuarios en streaming con un cursor forward-only
+     *
+     * Variante de findAll() para tablas grandes: cada fila se entrega al consumer
+     * según se lee del ResultSet, sin acumularlas en una lista, y la llamada termina
+     * con un cursor de continuación para pedir el siguiente bloque.
+     *
+     * Mismo orden que findAll() (created_at DESC), desempatando por id DESC.
+     *
+     * Clases JDBC requeridas:
+     * - java.sql.PreparedStatement con ResultSet.TYPE_FORWARD_ONLY y CONCUR_READ_ONLY
+     * - Statement.setFetchSize() y setMaxRows()
+     *
+     * @param after Cursor devuelto por la llamada anterior (null = desde el principio)
+     * @param maxRows Máximo de filas a entregar en esta llamada (0 = sin límite)
+     * @param fetchSize Filas que el driver trae en cada bloque
+     * @param consumer Recibe cada usuario según se lee
+     * @return Cursor para continuar, o null si ya no quedan filas
+     * @throws IllegalArgumentException si el cursor no es válido
+     * @throws RuntimeException si hay error de BD
+     */
+    String streamAll(String after, int maxRows, int fetchSize, Consumer<User> consumer);
+
     // ========== CE2.c: Advanced Queries ==========
 
     /**
@@ -190,14 +270,16 @@ public interface DatabaseUserService {
      * CE2.c: Busca usuarios con filtros dinámicos
      *
      * Implementación requerida:
-     * - Construir query SQL dinámica según filtros presentes
+     * - Elegir la query SQL según los filtros presentes (plantillas precompiladas
+     *   por combinación en SearchPlanCache)
      * - Usar PreparedStatement con múltiples placeholders
      * - Manejar filtros opcionales (department, role, active)
-     * - Aplicar paginación con LIMIT y OFFSET
+     * - Paginar por clave: con query.after continúa tras el último id entregado
+     *   (WHERE id > ? ORDER BY id LIMIT ?); sin cursor se admite OFFSET
      *
      * Clases JDBC requeridas:
-     * - java.sql.PreparedStatement
-     * - StringBuilder para construir SQL dinámico
+     * - java.sql.PreparedStatement con setString/setBoolean/setLong/setInt
+     * - StringBuilder para construir las plantillas SQL (una vez, en SearchPlanCache)
      *
      * @param query DTO con filtros opcionales y paginación
      * @return Lista de usuarios que cumplen los criterios
@@ -207,6 +289,41 @@ public interface DatabaseUserService {
           description = "Busca usuarios con múltiples filtros opcionales y paginación")
     List<User> searchUsers(UserQueryDto query);
 
+    /**
+     * CE2.c: Igual que searchUsers() pero devolviendo también el cursor de la página siguiente
+     *
+     * Cada página se localiza con una búsqueda en el índice de la clave primaria
+     * (id > último id entregado), así que pedir la página 1000 cuesta lo mismo que la 1;
+     * con LIMIT/OFFSET H2 tendría que recorrer y descartar todas las filas anteriores.
+     *
+     * @param query DTO con filtros opcionales, limit y cursor "after"
+     * @return Usuarios de la página y cursor para continuar (null si no hay más)
+     * @throws IllegalArgumentException si el cursor no es válido
+     * @throws RuntimeException si hay error de BD
+     */
+    UserPage searchUsersPage(UserQueryDto query);
+
+    /**
+     * CE2.c: Búsqueda por fragmento de texto en el nombre y el email
+     *
+     * Con ra2.text-index activado se usa un índice de trigramas en memoria (TrigramIndex):
+     * solo se comprueban las filas que contienen todos los trigramas de la consulta.
+     * Sin índice, o con menos de 3 caracteres, se usa LOWER(name) LIKE '%texto%', que
+     * obliga a H2 a recorrer la tabla entera.
+     *
+     * Los resultados van de más a menos relevante: coincidencia exacta, al principio del
+     * campo, al principio de una palabra y, por último, en medio.
+     *
+     * @param text  Fragmento a buscar (sin distinguir mayúsculas)
+     * @param limit Número máximo de resultados (null = 10)
+     * @return Usuarios con su puntuación, ordenados por relevancia
+     * @throws IllegalArgumentException si text está vacío
+     * @throws RuntimeException si hay error de BD
+     */
+    @Tool(name = "search_users_text",
+          description = "Busca usuarios cuyo nombre o email contiene un texto, ordenados por relevancia")
+    List<UserTextMatch> searchUsersText(String text, Integer limit);
+
 
     // ========== CE2.d: Transactions ==========
 
@@ -233,13 +350,37 @@ public interface DatabaseUserService {
           description = "Inserta múltiples usuarios en una transacción con commit/rollback")
     boolean transferData(List<User> users);
 
+    /**
+     * CE2.d: Transferencia en modo batch con savepoint por bloque
+     *
+     * Las filas se envían en bloques de chunkSize con addBatch()/executeBatch(),
+     * dentro de una única transacción y con un Savepoint antes de cada bloque.
+     * Si un bloque falla se deshace solo ese bloque (rollback(savepoint)) y se repite
+     * fila a fila, también con savepoints, para aislar las filas que fallan:
+     * - atomic = true: si alguna fila falla se deshace todo (como transferData) y se
+     *   lanza la excepción indicando qué filas fallaron
+     * - atomic = false: se confirman las filas correctas y se devuelven las erróneas
+     *
+     * Clases JDBC requeridas:
+     * - java.sql.Savepoint
+     * - Métodos: setSavepoint(), rollback(Savepoint), releaseSavepoint(), addBatch(), executeBatch()
+     *
+     * @param users Lista de usuarios a insertar
+     * @param chunkSize Filas por executeBatch()
+     * @param atomic Si true, cualquier fila errónea deshace toda la transferencia
+     * @return Filas insertadas, filas descartadas y bloques reintentados
+     * @throws RuntimeException si hay error y se hace rollback completo
+     */
+    TransferResult transferDataBatched(List<User> users, int chunkSize, boolean atomic);
+
     /**
      * CE2.d: Inserta múltiples usuarios usando batch operations
      *
      * Implementación requerida:
      * - Usar PreparedStatement.addBatch()
-     * - Ejecutar con executeBatch()
-     * - Procesar int[] resultados
+     * - Ejecutar con executeBatch() por bloques de ra2.batch.chunk-size filas,
+     *   con commit después de cada bloque
+     * - Opcional: repartir la lista en ra2.batch.parallelism conexiones
      *
      * Clases JDBC requeridas:
      * - java.sql.PreparedStatement
@@ -253,6 +394,80 @@ public interface DatabaseUserService {
           description = "Inserta múltiples usuarios usando batch operations")
     int batchInsertUsers(List<User> users);
 
+    /**
+     * CE2.d: Igual que batchInsertUsers() pero devolviendo los IDs generados y el rendimiento
+     *
+     * Usa la configuración ra2.batch (chunk-size y parallelism).
+     *
+     * @param users Lista de usuarios a insertar
+     * @return IDs generados (en el orden de la lista), bloques, tiempo y filas por segundo
+     * @throws RuntimeException si algún bloque falla (los bloques anteriores ya están confirmados)
+     */
+    BatchInsertResult batchInsertUsersDetailed(List<User> users);
+
+    /**
+     * CE2.d: Inserción por lotes con tamaño de bloque y paralelismo explícitos
+     *
+     * Cada conexión recibe un tramo contiguo de la lista y lo inserta en bloques de
+     * chunkSize filas: addBatch() por fila, executeBatch() + getGeneratedKeys() + commit()
+     * por bloque. Así ninguna transacción ni batch del driver crece con el tamaño total.
+     *
+     * Clases JDBC requeridas:
+     * - java.sql.PreparedStatement con Statement.RETURN_GENERATED_KEYS
+     * - Métodos: addBatch(), executeBatch(), getGeneratedKeys(), commit(), rollback()
+     *
+     * @param users Lista de usuarios a insertar
+     * @param chunkSize Filas por bloque (executeBatch + commit)
+     * @param parallelism Conexiones en paralelo (se limita al tamaño máximo del pool)
+     * @return IDs generados (en el orden de la lista), bloques, tiempo y filas por segundo
+     * @throws RuntimeException si algún bloque falla (los bloques anteriores ya están confirmados)
+     */
+    BatchInsertResult batchInsertUsersChunked(List<User> users, int chunkSize, int parallelism);
+
+    /**
+     * CE2.d: Ingesta en streaming de un volumen de usuarios que no cabe en memoria
+     *
+     * Un hilo lee las filas del iterador (por ejemplo, líneas NDJSON del cuerpo HTTP)
+     * y las deja en una cola acotada (ra2.ingest.queue-capacity); el hilo llamante las
+     * saca de la cola y las inserta con addBatch() en bloques de ra2.ingest.flush-size,
+     * con executeBatch() + commit() por bloque. Así la memoria usada no depende del
+     * tamaño de la entrada.
+     *
+     * - Si next() lanza IllegalArgumentException la fila se cuenta como rechazada y se sigue
+     * - Si un bloque falla se repite fila a fila y solo se descartan las filas erróneas
+     *
+     * @param rows Filas a insertar, leídas bajo demanda
+     * @param progress Recibe el estado acumulado después de cada bloque confirmado
+     * @return Estado final de la ingesta
+     * @throws RuntimeException si falla la BD o la lectura (los bloques anteriores ya están confirmados)
+     */
+    IngestResult ingestUsers(Iterator<User> rows, Consumer<IngestResult> progress);
+
+    /**
+     * CE2.d: Inserta o actualiza usuarios en bloque usando el email como clave
+     *
+     * Cada bloque de ra2.batch.chunk-size filas se envía como un batch de
+     * MERGE INTO users USING (VALUES (...)) ON email y se confirma con commit:
+     * - Si el email no existe se inserta (created_at toma su valor por defecto y
+     *   active, si llega a null, queda a true)
+     * - Si ya existe se actualizan name, department, role, active y updated_at;
+     *   los campos que llegan a null conservan su valor actual
+     *
+     * Para devolver el resultado de cada fila, antes del MERGE se consultan los emails
+     * del bloque que ya existen (WHERE email = ANY(?)) y después, los IDs resultantes.
+     *
+     * Clases JDBC requeridas:
+     * - java.sql.PreparedStatement con addBatch()/executeBatch()
+     * - java.sql.Array (Connection.createArrayOf) para el parámetro de ANY(?)
+     *
+     * @param users Usuarios a insertar o actualizar
+     * @return Resultado por fila (INSERTED/UPDATED e ID) y totales
+     * @throws RuntimeException si un bloque falla (los bloques anteriores ya están confirmados)
+     */
+    @Tool(name = "upsert_users",
+          description = "Inserta o actualiza usuarios en bloque usando el email como clave (MERGE)")
+    UpsertResult upsertUsers(List<User> users);
+
     // ========== CE2.e: Metadata ==========
 
     /**
@@ -267,6 +482,8 @@ public interface DatabaseUserService {
      * - java.sql.DatabaseMetaData
      * - Métodos: getDatabaseProductName(), getDatabaseProductVersion(), etc.
      *
+     * El texto se genera una vez y se guarda en MetadataCache hasta el siguiente DDL.
+     *
      * @return Información detallada de la base de datos
      * @throws RuntimeException si hay error
      */
@@ -287,6 +504,9 @@ public interface DatabaseUserService {
      * - Métodos: getColumns(catalog, schema, tableName, columnPattern)
      * - java.sql.ResultSet para iterar columnas
      *
+     * Las columnas de todas las tablas se leen juntas y se guardan en MetadataCache
+     * hasta el siguiente DDL; la lista devuelta es inmutable.
+     *
      * @param tableName Nombre de la tabla
      * @return Lista con información de cada columna
      * @throws RuntimeException si la tabla no existe o hay error
@@ -317,4 +537,59 @@ public interface DatabaseUserService {
     @Tool(name = "execute_count_by_department",
           description = "Cuenta usuarios activos por departamento usando COUNT")
     int executeCountByDepartment(String department);
+
+    /**
+     * CE2.f: Recuento por departamento, rol y estado en una sola consulta GROUP BY
+     *
+     * Los subtotales de ROLLUP (por departamento y rol, y por departamento) se calculan
+     * en Java a partir de los grupos, sin más consultas. Si hay una instantánea más
+     * reciente que maxStalenessMs, se devuelve sin consultar la base de datos.
+     *
+     * @param maxStalenessMs Antigüedad máxima aceptada (null = ra2.histogram.max-staleness-ms, 0 = siempre fresco)
+     * @return Grupos, subtotales y total de usuarios
+     * @throws RuntimeException si hay error de BD
+     */
+    @Tool(name = "get_user_histogram",
+          description = "Cuenta usuarios por departamento, rol y estado con un único GROUP BY, con subtotales ROLLUP")
+    UserHistogram getUserHistogram(Long maxStalenessMs);
+
+    /**
+     * Métricas de los contadores en memoria de executeCountByDepartment() (ra2.counters):
+     * valor de cada departamento, reconciliaciones y descuadres corregidos.
+     *
+     * @return Mapa de métricas; solo "enabled" si los contadores están desactivados
+     */
+    Map<String, Object> getDepartmentCounterStats();
+
+    /**
+     * Métricas de la réplica en columnas (ra2.snapshot) que usan searchUsers(), los
+     * recuentos y getUserHistogram(): filas, tamaño de los diccionarios y memoria aproximada.
+     *
+     * @return Mapa de métricas; solo "enabled" si la réplica está desactivada
+     */
+    Map<String, Object> getColumnarSnapshotStats();
+
+    /**
+     * Métricas del índice de trigramas de searchUsersText() (ra2.text-index):
+     * filas indexadas, trigramas distintos y entradas en las listas.
+     *
+     * @return Mapa de métricas; solo "enabled" si el índice está desactivado
+     */
+    Map<String, Object> getTextIndexStats();
+
+    /**
+     * Métricas de la agrupación de lecturas iguales simultáneas (ra2.coalescing): consultas
+     * ejecutadas, llamadas que se sumaron a una en curso y proporción, por herramienta.
+     *
+     * @return Mapa de métricas
+     */
+    Map<String, Object> getCoalescingStats();
+
+    /**
+     * Métricas de la agrupación de create_user en transacciones compartidas
+     * (ra2.group-commit): grupos confirmados, altas y tamaño medio del grupo.
+     *
+     * @return Mapa de métricas; solo "enabled" si está desactivada
+     */
+    Map<String, Object> getGroupCommitStats();
 }
@@ -1,18 +1,51 @@
 package com.dam.accesodatos.ra2;
 
+import com.dam.accesodatos.config.ConnectionPool;
 import com.dam.accesodatos.config.DatabaseConfig;
+import com.dam.accesodatos.config.HealthMonitor;
+import com.dam.accesodatos.config.Ra2Properties;
+import com.dam.accesodatos.model.BatchInsertResult;
+import com.dam.accesodatos.model.IngestResult;
+import com.dam.accesodatos.model.TransferResult;
+import com.dam.accesodatos.model.UpsertResult;
 import com.dam.accesodatos.model.User;
 import com.dam.accesodatos.model.UserCreateDto;
+import com.dam.accesodatos.model.UserHistogram;
+import com.dam.accesodatos.model.UserPage;
 import com.dam.accesodatos.model.UserQueryDto;
+import com.dam.accesodatos.model.UserTextMatch;
 import com.dam.accesodatos.model.UserUpdateDto;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Service;
 
 import java.sql.*;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
 
 /**
  * Implementación del servicio JDBC para gestión de usuarios
@@ -39,9 +72,100 @@ import java.util.Map;
  * 8. executeCountByDepartment()
  */
 @Service
+@ConditionalOnProperty(prefix = "ra2.sharding", name = "enabled", havingValue = "false", matchIfMissing = true)
 public class DatabaseUserServiceImpl implements DatabaseUserService {
     private DatabaseConfig dataSource;
 
+    // Ajustes de la sección "ra2" de application.yml (valores por defecto sin Spring)
+    private final Ra2Properties properties;
+
+    // Caché de findUserById() (ra2.cache), invalidada a través de changeListeners
+    private final UserCache userCache;
+
+    // Contadores de activos por departamento (ra2.counters); null si están desactivados
+    private final DepartmentCounters departmentCounters;
+
+    // Réplica en columnas para búsquedas y recuentos (ra2.snapshot); null si está desactivada
+    private final ColumnarUserSnapshot columnarSnapshot;
+
+    // Índice de trigramas de searchUsersText() (ra2.text-index); null si está desactivado
+    private final TrigramIndex textIndex;
+
+    // Agrupa las lecturas iguales simultáneas en una sola consulta (ra2.coalescing)
+    private final SingleFlight singleFlight;
+
+    // Agrupa los createUser() concurrentes en una transacción (ra2.group-commit); null si está desactivado
+    private final GroupCommitter groupCommitter;
+
+    // Reciben cada escritura ya confirmada (ver UserChangeListener)
+    private final List<UserChangeListener> changeListeners = new CopyOnWriteArrayList<>();
+
+    public DatabaseUserServiceImpl() {
+        this(new Ra2Properties());
+    }
+
+    @Autowired
+    public DatabaseUserServiceImpl(Ra2Properties properties) {
+        this.properties = properties;
+        Ra2Properties.Cache cache = properties.getCache();
+        this.userCache = new UserCache(cache.isEnabled() ? cache.getMaxEntries() : 0, cache.getTtlMs());
+        if (userCache.isEnabled()) {
+            changeListeners.add(userCache);
+        }
+
+        Ra2Properties.Counters counters = properties.getCounters();
+        if (counters.isEnabled()) {
+            this.departmentCounters = new DepartmentCounters();
+            // Se registra antes de cargar: las escrituras durante la carga hacen que se repita
+            changeListeners.add(departmentCounters);
+            departmentCounters.load();
+            departmentCounters.startReconciliation(counters.getReconcileIntervalMs());
+        } else {
+            this.departmentCounters = null;
+        }
+
+        if (properties.getSnapshot().isEnabled()) {
+            this.columnarSnapshot = new ColumnarUserSnapshot();
+            changeListeners.add(columnarSnapshot);
+        } else {
+            this.columnarSnapshot = null;
+        }
+
+        if (properties.getTextIndex().isEnabled()) {
+            this.textIndex = new TrigramIndex();
+            changeListeners.add(textIndex);
+        } else {
+            this.textIndex = null;
+        }
+
+        this.singleFlight = new SingleFlight(properties.getCoalescing().isEnabled());
+        changeListeners.add(singleFlight);
+
+        Ra2Properties.GroupCommit groupCommit = properties.getGroupCommit();
+        this.groupCommitter = groupCommit.isEnabled()
+                ? new GroupCommitter(this::insertGroup, groupCommit.getWindowMicros(), groupCommit.getMaxRows())
+                : null;
+    }
+
+    /**
+     * Detiene los hilos propios del servicio: la reconciliación de contadores y la
+     * agrupación de altas (las que seguían en cola fallan)
+     */
+    @PreDestroy
+    public void close() {
+        if (departmentCounters != null) {
+            departmentCounters.stopReconciliation();
+        }
+        if (groupCommitter != null) {
+            groupCommitter.stop();
+        }
+    }
+
+    @Override
+    public void addUserChangeListener(UserChangeListener listener) {
+        changeListeners.add(listener);
+    }
+
     // JDBC PURO - SIN Spring DataSource
     // Los estudiantes usan DatabaseConfig.getConnection() directamente
     // para obtener conexiones usando DriverManager
@@ -51,46 +175,25 @@ public class DatabaseUserServiceImpl implements DatabaseUserService {
     /**
      * ✅ EJEMPLO IMPLEMENTADO 1/5: Prueba de conexión básica
      *
-     * Este método muestra el patrón fundamental de JDBC PURO:
-     * 1. Obtener conexión usando DriverManager (vía DatabaseConfig)
-     * 2. Ejecutar una query simple
-     * 3. Procesar resultados
-     * 4. Cerrar recursos con try-with-resources
+     * La comprobación la hace HealthMonitor (DatabaseConfig.getHealthMonitor()):
+     * 1. Obtener conexión usando DatabaseConfig.getConnection()
+     * 2. Validarla con Connection.isValid(timeout), sin ejecutar ninguna query
+     * 3. Cerrar la conexión con try-with-resources
+     *
+     * El resultado se reutiliza durante ra2.health.ttl-ms, así que llamar a este
+     * método muchas veces seguidas no genera tráfico contra la base de datos.
      */
     @Override
     public String testConnection() {
-        // Patrón try-with-resources: cierra automáticamente Connection, Statement, ResultSet
-        try (Connection conn = DatabaseConfig.getConnection();
-             Statement stmt = conn.createStatement();
-             ResultSet rs = stmt.executeQuery("SELECT 1 as test, DATABASE() as db_name")) {
-
-            // Validar que la conexión está abierta
-            if (conn.isClosed()) {
-                throw new RuntimeException("La conexión está cerrada");
-            }
-
-            // Navegar al primer (y único) resultado
-            if (rs.next()) {
-                int testValue = rs.getInt("test");
-                String dbName = rs.getString("db_name");
-
-                // Obtener información adicional de la conexión
-                DatabaseMetaData metaData = conn.getMetaData();
-                String dbProduct = metaData.getDatabaseProductName();
-                String dbVersion = metaData.getDatabaseProductVersion();
-
-                return String.format("✓ Conexión exitosa a %s %s | Base de datos: %s | Test: %d",
-                        dbProduct, dbVersion, dbName, testValue);
-            } else {
-                throw new RuntimeException("No se obtuvieron resultados de la query de prueba");
-            }
-
-        } catch (SQLException e) {
-            throw new RuntimeException("Error al probar la conexión: " + e.getMessage(), e);
+        HealthMonitor health = DatabaseConfig.getHealthMonitor();
+        HealthMonitor.Status status = health.check();
+        if (!status.up()) {
+            throw new RuntimeException("Error al probar la conexión: " + status.error());
         }
+        return String.format("✓ Conexión exitosa a %s | isValid: %d µs, comprobado hace %d ms",
+                health.getDescription(), status.latencyMicros(), status.ageMs());
     }
 
-
     // ========== CE2.b: CRUD Operations ==========
 
     /**
@@ -101,9 +204,15 @@ public class DatabaseUserServiceImpl implements DatabaseUserService {
      * - Setear parámetros con tipos específicos
      * - Obtener IDs autogenerados con getGeneratedKeys()
      * - Manejar excepciones SQL
+     *
+     * Con ra2.group-commit.enabled las altas concurrentes se insertan juntas con
+     * insertGroup() (ver GroupCommitter); el resultado para quien llama es el mismo.
      */
     @Override
     public User createUser(UserCreateDto dto) {
+        if (groupCommitter != null) {
+            return groupCommitter.submit(dto);
+        }
         String sql = "INSERT INTO users (name, email, department, role, active, created_at, updated_at) " +
                      "VALUES (?, ?, ?, ?, ?, ?, ?)";
 
@@ -139,6 +248,7 @@ public class DatabaseUserServiceImpl implements DatabaseUserService {
                     newUser.setCreatedAt(LocalDateTime.now());
                     newUser.setUpdatedAt(LocalDateTime.now());
 
+                    fireInserted(List.of(newUser));
                     return newUser;
                 } else {
                     throw new RuntimeException("Error: INSERT exitoso pero no se generó ID");
@@ -146,45 +256,138 @@ public class DatabaseUserServiceImpl implements DatabaseUserService {
             }
 
         } catch (SQLException e) {
-            // Manejar errores específicos como email duplicado
-            if (e.getMessage().contains("Unique index or primary key violation")) {
-                throw new RuntimeException("Error: El email '" + dto.getEmail() + "' ya está registrado", e);
+            throw createUserError(dto, e);
+        }
+    }
+
+    /**
+     * Inserta un grupo de altas de GroupCommitter: un executeBatch() y un solo commit.
+     *
+     * Si el lote falla (por ejemplo, un email duplicado) se deshace y se repite fila a fila
+     * con un savepoint por fila: las correctas se confirman igualmente y cada alta errónea
+     * recibe el mismo error que le daría createUser().
+     */
+    private void insertGroup(List<GroupCommitter.Pending> batch) {
+        List<User> users = new ArrayList<>(batch.size());
+        for (GroupCommitter.Pending pending : batch) {
+            UserCreateDto dto = pending.getDto();
+            users.add(new User(null, dto.getName(), dto.getEmail(), dto.getDepartment(), dto.getRole()));
+        }
+        User[] inserted = new User[batch.size()];
+        SQLException[] errors = new SQLException[batch.size()];
+
+        try (Connection conn = DatabaseConfig.getConnection()) {
+            conn.setAutoCommit(false);
+            try (PreparedStatement ps = conn.prepareStatement(BATCH_INSERT_SQL, Statement.RETURN_GENERATED_KEYS)) {
+                LocalDateTime now = LocalDateTime.now();
+                try {
+                    for (User user : users) {
+                        bindTransferRow(ps, user, now);
+                        ps.addBatch();
+                    }
+                    ps.executeBatch();
+                    collectGroupKeys(ps, users, 0, users.size(), now, inserted);
+                } catch (SQLException e) {
+                    conn.rollback();
+                    ps.clearBatch();
+                    Arrays.fill(inserted, null);
+                    for (int i = 0; i < users.size(); i++) {
+                        Savepoint rowSavepoint = conn.setSavepoint();
+                        try {
+                            bindTransferRow(ps, users.get(i), now);
+                            ps.executeUpdate();
+                            collectGroupKeys(ps, users, i, i + 1, now, inserted);
+                            conn.releaseSavepoint(rowSavepoint);
+                        } catch (SQLException rowError) {
+                            conn.rollback(rowSavepoint);
+                            errors[i] = rowError;
+                        }
+                    }
+                }
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            for (GroupCommitter.Pending pending : batch) {
+                pending.fail(createUserError(pending.getDto(), e));
+            }
+            return;
+        }
+
+        List<User> committed = new ArrayList<>(batch.size());
+        for (User user : inserted) {
+            if (user != null) {
+                committed.add(user);
+            }
+        }
+        fireInserted(committed);
+        for (int i = 0; i < batch.size(); i++) {
+            if (inserted[i] != null) {
+                batch.get(i).complete(inserted[i]);
+            } else {
+                batch.get(i).fail(errors[i] != null
+                        ? createUserError(batch.get(i).getDto(), errors[i])
+                        : new RuntimeException("Error: INSERT exitoso pero no se generó ID"));
+            }
+        }
+    }
+
+    private static void collectGroupKeys(PreparedStatement ps, List<User> users, int from, int to,
+                                         LocalDateTime now, User[] inserted) throws SQLException {
+        try (ResultSet keys = ps.getGeneratedKeys()) {
+            for (int i = from; i < to && keys.next(); i++) {
+                inserted[i] = storedRow(users.get(i), keys.getLong(1), now, now);
             }
-            throw new RuntimeException("Error al crear usuario: " + e.getMessage(), e);
         }
     }
 
+    /**
+     * Error de createUser() para el usuario indicado (mensaje propio si el email ya existe)
+     */
+    private static RuntimeException createUserError(UserCreateDto dto, SQLException e) {
+        // Manejar errores específicos como email duplicado
+        if (e.getMessage().contains("Unique index or primary key violation")) {
+            return new RuntimeException("Error: El email '" + dto.getEmail() + "' ya está registrado", e);
+        }
+        return new RuntimeException("Error al crear usuario: " + e.getMessage(), e);
+    }
+
     /**
      * ✅ EJEMPLO IMPLEMENTADO 3/5: SELECT y mapeo de ResultSet
      *
      * Este método muestra cómo:
      * - Usar PreparedStatement para queries parametrizadas
      * - Navegar ResultSet con rs.next()
-     * - Mapear columnas SQL a campos Java
-     * - Manejar tipos de datos (Long, String, Boolean, Timestamp)
+     * - Mapear columnas SQL a campos Java (con UserRowMapper, por índice de columna)
+     * - Manejar tipos de datos (Long, String, Boolean, LocalDateTime)
+     *
+     * Si ra2.cache.enabled es true, la consulta solo se ejecuta cuando el usuario
+     * no está en UserCache (o su entrada ha caducado). Las lecturas simultáneas del
+     * mismo ID comparten una sola consulta (SingleFlight).
      */
     @Override
     public User findUserById(Long id) {
+        return userCache.get(id, key -> singleFlight.execute("find_user_by_id", key,
+                () -> loadUserById(key), UserCache::copy));
+    }
+
+    @Override
+    public Map<String, Object> getUserCacheStats() {
+        return userCache.getStats();
+    }
+
+    private User loadUserById(Long id) {
         final String sql = "SELECT * FROM users WHERE id = ?";
         try (Connection conn = DatabaseConfig.getConnection();
              PreparedStatement ps = conn.prepareStatement(sql)) {
             ps.setLong(1, id);
             try (ResultSet rs = ps.executeQuery()) {
                 if (rs.next()) {
-                    // --- ESTRATEGIA: Usar constructor vacío y setters ---
-                    User user = new User(); // 1. Crea un objeto User vacío
-
-                    // 2. Pobla el objeto usando los setters
-                    user.setId(rs.getLong("id"));
-                    user.setName(rs.getString("name"));
-                    user.setEmail(rs.getString("email"));
-                    user.setDepartment(rs.getString("department"));
-                    user.setRole(rs.getString("role"));
-                    user.setActive(rs.getBoolean("active"));
-                    user.setCreatedAt(rs.getTimestamp("created_at").toLocalDateTime());
-                    user.setUpdatedAt(rs.getTimestamp("updated_at").toLocalDateTime());
-
-                    return user;
+                    return UserRowMapper.forQuery(sql, rs).map(rs);
                 } else {
                     return null;
                 }
@@ -194,53 +397,111 @@ public class DatabaseUserServiceImpl implements DatabaseUserService {
         }
     }
 
+    /**
+     * SQL de UPDATE para cada combinación de campos presentes en un UserUpdateDto.
+     *
+     * El índice del array es una máscara de bits con los campos no nulos
+     * (bit 0 = name, 1 = email, 2 = department, 3 = role, 4 = active).
+     * Se generan una sola vez: 32 textos SQL fijos en lugar de un StringBuilder por llamada,
+     * y cada texto se reutiliza desde la caché de PreparedStatement del pool.
+     *
+     * FINAL TABLE (sintaxis de H2) devuelve la fila tal y como queda tras el UPDATE,
+     * así que no hace falta otro SELECT después.
+     */
+    private static final String[] UPDATE_COLUMNS = {"name", "email", "department", "role", "active"};
+    private static final String[] UPDATE_SQL_BY_FIELDS = buildUpdateSql();
+
+    // Fila anterior para los listeners, bloqueada hasta el commit para que nadie la cambie en medio
+    private static final String SELECT_FOR_UPDATE_SQL = "SELECT * FROM users WHERE id = ? FOR UPDATE";
+
+    private static String[] buildUpdateSql() {
+        String[] sqls = new String[1 << UPDATE_COLUMNS.length];
+        for (int fields = 0; fields < sqls.length; fields++) {
+            StringBuilder sql = new StringBuilder("SELECT * FROM FINAL TABLE (UPDATE users SET ");
+            for (int i = 0; i < UPDATE_COLUMNS.length; i++) {
+                if ((fields & (1 << i)) != 0) {
+                    sql.append(UPDATE_COLUMNS[i]).append(" = ?, ");
+                }
+            }
+            sql.append("updated_at = ? WHERE id = ?)");
+            sqls[fields] = sql.toString();
+        }
+        return sqls;
+    }
+
     /**
      * ✅ EJEMPLO IMPLEMENTADO 4/5: UPDATE statement
      *
      * Este método muestra cómo:
-     * - Validar que un registro existe antes de actualizar
-     * - Construir UPDATE statement con campos opcionales
-     * - Actualizar solo los campos proporcionados
-     * - Verificar filas afectadas
+     * - Construir UPDATE statement solo con los campos proporcionados
+     * - Actualizar updated_at en la misma sentencia
+     * - Obtener la fila actualizada en el mismo round-trip con FINAL TABLE
+     * - Detectar que el registro no existe (el SELECT ... FOR UPDATE no devuelve filas)
+     *
+     * La fila anterior, que necesitan los listeners (por ejemplo, DepartmentCounters para
+     * saber de qué departamento sale el usuario), se lee con SELECT ... FOR UPDATE en la
+     * misma transacción.
      */
     @Override
     public User updateUser(Long id, UserUpdateDto dto) {
-        // Primero verificar que el usuario existe
-        User existing = findUserById(id);
-        if (existing == null) {
-            throw new RuntimeException("No se encontró usuario con ID " + id);
-        }
+        int fields = 0;
+        if (dto.getName() != null) fields |= 1;
+        if (dto.getEmail() != null) fields |= 1 << 1;
+        if (dto.getDepartment() != null) fields |= 1 << 2;
+        if (dto.getRole() != null) fields |= 1 << 3;
+        if (dto.getActive() != null) fields |= 1 << 4;
 
-        // Aplicar actualizaciones del DTO al usuario existente
-        dto.applyTo(existing);
+        String sql = UPDATE_SQL_BY_FIELDS[fields];
 
-        // Construir UPDATE statement
-        String sql = "UPDATE users SET name = ?, email = ?, department = ?, role = ?, " +
-                     "active = ?, updated_at = ? WHERE id = ?";
+        try (Connection conn = DatabaseConfig.getConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                User before;
+                try (PreparedStatement select = conn.prepareStatement(SELECT_FOR_UPDATE_SQL)) {
+                    select.setLong(1, id);
+                    try (ResultSet rs = select.executeQuery()) {
+                        if (!rs.next()) {
+                            throw new RuntimeException("No se encontró usuario con ID " + id);
+                        }
+                        before = UserRowMapper.forQuery(SELECT_FOR_UPDATE_SQL, rs).map(rs);
+                    }
+                }
 
-        try (Connection conn = DatabaseConfig.getConnection();
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
-
-            // Setear todos los parámetros (incluso los no modificados)
-            pstmt.setString(1, existing.getName());
-            pstmt.setString(2, existing.getEmail());
-            pstmt.setString(3, existing.getDepartment());
-            pstmt.setString(4, existing.getRole());
-            pstmt.setBoolean(5, existing.getActive());
-            pstmt.setTimestamp(6, Timestamp.valueOf(LocalDateTime.now()));
-            pstmt.setLong(7, id);
-
-            // Ejecutar UPDATE
-            int affectedRows = pstmt.executeUpdate();
+                User updated;
+                try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                    // Setear solo los parámetros de los campos presentes, en el mismo orden que el SQL
+                    int index = 1;
+                    if (dto.getName() != null) pstmt.setString(index++, dto.getName());
+                    if (dto.getEmail() != null) pstmt.setString(index++, dto.getEmail());
+                    if (dto.getDepartment() != null) pstmt.setString(index++, dto.getDepartment());
+                    if (dto.getRole() != null) pstmt.setString(index++, dto.getRole());
+                    if (dto.getActive() != null) pstmt.setBoolean(index++, dto.getActive());
+                    pstmt.setTimestamp(index++, Timestamp.valueOf(LocalDateTime.now()));
+                    pstmt.setLong(index, id);
+
+                    // Ejecutar UPDATE: el ResultSet contiene la fila actualizada
+                    try (ResultSet rs = pstmt.executeQuery()) {
+                        if (!rs.next()) {
+                            throw new RuntimeException("No se encontró usuario con ID " + id);
+                        }
+                        updated = UserRowMapper.forQuery(sql, rs).map(rs);
+                    }
+                }
 
-            if (affectedRows == 0) {
-                throw new RuntimeException("Error: UPDATE no afectó ninguna fila");
+                conn.commit();
+                fireUpdated(before, updated);
+                return updated;
+            } catch (SQLException | RuntimeException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
             }
 
-            // Retornar usuario actualizado
-            return findUserById(id);
-
         } catch (SQLException e) {
+            if (e.getMessage().contains("Unique index or primary key violation")) {
+                throw new RuntimeException("Error: El email '" + dto.getEmail() + "' ya está registrado", e);
+            }
             throw new RuntimeException("Error al actualizar usuario con ID " + id + ": " + e.getMessage(), e);
         }
     }
@@ -248,19 +509,23 @@ public class DatabaseUserServiceImpl implements DatabaseUserService {
     @Override
     public boolean deleteUser(Long id) {
 
-        final String sql = "DELETE FROM users WHERE id = ?";
+        // OLD TABLE devuelve la fila borrada, que se notifica a los listeners
+        final String sql = "SELECT * FROM OLD TABLE (DELETE FROM users WHERE id = ?)";
 
         try (Connection conn = DatabaseConfig.getConnection();
              PreparedStatement ps = conn.prepareStatement(sql)) {
 
             ps.setLong(1, id);
 
-            // executeUpdate() retorna el número de filas afectadas.
-            int rowsAffected = ps.executeUpdate();
-
-            // Si se afectó una fila (o más, aunque con ID debería ser una),
-            // la eliminación fue exitosa. Si fue 0, el usuario no existía.
-            return rowsAffected > 0;
+            // Si se devolvió una fila, la eliminación fue exitosa.
+            // Si no hay filas, el usuario no existía.
+            try (ResultSet rs = ps.executeQuery()) {
+                if (!rs.next()) {
+                    return false;
+                }
+                fireDeleted(List.of(UserRowMapper.forQuery(sql, rs).map(rs)));
+                return true;
+            }
 
         } catch (SQLException e) {
             System.err.println("Error de SQL al eliminar usuario con ID " + id + ": " + e.getMessage());
@@ -269,33 +534,101 @@ public class DatabaseUserServiceImpl implements DatabaseUserService {
 
     }
 
+    /** IDs por cada parámetro array de find_users_by_ids / delete_users_by_ids */
+    private static final int IDS_PER_QUERY = 1000;
+
+    private static final String FIND_BY_IDS_SQL = "SELECT * FROM users WHERE id = ANY(?)";
+    private static final String DELETE_BY_IDS_SQL =
+            "SELECT * FROM OLD TABLE (DELETE FROM users WHERE id = ANY(?))";
+
+    @Override
+    public List<User> findUsersByIds(List<Long> ids) {
+        List<Long> distinct = distinctIds(ids);
+        return singleFlight.execute("find_users_by_ids", distinct,
+                () -> loadUsersByIds(distinct), SingleFlight::copyUsers);
+    }
+
+    private List<User> loadUsersByIds(List<Long> distinct) {
+        Map<Long, User> found = new HashMap<>();
+
+        try (Connection conn = DatabaseConfig.getConnection();
+             PreparedStatement ps = conn.prepareStatement(FIND_BY_IDS_SQL)) {
+            for (int from = 0; from < distinct.size(); from += IDS_PER_QUERY) {
+                List<Long> chunk = distinct.subList(from, Math.min(distinct.size(), from + IDS_PER_QUERY));
+                ps.setArray(1, conn.createArrayOf("BIGINT", chunk.toArray()));
+                try (ResultSet rs = ps.executeQuery()) {
+                    UserRowMapper mapper = UserRowMapper.forQuery(FIND_BY_IDS_SQL, rs);
+                    while (rs.next()) {
+                        User user = mapper.map(rs);
+                        found.put(user.getId(), user);
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException("Error de base de datos al buscar usuarios por ID.", e);
+        }
+
+        return inRequestOrder(distinct, found);
+    }
+
+    @Override
+    public List<User> deleteUsersByIds(List<Long> ids) {
+        List<Long> distinct = distinctIds(ids);
+        Map<Long, User> deleted = new HashMap<>();
+        if (distinct.isEmpty()) {
+            return List.of();
+        }
+
+        try (Connection conn = DatabaseConfig.getConnection()) {
+            conn.setAutoCommit(false);
+            try (PreparedStatement ps = conn.prepareStatement(DELETE_BY_IDS_SQL)) {
+                for (int from = 0; from < distinct.size(); from += IDS_PER_QUERY) {
+                    List<Long> chunk = distinct.subList(from, Math.min(distinct.size(), from + IDS_PER_QUERY));
+                    ps.setArray(1, conn.createArrayOf("BIGINT", chunk.toArray()));
+                    try (ResultSet rs = ps.executeQuery()) {
+                        UserRowMapper mapper = UserRowMapper.forQuery(DELETE_BY_IDS_SQL, rs);
+                        while (rs.next()) {
+                            User user = mapper.map(rs);
+                            deleted.put(user.getId(), user);
+                        }
+                    }
+                }
+                conn.commit();
+                fireDeleted(List.copyOf(deleted.values()));
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException("Error de base de datos al eliminar usuarios, se hizo rollback.", e);
+        }
+
+        return inRequestOrder(distinct, deleted);
+    }
+
     @Override
     public List<User> findAll() {
+        return singleFlight.execute("find_all_users", List.of(), this::loadAll, SingleFlight::copyUsers);
+    }
 
+    private List<User> loadAll() {
         List<User> users = new ArrayList<>();
 
         // --- CORRECCIÓN CLAVE: Se añade "ORDER BY created_at DESC" a la consulta ---
         // Esto asegura que los usuarios más recientemente creados aparezcan primero en la lista,
         // cumpliendo con el requisito del test.
-        final String sql = "SELECT * FROM users ORDER BY created_at DESC";
+        // Mismo orden que streamAll(): las filas sin created_at al final y, a igual fecha, por id
+        final String sql = "SELECT * FROM users ORDER BY created_at DESC NULLS LAST, id DESC";
 
         try (Connection conn = DatabaseConfig.getConnection();
              Statement stmt = conn.createStatement();
              ResultSet rs = stmt.executeQuery(sql)) {
 
+            UserRowMapper mapper = UserRowMapper.forQuery(sql, rs);
             while (rs.next()) {
-                // Se usa el constructor por defecto y los setters para ser compatibles con tu clase User.
-                User user = new User();
-                user.setId(rs.getLong("id"));
-                user.setName(rs.getString("name"));
-                user.setEmail(rs.getString("email"));
-                user.setDepartment(rs.getString("department"));
-                user.setRole(rs.getString("role"));
-                user.setActive(rs.getBoolean("active"));
-                user.setCreatedAt(rs.getTimestamp("created_at").toLocalDateTime());
-                user.setUpdatedAt(rs.getTimestamp("updated_at").toLocalDateTime());
-
-                users.add(user);
+                users.add(mapper.map(rs));
             }
         } catch (SQLException e) {
             throw new RuntimeException("Error de base de datos al obtener todos los usuarios.", e);
@@ -304,12 +637,93 @@ public class DatabaseUserServiceImpl implements DatabaseUserService {
         return users;
     }
 
+    /**
+     * Consultas del recorrido en streaming, en el mismo orden que findAll().
+     *
+     * La página siguiente empieza justo después de la última fila entregada
+     * (created_at, id). "created_at <= ?" permite a H2 usar el índice
+     * idx_users_created_at para posicionarse; el resto de la condición descarta
+     * las filas con el mismo created_at ya entregadas.
+     *
+     * created_at admite NULL: esas filas van al final (NULLS LAST) ordenadas por id, y
+     * un cursor cuya última fila no tenía created_at lleva la clave vacía.
+     */
+    private static final String STREAM_FIRST_SQL =
+            "SELECT * FROM users ORDER BY created_at DESC NULLS LAST, id DESC";
+    private static final String STREAM_NEXT_SQL =
+            "SELECT * FROM users WHERE (created_at <= ? AND (created_at < ? OR id < ?)) OR created_at IS NULL " +
+            "ORDER BY created_at DESC NULLS LAST, id DESC";
+    private static final String STREAM_NEXT_NULL_SQL =
+            "SELECT * FROM users WHERE created_at IS NULL AND id < ? ORDER BY id DESC";
+
+    @Override
+    public String streamAll(String after, int maxRows, int fetchSize, Consumer<User> consumer) {
+        KeysetCursor cursor = KeysetCursor.decode(after);
+        boolean nullKey = cursor != null && cursor.getSortKey().isEmpty();
+        String sql = cursor == null ? STREAM_FIRST_SQL : nullKey ? STREAM_NEXT_NULL_SQL : STREAM_NEXT_SQL;
+
+        try (Connection conn = DatabaseConfig.getConnection()) {
+            // Ejecución "lazy" de H2: las filas se generan según se leen del ResultSet
+            // en lugar de materializar el resultado completo antes del primer next()
+            setLazyQueryExecution(conn, true);
+            try (PreparedStatement ps = conn.prepareStatement(sql,
+                    ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+
+                ps.setFetchSize(fetchSize);
+                if (maxRows > 0) {
+                    ps.setMaxRows(maxRows);
+                }
+                if (nullKey) {
+                    ps.setLong(1, cursor.getLastId());
+                } else if (cursor != null) {
+                    LocalDateTime lastCreatedAt = LocalDateTime.parse(cursor.getSortKey());
+                    ps.setObject(1, lastCreatedAt);
+                    ps.setObject(2, lastCreatedAt);
+                    ps.setLong(3, cursor.getLastId());
+                }
+
+                int count = 0;
+                User last = null;
+                try (ResultSet rs = ps.executeQuery()) {
+                    UserRowMapper mapper = UserRowMapper.forQuery(sql, rs);
+                    while (rs.next()) {
+                        last = mapper.map(rs);
+                        consumer.accept(last);
+                        count++;
+                    }
+                }
+
+                // Si se llenó el bloque puede haber más filas: se devuelve dónde seguir
+                if (maxRows > 0 && count == maxRows) {
+                    return streamCursor(last);
+                }
+                return null;
+            } finally {
+                setLazyQueryExecution(conn, false);
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException("Error de base de datos al recorrer los usuarios.", e);
+        }
+    }
+
+    /**
+     * Cursor de streamAll() que continúa después de esta fila (clave vacía si created_at es NULL)
+     */
+    static String streamCursor(User last) {
+        LocalDateTime createdAt = last.getCreatedAt();
+        return new KeysetCursor(last.getId(), createdAt != null ? createdAt.toString() : null).encode();
+    }
+
     // ========== CE2.c: Advanced Queries ==========
 
     @Override
     public List<User> findUsersByDepartment(String department) {
-        List<User> users = new ArrayList<>();
+        return singleFlight.execute("find_users_by_department", department,
+                () -> loadUsersByDepartment(department), SingleFlight::copyUsers);
+    }
 
+    private List<User> loadUsersByDepartment(String department) {
+        List<User> users = new ArrayList<>();
 
         final String sql = "SELECT * FROM users WHERE department = ? AND active = true ORDER BY name";
 
@@ -319,19 +733,9 @@ public class DatabaseUserServiceImpl implements DatabaseUserService {
             ps.setString(1, department);
 
             try (ResultSet rs = ps.executeQuery()) {
+                UserRowMapper mapper = UserRowMapper.forQuery(sql, rs);
                 while (rs.next()) {
-
-                    User user = new User();
-                    user.setId(rs.getLong("id"));
-                    user.setName(rs.getString("name"));
-                    user.setEmail(rs.getString("email"));
-                    user.setDepartment(rs.getString("department"));
-                    user.setRole(rs.getString("role"));
-                    user.setActive(rs.getBoolean("active"));
-                    user.setCreatedAt(rs.getTimestamp("created_at").toLocalDateTime());
-                    user.setUpdatedAt(rs.getTimestamp("updated_at").toLocalDateTime());
-
-                    users.add(user);
+                    users.add(mapper.map(rs));
                 }
             }
         } catch (SQLException e) {
@@ -341,59 +745,180 @@ public class DatabaseUserServiceImpl implements DatabaseUserService {
         return users;
     }
 
-
+    /** Tamaño de página de searchUsers si el DTO no indica limit */
+    static final int DEFAULT_SEARCH_LIMIT = 10;
 
     @Override
     public List<User> searchUsers(UserQueryDto query) {
-        List<User> users = new ArrayList<>();
-        StringBuilder sql = new StringBuilder("SELECT * FROM users WHERE 1=1");
-        List<Object> params = new ArrayList<>();
+        return searchUsersPage(query).getItems();
+    }
 
-        if (query.getDepartment() != null && !query.getDepartment().isEmpty()) {
-            sql.append(" AND department = ?");
-            params.add(query.getDepartment());
-        }
-        if (query.getRole() != null && !query.getRole().isEmpty()) {
-            sql.append(" AND role = ?");
-            params.add(query.getRole());
-        }
-        // Asumiendo que la columna en la BBDD se llama 'active'
-        if (query.getActive() != null) {
-            sql.append(" AND active = ?");
-            params.add(query.getActive());
+    @Override
+    public UserPage searchUsersPage(UserQueryDto query) {
+        List<Object> args = Arrays.asList(query.getDepartment(), query.getRole(), query.getActive(),
+                query.getLimit(), query.getOffset(), query.getAfter());
+        return singleFlight.execute("search_users", args, () -> loadUsersPage(query),
+                page -> new UserPage(SingleFlight.copyUsers(page.getItems()), page.getNextCursor()));
+    }
+
+    private UserPage loadUsersPage(UserQueryDto query) {
+        KeysetCursor cursor = KeysetCursor.decode(query.getAfter());
+        int limit = query.getLimit() != null && query.getLimit() > 0 ? query.getLimit() : DEFAULT_SEARCH_LIMIT;
+
+        boolean byDepartment = query.getDepartment() != null && !query.getDepartment().isEmpty();
+        boolean byRole = query.getRole() != null && !query.getRole().isEmpty();
+        boolean byActive = query.getActive() != null;
+
+        if (columnarSnapshot != null) {
+            return searchUsersInSnapshot(query, cursor, limit);
         }
 
-        sql.append(" ORDER BY id LIMIT ? OFFSET ?");
-        params.add(query.getSize());
-        params.add(query.getPage() * query.getSize());
+        // La combinación de filtros elige una plantilla SQL ya construida (ver SearchPlanCache)
+        int mask = (byDepartment ? SearchPlanCache.DEPARTMENT : 0)
+                | (byRole ? SearchPlanCache.ROLE : 0)
+                | (byActive ? SearchPlanCache.ACTIVE : 0)
+                | (cursor != null ? SearchPlanCache.AFTER : 0);
+        SearchPlanCache.Plan plan = SearchPlanCache.plan(mask);
 
+        List<User> users = new ArrayList<>();
+        long start = System.nanoTime();
         try (Connection conn = DatabaseConfig.getConnection();
-             PreparedStatement ps = conn.prepareStatement(sql.toString())) {
+             PreparedStatement ps = conn.prepareStatement(plan.getSql())) {
 
+            // Binding tipado en el mismo orden que la plantilla
             int paramIndex = 1;
-            for (Object param : params) {
-                ps.setObject(paramIndex++, param);
+            if (byDepartment) {
+                ps.setString(paramIndex++, query.getDepartment());
+            }
+            if (byRole) {
+                ps.setString(paramIndex++, query.getRole());
+            }
+            if (byActive) {
+                ps.setBoolean(paramIndex++, query.getActive());
+            }
+            if (cursor != null) {
+                // Paginación por clave: el orden es por id, así que el id es la clave completa
+                ps.setLong(paramIndex++, cursor.getLastId());
+                ps.setInt(paramIndex, limit);
+            } else {
+                // OFFSET solo para clientes que aún no usan el cursor
+                ps.setInt(paramIndex++, limit);
+                ps.setInt(paramIndex, query.getOffset() != null ? Math.max(0, query.getOffset()) : 0);
             }
 
             try (ResultSet rs = ps.executeQuery()) {
+                UserRowMapper mapper = UserRowMapper.forQuery(plan.getSql(), rs);
                 while (rs.next()) {
-                    // --- ESTRATEGIA: Usar constructor vacío y setters ---
-                    User user = new User();
-                    user.setId(rs.getLong("id"));
-                    user.setName(rs.getString("name"));
-                    user.setEmail(rs.getString("email"));
-                    user.setDepartment(rs.getString("department"));
-                    user.setRole(rs.getString("role"));
-                    user.setActive(rs.getBoolean("active"));
-                    user.setCreatedAt(rs.getTimestamp("created_at").toLocalDateTime());
-                    user.setUpdatedAt(rs.getTimestamp("updated_at").toLocalDateTime());
-                    users.add(user);
+                    users.add(mapper.map(rs));
                 }
             }
         } catch (SQLException e) {
             throw new RuntimeException("Error en búsqueda dinámica.", e);
+        } finally {
+            plan.record(System.nanoTime() - start);
         }
-        return users;
+
+        // Página llena: puede haber más resultados a partir del último id
+        String nextCursor = users.size() == limit
+                ? new KeysetCursor(users.get(users.size() - 1).getId(), null).encode()
+                : null;
+        return new UserPage(users, nextCursor);
+    }
+
+    /**
+     * searchUsersPage() sobre ColumnarUserSnapshot: los filtros se resuelven con sus bitmaps y
+     * solo se leen de la base de datos las filas de la página (una consulta por IDs).
+     */
+    private UserPage searchUsersInSnapshot(UserQueryDto query, KeysetCursor cursor, int limit) {
+        String department = query.getDepartment() != null && !query.getDepartment().isEmpty()
+                ? query.getDepartment() : null;
+        String role = query.getRole() != null && !query.getRole().isEmpty() ? query.getRole() : null;
+        long afterId = cursor != null ? cursor.getLastId() : Long.MIN_VALUE;
+        int offset = cursor == null && query.getOffset() != null ? Math.max(0, query.getOffset()) : 0;
+
+        long[] ids = columnarSnapshot.searchIds(department, role, query.getActive(), afterId, offset, limit);
+        if (ids.length == 0) {
+            return new UserPage(List.of(), null);
+        }
+        List<Long> pageIds = Arrays.stream(ids).boxed().toList();
+        List<User> users = findUsersByIds(pageIds).stream()
+                // Una escritura entre la búsqueda y la lectura puede haber cambiado la fila
+                .filter(user -> (department == null || department.equals(user.getDepartment()))
+                        && (role == null || role.equals(user.getRole()))
+                        && (query.getActive() == null || query.getActive().equals(user.getActive())))
+                .toList();
+
+        String nextCursor = ids.length == limit
+                ? new KeysetCursor(ids[ids.length - 1], null).encode()
+                : null;
+        return new UserPage(users, nextCursor);
+    }
+
+    /** Máximo de resultados de searchUsersText si no se indica limit */
+    static final int DEFAULT_TEXT_LIMIT = 10;
+
+    // Respaldo sin índice; la barra invertida escapa % y _ del texto buscado
+    private static final String SEARCH_TEXT_SQL =
+            "SELECT * FROM users WHERE LOWER(name) LIKE ? ESCAPE '\\' OR LOWER(email) LIKE ? ESCAPE '\\'";
+
+    @Override
+    public List<UserTextMatch> searchUsersText(String text, Integer limit) {
+        if (text == null || text.isBlank()) {
+            throw new IllegalArgumentException("El texto de búsqueda no puede estar vacío");
+        }
+        int max = limit != null && limit > 0 ? limit : DEFAULT_TEXT_LIMIT;
+        String query = text.toLowerCase(Locale.ROOT);
+        return singleFlight.execute("search_users_text", List.of(query, max), () -> loadTextMatches(query, max),
+                matches -> matches.stream()
+                        .map(match -> new UserTextMatch(UserCache.copy(match.getUser()), match.getScore()))
+                        .toList());
+    }
+
+    private List<UserTextMatch> loadTextMatches(String query, int max) {
+        if (textIndex != null && query.length() >= TrigramIndex.MIN_QUERY_LENGTH) {
+            List<TrigramIndex.Match> matches = textIndex.search(query, max);
+            Map<Long, User> users = new HashMap<>();
+            for (User user : findUsersByIds(matches.stream().map(TrigramIndex.Match::id).toList())) {
+                users.put(user.getId(), user);
+            }
+            List<UserTextMatch> result = new ArrayList<>(matches.size());
+            for (TrigramIndex.Match match : matches) {
+                User user = users.get(match.id());
+                // Borrado entre la búsqueda y la lectura
+                if (user != null) {
+                    result.add(new UserTextMatch(user, match.score()));
+                }
+            }
+            return result;
+        }
+
+        // Sin índice: LIKE recorre la tabla; la relevancia se calcula igual que en el índice
+        // y solo se guardan los "max" mejores (montículo de mínimos)
+        String pattern = "%" + query.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_") + "%";
+        Comparator<UserTextMatch> ranking = Comparator.comparingInt(UserTextMatch::getScore)
+                .thenComparing(Comparator.comparing((UserTextMatch match) -> match.getUser().getId()).reversed());
+        PriorityQueue<UserTextMatch> top = new PriorityQueue<>(max, ranking);
+        try (Connection conn = DatabaseConfig.getConnection();
+             PreparedStatement ps = conn.prepareStatement(SEARCH_TEXT_SQL)) {
+            ps.setString(1, pattern);
+            ps.setString(2, pattern);
+            try (ResultSet rs = ps.executeQuery()) {
+                UserRowMapper mapper = UserRowMapper.forQuery(SEARCH_TEXT_SQL, rs);
+                while (rs.next()) {
+                    User user = mapper.map(rs);
+                    int score = TrigramIndex.score(query, lower(user.getName()), lower(user.getEmail()));
+                    top.add(new UserTextMatch(user, score));
+                    if (top.size() > max) {
+                        top.poll();
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException("Error de base de datos al buscar usuarios por texto.", e);
+        }
+        List<UserTextMatch> result = new ArrayList<>(top);
+        result.sort(ranking.reversed());
+        return result;
     }
 
 
@@ -408,6 +933,9 @@ public class DatabaseUserServiceImpl implements DatabaseUserService {
      * - Hacer commit si todo tiene éxito
      * - Hacer rollback si hay algún error
      * - Restaurar auto-commit al estado original
+     *
+     * Inserta fila a fila (un executeUpdate() por usuario); para transferencias
+     * grandes ver transferDataBatched(), que envía bloques con executeBatch().
      */
     @Override
     public boolean transferData(List<User> users) {
@@ -423,7 +951,8 @@ public class DatabaseUserServiceImpl implements DatabaseUserService {
             String sql = "INSERT INTO users (name, email, department, role, active, created_at, updated_at) " +
                          "VALUES (?, ?, ?, ?, ?, ?, ?)";
 
-            try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            List<User> inserted = new ArrayList<>(users.size());
+            try (PreparedStatement pstmt = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
 
                 for (User user : users) {
                     pstmt.setString(1, user.getName());
@@ -431,16 +960,23 @@ public class DatabaseUserServiceImpl implements DatabaseUserService {
                     pstmt.setString(3, user.getDepartment());
                     pstmt.setString(4, user.getRole());
                     pstmt.setBoolean(5, user.getActive() != null ? user.getActive() : true);
-                    pstmt.setTimestamp(6, Timestamp.valueOf(
-                            user.getCreatedAt() != null ? user.getCreatedAt() : LocalDateTime.now()));
-                    pstmt.setTimestamp(7, Timestamp.valueOf(LocalDateTime.now()));
+                    LocalDateTime now = LocalDateTime.now();
+                    LocalDateTime createdAt = user.getCreatedAt() != null ? user.getCreatedAt() : now;
+                    pstmt.setTimestamp(6, Timestamp.valueOf(createdAt));
+                    pstmt.setTimestamp(7, Timestamp.valueOf(now));
 
                     pstmt.executeUpdate();
+                    try (ResultSet keys = pstmt.getGeneratedKeys()) {
+                        if (keys.next()) {
+                            inserted.add(storedRow(user, keys.getLong(1), createdAt, now));
+                        }
+                    }
                 }
             }
 
 
             conn.commit();
+            fireInserted(inserted);
 
             return true;
 
@@ -472,170 +1008,568 @@ public class DatabaseUserServiceImpl implements DatabaseUserService {
     }
 
     @Override
-    public int batchInsertUsers(List<User> users) {
-
+    public TransferResult transferDataBatched(List<User> users, int chunkSize, boolean atomic) {
         if (users == null || users.isEmpty()) {
-            return 0;
+            return new TransferResult(0, 0, List.of(), 0, 0, 0);
         }
+        int chunk = Math.max(1, chunkSize);
+        List<TransferResult.FailedRow> failed = new ArrayList<>();
+        List<User> inserted = new ArrayList<>(users.size());
+        int chunks = 0;
+        int retriedChunks = 0;
+        long start = System.nanoTime();
 
-        // --- CORRECCIÓN 1: La sentencia SQL NO incluye la columna 'id' ---
-        // Se asume que la base de datos generará el ID automáticamente.
-        // Los nombres de las columnas ('active', 'created_at', etc.) deben coincidir con tu tabla.
-        final String sql = "INSERT INTO users (name, email, department, role, active, created_at, updated_at) " +
-                "VALUES (?, ?, ?, ?, ?, ?, ?)";
-
-        Connection conn = null;
-        try {
-            conn = DatabaseConfig.getConnection();
-
-            // Usamos un PreparedStatement dentro del try-with-resources
-            try (PreparedStatement ps = conn.prepareStatement(sql)) {
-
-                // Desactivamos auto-commit para un rendimiento óptimo en operaciones batch
-                conn.setAutoCommit(false);
-
-                for (User user : users) {
-                    // --- CORRECCIÓN 2: Los índices de los parámetros se ajustan ---
-                    // Ahora el 'name' es el parámetro 1, 'email' el 2, y así sucesivamente.
-                    ps.setString(1, user.getName());
-                    ps.setString(2, user.getEmail());
-                    ps.setString(3, user.getDepartment());
-                    ps.setString(4, user.getRole());
-                    ps.setBoolean(5, user.getActive());
-                    // Aseguramos que las fechas no sean nulas para evitar errores
-                    ps.setTimestamp(6, java.sql.Timestamp.valueOf(
-                            user.getCreatedAt() != null ? user.getCreatedAt() : LocalDateTime.now()
-                    ));
-                    ps.setTimestamp(7, java.sql.Timestamp.valueOf(
-                            user.getUpdatedAt() != null ? user.getUpdatedAt() : LocalDateTime.now()
-                    ));
-
-                    ps.addBatch();
-                }
-
-                int[] results = ps.executeBatch();
-                conn.commit();
+        try (Connection conn = DatabaseConfig.getConnection()) {
+            conn.setAutoCommit(false);
+            try (PreparedStatement ps = conn.prepareStatement(BATCH_INSERT_SQL, Statement.RETURN_GENERATED_KEYS)) {
+                LocalDateTime now = LocalDateTime.now();
+
+                for (int chunkStart = 0; chunkStart < users.size(); chunkStart += chunk) {
+                    int chunkEnd = Math.min(users.size(), chunkStart + chunk);
+                    Savepoint savepoint = conn.setSavepoint();
+                    int insertedMark = inserted.size();
+                    try {
+                        for (int i = chunkStart; i < chunkEnd; i++) {
+                            bindTransferRow(ps, users.get(i), now);
+                            ps.addBatch();
+                        }
+                        ps.executeBatch();
+                        collectInsertedRows(ps, users, chunkStart, chunkEnd, now, inserted);
+                        conn.releaseSavepoint(savepoint);
+                    } catch (SQLException e) {
+                        // Se deshace solo este bloque y se repite fila a fila para aislar las erróneas
+                        conn.rollback(savepoint);
+                        ps.clearBatch();
+                        inserted.subList(insertedMark, inserted.size()).clear();
+                        retriedChunks++;
+                        retryRowByRow(conn, ps, users, chunkStart, chunkEnd, now, failed, inserted);
+                    }
+                    chunks++;
 
-                // Contamos el número de inserciones exitosas
-                int successfulInserts = 0;
-                for (int result : results) {
-                    // Statement.SUCCESS_NO_INFO es una constante que algunos drivers devuelven
-                    // para indicar éxito sin dar un conteo de filas.
-                    if (result >= 1 || result == Statement.SUCCESS_NO_INFO) {
-                        successfulInserts++;
+                    if (atomic && !failed.isEmpty()) {
+                        // No tiene sentido seguir: la transferencia entera se va a deshacer
+                        break;
                     }
                 }
 
-                return successfulInserts;
-            }
-        } catch (SQLException e) {
-            // Si algo falla, hacemos rollback de la transacción
-            if (conn != null) {
-                try {
+                if (atomic && !failed.isEmpty()) {
                     conn.rollback();
-                } catch (SQLException ex) {
-                    System.err.println("Error al intentar hacer rollback: " + ex.getMessage());
+                    throw new RuntimeException("Error en transacción, se hizo rollback: "
+                            + describeFailedRows(failed));
                 }
+                conn.commit();
+                fireInserted(inserted);
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
             }
-            throw new RuntimeException("Error de base de datos durante la inserción por lotes.", e);
-        } finally {
-            // Nos aseguramos de restaurar el modo auto-commit y cerrar la conexión
-            if (conn != null) {
-                try {
-                    conn.setAutoCommit(true);
-                    conn.close();
-                } catch (SQLException e) {
-                    System.err.println("Error al cerrar la conexión: " + e.getMessage());
-                }
+        } catch (SQLException e) {
+            throw new RuntimeException("Error en transacción, se hizo rollback: " + e.getMessage(), e);
+        }
+
+        long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+        return new TransferResult(users.size(), users.size() - failed.size(), failed,
+                chunks, retriedChunks, elapsedMs);
+    }
+
+    /**
+     * Inserta users[from, to) de una en una, con un savepoint por fila.
+     * Las filas que fallan se deshacen y se añaden a failed; las correctas, a inserted.
+     */
+    private static void retryRowByRow(Connection conn, PreparedStatement ps, List<User> users,
+                                      int from, int to, LocalDateTime now,
+                                      List<TransferResult.FailedRow> failed,
+                                      List<User> inserted) throws SQLException {
+        for (int i = from; i < to; i++) {
+            User user = users.get(i);
+            Savepoint rowSavepoint = conn.setSavepoint();
+            try {
+                bindTransferRow(ps, user, now);
+                ps.executeUpdate();
+                collectInsertedRows(ps, users, i, i + 1, now, inserted);
+                conn.releaseSavepoint(rowSavepoint);
+            } catch (SQLException e) {
+                conn.rollback(rowSavepoint);
+                failed.add(new TransferResult.FailedRow(i, user.getEmail(), e.getMessage()));
             }
         }
+    }
 
+    private static void bindTransferRow(PreparedStatement ps, User user, LocalDateTime now) throws SQLException {
+        ps.setString(1, user.getName());
+        ps.setString(2, user.getEmail());
+        ps.setString(3, user.getDepartment());
+        ps.setString(4, user.getRole());
+        ps.setBoolean(5, user.getActive() != null ? user.getActive() : true);
+        ps.setObject(6, user.getCreatedAt() != null ? user.getCreatedAt() : now);
+        ps.setObject(7, now);
     }
 
-    // ========== CE2.e: Metadata ==========
+    /**
+     * Añade a inserted las filas users[from, to) con los IDs generados por el último execute.
+     */
+    private static void collectInsertedRows(PreparedStatement ps, List<User> users, int from, int to,
+                                            LocalDateTime now, List<User> inserted) throws SQLException {
+        try (ResultSet keys = ps.getGeneratedKeys()) {
+            for (int i = from; i < to && keys.next(); i++) {
+                User user = users.get(i);
+                LocalDateTime createdAt = user.getCreatedAt() != null ? user.getCreatedAt() : now;
+                inserted.add(storedRow(user, keys.getLong(1), createdAt, now));
+            }
+        }
+    }
+
+    private static String describeFailedRows(List<TransferResult.FailedRow> failed) {
+        StringBuilder message = new StringBuilder(failed.size() + " fila(s) con error:");
+        for (TransferResult.FailedRow row : failed) {
+            message.append(" [").append(row.index()).append("] ").append(row.email())
+                    .append(" (").append(row.error()).append(")");
+        }
+        return message.toString();
+    }
+
+    private static final String BATCH_INSERT_SQL =
+            "INSERT INTO users (name, email, department, role, active, created_at, updated_at) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?)";
 
     @Override
-    public String getDatabaseInfo() {
-        try (Connection conn = DatabaseConfig.getConnection()) {
-            DatabaseMetaData metaData = conn.getMetaData();
-            StringBuilder info = new StringBuilder();
+    public int batchInsertUsers(List<User> users) {
+        return batchInsertUsersDetailed(users).getInsertedCount();
+    }
 
-            // --- CORRECCIONES EN EL FORMATEO DEL STRING ---
-            // Se ajustan las etiquetas para que coincidan con el test.
+    @Override
+    public BatchInsertResult batchInsertUsersDetailed(List<User> users) {
+        Ra2Properties.Batch batch = properties.getBatch();
+        return batchInsertUsersChunked(users, batch.getChunkSize(), batch.getParallelism());
+    }
 
-            info.append("--- Información de la Base de Datos ---\n");
+    @Override
+    public BatchInsertResult batchInsertUsersChunked(List<User> users, int chunkSize, int parallelism) {
+        int chunk = Math.max(1, chunkSize);
+        if (users == null || users.isEmpty()) {
+            return new BatchInsertResult(0, List.of(), chunk, 0, 0, 0);
+        }
 
-            // Test espera: "H2" y "Base de Datos"
-            info.append("Base de Datos: ").append(metaData.getDatabaseProductName()).append(" v").append(metaData.getDatabaseProductVersion()).append("\n");
+        // No tiene sentido abrir más conexiones que bloques, ni más de las que da el pool
+        ConnectionPool pool = DatabaseConfig.getPool();
+        int totalChunks = (users.size() + chunk - 1) / chunk;
+        int workers = Math.max(1, Math.min(parallelism, totalChunks));
+        if (pool != null) {
+            workers = Math.min(workers, pool.getMaxSize());
+        }
 
-            // Test espera: "Driver JDBC"
-            info.append("Driver JDBC: ").append(metaData.getDriverName()).append(" v").append(metaData.getDriverVersion()).append("\n");
+        long[] ids = new long[users.size()];
+        long start = System.nanoTime();
+        int chunks;
+        if (workers == 1) {
+            chunks = insertSlice(users, 0, users.size(), chunk, ids);
+        } else {
+            chunks = insertSlicesInParallel(users, workers, chunk, ids);
+        }
+        long elapsedMs = (System.nanoTime() - start) / 1_000_000;
 
-            // Test espera: "URL"
-            info.append("URL: ").append(metaData.getURL()).append("\n");
+        List<Long> generatedIds = new ArrayList<>(ids.length);
+        for (long id : ids) {
+            generatedIds.add(id);
+        }
+        return new BatchInsertResult(users.size(), generatedIds, chunk, chunks, workers, elapsedMs);
+    }
 
-            // Test espera: "Usuario"
-            info.append("Usuario: ").append(metaData.getUserName()).append("\n");
+    /**
+     * Reparte la lista en tramos contiguos, uno por conexión, y los inserta a la vez.
+     *
+     * @return Número total de bloques confirmados
+     */
+    private int insertSlicesInParallel(List<User> users, int workers, int chunkSize, long[] ids) {
+        int sliceSize = (users.size() + workers - 1) / workers;
+        List<Future<Integer>> futures = new ArrayList<>(workers);
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int from = 0; from < users.size(); from += sliceSize) {
+                int sliceFrom = from;
+                int sliceTo = Math.min(users.size(), from + sliceSize);
+                futures.add(executor.submit(() -> insertSlice(users, sliceFrom, sliceTo, chunkSize, ids)));
+            }
+        }
 
-            // Test espera: "Soporta Transacciones"
-            info.append("Soporta Transacciones: ").append(metaData.supportsTransactions()).append("\n");
+        // close() del executor espera a todos los tramos; aquí solo se recogen resultados
+        int chunks = 0;
+        RuntimeException failure = null;
+        for (Future<Integer> future : futures) {
+            try {
+                chunks += future.get();
+            } catch (ExecutionException e) {
+                RuntimeException cause = e.getCause() instanceof RuntimeException re
+                        ? re : new RuntimeException(e.getCause());
+                if (failure == null) {
+                    failure = cause;
+                } else {
+                    failure.addSuppressed(cause);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Inserción por lotes interrumpida.", e);
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        return chunks;
+    }
 
-            // Test espera: "Soporta Batch"
-            info.append("Soporta Batch: ").append(metaData.supportsBatchUpdates()).append("\n");
+    /**
+     * Inserta users[from, to) en una conexión, con un executeBatch() y un commit() por bloque.
+     * Los IDs generados se guardan en ids[] en la misma posición que cada usuario.
+     *
+     * @return Número de bloques confirmados
+     */
+    private int insertSlice(List<User> users, int from, int to, int chunkSize, long[] ids) {
+        int committed = from;
+        int chunks = 0;
 
-            int maxConnections = metaData.getMaxConnections();
-            info.append("Máximas Conexiones: ").append(maxConnections == 0 ? "Sin límite o no soportado" : maxConnections).append("\n");
+        try (Connection conn = DatabaseConfig.getConnection()) {
+            conn.setAutoCommit(false);
+            try (PreparedStatement ps = conn.prepareStatement(BATCH_INSERT_SQL, Statement.RETURN_GENERATED_KEYS)) {
+                LocalDateTime now = LocalDateTime.now();
+
+                for (int chunkStart = from; chunkStart < to; chunkStart += chunkSize) {
+                    int chunkEnd = Math.min(to, chunkStart + chunkSize);
+
+                    for (int i = chunkStart; i < chunkEnd; i++) {
+                        User user = users.get(i);
+                        ps.setString(1, user.getName());
+                        ps.setString(2, user.getEmail());
+                        ps.setString(3, user.getDepartment());
+                        ps.setString(4, user.getRole());
+                        ps.setBoolean(5, user.getActive() == null || user.getActive());
+                        // Aseguramos que las fechas no sean nulas para evitar errores
+                        ps.setObject(6, user.getCreatedAt() != null ? user.getCreatedAt() : now);
+                        ps.setObject(7, user.getUpdatedAt() != null ? user.getUpdatedAt() : now);
+                        ps.addBatch();
+                    }
 
-            return info.toString();
+                    ps.executeBatch();
+                    List<User> chunkRows = new ArrayList<>(chunkEnd - chunkStart);
+                    try (ResultSet keys = ps.getGeneratedKeys()) {
+                        int i = chunkStart;
+                        while (keys.next() && i < chunkEnd) {
+                            User user = users.get(i);
+                            ids[i] = keys.getLong(1);
+                            chunkRows.add(storedRow(user, ids[i],
+                                    user.getCreatedAt() != null ? user.getCreatedAt() : now,
+                                    user.getUpdatedAt() != null ? user.getUpdatedAt() : now));
+                            i++;
+                        }
+                    }
 
+                    // Commit por bloque: la transacción nunca crece más que chunkSize filas
+                    conn.commit();
+                    fireInserted(chunkRows);
+                    committed = chunkEnd;
+                    chunks++;
+                }
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
         } catch (SQLException e) {
-            throw new RuntimeException("Error de base de datos al obtener los metadatos.", e);
+            throw new RuntimeException("Error de base de datos durante la inserción por lotes ("
+                    + (committed - from) + " usuarios de este tramo ya confirmados).", e);
         }
+        return chunks;
     }
 
+    /** Marca de fin de entrada en la cola de la ingesta */
+    private static final User END_OF_INPUT = new User(null, null, null, null, null, null, null, null);
 
-    @Override
-    public List<Map<String, Object>> getTableColumns(String tableName) {
-        List<Map<String, Object>> columnsInfo = new ArrayList<>();
+    /** Mensajes de error que se guardan como máximo en el resultado de una ingesta */
+    static final int MAX_INGEST_ERRORS = 10;
 
+    @Override
+    public IngestResult ingestUsers(Iterator<User> rows, Consumer<IngestResult> progress) {
+        Ra2Properties.Ingest settings = properties.getIngest();
+        int flushSize = Math.max(1, settings.getFlushSize());
+        BlockingQueue<User> queue = new ArrayBlockingQueue<>(Math.max(flushSize, settings.getQueueCapacity()));
+
+        AtomicLong received = new AtomicLong();
+        AtomicLong rejected = new AtomicLong();
+        List<String> errors = new CopyOnWriteArrayList<>();
+        AtomicReference<RuntimeException> readFailure = new AtomicReference<>();
+        AtomicBoolean stopped = new AtomicBoolean();
+        long start = System.nanoTime();
+
+        // Productor: lee y convierte filas; se bloquea si la cola está llena
+        Thread reader = Thread.ofVirtual().name("ra2-ingest-reader").start(() -> {
+            try {
+                while (!stopped.get() && rows.hasNext()) {
+                    User user;
+                    try {
+                        user = rows.next();
+                    } catch (IllegalArgumentException e) {
+                        rejected.incrementAndGet();
+                        addIngestError(errors, e.getMessage());
+                        continue;
+                    }
+                    received.incrementAndGet();
+                    queue.put(user);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (RuntimeException e) {
+                readFailure.set(e);
+            } finally {
+                if (!stopped.get()) {
+                    try {
+                        queue.put(END_OF_INPUT);
+                    } catch (InterruptedException ignored) {
+                        // El consumidor ya ha terminado
+                    }
+                }
+            }
+        });
 
+        // Consumidor (hilo llamante): inserta por bloques e informa del progreso
+        long inserted = 0;
+        int flushes = 0;
+        List<User> buffer = new ArrayList<>(flushSize);
         try (Connection conn = DatabaseConfig.getConnection()) {
-            DatabaseMetaData metaData = conn.getMetaData();
-
+            conn.setAutoCommit(false);
+            try (PreparedStatement ps = conn.prepareStatement(BATCH_INSERT_SQL, Statement.RETURN_GENERATED_KEYS)) {
+                boolean done = false;
+                while (!done) {
+                    User user = queue.take();
+                    if (user == END_OF_INPUT) {
+                        done = true;
+                    } else {
+                        buffer.add(user);
+                    }
 
-            String effectiveTableName = tableName.toUpperCase();
+                    if (buffer.size() >= flushSize || (done && !buffer.isEmpty())) {
+                        List<User> ok = flushIngestBlock(conn, ps, buffer, errors);
+                        fireInserted(ok);
+                        inserted += ok.size();
+                        rejected.addAndGet(buffer.size() - ok.size());
+                        flushes++;
+                        buffer.clear();
+                        progress.accept(new IngestResult(received.get(), inserted, rejected.get(), flushes,
+                                (System.nanoTime() - start) / 1_000_000, List.copyOf(errors)));
+                    }
+                }
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException("Error de base de datos durante la ingesta ("
+                    + inserted + " usuarios ya confirmados).", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Ingesta interrumpida (" + inserted + " usuarios ya confirmados).", e);
+        } finally {
+            // Si el consumidor termina antes (error o cliente desconectado) el lector se detiene
+            stopped.set(true);
+            reader.interrupt();
+        }
 
+        if (readFailure.get() != null) {
+            throw new RuntimeException("Error leyendo la entrada (" + inserted + " usuarios ya confirmados): "
+                    + readFailure.get().getMessage(), readFailure.get());
+        }
+        return new IngestResult(received.get(), inserted, rejected.get(), flushes,
+                (System.nanoTime() - start) / 1_000_000, List.copyOf(errors));
+    }
 
-            try (ResultSet rs = metaData.getColumns(null, null, effectiveTableName, null)) {
+    /**
+     * Inserta y confirma un bloque de la ingesta. Si el bloque falla, se deshace y
+     * se repite fila a fila para descartar solo las filas erróneas.
+     *
+     * @return Filas insertadas y confirmadas del bloque, con su ID
+     */
+    private static List<User> flushIngestBlock(Connection conn, PreparedStatement ps, List<User> block,
+                                               List<String> errors) throws SQLException {
+        LocalDateTime now = LocalDateTime.now();
+        List<User> inserted = new ArrayList<>(block.size());
+        try {
+            for (User user : block) {
+                bindTransferRow(ps, user, now);
+                ps.addBatch();
+            }
+            ps.executeBatch();
+            collectInsertedRows(ps, block, 0, block.size(), now, inserted);
+            conn.commit();
+            return inserted;
+        } catch (SQLException e) {
+            conn.rollback();
+            ps.clearBatch();
+            inserted.clear();
+        }
 
-                while (rs.next()) {
-                    Map<String, Object> columnDetails = new HashMap<>();
+        List<TransferResult.FailedRow> failed = new ArrayList<>();
+        retryRowByRow(conn, ps, block, 0, block.size(), now, failed, inserted);
+        conn.commit();
+        for (TransferResult.FailedRow row : failed) {
+            addIngestError(errors, row.email() + ": " + row.error());
+        }
+        return inserted;
+    }
 
+    private static void addIngestError(List<String> errors, String message) {
+        if (errors.size() < MAX_INGEST_ERRORS) {
+            errors.add(message);
+        }
+    }
 
+    // Un campo que llega a NULL conserva el valor de la fila existente (COALESCE);
+    // en una inserción, active a NULL toma el valor por defecto TRUE
+    private static final String UPSERT_SQL =
+            "MERGE INTO users u USING (VALUES (CAST(? AS VARCHAR(50)), CAST(? AS VARCHAR(100)), " +
+            "CAST(? AS VARCHAR(50)), CAST(? AS VARCHAR(50)), CAST(? AS BOOLEAN), CAST(? AS TIMESTAMP))) " +
+            "AS s(name, email, department, role, active, updated_at) ON u.email = s.email " +
+            "WHEN MATCHED THEN UPDATE SET name = COALESCE(s.name, u.name), " +
+            "department = COALESCE(s.department, u.department), role = COALESCE(s.role, u.role), " +
+            "active = COALESCE(s.active, u.active), updated_at = s.updated_at " +
+            "WHEN NOT MATCHED THEN INSERT (name, email, department, role, active, updated_at) " +
+            "VALUES (s.name, s.email, s.department, s.role, COALESCE(s.active, TRUE), s.updated_at)";
+    private static final String USERS_BY_EMAIL_SQL =
+            "SELECT * FROM users WHERE email = ANY(?)";
 
-                    columnDetails.put("name", rs.getString("COLUMN_NAME"));
-                    columnDetails.put("typeName", rs.getString("TYPE_NAME"));
-                    columnDetails.put("size", rs.getInt("COLUMN_SIZE"));
-                    columnDetails.put("nullable", rs.getString("IS_NULLABLE").equalsIgnoreCase("YES"));
-                    columnDetails.put("position", rs.getInt("ORDINAL_POSITION"));
+    @Override
+    public UpsertResult upsertUsers(List<User> users) {
+        if (users == null || users.isEmpty()) {
+            return new UpsertResult(List.of(), 0, 0, 0, 0);
+        }
+        int chunk = Math.max(1, properties.getBatch().getChunkSize());
+        List<UpsertResult.Outcome> outcomes = new ArrayList<>(users.size());
+        int inserted = 0;
+        int updated = 0;
+        int batches = 0;
+        long start = System.nanoTime();
 
-                    columnsInfo.add(columnDetails);
+        try (Connection conn = DatabaseConfig.getConnection()) {
+            conn.setAutoCommit(false);
+            try (PreparedStatement merge = conn.prepareStatement(UPSERT_SQL);
+                 PreparedStatement usersByEmail = conn.prepareStatement(USERS_BY_EMAIL_SQL)) {
+                LocalDateTime now = LocalDateTime.now();
+
+                for (int chunkStart = 0; chunkStart < users.size(); chunkStart += chunk) {
+                    List<User> block = users.subList(chunkStart, Math.min(users.size(), chunkStart + chunk));
+
+                    // Filas que ya existen antes del MERGE: esas serán UPDATE
+                    Map<String, User> before = findByEmail(conn, usersByEmail, block);
+                    Set<String> seen = new HashSet<>(before.keySet());
+
+                    for (User user : block) {
+                        merge.setString(1, user.getName());
+                        merge.setString(2, user.getEmail());
+                        merge.setString(3, user.getDepartment());
+                        merge.setString(4, user.getRole());
+                        merge.setObject(5, user.getActive(), Types.BOOLEAN);
+                        merge.setObject(6, now);
+                        merge.addBatch();
+                    }
+                    merge.executeBatch();
+                    Map<String, User> after = findByEmail(conn, usersByEmail, block);
+                    conn.commit();
+                    batches++;
+
+                    List<User> created = new ArrayList<>();
+                    for (User row : after.values()) {
+                        User previous = before.get(row.getEmail());
+                        if (previous == null) {
+                            created.add(row);
+                        } else {
+                            fireUpdated(previous, row);
+                        }
+                    }
+                    fireInserted(created);
+
+                    for (int i = 0; i < block.size(); i++) {
+                        String email = block.get(i).getEmail();
+                        // Un email repetido dentro de la lista actualiza la fila que insertó el primero
+                        UpsertResult.Action action = seen.add(email)
+                                ? UpsertResult.Action.INSERTED : UpsertResult.Action.UPDATED;
+                        if (action == UpsertResult.Action.INSERTED) {
+                            inserted++;
+                        } else {
+                            updated++;
+                        }
+                        outcomes.add(new UpsertResult.Outcome(chunkStart + i, email, after.get(email).getId(), action));
+                    }
                 }
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
             }
+        } catch (SQLException e) {
+            throw new RuntimeException("Error de base de datos durante el upsert ("
+                    + outcomes.size() + " usuarios ya confirmados).", e);
+        }
 
+        long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+        return new UpsertResult(outcomes, inserted, updated, batches, elapsedMs);
+    }
 
-        } catch (SQLException e) {
-            // Si hay un error de BBDD, lanzamos una excepción para no fallar silenciosamente.
-            throw new RuntimeException("Error de base de datos al obtener los metadatos de la tabla " + tableName, e);
+    /**
+     * Usuarios del bloque que existen en la tabla, por email.
+     * Una sola consulta con WHERE email = ANY(?) en lugar de una por usuario.
+     */
+    private static Map<String, User> findByEmail(Connection conn, PreparedStatement ps,
+                                                 List<User> block) throws SQLException {
+        Object[] emails = new Object[block.size()];
+        for (int i = 0; i < emails.length; i++) {
+            emails[i] = block.get(i).getEmail();
         }
+        ps.setArray(1, conn.createArrayOf("VARCHAR", emails));
 
-        return columnsInfo;
+        Map<String, User> users = new HashMap<>();
+        try (ResultSet rs = ps.executeQuery()) {
+            UserRowMapper mapper = UserRowMapper.forQuery(USERS_BY_EMAIL_SQL, rs);
+            while (rs.next()) {
+                User user = mapper.map(rs);
+                users.put(user.getEmail(), user);
+            }
+        }
+        return users;
+    }
+
+    // ========== CE2.e: Metadata ==========
+
+    /**
+     * Los metadatos solo cambian con DDL: se leen una vez y se sirven desde MetadataCache
+     */
+    @Override
+    public String getDatabaseInfo() {
+        return MetadataCache.databaseInfo();
+    }
+
+    @Override
+    public List<Map<String, Object>> getTableColumns(String tableName) {
+        return MetadataCache.tableColumns(tableName);
     }
 
     // ========== CE2.f: Funciones de Agregación ==========
 
     @Override
     public int executeCountByDepartment(String department) {
+        // Con ra2.counters.enabled el valor sale de memoria, sin ejecutar el COUNT(*)
+        if (departmentCounters != null) {
+            return departmentCounters.count(department);
+        }
+        if (columnarSnapshot != null) {
+            return columnarSnapshot.countActive(department);
+        }
+        return singleFlight.execute("execute_count_by_department", department,
+                () -> countActiveInDepartment(department), count -> count);
+    }
+
+    private int countActiveInDepartment(String department) {
         final String sql = "SELECT COUNT(*) FROM users WHERE department = ? AND active = true";
 
         try (Connection conn = DatabaseConfig.getConnection();
@@ -658,41 +1592,215 @@ public class DatabaseUserServiceImpl implements DatabaseUserService {
 
     }
 
+    private static final String HISTOGRAM_SQL =
+            "SELECT department, role, active, COUNT(*) FROM users " +
+            "GROUP BY department, role, active ORDER BY department, role, active";
+
+    // Último recuento de getUserHistogram() y System.nanoTime() de cuando se calculó
+    private record HistogramSnapshot(UserHistogram histogram, long takenAt) {
+    }
+
+    private final AtomicReference<HistogramSnapshot> histogramSnapshot = new AtomicReference<>();
+
+    @Override
+    public UserHistogram getUserHistogram(Long maxStalenessMs) {
+        // UserHistogram no tiene setters: se comparte tal cual, igual que histogramSnapshot
+        return singleFlight.execute("get_user_histogram", maxStalenessMs,
+                () -> loadUserHistogram(maxStalenessMs), histogram -> histogram);
+    }
+
+    private UserHistogram loadUserHistogram(Long maxStalenessMs) {
+        long maxStaleness = maxStalenessMs != null ? maxStalenessMs : properties.getHistogram().getMaxStalenessMs();
+        HistogramSnapshot snapshot = histogramSnapshot.get();
+        if (snapshot != null && maxStaleness > 0) {
+            long ageMs = (System.nanoTime() - snapshot.takenAt()) / 1_000_000;
+            if (ageMs <= maxStaleness) {
+                return snapshot.histogram().fromSnapshot(ageMs);
+            }
+        }
+
+        long start = System.nanoTime();
+        List<UserHistogram.Group> groups;
+        if (columnarSnapshot != null) {
+            // La réplica está al día: recuento en memoria, sin consulta
+            groups = columnarSnapshot.groups();
+        } else {
+            groups = new ArrayList<>();
+            try (Connection conn = DatabaseConfig.getConnection();
+                 PreparedStatement ps = conn.prepareStatement(HISTOGRAM_SQL);
+                 ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    boolean active = rs.getBoolean(3);
+                    groups.add(new UserHistogram.Group(rs.getString(1), rs.getString(2),
+                            rs.wasNull() ? null : active, rs.getLong(4)));
+                }
+            } catch (SQLException e) {
+                throw new RuntimeException("Error de base de datos al agrupar usuarios.", e);
+            }
+        }
+
+        long end = System.nanoTime();
+        UserHistogram histogram = rollup(groups, (end - start) / 1_000_000);
+        histogramSnapshot.set(new HistogramSnapshot(histogram, end));
+        return histogram;
+    }
+
+    /**
+     * Histograma con los subtotales por (department, role) y por department de los grupos,
+     * que deben llegar ordenados por department, role y active
+     */
+    static UserHistogram rollup(List<UserHistogram.Group> groups, long scanMs) {
+        // ROLLUP en Java: los grupos llegan ordenados, así que cada cambio de
+        // (department, role) o de department cierra un subtotal
+        List<UserHistogram.Group> subtotals = new ArrayList<>();
+        long total = 0;
+        int i = 0;
+        while (i < groups.size()) {
+            String department = groups.get(i).department();
+            long departmentCount = 0;
+            while (i < groups.size() && Objects.equals(groups.get(i).department(), department)) {
+                String role = groups.get(i).role();
+                long roleCount = 0;
+                while (i < groups.size() && Objects.equals(groups.get(i).department(), department)
+                        && Objects.equals(groups.get(i).role(), role)) {
+                    roleCount += groups.get(i).count();
+                    i++;
+                }
+                subtotals.add(new UserHistogram.Group(department, role, null, roleCount));
+                departmentCount += roleCount;
+            }
+            subtotals.add(new UserHistogram.Group(department, null, null, departmentCount));
+            total += departmentCount;
+        }
+
+        return new UserHistogram(groups, subtotals, total, LocalDateTime.now(), scanMs, false, 0);
+    }
+
+    @Override
+    public Map<String, Object> getColumnarSnapshotStats() {
+        if (columnarSnapshot == null) {
+            return Map.of("enabled", false);
+        }
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", true);
+        stats.putAll(columnarSnapshot.getStats());
+        return stats;
+    }
+
+    @Override
+    public Map<String, Object> getTextIndexStats() {
+        if (textIndex == null) {
+            return Map.of("enabled", false);
+        }
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", true);
+        stats.putAll(textIndex.getStats());
+        return stats;
+    }
+
+    @Override
+    public Map<String, Object> getGroupCommitStats() {
+        return groupCommitter != null ? groupCommitter.getStats() : Map.of("enabled", false);
+    }
+
+    @Override
+    public Map<String, Object> getCoalescingStats() {
+        return singleFlight.getStats();
+    }
+
+    @Override
+    public Map<String, Object> getDepartmentCounterStats() {
+        if (departmentCounters == null) {
+            return Map.of("enabled", false);
+        }
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", true);
+        stats.putAll(departmentCounters.getStats());
+        return stats;
+    }
+
 
     // ========== HELPER METHODS ==========
 
+    private static String lower(String text) {
+        return text != null ? text.toLowerCase(Locale.ROOT) : null;
+    }
+
     /**
-     * Método auxiliar para mapear ResultSet a objeto User
-     *
-     * Este método se usa en múltiples lugares para evitar duplicación de código.
-     * Extrae todas las columnas del ResultSet y crea un objeto User.
-     *
-     * @param rs ResultSet posicionado en una fila válida
-     * @return User object con datos de la fila
-     * @throws SQLException si hay error al leer el ResultSet
+     * Activa o desactiva la ejecución lazy de consultas en la sesión H2 de la conexión.
+     * Es un ajuste de sesión: hay que desactivarlo antes de devolver la conexión al pool.
      */
-    private User mapResultSetToUser(ResultSet rs) throws SQLException {
-        User user = new User();
+    private static void setLazyQueryExecution(Connection conn, boolean lazy) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("SET LAZY_QUERY_EXECUTION " + (lazy ? "TRUE" : "FALSE"));
+        }
+    }
 
-        // Mapear tipos primitivos y objetos
-        user.setId(rs.getLong("id"));
-        user.setName(rs.getString("name"));
-        user.setEmail(rs.getString("email"));
-        user.setDepartment(rs.getString("department"));
-        user.setRole(rs.getString("role"));
-        user.setActive(rs.getBoolean("active"));
+    /**
+     * IDs sin null ni repetidos, conservando el orden recibido
+     */
+    static List<Long> distinctIds(List<Long> ids) {
+        if (ids == null) {
+            return List.of();
+        }
+        return ids.stream().filter(Objects::nonNull).distinct().toList();
+    }
 
-        // Mapear Timestamps a LocalDateTime
-        Timestamp createdAtTimestamp = rs.getTimestamp("created_at");
-        if (createdAtTimestamp != null) {
-            user.setCreatedAt(createdAtTimestamp.toLocalDateTime());
+    static List<User> inRequestOrder(List<Long> ids, Map<Long, User> usersById) {
+        List<User> users = new ArrayList<>(usersById.size());
+        for (Long id : ids) {
+            User user = usersById.get(id);
+            if (user != null) {
+                users.add(user);
+            }
         }
+        return users;
+    }
 
-        Timestamp updatedAtTimestamp = rs.getTimestamp("updated_at");
-        if (updatedAtTimestamp != null) {
-            user.setUpdatedAt(updatedAtTimestamp.toLocalDateTime());
+    /**
+     * Fila tal y como queda guardada al insertar user con el ID generado
+     */
+    private static User storedRow(User user, long id, LocalDateTime createdAt, LocalDateTime updatedAt) {
+        return new User(id, user.getName(), user.getEmail(), user.getDepartment(), user.getRole(),
+                user.getActive() == null || user.getActive(), createdAt, updatedAt);
+    }
+
+    // ========== Notificación a los UserChangeListener (siempre después del commit) ==========
+
+    private void fireInserted(List<User> users) {
+        if (users.isEmpty()) {
+            return;
         }
+        for (UserChangeListener listener : changeListeners) {
+            try {
+                listener.usersInserted(users);
+            } catch (RuntimeException e) {
+                // La escritura ya está confirmada: un listener no puede hacerla fallar
+                System.err.println("Error notificando inserción a " + listener + ": " + e.getMessage());
+            }
+        }
+    }
 
-        return user;
+    private void fireUpdated(User before, User after) {
+        for (UserChangeListener listener : changeListeners) {
+            try {
+                listener.userUpdated(before, after);
+            } catch (RuntimeException e) {
+                System.err.println("Error notificando actualización a " + listener + ": " + e.getMessage());
+            }
+        }
+    }
+
+    private void fireDeleted(List<User> users) {
+        if (users.isEmpty()) {
+            return;
+        }
+        for (UserChangeListener listener : changeListeners) {
+            try {
+                listener.usersDeleted(users);
+            } catch (RuntimeException e) {
+                System.err.println("Error notificando borrado a " + listener + ": " + e.getMessage());
+            }
+        }
     }
 }
@@ -0,0 +1,281 @@
+package com.dam.accesodatos.ra2;
+
+import com.dam.accesodatos.config.DatabaseConfig;
+import com.dam.accesodatos.model.User;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Número de usuarios activos por departamento, mantenido en memoria
+ *
+ * executeCountByDepartment() hacía un COUNT(*) por llamada. Aquí la tabla se recorre
+ * UNA vez con GROUP BY y después cada escritura del servicio ajusta los contadores
+ * (UserChangeListener), así que count() es una búsqueda en un mapa:
+ *
+ * - INSERT de un usuario activo: +1 en su departamento
+ * - DELETE de un usuario activo: -1 en su departamento
+ * - UPDATE: -1 en el departamento/estado anterior y +1 en el nuevo
+ *
+ * Las escrituras que no pasan por el servicio pueden descuadrar un contador. Por eso
+ * reconcile() repite el GROUP BY cada cierto tiempo, corrige las diferencias y las
+ * cuenta en las métricas.
+ *
+ * El GROUP BY se hace sin bloquear las escrituras. Cada evento aumenta un contador de
+ * generación: si llega alguno mientras dura la consulta, no se sabe si el recuento ya lo
+ * incluye, así que el resultado se descarta y se repite la consulta (hasta MAX_SCAN_ATTEMPTS
+ * veces; si no, se deja para la siguiente vuelta). Los eventos y la aplicación del
+ * recuento comparten loadLock, así que nada cambia entre la comprobación y el ajuste.
+ */
+public final class DepartmentCounters implements UserChangeListener {
+
+    private static final String COUNT_SQL =
+            "SELECT department, COUNT(*) FROM users WHERE active = true GROUP BY department";
+
+    private final ConcurrentHashMap<String, LongAdder> counts = new ConcurrentHashMap<>();
+    private final ReentrantLock loadLock = new ReentrantLock();
+    private volatile boolean loaded;
+
+    /** Intentos de cada carga o reconciliación antes de rendirse por escrituras concurrentes */
+    private static final int MAX_SCAN_ATTEMPTS = 3;
+
+    // Eventos recibidos (escrito con loadLock); cambia si hubo escrituras durante un GROUP BY
+    private volatile long writeGeneration;
+
+    private final LongAdder reconciliations = new LongAdder();
+    private final LongAdder driftedDepartments = new LongAdder();
+    private final LongAdder skippedReconciliations = new LongAdder();
+    private volatile long lastReconcileMs;
+    private ScheduledExecutorService reconciler;
+
+    /**
+     * Carga inicial de los contadores (el servicio la hace al crearse)
+     */
+    public void load() {
+        ensureLoaded();
+    }
+
+    /**
+     * Contador de usuarios activos del departamento; si aún no se han cargado, la primera
+     * llamada carga la tabla.
+     */
+    public int count(String department) {
+        ensureLoaded();
+        LongAdder count = counts.get(department);
+        return count != null ? count.intValue() : 0;
+    }
+
+    /**
+     * Recalcula los contadores con un GROUP BY y corrige los que no coinciden.
+     *
+     * @return Departamentos corregidos: nombre → {memoria, base de datos}; vacío también
+     *         si las escrituras concurrentes no han dejado obtener un recuento fiable
+     */
+    public Map<String, Map<String, Long>> reconcile() {
+        long start = System.nanoTime();
+        for (int attempt = 0; attempt < MAX_SCAN_ATTEMPTS; attempt++) {
+            long generation = writeGeneration;
+            Map<String, Long> actual = scan();
+            loadLock.lock();
+            try {
+                if (writeGeneration == generation) {
+                    Map<String, Map<String, Long>> drift = apply(actual);
+                    reconciliations.increment();
+                    lastReconcileMs = (System.nanoTime() - start) / 1_000_000;
+                    return drift;
+                }
+            } finally {
+                loadLock.unlock();
+            }
+        }
+        skippedReconciliations.increment();
+        return Map.of();
+    }
+
+    /**
+     * Aplica un recuento de la tabla (con loadLock y sin eventos durante la consulta)
+     */
+    private Map<String, Map<String, Long>> apply(Map<String, Long> actual) {
+        Map<String, Map<String, Long>> drift = new TreeMap<>();
+        if (loaded) {
+            for (String department : union(actual, counts)) {
+                long expected = actual.getOrDefault(department, 0L);
+                LongAdder count = counts.computeIfAbsent(department, d -> new LongAdder());
+                long current = count.sum();
+                if (current != expected) {
+                    count.add(expected - current);
+                    drift.put(department, Map.of("memory", current, "database", expected));
+                }
+            }
+            driftedDepartments.add(drift.size());
+        } else {
+            replaceWith(actual);
+        }
+        return drift;
+    }
+
+    /**
+     * Lanza reconcile() cada intervalMs en un hilo daemon (0 = sin reconciliación periódica).
+     */
+    public void startReconciliation(long intervalMs) {
+        if (intervalMs <= 0 || reconciler != null) {
+            return;
+        }
+        reconciler = Executors.newSingleThreadScheduledExecutor(
+                Thread.ofPlatform().daemon().name("ra2-department-counters").factory());
+        reconciler.scheduleWithFixedDelay(() -> {
+            try {
+                reconcile();
+            } catch (RuntimeException e) {
+                // Se vuelve a intentar en la siguiente vuelta
+                System.err.println("Error reconciliando contadores por departamento: " + e.getMessage());
+            }
+        }, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    public void stopReconciliation() {
+        if (reconciler != null) {
+            reconciler.shutdownNow();
+            reconciler = null;
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("loaded", loaded);
+        Map<String, Long> snapshot = new TreeMap<>();
+        counts.forEach((department, count) -> snapshot.put(department, count.sum()));
+        stats.put("active_by_department", snapshot);
+        stats.put("reconciliations", reconciliations.sum());
+        stats.put("drifted_departments", driftedDepartments.sum());
+        stats.put("skipped_reconciliations", skippedReconciliations.sum());
+        stats.put("last_reconcile_ms", lastReconcileMs);
+        return stats;
+    }
+
+    // ========== UserChangeListener ==========
+
+    @Override
+    public void usersInserted(List<User> users) {
+        loadLock.lock();
+        try {
+            writeGeneration++;
+            if (loaded) {
+                for (User user : users) {
+                    adjust(user, 1);
+                }
+            }
+        } finally {
+            loadLock.unlock();
+        }
+    }
+
+    @Override
+    public void userUpdated(User before, User after) {
+        if (Objects.equals(before.getDepartment(), after.getDepartment()) && isActive(before) == isActive(after)) {
+            return;
+        }
+        loadLock.lock();
+        try {
+            writeGeneration++;
+            if (loaded) {
+                adjust(before, -1);
+                adjust(after, 1);
+            }
+        } finally {
+            loadLock.unlock();
+        }
+    }
+
+    @Override
+    public void usersDeleted(List<User> users) {
+        loadLock.lock();
+        try {
+            writeGeneration++;
+            if (loaded) {
+                for (User user : users) {
+                    adjust(user, -1);
+                }
+            }
+        } finally {
+            loadLock.unlock();
+        }
+    }
+
+    // ========== Gestión interna ==========
+
+    private void adjust(User user, int delta) {
+        if (isActive(user) && user.getDepartment() != null) {
+            counts.computeIfAbsent(user.getDepartment(), d -> new LongAdder()).add(delta);
+        }
+    }
+
+    private static boolean isActive(User user) {
+        return Boolean.TRUE.equals(user.getActive());
+    }
+
+    /**
+     * Primera carga. Si las escrituras concurrentes no dejan obtener un recuento sin eventos
+     * durante la consulta, se usa el último: reconcile() corregirá lo que haya quedado descuadrado.
+     */
+    private void ensureLoaded() {
+        for (int attempt = 1; !loaded; attempt++) {
+            long generation = writeGeneration;
+            Map<String, Long> actual = scan();
+            loadLock.lock();
+            try {
+                if (!loaded && (writeGeneration == generation || attempt >= MAX_SCAN_ATTEMPTS)) {
+                    replaceWith(actual);
+                }
+            } finally {
+                loadLock.unlock();
+            }
+        }
+    }
+
+    private void replaceWith(Map<String, Long> actual) {
+        counts.clear();
+        actual.forEach((department, count) -> {
+            LongAdder adder = new LongAdder();
+            adder.add(count);
+            counts.put(department, adder);
+        });
+        loaded = true;
+    }
+
+    private static Map<String, Long> scan() {
+        Map<String, Long> actual = new HashMap<>();
+        try (Connection conn = DatabaseConfig.getConnection();
+             PreparedStatement ps = conn.prepareStatement(COUNT_SQL);
+             ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) {
+                actual.put(rs.getString(1), rs.getLong(2));
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException("Error de base de datos al contar usuarios por departamento.", e);
+        }
+        return actual;
+    }
+
+    private static Set<String> union(Map<String, Long> actual, Map<String, LongAdder> current) {
+        Set<String> departments = new HashSet<>(actual.keySet());
+        departments.addAll(current.keySet());
+        return departments;
+    }
+}
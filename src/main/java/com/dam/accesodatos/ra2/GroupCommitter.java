@@ -0,0 +1,192 @@
+package com.dam.accesodatos.ra2;
+
+import com.dam.accesodatos.model.User;
+import com.dam.accesodatos.model.UserCreateDto;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Agrupación de altas concurrentes en una sola transacción ("group commit")
+ *
+ * Con auto-commit cada createUser() es una transacción con su propio commit. Aquí las
+ * altas se dejan en una cola y un hilo daemon las recoge por ventanas: desde la primera
+ * espera hasta windowMicros más, o hasta juntar maxRows, y entrega el grupo entero al
+ * Flusher (un executeBatch() y un commit). Cada llamada se queda bloqueada hasta que su
+ * grupo se confirma y recibe su propio User con el ID generado, o su propio error (por
+ * ejemplo, email duplicado) sin que falle el resto del grupo.
+ *
+ * Solo compensa con muchas altas a la vez: una llamada sola espera la ventana completa
+ * antes de insertarse.
+ */
+public final class GroupCommitter {
+
+    /**
+     * Inserta un grupo en una transacción; debe completar o hacer fallar cada Pending
+     */
+    @FunctionalInterface
+    public interface Flusher {
+        void flush(List<Pending> batch);
+    }
+
+    /**
+     * Un alta a la espera de su grupo
+     */
+    public static final class Pending {
+        private final UserCreateDto dto;
+        private final CompletableFuture<User> result = new CompletableFuture<>();
+
+        private Pending(UserCreateDto dto) {
+            this.dto = dto;
+        }
+
+        public UserCreateDto getDto() {
+            return dto;
+        }
+
+        public void complete(User user) {
+            result.complete(user);
+        }
+
+        public void fail(RuntimeException error) {
+            result.completeExceptionally(error);
+        }
+    }
+
+    private final Flusher flusher;
+    private final long windowNanos;
+    private final int maxRows;
+    private final LinkedBlockingQueue<Pending> queue = new LinkedBlockingQueue<>();
+    private final Thread worker;
+    private volatile boolean running = true;
+
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder rows = new LongAdder();
+    private final LongAdder fullBatches = new LongAdder();
+    private final AtomicInteger largestBatch = new AtomicInteger();
+
+    public GroupCommitter(Flusher flusher, long windowMicros, int maxRows) {
+        this.flusher = flusher;
+        this.windowNanos = TimeUnit.MICROSECONDS.toNanos(Math.max(0, windowMicros));
+        this.maxRows = Math.max(1, maxRows);
+        this.worker = Thread.ofPlatform().daemon().name("ra2-group-commit").start(this::collect);
+    }
+
+    /**
+     * Encola el alta y espera a que su grupo se confirme
+     *
+     * @return Usuario insertado, con su ID
+     * @throws RuntimeException El error de esta alta (el resto del grupo no se ve afectado)
+     */
+    public User submit(UserCreateDto dto) {
+        if (!running) {
+            throw new IllegalStateException("La agrupación de altas está detenida");
+        }
+        Pending pending = new Pending(dto);
+        queue.add(pending);
+        // stop() pudo vaciar la cola entre la comprobación y el add: nadie la recogería
+        if (!running && queue.remove(pending)) {
+            pending.fail(new IllegalStateException("La agrupación de altas se ha detenido"));
+        }
+        try {
+            return pending.result.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Detiene el hilo; las altas que aún no se habían insertado fallan
+     */
+    public void stop() {
+        running = false;
+        worker.interrupt();
+        failAll(drain(), new IllegalStateException("La agrupación de altas se ha detenido"));
+    }
+
+    public Map<String, Object> getStats() {
+        long batchCount = batches.sum();
+        long rowCount = rows.sum();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", true);
+        stats.put("window_micros", TimeUnit.NANOSECONDS.toMicros(windowNanos));
+        stats.put("max_rows", maxRows);
+        stats.put("batches", batchCount);
+        stats.put("rows", rowCount);
+        stats.put("avg_batch_size", batchCount == 0 ? 0.0 : (double) rowCount / batchCount);
+        stats.put("largest_batch", largestBatch.get());
+        stats.put("full_batches", fullBatches.sum());
+        stats.put("queued", queue.size());
+        return stats;
+    }
+
+    // ========== Gestión interna ==========
+
+    private void collect() {
+        List<Pending> batch = new ArrayList<>(maxRows);
+        while (running) {
+            try {
+                batch.add(queue.take());
+                long deadline = System.nanoTime() + windowNanos;
+                while (batch.size() < maxRows) {
+                    // Lo que ya está en la cola entra sin esperar
+                    queue.drainTo(batch, maxRows - batch.size());
+                    long remaining = deadline - System.nanoTime();
+                    if (batch.size() >= maxRows || remaining <= 0) {
+                        break;
+                    }
+                    Pending next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                flush(batch);
+            } catch (InterruptedException e) {
+                failAll(batch, new IllegalStateException("La agrupación de altas se ha detenido"));
+                return;
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void flush(List<Pending> batch) {
+        batches.increment();
+        rows.add(batch.size());
+        largestBatch.accumulateAndGet(batch.size(), Math::max);
+        if (batch.size() >= maxRows) {
+            fullBatches.increment();
+        }
+        try {
+            flusher.flush(batch);
+        } catch (RuntimeException e) {
+            failAll(batch, e);
+        }
+        // Ninguna llamada puede quedarse esperando para siempre
+        failAll(batch, new IllegalStateException("El alta no se completó"));
+    }
+
+    private List<Pending> drain() {
+        List<Pending> pending = new ArrayList<>();
+        queue.drainTo(pending);
+        return pending;
+    }
+
+    private static void failAll(List<Pending> batch, RuntimeException error) {
+        for (Pending pending : batch) {
+            pending.fail(error);
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.dam.accesodatos.ra2;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Cursor opaco para paginación por clave (keyset pagination)
+ *
+ * Guarda la clave de ordenación y el id de la última fila entregada.
+ * La página siguiente se pide con WHERE (clave, id) "después de" esos valores,
+ * lo que H2 resuelve con un acceso por índice en lugar de saltarse filas con OFFSET.
+ *
+ * Para el cliente es un texto Base64 (URL-safe) que debe devolver tal cual.
+ */
+public final class KeysetCursor {
+
+    private final long lastId;
+    private final String sortKey;
+
+    public KeysetCursor(long lastId, String sortKey) {
+        this.lastId = lastId;
+        this.sortKey = sortKey != null ? sortKey : "";
+    }
+
+    /**
+     * Decodifica un cursor recibido del cliente.
+     *
+     * @return El cursor, o null si no se envió ninguno (primera página)
+     * @throws IllegalArgumentException si el texto no es un cursor válido
+     */
+    public static KeysetCursor decode(String token) {
+        if (token == null || token.isBlank()) {
+            return null;
+        }
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            int separator = raw.indexOf('|');
+            if (separator < 0) {
+                throw new IllegalArgumentException("Cursor inválido: " + token);
+            }
+            return new KeysetCursor(Long.parseLong(raw.substring(0, separator)), raw.substring(separator + 1));
+        } catch (IllegalArgumentException e) {
+            // Incluye NumberFormatException y errores de Base64
+            throw new IllegalArgumentException("Cursor inválido: " + token, e);
+        }
+    }
+
+    public String encode() {
+        String raw = lastId + "|" + sortKey;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public long getLastId() {
+        return lastId;
+    }
+
+    public String getSortKey() {
+        return sortKey;
+    }
+
+    @Override
+    public String toString() {
+        return encode();
+    }
+}
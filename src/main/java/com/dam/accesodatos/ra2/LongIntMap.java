@@ -0,0 +1,111 @@
+package com.dam.accesodatos.ra2;
+
+import java.util.Arrays;
+
+/**
+ * Mapa id → fila con direccionamiento abierto sobre arrays de primitivos
+ * (sin los Long/Integer y nodos de un HashMap<Long, Integer>)
+ *
+ * Lo usan las estructuras en memoria (ColumnarUserSnapshot, TrigramIndex) para
+ * localizar la fila de un usuario. Los valores deben ser >= 0: get() devuelve -1
+ * si la clave no está. No es thread-safe.
+ */
+final class LongIntMap {
+
+    private static final long EMPTY = Long.MIN_VALUE;
+
+    private long[] keys;
+    private int[] values;
+    private int mask;
+    private int size;
+
+    LongIntMap(int expected) {
+        int capacity = Integer.highestOneBit(Math.max(16, expected * 2) - 1) << 1;
+        keys = new long[capacity];
+        values = new int[capacity];
+        Arrays.fill(keys, EMPTY);
+        mask = capacity - 1;
+    }
+
+    int capacity() {
+        return keys.length;
+    }
+
+    int get(long key) {
+        for (int i = slot(key); keys[i] != EMPTY; i = (i + 1) & mask) {
+            if (keys[i] == key) {
+                return values[i];
+            }
+        }
+        return -1;
+    }
+
+    void put(long key, int value) {
+        if ((size + 1) * 2 > keys.length) {
+            resize();
+        }
+        int i = slot(key);
+        while (keys[i] != EMPTY) {
+            if (keys[i] == key) {
+                values[i] = value;
+                return;
+            }
+            i = (i + 1) & mask;
+        }
+        keys[i] = key;
+        values[i] = value;
+        size++;
+    }
+
+    void remove(long key) {
+        for (int i = slot(key); keys[i] != EMPTY; i = (i + 1) & mask) {
+            if (keys[i] == key) {
+                closeGap(i);
+                size--;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Borrado por desplazamiento: adelanta las claves que estaban después del hueco
+     * y cuya posición ideal no está entre el hueco y su posición actual
+     */
+    private void closeGap(int gap) {
+        int i = gap;
+        while (true) {
+            i = (i + 1) & mask;
+            if (keys[i] == EMPTY) {
+                break;
+            }
+            int home = slot(keys[i]);
+            boolean movable = gap < i ? (home <= gap || home > i) : (home <= gap && home > i);
+            if (movable) {
+                keys[gap] = keys[i];
+                values[gap] = values[i];
+                gap = i;
+            }
+        }
+        keys[gap] = EMPTY;
+    }
+
+    private void resize() {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        keys = new long[oldKeys.length * 2];
+        values = new int[keys.length];
+        Arrays.fill(keys, EMPTY);
+        mask = keys.length - 1;
+        size = 0;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY) {
+                put(oldKeys[i], oldValues[i]);
+            }
+        }
+    }
+
+    private int slot(long key) {
+        long hash = key * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+}
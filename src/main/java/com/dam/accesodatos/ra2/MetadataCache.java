@@ -0,0 +1,185 @@
+package com.dam.accesodatos.ra2;
+
+import com.dam.accesodatos.config.DatabaseConfig;
+import com.dam.accesodatos.config.HealthMonitor;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Metadatos de la base de datos ya leídos, para getDatabaseInfo() y getTableColumns()
+ *
+ * Recorrer DatabaseMetaData en cada llamada es caro (getColumns() es de lo más lento
+ * del driver) y el resultado solo cambia cuando se ejecuta DDL. Aquí se lee TODO una
+ * vez (información del producto y las columnas de todas las tablas con un único
+ * getColumns()) y se sirve desde memoria.
+ *
+ * La copia se descarta cuando cambia DatabaseConfig.getSchemaVersion(), es decir,
+ * cuando DatabaseConfig ejecuta DDL o alguien llama a refresh(). warmUp() la carga al
+ * arrancar la aplicación para que la primera llamada tampoco pague la lectura.
+ *
+ * Con shards los metadatos se leen del shard 0 (useConnections()): todos tienen el mismo
+ * esquema y la base de datos por defecto solo sirve para copiar los datos iniciales.
+ *
+ * Todo lo que devuelve es inmutable: varios hilos comparten las mismas listas y mapas.
+ */
+public final class MetadataCache {
+
+    private static final AtomicReference<Snapshot> CURRENT = new AtomicReference<>();
+    private static final ReentrantLock LOAD_LOCK = new ReentrantLock();
+
+    private static final LongAdder hits = new LongAdder();
+    private static final LongAdder loads = new LongAdder();
+    private static volatile long lastLoadMs;
+    private static volatile HealthMonitor.ConnectionSource connections = DatabaseConfig::getConnection;
+
+    private MetadataCache() {
+    }
+
+    /**
+     * Texto de get_database_info: producto, driver, URL, usuario y capacidades
+     */
+    public static String databaseInfo() {
+        return current().databaseInfo;
+    }
+
+    /**
+     * Columnas de la tabla en orden de definición (lista vacía si no existe)
+     */
+    public static List<Map<String, Object>> tableColumns(String tableName) {
+        return current().columns.getOrDefault(tableName.toUpperCase(Locale.ROOT), List.of());
+    }
+
+    /**
+     * Carga los metadatos al arrancar
+     *
+     * @return Número de tablas leídas
+     */
+    public static int warmUp() {
+        return current().columns.size();
+    }
+
+    /**
+     * Vuelve a leer los metadatos tras un DDL ejecutado fuera de DatabaseConfig.
+     * Cuenta como un cambio de esquema, así que también se descartan los mapeadores
+     * de UserRowMapper.
+     */
+    public static void refresh() {
+        DatabaseConfig.schemaChanged();
+        current();
+    }
+
+    /**
+     * Cambia la base de datos de la que se leen los metadatos y descarta la copia actual
+     */
+    public static void useConnections(HealthMonitor.ConnectionSource source) {
+        connections = source;
+        DatabaseConfig.schemaChanged();
+    }
+
+    /**
+     * Vuelve a leer los metadatos de la base de datos por defecto
+     */
+    public static void useDefaultConnections() {
+        useConnections(DatabaseConfig::getConnection);
+    }
+
+    public static Map<String, Object> getStats() {
+        Snapshot snapshot = CURRENT.get();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("loaded", snapshot != null);
+        stats.put("schema_version", snapshot != null ? snapshot.schemaVersion : null);
+        stats.put("tables", snapshot != null ? snapshot.columns.size() : 0);
+        stats.put("hits", hits.sum());
+        stats.put("loads", loads.sum());
+        stats.put("last_load_ms", lastLoadMs);
+        return stats;
+    }
+
+    // ========== Gestión interna ==========
+
+    private static Snapshot current() {
+        long version = DatabaseConfig.getSchemaVersion();
+        Snapshot snapshot = CURRENT.get();
+        if (snapshot != null && snapshot.schemaVersion == version) {
+            hits.increment();
+            return snapshot;
+        }
+        LOAD_LOCK.lock();
+        try {
+            snapshot = CURRENT.get();
+            if (snapshot == null || snapshot.schemaVersion != version) {
+                snapshot = load(version);
+                CURRENT.set(snapshot);
+            }
+            return snapshot;
+        } finally {
+            LOAD_LOCK.unlock();
+        }
+    }
+
+    private static Snapshot load(long version) {
+        long start = System.nanoTime();
+        try (Connection conn = connections.get()) {
+            DatabaseMetaData metaData = conn.getMetaData();
+            String info = describe(metaData);
+
+            // Columnas de todas las tablas en una sola llamada, agrupadas por tabla
+            Map<String, List<Map<String, Object>>> byTable = new HashMap<>();
+            try (ResultSet rs = metaData.getColumns(null, null, null, null)) {
+                while (rs.next()) {
+                    Map<String, Object> columnDetails = new HashMap<>();
+                    columnDetails.put("name", rs.getString("COLUMN_NAME"));
+                    columnDetails.put("typeName", rs.getString("TYPE_NAME"));
+                    columnDetails.put("size", rs.getInt("COLUMN_SIZE"));
+                    columnDetails.put("nullable", rs.getString("IS_NULLABLE").equalsIgnoreCase("YES"));
+                    columnDetails.put("position", rs.getInt("ORDINAL_POSITION"));
+
+                    byTable.computeIfAbsent(rs.getString("TABLE_NAME"), t -> new ArrayList<>())
+                            .add(Collections.unmodifiableMap(columnDetails));
+                }
+            }
+
+            Map<String, List<Map<String, Object>>> columns = new HashMap<>();
+            byTable.forEach((table, list) -> columns.put(table, List.copyOf(list)));
+
+            loads.increment();
+            lastLoadMs = (System.nanoTime() - start) / 1_000_000;
+            return new Snapshot(version, info, Map.copyOf(columns));
+        } catch (SQLException e) {
+            throw new RuntimeException("Error de base de datos al obtener los metadatos.", e);
+        }
+    }
+
+    private static String describe(DatabaseMetaData metaData) throws SQLException {
+        StringBuilder info = new StringBuilder();
+
+        info.append("--- Información de la Base de Datos ---\n");
+        info.append("Base de Datos: ").append(metaData.getDatabaseProductName()).append(" v").append(metaData.getDatabaseProductVersion()).append("\n");
+        info.append("Driver JDBC: ").append(metaData.getDriverName()).append(" v").append(metaData.getDriverVersion()).append("\n");
+        info.append("URL: ").append(metaData.getURL()).append("\n");
+        info.append("Usuario: ").append(metaData.getUserName()).append("\n");
+        info.append("Soporta Transacciones: ").append(metaData.supportsTransactions()).append("\n");
+        info.append("Soporta Batch: ").append(metaData.supportsBatchUpdates()).append("\n");
+
+        int maxConnections = metaData.getMaxConnections();
+        info.append("Máximas Conexiones: ").append(maxConnections == 0 ? "Sin límite o no soportado" : maxConnections).append("\n");
+
+        return info.toString();
+    }
+
+    private record Snapshot(long schemaVersion, String databaseInfo, Map<String, List<Map<String, Object>>> columns) {
+    }
+}
@@ -0,0 +1,184 @@
+package com.dam.accesodatos.ra2;
+
+import com.dam.accesodatos.config.ConnectionPool;
+import com.dam.accesodatos.config.DatabaseConfig;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.StringJoiner;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Plantillas SQL precompiladas de searchUsers(), una por combinación de filtros
+ *
+ * Los filtros posibles son pocos (department, role, active presentes o no, y si
+ * hay cursor "after"), así que las 16 consultas se generan una vez al cargar la clase.
+ * Cada búsqueda se reduce a:
+ *
+ * Plan plan = SearchPlanCache.plan(mask);    // búsqueda en un array
+ * conn.prepareStatement(plan.getSql());        // acierto en la caché de statements
+ * ps.setString(...) / setBoolean / setLong     // binding tipado, sin setObject
+ *
+ * warmUp() prepara todas las plantillas en las conexiones ociosas del pool al arrancar,
+ * y cada plan cuenta sus llamadas para saber qué combinaciones usa el tráfico real.
+ */
+public final class SearchPlanCache {
+
+    // Bits de la máscara de filtros
+    public static final int DEPARTMENT = 1;
+    public static final int ROLE = 2;
+    public static final int ACTIVE = 4;
+    public static final int AFTER = 8;
+
+    private static final Plan[] PLANS = buildPlans();
+
+    private SearchPlanCache() {
+    }
+
+    /**
+     * Plan para la combinación de filtros indicada (OR de DEPARTMENT, ROLE, ACTIVE, AFTER)
+     */
+    public static Plan plan(int mask) {
+        return PLANS[mask];
+    }
+
+    /**
+     * Prepara todas las plantillas en las conexiones ociosas del pool, para que la
+     * primera búsqueda de cada combinación ya encuentre el statement en la caché.
+     *
+     * @return Número de statements preparados
+     * @throws RuntimeException si alguna plantilla no compila contra el esquema actual
+     */
+    public static int warmUp() {
+        ConnectionPool pool = DatabaseConfig.getPool();
+        int connections = pool != null ? Math.max(1, pool.getIdleConnections()) : 1;
+
+        // Se piden todas a la vez para no recibir la misma conexión en cada vuelta
+        List<Connection> leased = new ArrayList<>(connections);
+        int prepared = 0;
+        try {
+            for (int i = 0; i < connections; i++) {
+                leased.add(DatabaseConfig.getConnection());
+            }
+            for (Connection conn : leased) {
+                for (Plan plan : PLANS) {
+                    // close() deja el statement en la caché de la conexión
+                    conn.prepareStatement(plan.sql).close();
+                    prepared++;
+                }
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException("Error precompilando las consultas de búsqueda.", e);
+        } finally {
+            for (Connection conn : leased) {
+                try {
+                    conn.close();
+                } catch (SQLException ignored) {
+                    // La conexión se descarta; no afecta al calentamiento
+                }
+            }
+        }
+        return prepared;
+    }
+
+    /**
+     * Uso de cada combinación de filtros, de la más a la menos llamada.
+     * Solo aparecen las combinaciones que se han usado al menos una vez.
+     */
+    public static Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        Arrays.stream(PLANS)
+                .filter(plan -> plan.calls.sum() > 0)
+                .sorted(Comparator.comparingLong((Plan plan) -> plan.calls.sum()).reversed())
+                .forEach(plan -> {
+                    long calls = plan.calls.sum();
+                    Map<String, Object> entry = new LinkedHashMap<>();
+                    entry.put("calls", calls);
+                    entry.put("avg_ms", Math.round(plan.nanos.sum() / (double) calls / 10_000.0) / 100.0);
+                    stats.put(plan.label, entry);
+                });
+        return stats;
+    }
+
+    /**
+     * Pone a cero los contadores de uso
+     */
+    public static void resetStats() {
+        for (Plan plan : PLANS) {
+            plan.calls.reset();
+            plan.nanos.reset();
+        }
+    }
+
+    private static Plan[] buildPlans() {
+        Plan[] plans = new Plan[16];
+        for (int mask = 0; mask < plans.length; mask++) {
+            StringBuilder sql = new StringBuilder("SELECT * FROM users WHERE 1=1");
+            StringJoiner label = new StringJoiner("+");
+            if ((mask & DEPARTMENT) != 0) {
+                sql.append(" AND department = ?");
+                label.add("department");
+            }
+            if ((mask & ROLE) != 0) {
+                sql.append(" AND role = ?");
+                label.add("role");
+            }
+            if ((mask & ACTIVE) != 0) {
+                sql.append(" AND active = ?");
+                label.add("active");
+            }
+            if ((mask & AFTER) != 0) {
+                // Página siguiente: búsqueda en el índice de la clave primaria
+                sql.append(" AND id > ? ORDER BY id LIMIT ?");
+                label.add("after");
+            } else {
+                // Primera página (OFFSET 0) o clientes que aún paginan por offset
+                sql.append(" ORDER BY id LIMIT ? OFFSET ?");
+            }
+            plans[mask] = new Plan(sql.toString(), label.length() > 0 ? label.toString() : "sin_filtros");
+        }
+        return plans;
+    }
+
+    /**
+     * Consulta precompilada de una combinación de filtros y sus contadores de uso
+     */
+    public static final class Plan {
+
+        private final String sql;
+        private final String label;
+        private final LongAdder calls = new LongAdder();
+        private final LongAdder nanos = new LongAdder();
+
+        private Plan(String sql, String label) {
+            this.sql = sql;
+            this.label = label;
+        }
+
+        public String getSql() {
+            return sql;
+        }
+
+        public String getLabel() {
+            return label;
+        }
+
+        public long getCalls() {
+            return calls.sum();
+        }
+
+        /**
+         * Registra una ejecución y su duración
+         */
+        void record(long elapsedNanos) {
+            calls.increment();
+            nanos.add(elapsedNanos);
+        }
+    }
+}
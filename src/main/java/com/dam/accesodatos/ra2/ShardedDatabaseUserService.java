@@ -0,0 +1,886 @@
+package com.dam.accesodatos.ra2;
+
+import com.dam.accesodatos.config.DatabaseConfig;
+import com.dam.accesodatos.config.HealthMonitor;
+import com.dam.accesodatos.config.Ra2Properties;
+import com.dam.accesodatos.config.ShardSet;
+import com.dam.accesodatos.model.BatchInsertResult;
+import com.dam.accesodatos.model.IngestResult;
+import com.dam.accesodatos.model.TransferResult;
+import com.dam.accesodatos.model.UpsertResult;
+import com.dam.accesodatos.model.User;
+import com.dam.accesodatos.model.UserCreateDto;
+import com.dam.accesodatos.model.UserHistogram;
+import com.dam.accesodatos.model.UserPage;
+import com.dam.accesodatos.model.UserQueryDto;
+import com.dam.accesodatos.model.UserTextMatch;
+import com.dam.accesodatos.model.UserUpdateDto;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Service;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
+
+/**
+ * DatabaseUserService repartido entre varias bases de datos H2 (ra2.sharding)
+ *
+ * Cada shard de ShardSet tiene su propio DatabaseUserServiceImpl, creado dentro de
+ * ShardSet.on(): su código JDBC, sus cachés y sus hilos trabajan solo con ese shard.
+ * Esta clase decide a qué shard va cada llamada:
+ *
+ * - Un ID o un email llevan a un único shard (ver ShardSet): createUser, findUserById,
+ *   updateUser y deleteUser consultan una sola base de datos
+ * - findAll, searchUsers, los recuentos... se lanzan en todos los shards a la vez (un
+ *   virtual thread por shard) y los resultados se mezclan con el mismo orden y la misma
+ *   paginación que sin shards
+ * - Las escrituras en bloque (transferData, batch, upsert, ingesta) se reparten por email
+ *   y cada shard las confirma por separado: son atómicas dentro de cada shard, no entre shards
+ *
+ * Limitación: updateUser no puede cambiar el email de un usuario por otro que corresponda
+ * a un shard distinto (habría que mover la fila y cambiaría su ID).
+ *
+ * Al arrancar, los usuarios de la base de datos por defecto (data.sql) se copian a los
+ * shards; reciben IDs nuevos según el shard que les toca. Con ra2.sharding.enabled no se
+ * crea el DatabaseUserServiceImpl de la base de datos por defecto.
+ */
+@Service
+@Primary
+@ConditionalOnProperty(prefix = "ra2.sharding", name = "enabled", havingValue = "true")
+public class ShardedDatabaseUserService implements DatabaseUserService {
+
+    private final Ra2Properties properties;
+    private final ShardSet shards;
+    private final List<DatabaseUserServiceImpl> services;
+
+    @Autowired
+    public ShardedDatabaseUserService(Ra2Properties properties) {
+        this.properties = properties;
+        this.shards = new ShardSet(properties.getSharding(), properties.getPool());
+        shards.initialize();
+
+        List<DatabaseUserServiceImpl> created = new ArrayList<>(shards.size());
+        for (int i = 0; i < shards.size(); i++) {
+            created.add(shards.on(i, () -> new DatabaseUserServiceImpl(properties)));
+        }
+        this.services = List.copyOf(created);
+
+        // La base de datos por defecto solo se usa aquí, una vez, para leer los datos iniciales
+        DatabaseConfig.initializeDatabase();
+        copyToShards(loadDefaultDatabaseUsers());
+
+        // /mcp/health comprueba todos los shards y los metadatos salen del shard 0
+        ShardSet set = shards;
+        List<HealthMonitor.ConnectionSource> health = new ArrayList<>(set.size());
+        for (int i = 0; i < set.size(); i++) {
+            int shard = i;
+            health.add(() -> set.connect(shard));
+        }
+        DatabaseConfig.configureHealthSources(health);
+        MetadataCache.useConnections(() -> set.connect(0));
+    }
+
+    /**
+     * Detiene los hilos de cada shard y después cierra sus pools
+     */
+    @PreDestroy
+    public void shutdown() {
+        DatabaseConfig.resetHealthSources();
+        MetadataCache.useDefaultConnections();
+        for (DatabaseUserServiceImpl service : services) {
+            service.close();
+        }
+        shards.close();
+    }
+
+    public int getShardCount() {
+        return shards.size();
+    }
+
+    @Override
+    public void addUserChangeListener(UserChangeListener listener) {
+        for (DatabaseUserServiceImpl service : services) {
+            service.addUserChangeListener(listener);
+        }
+    }
+
+    // ========== CE2.a: Connection Management ==========
+
+    @Override
+    public String testConnection() {
+        List<Long> micros = scatter(shard -> validateShard());
+        return String.format("✓ Conexión exitosa a %d shards H2 (%s ...) | isValid por shard: %s µs",
+                shards.size(), shards.url(0), micros);
+    }
+
+    private static long validateShard() {
+        long start = System.nanoTime();
+        try (Connection conn = DatabaseConfig.getConnection()) {
+            if (!conn.isValid(2)) {
+                throw new RuntimeException("Error al probar la conexión: isValid() devolvió false");
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException("Error al probar la conexión: " + e.getMessage(), e);
+        }
+        return (System.nanoTime() - start) / 1_000;
+    }
+
+    // ========== CE2.b: CRUD Operations ==========
+
+    @Override
+    public User createUser(UserCreateDto dto) {
+        int shard = shards.shardForEmail(dto.getEmail());
+        return shards.on(shard, () -> services.get(shard).createUser(dto));
+    }
+
+    @Override
+    public User findUserById(Long id) {
+        int shard = shardOf(id);
+        return shards.on(shard, () -> services.get(shard).findUserById(id));
+    }
+
+    @Override
+    public Map<String, Object> getUserCacheStats() {
+        return perShard(shard -> services.get(shard).getUserCacheStats());
+    }
+
+    @Override
+    public User updateUser(Long id, UserUpdateDto dto) {
+        int shard = shardOf(id);
+        if (dto.getEmail() != null && shards.shardForEmail(dto.getEmail()) != shard
+                && shards.on(shard, () -> services.get(shard).findUserById(id)) != null) {
+            throw new RuntimeException("Error: El email '" + dto.getEmail() + "' corresponde al shard "
+                    + shards.shardForEmail(dto.getEmail()) + " y el usuario con ID " + id
+                    + " está en el shard " + shard + "; no se puede mover entre shards");
+        }
+        return shards.on(shard, () -> services.get(shard).updateUser(id, dto));
+    }
+
+    @Override
+    public boolean deleteUser(Long id) {
+        int shard = shardOf(id);
+        return shards.on(shard, () -> services.get(shard).deleteUser(id));
+    }
+
+    @Override
+    public List<User> findUsersByIds(List<Long> ids) {
+        return byIdShards(ids, (shard, shardIds) -> services.get(shard).findUsersByIds(shardIds));
+    }
+
+    /**
+     * Borra en cada shard sus IDs; cada shard confirma (o deshace) su parte por separado
+     */
+    @Override
+    public List<User> deleteUsersByIds(List<Long> ids) {
+        return byIdShards(ids, (shard, shardIds) -> services.get(shard).deleteUsersByIds(shardIds));
+    }
+
+    @Override
+    public List<User> findAll() {
+        List<User> users = new ArrayList<>();
+        for (List<User> part : scatter(shard -> services.get(shard).findAll())) {
+            users.addAll(part);
+        }
+        users.sort(NEWEST_FIRST);
+        return users;
+    }
+
+    /** Orden de findAll() y streamAll(): created_at DESC, id DESC */
+    private static final Comparator<User> NEWEST_FIRST = Comparator
+            .comparing(User::getCreatedAt, Comparator.nullsLast(Comparator.<LocalDateTime>reverseOrder()))
+            .thenComparing(User::getId, Comparator.reverseOrder());
+
+    /** Marca de fin de cada shard en la mezcla de streamAll() */
+    private static final User END_OF_SHARD = new User(null, null, null, null, null, null, null, null);
+
+    /**
+     * Mezcla de k vías: cada shard recorre sus filas en streaming (mismo cursor para todos,
+     * porque (created_at, id) es un orden global) hacia una cola acotada, y aquí se entrega
+     * siempre la fila más reciente de entre las cabezas de las colas. Ningún shard tiene que
+     * traer más de maxRows filas, y las colas limitan lo que se adelanta cada uno.
+     */
+    @Override
+    public String streamAll(String after, int maxRows, int fetchSize, Consumer<User> consumer) {
+        // Un cursor no válido falla aquí, antes de lanzar nada en los shards
+        KeysetCursor.decode(after);
+
+        int count = shards.size();
+        List<BlockingQueue<User>> queues = new ArrayList<>(count);
+        AtomicReferenceArray<RuntimeException> failures = new AtomicReferenceArray<>(count);
+        AtomicBoolean stopped = new AtomicBoolean();
+        ExecutorService producers = Executors.newVirtualThreadPerTaskExecutor();
+
+        try {
+            for (int i = 0; i < count; i++) {
+                int shard = i;
+                BlockingQueue<User> queue = new ArrayBlockingQueue<>(Math.max(1, fetchSize));
+                queues.add(queue);
+                producers.submit(() -> {
+                    try {
+                        shards.on(shard, () -> services.get(shard).streamAll(after, maxRows, fetchSize,
+                                user -> putOrStop(queue, user)));
+                    } catch (RuntimeException e) {
+                        failures.set(shard, e);
+                    } finally {
+                        if (!stopped.get()) {
+                            try {
+                                queue.put(END_OF_SHARD);
+                            } catch (InterruptedException ignored) {
+                                // La mezcla ya ha terminado
+                            }
+                        }
+                    }
+                });
+            }
+
+            // Cabeza de cada cola, ordenadas como findAll()
+            PriorityQueue<Head> heads = new PriorityQueue<>((a, b) -> NEWEST_FIRST.compare(a.user(), b.user()));
+            for (int i = 0; i < count; i++) {
+                Head head = nextHead(queues, failures, i);
+                if (head != null) {
+                    heads.add(head);
+                }
+            }
+
+            int emitted = 0;
+            User last = null;
+            while (!heads.isEmpty() && (maxRows <= 0 || emitted < maxRows)) {
+                Head head = heads.poll();
+                last = head.user();
+                consumer.accept(last);
+                emitted++;
+                Head next = nextHead(queues, failures, head.shard());
+                if (next != null) {
+                    heads.add(next);
+                }
+            }
+
+            if (maxRows > 0 && emitted == maxRows) {
+                return DatabaseUserServiceImpl.streamCursor(last);
+            }
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Recorrido de los usuarios interrumpido.", e);
+        } finally {
+            // Los shards que aún tengan filas pendientes se detienen
+            stopped.set(true);
+            producers.shutdownNow();
+        }
+    }
+
+    private record Head(User user, int shard) {
+    }
+
+    private static Head nextHead(List<BlockingQueue<User>> queues, AtomicReferenceArray<RuntimeException> failures,
+                                 int shard) throws InterruptedException {
+        User user = queues.get(shard).take();
+        if (user == END_OF_SHARD) {
+            if (failures.get(shard) != null) {
+                throw failures.get(shard);
+            }
+            return null;
+        }
+        return new Head(user, shard);
+    }
+
+    private static void putOrStop(BlockingQueue<User> queue, User user) {
+        try {
+            queue.put(user);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Recorrido del shard detenido.", e);
+        }
+    }
+
+    // ========== CE2.c: Advanced Queries ==========
+
+    @Override
+    public List<User> findUsersByDepartment(String department) {
+        List<User> users = new ArrayList<>();
+        for (List<User> part : scatter(shard -> services.get(shard).findUsersByDepartment(department))) {
+            users.addAll(part);
+        }
+        users.sort(Comparator.comparing(User::getName, Comparator.nullsFirst(Comparator.<String>naturalOrder()))
+                .thenComparing(User::getId));
+        return users;
+    }
+
+    @Override
+    public List<User> searchUsers(UserQueryDto query) {
+        return searchUsersPage(query).getItems();
+    }
+
+    /**
+     * - Con cursor: cada shard devuelve sus "limit" primeros IDs después del cursor y la
+     *   página son los "limit" menores de todos ellos
+     * - Con offset: cada shard tiene que devolver offset + limit filas, porque no se sabe
+     *   cuántas de las primeras posiciones le corresponden; el cursor sale mucho más barato
+     */
+    @Override
+    public UserPage searchUsersPage(UserQueryDto query) {
+        KeysetCursor cursor = KeysetCursor.decode(query.getAfter());
+        int limit = query.getLimit() != null && query.getLimit() > 0
+                ? query.getLimit() : DatabaseUserServiceImpl.DEFAULT_SEARCH_LIMIT;
+        int offset = cursor == null && query.getOffset() != null ? Math.max(0, query.getOffset()) : 0;
+
+        UserQueryDto shardQuery = new UserQueryDto(query.getDepartment(), query.getRole(), query.getActive(),
+                offset + limit, null);
+        shardQuery.setAfter(query.getAfter());
+
+        List<User> users = new ArrayList<>();
+        for (UserPage part : scatter(shard -> services.get(shard).searchUsersPage(shardQuery))) {
+            users.addAll(part.getItems());
+        }
+        users.sort(Comparator.comparing(User::getId));
+        List<User> page = users.subList(Math.min(offset, users.size()), Math.min(offset + limit, users.size()));
+
+        String nextCursor = page.size() == limit
+                ? new KeysetCursor(page.get(page.size() - 1).getId(), null).encode()
+                : null;
+        return new UserPage(new ArrayList<>(page), nextCursor);
+    }
+
+    @Override
+    public List<UserTextMatch> searchUsersText(String text, Integer limit) {
+        if (text == null || text.isBlank()) {
+            throw new IllegalArgumentException("El texto de búsqueda no puede estar vacío");
+        }
+        int max = limit != null && limit > 0 ? limit : DatabaseUserServiceImpl.DEFAULT_TEXT_LIMIT;
+        List<UserTextMatch> matches = new ArrayList<>();
+        for (List<UserTextMatch> part : scatter(shard -> services.get(shard).searchUsersText(text, max))) {
+            matches.addAll(part);
+        }
+        matches.sort(Comparator.comparingInt(UserTextMatch::getScore).reversed()
+                .thenComparing(match -> match.getUser().getId()));
+        return new ArrayList<>(matches.subList(0, Math.min(max, matches.size())));
+    }
+
+    // ========== CE2.d: Transactions ==========
+
+    /**
+     * Cada shard inserta su parte en su propia transacción: si un shard falla, sus filas
+     * se deshacen pero las de los demás shards quedan confirmadas
+     */
+    @Override
+    public boolean transferData(List<User> users) {
+        return copyToShards(users);
+    }
+
+    // Privado para poder usarlo en el constructor (transferData() se puede sobrescribir)
+    private boolean copyToShards(List<User> users) {
+        List<List<Integer>> positions = byEmailShard(users);
+        for (boolean ok : scatter(shard -> positions.get(shard).isEmpty()
+                || services.get(shard).transferData(select(users, positions.get(shard))))) {
+            if (!ok) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public TransferResult transferDataBatched(List<User> users, int chunkSize, boolean atomic) {
+        if (users == null || users.isEmpty()) {
+            return new TransferResult(0, 0, List.of(), 0, 0, 0);
+        }
+        long start = System.nanoTime();
+        List<List<Integer>> positions = byEmailShard(users);
+        List<TransferResult> parts = scatter(shard -> positions.get(shard).isEmpty() ? null
+                : services.get(shard).transferDataBatched(select(users, positions.get(shard)), chunkSize, atomic));
+
+        int inserted = 0;
+        int chunks = 0;
+        int retriedChunks = 0;
+        List<TransferResult.FailedRow> failed = new ArrayList<>();
+        for (int shard = 0; shard < parts.size(); shard++) {
+            TransferResult part = parts.get(shard);
+            if (part == null) {
+                continue;
+            }
+            inserted += part.getInsertedCount();
+            chunks += part.getChunks();
+            retriedChunks += part.getRetriedChunks();
+            for (TransferResult.FailedRow row : part.getFailedRows()) {
+                // Índice dentro de la lista original, no dentro de la parte del shard
+                failed.add(new TransferResult.FailedRow(positions.get(shard).get(row.index()), row.email(), row.error()));
+            }
+        }
+        failed.sort(Comparator.comparingInt(TransferResult.FailedRow::index));
+        return new TransferResult(users.size(), inserted, failed, chunks, retriedChunks,
+                (System.nanoTime() - start) / 1_000_000);
+    }
+
+    @Override
+    public int batchInsertUsers(List<User> users) {
+        return batchInsertUsersDetailed(users).getInsertedCount();
+    }
+
+    @Override
+    public BatchInsertResult batchInsertUsersDetailed(List<User> users) {
+        Ra2Properties.Batch batch = properties.getBatch();
+        return batchInsertUsersChunked(users, batch.getChunkSize(), batch.getParallelism());
+    }
+
+    @Override
+    public BatchInsertResult batchInsertUsersChunked(List<User> users, int chunkSize, int parallelism) {
+        int chunk = Math.max(1, chunkSize);
+        if (users == null || users.isEmpty()) {
+            return new BatchInsertResult(0, List.of(), chunk, 0, 0, 0);
+        }
+        long start = System.nanoTime();
+        List<List<Integer>> positions = byEmailShard(users);
+        List<BatchInsertResult> parts = scatter(shard -> positions.get(shard).isEmpty() ? null
+                : services.get(shard).batchInsertUsersChunked(select(users, positions.get(shard)), chunk, parallelism));
+
+        Long[] ids = new Long[users.size()];
+        int inserted = 0;
+        int chunks = 0;
+        int workers = 0;
+        for (int shard = 0; shard < parts.size(); shard++) {
+            BatchInsertResult part = parts.get(shard);
+            if (part == null) {
+                continue;
+            }
+            inserted += part.getInsertedCount();
+            chunks += part.getChunks();
+            workers += part.getParallelism();
+            List<Long> partIds = part.getGeneratedIds();
+            for (int i = 0; i < partIds.size(); i++) {
+                ids[positions.get(shard).get(i)] = partIds.get(i);
+            }
+        }
+        return new BatchInsertResult(inserted, List.of(ids), chunk, chunks, workers,
+                (System.nanoTime() - start) / 1_000_000);
+    }
+
+    /**
+     * Un hilo reparte las filas del iterador por email entre una cola por shard, y cada
+     * shard hace su propia ingesta (DatabaseUserServiceImpl.ingestUsers) leyendo de su cola.
+     * El progreso que se notifica es la suma de lo que lleva cada shard.
+     */
+    @Override
+    public IngestResult ingestUsers(Iterator<User> rows, Consumer<IngestResult> progress) {
+        int count = shards.size();
+        int capacity = Math.max(1, properties.getIngest().getQueueCapacity());
+        IngestResult[] latest = new IngestResult[count];
+        ReentrantLock progressLock = new ReentrantLock();
+        List<String> readErrors = new CopyOnWriteArrayList<>();
+        AtomicLong readRejected = new AtomicLong();
+        long start = System.nanoTime();
+
+        List<BlockingQueue<User>> queues = new ArrayList<>(count);
+        List<Future<IngestResult>> futures = new ArrayList<>(count);
+        RuntimeException readFailure = null;
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < count; i++) {
+                int shard = i;
+                BlockingQueue<User> queue = new ArrayBlockingQueue<>(capacity);
+                queues.add(queue);
+                futures.add(executor.submit(() -> shards.on(shard, () -> services.get(shard).ingestUsers(
+                        new QueueIterator(queue), result -> {
+                            progressLock.lock();
+                            try {
+                                latest[shard] = result;
+                                progress.accept(combineIngest(latest, readRejected.get(), readErrors, start));
+                            } finally {
+                                progressLock.unlock();
+                            }
+                        }))));
+            }
+
+            try {
+                dispatch:
+                while (rows.hasNext()) {
+                    User user;
+                    try {
+                        user = rows.next();
+                    } catch (IllegalArgumentException e) {
+                        readRejected.incrementAndGet();
+                        if (readErrors.size() < DatabaseUserServiceImpl.MAX_INGEST_ERRORS) {
+                            readErrors.add(e.getMessage());
+                        }
+                        continue;
+                    }
+                    int shard = shards.shardForEmail(user.getEmail());
+                    if (!deliver(queues.get(shard), user, futures.get(shard))) {
+                        // Ese shard ha terminado con error: no tiene sentido seguir leyendo
+                        break dispatch;
+                    }
+                }
+            } catch (RuntimeException e) {
+                readFailure = e;
+            } finally {
+                for (int i = 0; i < count; i++) {
+                    deliver(queues.get(i), END_OF_SHARD, futures.get(i));
+                }
+            }
+        }
+
+        List<IngestResult> parts = gather(futures, "Ingesta interrumpida.");
+        IngestResult result = combineIngest(parts.toArray(new IngestResult[0]), readRejected.get(), readErrors, start);
+        if (readFailure != null) {
+            throw new RuntimeException("Error leyendo la entrada (" + result.getInserted()
+                    + " usuarios ya confirmados): " + readFailure.getMessage(), readFailure);
+        }
+        return result;
+    }
+
+    /**
+     * Espera hueco en la cola del shard; devuelve false si el shard ya ha terminado
+     */
+    private static boolean deliver(BlockingQueue<User> queue, User user, Future<?> shard) {
+        try {
+            while (!queue.offer(user, 50, TimeUnit.MILLISECONDS)) {
+                if (shard.isDone()) {
+                    return false;
+                }
+            }
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Ingesta interrumpida.", e);
+        }
+    }
+
+    private static IngestResult combineIngest(IngestResult[] parts, long readRejected, List<String> readErrors,
+                                              long start) {
+        long received = 0;
+        long inserted = 0;
+        long rejected = readRejected;
+        int flushes = 0;
+        List<String> errors = new ArrayList<>(readErrors);
+        for (int shard = 0; shard < parts.length; shard++) {
+            IngestResult part = parts[shard];
+            if (part == null) {
+                continue;
+            }
+            received += part.getReceived();
+            inserted += part.getInserted();
+            rejected += part.getRejected();
+            flushes += part.getFlushes();
+            for (String error : part.getErrors()) {
+                if (errors.size() < DatabaseUserServiceImpl.MAX_INGEST_ERRORS) {
+                    errors.add("shard " + shard + ": " + error);
+                }
+            }
+        }
+        return new IngestResult(received, inserted, rejected, flushes,
+                (System.nanoTime() - start) / 1_000_000, List.copyOf(errors));
+    }
+
+    /**
+     * Filas de un shard en la ingesta: lee de su cola hasta END_OF_SHARD
+     */
+    private static final class QueueIterator implements Iterator<User> {
+        private final BlockingQueue<User> queue;
+        private User next;
+
+        private QueueIterator(BlockingQueue<User> queue) {
+            this.queue = queue;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (next == null) {
+                try {
+                    next = queue.take();
+                } catch (InterruptedException e) {
+                    // La ingesta del shard ha terminado antes de tiempo
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+            return next != END_OF_SHARD;
+        }
+
+        @Override
+        public User next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            User user = next;
+            next = null;
+            return user;
+        }
+    }
+
+    @Override
+    public UpsertResult upsertUsers(List<User> users) {
+        if (users == null || users.isEmpty()) {
+            return new UpsertResult(List.of(), 0, 0, 0, 0);
+        }
+        long start = System.nanoTime();
+        List<List<Integer>> positions = byEmailShard(users);
+        List<UpsertResult> parts = scatter(shard -> positions.get(shard).isEmpty() ? null
+                : services.get(shard).upsertUsers(select(users, positions.get(shard))));
+
+        List<UpsertResult.Outcome> outcomes = new ArrayList<>(users.size());
+        int inserted = 0;
+        int updated = 0;
+        int batches = 0;
+        for (int shard = 0; shard < parts.size(); shard++) {
+            UpsertResult part = parts.get(shard);
+            if (part == null) {
+                continue;
+            }
+            inserted += part.getInsertedCount();
+            updated += part.getUpdatedCount();
+            batches += part.getBatches();
+            for (UpsertResult.Outcome outcome : part.getOutcomes()) {
+                outcomes.add(new UpsertResult.Outcome(positions.get(shard).get(outcome.index()),
+                        outcome.email(), outcome.id(), outcome.action()));
+            }
+        }
+        outcomes.sort(Comparator.comparingInt(UpsertResult.Outcome::index));
+        return new UpsertResult(outcomes, inserted, updated, batches, (System.nanoTime() - start) / 1_000_000);
+    }
+
+    // ========== CE2.e: Metadata ==========
+
+    /**
+     * Todos los shards tienen el mismo esquema: los metadatos son los de MetadataCache
+     * más la lista de shards
+     */
+    @Override
+    public String getDatabaseInfo() {
+        StringBuilder info = new StringBuilder(MetadataCache.databaseInfo());
+        info.append("Shards: ").append(shards.size()).append("\n");
+        for (int i = 0; i < shards.size(); i++) {
+            info.append("  shard ").append(i).append(": ").append(shards.url(i)).append("\n");
+        }
+        return info.toString();
+    }
+
+    @Override
+    public List<Map<String, Object>> getTableColumns(String tableName) {
+        return MetadataCache.tableColumns(tableName);
+    }
+
+    // ========== CE2.f: Funciones de Agregación ==========
+
+    @Override
+    public int executeCountByDepartment(String department) {
+        int total = 0;
+        for (int count : scatter(shard -> services.get(shard).executeCountByDepartment(department))) {
+            total += count;
+        }
+        return total;
+    }
+
+    /**
+     * Suma los grupos (department, role, active) de todos los shards y recalcula los
+     * subtotales; viene "de snapshot" solo si todos los shards lo han servido de memoria
+     */
+    @Override
+    public UserHistogram getUserHistogram(Long maxStalenessMs) {
+        List<UserHistogram> parts = scatter(shard -> services.get(shard).getUserHistogram(maxStalenessMs));
+
+        Comparator<UserHistogram.Group> order = Comparator
+                .comparing(UserHistogram.Group::department, Comparator.nullsFirst(Comparator.<String>naturalOrder()))
+                .thenComparing(UserHistogram.Group::role, Comparator.nullsFirst(Comparator.<String>naturalOrder()))
+                .thenComparing(UserHistogram.Group::active, Comparator.nullsFirst(Comparator.<Boolean>naturalOrder()));
+        Map<UserHistogram.Group, Long> counts = new TreeMap<>(order);
+        long scanMs = 0;
+        long ageMs = 0;
+        boolean fromSnapshot = true;
+        for (UserHistogram part : parts) {
+            for (UserHistogram.Group group : part.getGroups()) {
+                counts.merge(group, group.count(), Long::sum);
+            }
+            scanMs = Math.max(scanMs, part.getScanMs());
+            ageMs = Math.max(ageMs, part.getAgeMs());
+            fromSnapshot &= part.isFromSnapshot();
+        }
+
+        List<UserHistogram.Group> groups = new ArrayList<>(counts.size());
+        for (Map.Entry<UserHistogram.Group, Long> entry : counts.entrySet()) {
+            UserHistogram.Group key = entry.getKey();
+            groups.add(new UserHistogram.Group(key.department(), key.role(), key.active(), entry.getValue()));
+        }
+        UserHistogram histogram = DatabaseUserServiceImpl.rollup(groups, scanMs);
+        return fromSnapshot ? histogram.fromSnapshot(ageMs) : histogram;
+    }
+
+    @Override
+    public Map<String, Object> getDepartmentCounterStats() {
+        return perShard(shard -> services.get(shard).getDepartmentCounterStats());
+    }
+
+    @Override
+    public Map<String, Object> getColumnarSnapshotStats() {
+        return perShard(shard -> services.get(shard).getColumnarSnapshotStats());
+    }
+
+    @Override
+    public Map<String, Object> getTextIndexStats() {
+        return perShard(shard -> services.get(shard).getTextIndexStats());
+    }
+
+    @Override
+    public Map<String, Object> getCoalescingStats() {
+        return perShard(shard -> services.get(shard).getCoalescingStats());
+    }
+
+    @Override
+    public Map<String, Object> getGroupCommitStats() {
+        return perShard(shard -> services.get(shard).getGroupCommitStats());
+    }
+
+    // ========== Reparto entre shards ==========
+
+    private int shardOf(Long id) {
+        return id != null ? shards.shardForId(id) : 0;
+    }
+
+    /**
+     * Ejecuta la llamada en todos los shards a la vez, cada una dentro de ShardSet.on()
+     *
+     * @return Un resultado por shard, en orden de shard
+     */
+    private <T> List<T> scatter(IntFunction<T> call) {
+        List<Future<T>> futures = new ArrayList<>(shards.size());
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < shards.size(); i++) {
+                int shard = i;
+                futures.add(executor.submit(() -> shards.on(shard, () -> call.apply(shard))));
+            }
+        }
+        return gather(futures, "Consulta en los shards interrumpida.");
+    }
+
+    /**
+     * Resultados de las tareas ya terminadas; el primer error se relanza con los demás como suprimidos
+     */
+    private static <T> List<T> gather(List<Future<T>> futures, String interruptedMessage) {
+        List<T> results = new ArrayList<>(futures.size());
+        RuntimeException failure = null;
+        for (Future<T> future : futures) {
+            try {
+                results.add(future.get());
+            } catch (ExecutionException e) {
+                RuntimeException cause = e.getCause() instanceof RuntimeException re
+                        ? re : new RuntimeException(e.getCause());
+                if (failure == null) {
+                    failure = cause;
+                } else {
+                    failure.addSuppressed(cause);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(interruptedMessage, e);
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        return results;
+    }
+
+    private interface ShardCall<T> {
+        T apply(int shard, List<Long> ids);
+    }
+
+    /**
+     * Reparte los IDs por el shard que los generó y devuelve los usuarios en el orden pedido
+     */
+    private List<User> byIdShards(List<Long> ids, ShardCall<List<User>> call) {
+        List<Long> distinct = DatabaseUserServiceImpl.distinctIds(ids);
+        List<List<Long>> idsByShard = new ArrayList<>(shards.size());
+        for (int i = 0; i < shards.size(); i++) {
+            idsByShard.add(new ArrayList<>());
+        }
+        for (Long id : distinct) {
+            idsByShard.get(shards.shardForId(id)).add(id);
+        }
+
+        Map<Long, User> found = new HashMap<>();
+        for (List<User> part : scatter(shard -> idsByShard.get(shard).isEmpty() ? List.<User>of()
+                : call.apply(shard, idsByShard.get(shard)))) {
+            for (User user : part) {
+                found.put(user.getId(), user);
+            }
+        }
+        return DatabaseUserServiceImpl.inRequestOrder(distinct, found);
+    }
+
+    /**
+     * Posiciones de la lista que van a cada shard según su email
+     */
+    private List<List<Integer>> byEmailShard(List<User> users) {
+        List<List<Integer>> positions = new ArrayList<>(shards.size());
+        for (int i = 0; i < shards.size(); i++) {
+            positions.add(new ArrayList<>());
+        }
+        if (users != null) {
+            for (int i = 0; i < users.size(); i++) {
+                positions.get(shards.shardForEmail(users.get(i).getEmail())).add(i);
+            }
+        }
+        return positions;
+    }
+
+    private static List<User> select(List<User> users, List<Integer> positions) {
+        List<User> selected = new ArrayList<>(positions.size());
+        for (int position : positions) {
+            selected.add(users.get(position));
+        }
+        return selected;
+    }
+
+    private Map<String, Object> perShard(IntFunction<Map<String, Object>> stats) {
+        Map<String, Object> byShard = new LinkedHashMap<>();
+        for (int i = 0; i < shards.size(); i++) {
+            byShard.put("shard_" + i, stats.apply(i));
+        }
+        return byShard;
+    }
+
+    /**
+     * Usuarios de la base de datos por defecto (los de data.sql), para repartirlos entre los shards
+     */
+    private static List<User> loadDefaultDatabaseUsers() {
+        final String sql = "SELECT * FROM users ORDER BY id";
+        List<User> users = new ArrayList<>();
+        try (Connection conn = DatabaseConfig.getConnection();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery(sql)) {
+            UserRowMapper mapper = UserRowMapper.forQuery(sql, rs);
+            while (rs.next()) {
+                users.add(mapper.map(rs));
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException("Error de base de datos al leer los usuarios iniciales.", e);
+        }
+        return users;
+    }
+}
@@ -0,0 +1,224 @@
+package com.dam.accesodatos.ra2;
+
+import com.dam.accesodatos.config.QueryCancellation;
+import com.dam.accesodatos.model.User;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+
+/**
+ * Agrupación de lecturas iguales simultáneas ("single flight")
+ *
+ * Cuando varios agentes piden a la vez lo mismo (find_users_by_department("IT"),
+ * search_users con los mismos filtros...), solo el primero ejecuta la consulta; los que
+ * llegan con los mismos argumentos mientras sigue en curso esperan y se llevan su
+ * resultado. No es una caché: en cuanto termina la consulta, la siguiente llamada
+ * vuelve a la base de datos.
+ *
+ * - Quien ejecuta la consulta recibe el resultado original; los que se suman reciben
+ *   copias (share), así que nadie ve lo que otro modifique en su User
+ * - Un error de la consulta le llega a todos los que esperaban, salvo que sea una
+ *   cancelación (QueryCancellation o interrupción) de quien la ejecutaba: esa es suya,
+ *   y los que esperaban vuelven a intentarlo (uno de ellos ejecuta la consulta)
+ * - Quien espera deja de esperar si se cancela su propio ámbito o se interrumpe su hilo
+ * - Las escrituras del servicio le llegan como UserChangeListener y aumentan un contador
+ *   de generación: una lectura que empezó antes de una escritura no se comparte con
+ *   quien llega después, que ejecuta su propia consulta y ve el cambio
+ */
+public final class SingleFlight implements UserChangeListener {
+
+    /** Resultado de una consulta cancelada: quien esperaba debe intentarlo de nuevo */
+    private static final Object RETRY = new Object();
+
+    private final boolean enabled;
+    private final ConcurrentHashMap<Key, Flight> inFlight = new ConcurrentHashMap<>();
+    private final AtomicLong generation = new AtomicLong();
+
+    // Por herramienta: [0] consultas ejecutadas, [1] llamadas que se sumaron a otra
+    private final ConcurrentHashMap<String, LongAdder[]> counters = new ConcurrentHashMap<>();
+
+    public SingleFlight(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * Ejecuta loader, o espera a la ejecución en curso con la misma herramienta y argumentos
+     *
+     * @param tool   Nombre de la operación (parte de la clave y de las métricas)
+     * @param args   Argumentos; se comparan con equals() (List.of / Arrays.asList)
+     * @param loader Consulta a la base de datos
+     * @param share  Copia del resultado para cada llamada que se suma
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T execute(String tool, Object args, Supplier<T> loader, UnaryOperator<T> share) {
+        if (!enabled) {
+            return loader.get();
+        }
+        LongAdder[] toolCounters = counters.computeIfAbsent(tool, t -> new LongAdder[]{new LongAdder(), new LongAdder()});
+        Key key = new Key(tool, args);
+        long currentGeneration = generation.get();
+        Flight mine = new Flight(currentGeneration);
+
+        while (true) {
+            Flight running = inFlight.putIfAbsent(key, mine);
+            if (running == null) {
+                break;
+            }
+            if (running.generation == currentGeneration && running.join()) {
+                toolCounters[1].increment();
+                Object shared = running.await();
+                if (shared == RETRY) {
+                    // Ya no está en inFlight: la siguiente vuelta se suma a otra o ejecuta la consulta
+                    toolCounters[1].decrement();
+                    continue;
+                }
+                return shared != null ? share.apply((T) shared) : null;
+            }
+            // Empezó antes de una escritura o ya ha terminado: esta llamada consulta por su cuenta
+            if (inFlight.replace(key, running, mine)) {
+                break;
+            }
+        }
+
+        toolCounters[0].increment();
+        T value;
+        try {
+            value = loader.get();
+        } catch (RuntimeException | Error e) {
+            mine.close(key);
+            if (QueryCancellation.isCancellation(e) || Thread.currentThread().isInterrupted()) {
+                mine.result.complete(RETRY);
+            } else {
+                mine.result.completeExceptionally(e);
+            }
+            throw e;
+        }
+        // Copia solo si alguien espera: el caso sin concurrencia no paga nada
+        int waiters = mine.close(key);
+        mine.result.complete(waiters > 0 && value != null ? share.apply(value) : null);
+        return value;
+    }
+
+    /**
+     * Copia de una lista de usuarios para compartirla
+     */
+    public static List<User> copyUsers(List<User> users) {
+        return users.stream().map(UserCache::copy).toList();
+    }
+
+    public Map<String, Object> getStats() {
+        long executions = 0;
+        long coalesced = 0;
+        Map<String, Object> byTool = new TreeMap<>();
+        for (Map.Entry<String, LongAdder[]> entry : counters.entrySet()) {
+            long toolExecutions = entry.getValue()[0].sum();
+            long toolCoalesced = entry.getValue()[1].sum();
+            executions += toolExecutions;
+            coalesced += toolCoalesced;
+            byTool.put(entry.getKey(), Map.of("executions", toolExecutions, "coalesced", toolCoalesced));
+        }
+
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("executions", executions);
+        stats.put("coalesced", coalesced);
+        stats.put("coalescing_ratio", executions + coalesced == 0 ? 0.0 : (double) coalesced / (executions + coalesced));
+        stats.put("in_flight", inFlight.size());
+        stats.put("by_tool", byTool);
+        return stats;
+    }
+
+    // ========== UserChangeListener ==========
+
+    @Override
+    public void usersInserted(List<User> users) {
+        generation.incrementAndGet();
+    }
+
+    @Override
+    public void userUpdated(User before, User after) {
+        generation.incrementAndGet();
+    }
+
+    @Override
+    public void usersDeleted(List<User> users) {
+        generation.incrementAndGet();
+    }
+
+    // ========== Gestión interna ==========
+
+    private record Key(String tool, Object args) {
+    }
+
+    /**
+     * Una consulta en curso y cuántas llamadas esperan su resultado
+     */
+    private final class Flight {
+        private final long generation;
+        private final CompletableFuture<Object> result = new CompletableFuture<>();
+        // -1 cuando ya no admite más llamadas
+        private final AtomicInteger waiters = new AtomicInteger();
+
+        private Flight(long generation) {
+            this.generation = generation;
+        }
+
+        boolean join() {
+            int count;
+            do {
+                count = waiters.get();
+                if (count < 0) {
+                    return false;
+                }
+            } while (!waiters.compareAndSet(count, count + 1));
+            return true;
+        }
+
+        /** Deja de admitir llamadas y devuelve cuántas esperan */
+        int close(Key key) {
+            inFlight.remove(key, this);
+            return waiters.getAndSet(-1);
+        }
+
+        /**
+         * Espera el resultado (o RETRY); sale antes si se cancela el ámbito de quien espera
+         * o se interrumpe su hilo
+         */
+        Object await() {
+            // Copia propia: cancelarla no afecta a los demás que esperan
+            CompletableFuture<Object> waiting = result.copy();
+            QueryCancellation scope = QueryCancellation.current();
+            Runnable unregister = scope != null ? scope.onCancel(() -> waiting.cancel(false)) : () -> { };
+            try {
+                return waiting.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrumpido mientras esperaba una consulta igual en curso.", e);
+            } catch (CancellationException e) {
+                throw new RuntimeException("Cancelado mientras esperaba una consulta igual en curso.",
+                        QueryCancellation.cancelledException());
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof RuntimeException cause) {
+                    throw cause;
+                }
+                if (e.getCause() instanceof Error cause) {
+                    throw cause;
+                }
+                throw new RuntimeException(e.getCause());
+            } finally {
+                unregister.run();
+            }
+        }
+    }
+}
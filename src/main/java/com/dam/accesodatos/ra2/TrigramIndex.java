@@ -0,0 +1,481 @@
+package com.dam.accesodatos.ra2;
+
+import com.dam.accesodatos.config.DatabaseConfig;
+import com.dam.accesodatos.model.User;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Índice de trigramas sobre users.name y users.email para búsquedas por fragmento
+ *
+ * Cada texto (en minúsculas) se parte en todas sus secuencias de 3 caracteres:
+ * "ana@x.es" → "ana", "na@", "a@x", "@x.", "x.e", ".es". Cada trigrama guarda la
+ * lista ordenada de filas que lo contienen (posting list).
+ *
+ * Para buscar "garc" se intersectan las listas de "gar" y "arc", empezando por la
+ * más corta, y solo las filas candidatas se comprueban con String.contains(). Así una
+ * búsqueda no recorre la tabla: LIKE '%garc%' en H2 sí lo hace, porque un índice
+ * B-tree no sirve para un patrón que empieza por %.
+ *
+ * Los resultados se ordenan por relevancia (ver score()). Las consultas de menos de
+ * 3 caracteres no tienen trigramas: el servicio las resuelve con LIKE.
+ *
+ * Se carga con un SELECT la primera vez que se usa y se mantiene al día como
+ * UserChangeListener. Los eventos que llegan durante el SELECT se guardan y se
+ * aplican después sobre las filas leídas, para que la carga no pise escrituras más nuevas.
+ */
+public final class TrigramIndex implements UserChangeListener {
+
+    private static final String LOAD_SQL = "SELECT id, name, email FROM users ORDER BY id";
+
+    /** Longitud mínima de consulta que puede responder el índice */
+    public static final int MIN_QUERY_LENGTH = 3;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final ReentrantLock loadLock = new ReentrantLock();
+    private volatile boolean loaded;
+
+    // Carga en curso y cambios recibidos mientras tanto (con el write lock)
+    private volatile boolean loading;
+    private final List<Runnable> pendingChanges = new ArrayList<>();
+
+    // Textos en minúsculas por fila; las filas borradas quedan a null
+    private long[] ids = new long[0];
+    private String[] names = new String[0];
+    private String[] emails = new String[0];
+    private LongIntMap rowById = new LongIntMap(16);
+    private int size;
+    private int liveCount;
+
+    private final Map<Long, Postings> postings = new HashMap<>();
+
+    /**
+     * Coincidencia de una búsqueda: ID del usuario y su puntuación
+     */
+    public record Match(long id, int score) {
+    }
+
+    /**
+     * Usuarios cuyo name o email contiene text (sin distinguir mayúsculas), de más a
+     * menos relevante.
+     *
+     * @param text  Fragmento a buscar, de al menos MIN_QUERY_LENGTH caracteres
+     * @param limit Número máximo de resultados
+     */
+    public List<Match> search(String text, int limit) {
+        String query = normalize(text);
+        if (query.length() < MIN_QUERY_LENGTH) {
+            throw new IllegalArgumentException("La búsqueda por trigramas necesita al menos "
+                    + MIN_QUERY_LENGTH + " caracteres");
+        }
+        ensureLoaded();
+
+        lock.readLock().lock();
+        try {
+            // Listas de todos los trigramas de la consulta, de la más corta a la más larga
+            long[] trigrams = trigrams(query);
+            Postings[] lists = new Postings[trigrams.length];
+            for (int i = 0; i < trigrams.length; i++) {
+                lists[i] = postings.get(trigrams[i]);
+                if (lists[i] == null) {
+                    return List.of();
+                }
+            }
+            Arrays.sort(lists, Comparator.comparingInt(list -> list.size));
+
+            // Los mejores "limit" resultados en un montículo de mínimos
+            Comparator<Match> ranking = Comparator.comparingInt(Match::score)
+                    .thenComparing(Comparator.comparingLong(Match::id).reversed());
+            PriorityQueue<Match> top = new PriorityQueue<>(Math.max(1, limit), ranking);
+
+            // Intersección: cada lista avanza con búsqueda exponencial desde su última
+            // posición, así que una lista larga no se recorre entera
+            Postings smallest = lists[0];
+            int[] positions = new int[lists.length];
+            candidates:
+            for (int i = 0; i < smallest.size; i++) {
+                int row = smallest.rows[i];
+                for (int j = 1; j < lists.length; j++) {
+                    positions[j] = lists[j].seek(row, positions[j]);
+                    if (positions[j] == lists[j].size) {
+                        break candidates;
+                    }
+                    if (lists[j].rows[positions[j]] != row) {
+                        continue candidates;
+                    }
+                }
+                // Tener todos los trigramas no garantiza contener el fragmento completo
+                int score = score(query, names[row], emails[row]);
+                if (score > 0) {
+                    top.add(new Match(ids[row], score));
+                    if (top.size() > limit) {
+                        top.poll();
+                    }
+                }
+            }
+
+            List<Match> matches = new ArrayList<>(top);
+            matches.sort(ranking.reversed());
+            return matches;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Relevancia de un usuario para la consulta (0 si no la contiene).
+     * Coincidencia exacta > al principio del campo > al principio de una palabra
+     * (tras espacio, '.', '@', '-', '_') > en medio; a igualdad, gana el campo más corto.
+     *
+     * @param query Consulta ya en minúsculas
+     */
+    public static int score(String query, String name, String email) {
+        return Math.max(fieldScore(query, name), fieldScore(query, email));
+    }
+
+    /**
+     * Vuelve a cargar todos los usuarios desde la base de datos
+     */
+    public void reload() {
+        loadLock.lock();
+        try {
+            startLoading();
+            List<User> rows = null;
+            try {
+                rows = readRows();
+            } finally {
+                finishLoading(rows);
+            }
+        } finally {
+            loadLock.unlock();
+        }
+    }
+
+    /**
+     * Sustituye el contenido del índice por los usuarios indicados (solo se usan id, name y email)
+     */
+    public void load(List<User> rows) {
+        loadLock.lock();
+        try {
+            startLoading();
+            finishLoading(rows);
+        } finally {
+            loadLock.unlock();
+        }
+    }
+
+    private static List<User> readRows() {
+        List<User> rows = new ArrayList<>();
+        try (Connection conn = DatabaseConfig.getConnection();
+             PreparedStatement ps = conn.prepareStatement(LOAD_SQL);
+             ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) {
+                rows.add(new User(rs.getLong(1), rs.getString(2), rs.getString(3), null, null, null, null, null));
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException("Error de base de datos al cargar el índice de trigramas.", e);
+        }
+        return rows;
+    }
+
+    /**
+     * A partir de aquí los eventos se guardan para aplicarlos también sobre la carga nueva
+     */
+    void startLoading() {
+        lock.writeLock().lock();
+        try {
+            pendingChanges.clear();
+            loading = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Sustituye el índice por las filas leídas y les aplica los eventos llegados
+     * durante la lectura (rows null = la lectura falló y se deja todo como estaba)
+     */
+    void finishLoading(List<User> rows) {
+        lock.writeLock().lock();
+        try {
+            if (rows == null) {
+                return;
+            }
+            ids = new long[Math.max(16, rows.size())];
+            names = new String[ids.length];
+            emails = new String[ids.length];
+            rowById = new LongIntMap(rows.size());
+            postings.clear();
+            size = 0;
+            liveCount = 0;
+            for (User row : rows) {
+                upsert(row);
+            }
+            // upsert y borrado por id son idempotentes: da igual si el SELECT ya incluía el cambio
+            for (Runnable change : pendingChanges) {
+                change.run();
+            }
+            loaded = true;
+        } finally {
+            loading = false;
+            pendingChanges.clear();
+            lock.writeLock().unlock();
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        lock.readLock().lock();
+        try {
+            long entries = 0;
+            for (Postings list : postings.values()) {
+                entries += list.size;
+            }
+            Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("loaded", loaded);
+            stats.put("rows", liveCount);
+            stats.put("trigrams", postings.size());
+            stats.put("postings", entries);
+            return stats;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // ========== UserChangeListener ==========
+
+    @Override
+    public void usersInserted(List<User> users) {
+        onChange(() -> {
+            for (User user : users) {
+                upsert(user);
+            }
+        });
+    }
+
+    @Override
+    public void userUpdated(User before, User after) {
+        onChange(() -> upsert(after));
+    }
+
+    @Override
+    public void usersDeleted(List<User> users) {
+        onChange(() -> {
+            for (User user : users) {
+                int row = rowById.get(user.getId());
+                if (row >= 0) {
+                    unindex(row);
+                    rowById.remove(user.getId());
+                    names[row] = null;
+                    emails[row] = null;
+                    liveCount--;
+                }
+            }
+        });
+    }
+
+    // ========== Gestión interna ==========
+
+    /**
+     * Aplica un cambio con el write lock y, si hay una carga en curso, lo guarda para ella.
+     * Sin índice cargado ni carga en curso no hace nada: la primera carga leerá la tabla.
+     */
+    private void onChange(Runnable change) {
+        if (!loaded && !loading) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            if (loading) {
+                pendingChanges.add(change);
+            }
+            if (loaded) {
+                change.run();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void ensureLoaded() {
+        if (loaded) {
+            return;
+        }
+        loadLock.lock();
+        try {
+            if (!loaded) {
+                reload();
+            }
+        } finally {
+            loadLock.unlock();
+        }
+    }
+
+    private void upsert(User user) {
+        int row = rowById.get(user.getId());
+        if (row >= 0) {
+            unindex(row);
+        } else {
+            if (size == ids.length) {
+                int capacity = Math.max(16, size * 2);
+                ids = Arrays.copyOf(ids, capacity);
+                names = Arrays.copyOf(names, capacity);
+                emails = Arrays.copyOf(emails, capacity);
+            }
+            row = size++;
+            ids[row] = user.getId();
+            rowById.put(user.getId(), row);
+            liveCount++;
+        }
+        names[row] = normalize(user.getName());
+        emails[row] = normalize(user.getEmail());
+        for (long trigram : rowTrigrams(row)) {
+            postings.computeIfAbsent(trigram, t -> new Postings()).add(row);
+        }
+    }
+
+    private void unindex(int row) {
+        for (long trigram : rowTrigrams(row)) {
+            Postings list = postings.get(trigram);
+            if (list != null && list.remove(row) && list.size == 0) {
+                postings.remove(trigram);
+            }
+        }
+    }
+
+    /**
+     * Trigramas distintos de name y email de la fila
+     */
+    private long[] rowTrigrams(int row) {
+        long[] fromName = trigrams(names[row]);
+        long[] fromEmail = trigrams(emails[row]);
+        long[] all = Arrays.copyOf(fromName, fromName.length + fromEmail.length);
+        System.arraycopy(fromEmail, 0, all, fromName.length, fromEmail.length);
+        return distinct(all);
+    }
+
+    /**
+     * Trigramas distintos del texto, cada uno empaquetado en un long (3 chars de 16 bits)
+     */
+    private static long[] trigrams(String text) {
+        if (text == null || text.length() < MIN_QUERY_LENGTH) {
+            return new long[0];
+        }
+        long[] trigrams = new long[text.length() - 2];
+        for (int i = 0; i < trigrams.length; i++) {
+            trigrams[i] = ((long) text.charAt(i) << 32) | ((long) text.charAt(i + 1) << 16) | text.charAt(i + 2);
+        }
+        return distinct(trigrams);
+    }
+
+    /**
+     * Ordena y elimina repetidos sin pasar por objetos Long
+     */
+    private static long[] distinct(long[] values) {
+        Arrays.sort(values);
+        int distinct = 0;
+        for (int i = 0; i < values.length; i++) {
+            if (i == 0 || values[i] != values[i - 1]) {
+                values[distinct++] = values[i];
+            }
+        }
+        return distinct == values.length ? values : Arrays.copyOf(values, distinct);
+    }
+
+    private static String normalize(String text) {
+        return text != null ? text.toLowerCase(Locale.ROOT) : "";
+    }
+
+    private static int fieldScore(String query, String field) {
+        if (field == null) {
+            return 0;
+        }
+        int at = field.indexOf(query);
+        if (at < 0) {
+            return 0;
+        }
+        int score;
+        if (field.length() == query.length()) {
+            score = 100;
+        } else if (at == 0) {
+            score = 60;
+        } else if (" .@-_".indexOf(field.charAt(at - 1)) >= 0) {
+            score = 40;
+        } else {
+            score = 20;
+        }
+        // Cobertura: qué parte del campo ocupa la consulta
+        return score + 20 * query.length() / field.length();
+    }
+
+    /**
+     * Filas que contienen un trigrama, ordenadas de menor a mayor
+     */
+    private static final class Postings {
+
+        private int[] rows = new int[4];
+        private int size;
+
+        void add(int row) {
+            // Caso habitual: las filas nuevas tienen el número más alto
+            if (size == 0 || rows[size - 1] < row) {
+                grow();
+                rows[size++] = row;
+                return;
+            }
+            int at = Arrays.binarySearch(rows, 0, size, row);
+            if (at >= 0) {
+                return;
+            }
+            int insertAt = -at - 1;
+            grow();
+            System.arraycopy(rows, insertAt, rows, insertAt + 1, size - insertAt);
+            rows[insertAt] = row;
+            size++;
+        }
+
+        boolean remove(int row) {
+            int at = Arrays.binarySearch(rows, 0, size, row);
+            if (at < 0) {
+                return false;
+            }
+            System.arraycopy(rows, at + 1, rows, at, size - at - 1);
+            size--;
+            return true;
+        }
+
+        /**
+         * Primera posición desde from cuyo valor es >= row (size si no hay ninguna)
+         */
+        int seek(int row, int from) {
+            int step = 1;
+            int high = from;
+            while (high < size && rows[high] < row) {
+                from = high + 1;
+                high += step;
+                step <<= 1;
+            }
+            int at = Arrays.binarySearch(rows, from, Math.min(high + 1, size), row);
+            return at >= 0 ? at : -at - 1;
+        }
+
+        private void grow() {
+            if (size == rows.length) {
+                rows = Arrays.copyOf(rows, size * 2);
+            }
+        }
+    }
+}
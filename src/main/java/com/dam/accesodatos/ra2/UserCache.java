@@ -0,0 +1,217 @@
+package com.dam.accesodatos.ra2;
+
+import com.dam.accesodatos.model.User;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Caché read-through de usuarios por ID, delante de findUserById()
+ *
+ * - LRU: LinkedHashMap en orden de acceso; al pasar de maxEntries se expulsa el menos usado
+ * - TTL: cada entrada caduca ttlMs después de cargarse, aunque nadie la haya invalidado
+ * - No se guardan los "no encontrado": un INSERT nunca deja una entrada obsoleta
+ *
+ * Las escrituras del servicio le llegan como UserChangeListener e invalidan los IDs afectados.
+ * Una carga que empezó antes de una invalidación no guarda su resultado (contador de
+ * generación), así que una lectura lenta no puede devolver a la caché una fila ya modificada.
+ *
+ * Se devuelven copias: quien modifique el User recibido no altera la caché.
+ */
+public final class UserCache implements UserChangeListener {
+
+    /** Carga de un usuario desde la base de datos (null si no existe) */
+    @FunctionalInterface
+    public interface Loader {
+        User load(Long id);
+    }
+
+    private final int maxEntries;
+    private final long ttlNanos;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Map<Long, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    // Aumenta con cada invalidación; una carga solo se guarda si no ha cambiado mientras tanto
+    private final AtomicLong generation = new AtomicLong();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder expirations = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+    private final LongAdder loadNanos = new LongAdder();
+
+    /**
+     * @param maxEntries Número máximo de usuarios en caché (0 = caché desactivada)
+     * @param ttlMs      Vida máxima de cada entrada (0 = sin caducidad)
+     */
+    public UserCache(int maxEntries, long ttlMs) {
+        this.maxEntries = Math.max(0, maxEntries);
+        this.ttlNanos = ttlMs > 0 ? ttlMs * 1_000_000L : Long.MAX_VALUE;
+    }
+
+    public boolean isEnabled() {
+        return maxEntries > 0;
+    }
+
+    /**
+     * Devuelve el usuario desde la caché o, si no está (o ha caducado), lo carga con loader.
+     */
+    public User get(Long id, Loader loader) {
+        if (!isEnabled() || id == null) {
+            return loader.load(id);
+        }
+
+        long now = System.nanoTime();
+        lock.lock();
+        try {
+            Entry entry = entries.get(id);
+            if (entry != null) {
+                if (now - entry.loadedAt < ttlNanos) {
+                    hits.increment();
+                    return copy(entry.user);
+                }
+                entries.remove(id);
+                expirations.increment();
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        misses.increment();
+        long startGeneration = generation.get();
+        User user = loader.load(id);
+        long loadedAt = System.nanoTime();
+        loadNanos.add(loadedAt - now);
+
+        if (user != null) {
+            lock.lock();
+            try {
+                if (generation.get() == startGeneration) {
+                    entries.put(id, new Entry(copy(user), loadedAt));
+                    evictOverflow();
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+        return user;
+    }
+
+    public void invalidate(Long id) {
+        if (!isEnabled() || id == null) {
+            return;
+        }
+        lock.lock();
+        try {
+            generation.incrementAndGet();
+            entries.remove(id);
+            invalidations.increment();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void invalidate(Collection<Long> ids) {
+        if (!isEnabled() || ids.isEmpty()) {
+            return;
+        }
+        lock.lock();
+        try {
+            generation.incrementAndGet();
+            for (Long id : ids) {
+                entries.remove(id);
+            }
+            invalidations.add(ids.size());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void invalidateAll() {
+        if (!isEnabled()) {
+            return;
+        }
+        lock.lock();
+        try {
+            generation.incrementAndGet();
+            invalidations.add(entries.size());
+            entries.clear();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void usersInserted(List<User> users) {
+        invalidate(ids(users));
+    }
+
+    @Override
+    public void userUpdated(User before, User after) {
+        invalidate(after.getId());
+    }
+
+    @Override
+    public void usersDeleted(List<User> users) {
+        invalidate(ids(users));
+    }
+
+    public int size() {
+        lock.lock();
+        try {
+            return entries.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", isEnabled());
+        if (!isEnabled()) {
+            return stats;
+        }
+        long hitCount = hits.sum();
+        long missCount = misses.sum();
+        stats.put("max_entries", maxEntries);
+        stats.put("ttl_ms", ttlNanos == Long.MAX_VALUE ? 0 : ttlNanos / 1_000_000L);
+        stats.put("size", size());
+        stats.put("hits", hitCount);
+        stats.put("misses", missCount);
+        stats.put("hit_ratio", hitCount + missCount == 0 ? 0.0 : (double) hitCount / (hitCount + missCount));
+        stats.put("evictions", evictions.sum());
+        stats.put("expirations", expirations.sum());
+        stats.put("invalidations", invalidations.sum());
+        stats.put("avg_load_ms", missCount == 0 ? 0.0
+                : Math.round(loadNanos.sum() / (double) missCount / 10_000.0) / 100.0);
+        return stats;
+    }
+
+    private void evictOverflow() {
+        Iterator<Entry> eldest = entries.values().iterator();
+        while (entries.size() > maxEntries && eldest.hasNext()) {
+            eldest.next();
+            eldest.remove();
+            evictions.increment();
+        }
+    }
+
+    private static List<Long> ids(List<User> users) {
+        return users.stream().map(User::getId).toList();
+    }
+
+    static User copy(User user) {
+        return new User(user.getId(), user.getName(), user.getEmail(), user.getDepartment(),
+                user.getRole(), user.getActive(), user.getCreatedAt(), user.getUpdatedAt());
+    }
+
+    private record Entry(User user, long loadedAt) {
+    }
+}
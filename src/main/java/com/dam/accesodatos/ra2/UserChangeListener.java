@@ -0,0 +1,42 @@
+package com.dam.accesodatos.ra2;
+
+import com.dam.accesodatos.model.User;
+
+import java.util.List;
+
+/**
+ * Recibe los cambios de la tabla users hechos a través de DatabaseUserService
+ *
+ * Lo usan las estructuras en memoria que se mantienen al día sin volver a consultar
+ * la base de datos (UserCache, DepartmentCounters). Cada método se llama DESPUÉS del
+ * commit, con las filas tal y como quedan (o quedaban) en la tabla:
+ *
+ * service.addUserChangeListener(new UserChangeListener() {
+ *     public void usersInserted(List<User> users) { ... }
+ * });
+ *
+ * Las llamadas llegan desde el hilo que hizo la escritura, posiblemente desde varios
+ * hilos a la vez: las implementaciones deben ser thread-safe y rápidas.
+ *
+ * Las escrituras hechas fuera del servicio (scripts SQL, otra aplicación) no se notifican.
+ */
+public interface UserChangeListener {
+
+    /**
+     * Filas insertadas y confirmadas, con el ID generado
+     */
+    default void usersInserted(List<User> users) {
+    }
+
+    /**
+     * Fila modificada: before es la fila anterior al UPDATE y after la resultante
+     */
+    default void userUpdated(User before, User after) {
+    }
+
+    /**
+     * Filas eliminadas, tal y como estaban antes del DELETE
+     */
+    default void usersDeleted(List<User> users) {
+    }
+}
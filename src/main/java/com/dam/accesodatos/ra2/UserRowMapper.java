@@ -0,0 +1,128 @@
+package com.dam.accesodatos.ra2;
+
+import com.dam.accesodatos.config.DatabaseConfig;
+import com.dam.accesodatos.model.User;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Mapeador ResultSet → User "compilado" para una forma de resultado concreta.
+ *
+ * rs.getString("name") obliga al driver a buscar la columna por nombre en cada fila.
+ * Este mapeador resuelve los índices de las columnas UNA vez, a partir de
+ * ResultSetMetaData, y después lee cada fila por posición:
+ *
+ * UserRowMapper mapper = UserRowMapper.forQuery(sql, rs);
+ * while (rs.next()) {
+ *     users.add(mapper.map(rs));
+ * }
+ *
+ * Además:
+ * - Las fechas se leen con getObject(idx, LocalDateTime.class), sin crear Timestamp
+ * - El User se crea con el constructor completo, sin los LocalDateTime.now()
+ *   del constructor vacío y de los setters
+ *
+ * Los mapeadores se guardan por texto SQL: la misma consulta siempre tiene la misma forma
+ * mientras no cambie el esquema (DatabaseConfig.getSchemaVersion()).
+ */
+public final class UserRowMapper {
+
+    private static final Map<String, UserRowMapper> BY_SQL = new ConcurrentHashMap<>();
+
+    // Versión del esquema con la que se compilaron los mapeadores de BY_SQL
+    private static volatile long schemaVersion = DatabaseConfig.getSchemaVersion();
+
+    // Índices (base 1) de cada columna; 0 si la consulta no la incluye
+    private final int id;
+    private final int name;
+    private final int email;
+    private final int department;
+    private final int role;
+    private final int active;
+    private final int createdAt;
+    private final int updatedAt;
+
+    private UserRowMapper(int id, int name, int email, int department, int role,
+                          int active, int createdAt, int updatedAt) {
+        this.id = id;
+        this.name = name;
+        this.email = email;
+        this.department = department;
+        this.role = role;
+        this.active = active;
+        this.createdAt = createdAt;
+        this.updatedAt = updatedAt;
+    }
+
+    /**
+     * Mapeador para la consulta indicada, compilándolo la primera vez que se ejecuta.
+     *
+     * @param sql Texto SQL que produjo el ResultSet (clave de la caché)
+     * @param rs  ResultSet de esa consulta (solo se lee su metadata si hay que compilar)
+     */
+    public static UserRowMapper forQuery(String sql, ResultSet rs) throws SQLException {
+        long currentVersion = DatabaseConfig.getSchemaVersion();
+        if (currentVersion != schemaVersion) {
+            // Tras un DDL las columnas pueden estar en otras posiciones
+            BY_SQL.clear();
+            schemaVersion = currentVersion;
+        }
+        UserRowMapper mapper = BY_SQL.get(sql);
+        if (mapper == null) {
+            mapper = compile(rs.getMetaData());
+            BY_SQL.putIfAbsent(sql, mapper);
+        }
+        return mapper;
+    }
+
+    /**
+     * Resuelve la posición de cada columna de users en el resultado.
+     */
+    public static UserRowMapper compile(ResultSetMetaData metaData) throws SQLException {
+        int id = 0, name = 0, email = 0, department = 0, role = 0, active = 0, createdAt = 0, updatedAt = 0;
+        for (int i = 1; i <= metaData.getColumnCount(); i++) {
+            switch (metaData.getColumnLabel(i).toLowerCase(Locale.ROOT)) {
+                case "id" -> id = i;
+                case "name" -> name = i;
+                case "email" -> email = i;
+                case "department" -> department = i;
+                case "role" -> role = i;
+                case "active" -> active = i;
+                case "created_at" -> createdAt = i;
+                case "updated_at" -> updatedAt = i;
+                default -> { }
+            }
+        }
+        return new UserRowMapper(id, name, email, department, role, active, createdAt, updatedAt);
+    }
+
+    /**
+     * Olvida los mapeadores compilados (necesario si cambia la estructura de la tabla).
+     */
+    public static void clearCache() {
+        BY_SQL.clear();
+    }
+
+    /**
+     * Convierte la fila actual del ResultSet en un User.
+     *
+     * @param rs ResultSet posicionado en una fila válida
+     */
+    public User map(ResultSet rs) throws SQLException {
+        return new User(
+                id > 0 ? rs.getLong(id) : null,
+                name > 0 ? rs.getString(name) : null,
+                email > 0 ? rs.getString(email) : null,
+                department > 0 ? rs.getString(department) : null,
+                role > 0 ? rs.getString(role) : null,
+                active > 0 ? rs.getBoolean(active) : null,
+                createdAt > 0 ? rs.getObject(createdAt, LocalDateTime.class) : null,
+                updatedAt > 0 ? rs.getObject(updatedAt, LocalDateTime.class) : null);
+    }
+}
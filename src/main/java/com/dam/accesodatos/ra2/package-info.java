@@ -44,7 +44,7 @@
  * <ul>
  *   <li>Cláusulas WHERE con múltiples condiciones</li>
  *   <li>Construcción dinámica de queries SQL</li>
- *   <li>Paginación con LIMIT y OFFSET</li>
+ *   <li>Paginación por clave (cursor "after") con LIMIT, y OFFSET como alternativa</li>
  *   <li>Ordenamiento con ORDER BY</li>
  *   <li>Búsquedas con filtros opcionales</li>
  * </ul>
@@ -186,7 +186,7 @@
  *
  * <h2>Estructura del Paquete</h2>
  * <ul>
- *   <li>{@link com.dam.accesodatos.ra2.DatabaseUserService} - Interface con 15 métodos @Tool</li>
+ *   <li>{@link com.dam.accesodatos.ra2.DatabaseUserService} - Interface con 18 métodos @Tool</li>
  *   <li>{@link com.dam.accesodatos.ra2.DatabaseUserServiceImpl} - Implementación (5 ejemplos + 10 TODOs)</li>
  * </ul>
  *
@@ -23,6 +23,7 @@ CREATE INDEX idx_users_department ON users(department);
 CREATE INDEX idx_users_role ON users(role);
 CREATE INDEX idx_users_active ON users(active);
 CREATE INDEX idx_users_email ON users(email);
+CREATE INDEX idx_users_created_at ON users(created_at DESC, id DESC);
 
 -- Tabla para estadísticas agregadas (opcional - para JOINs avanzados)
 CREATE TABLE user_statistics (
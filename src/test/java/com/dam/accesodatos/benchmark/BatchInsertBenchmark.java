@@ -0,0 +1,89 @@
+package com.dam.accesodatos.benchmark;
+
+import com.dam.accesodatos.config.DatabaseConfig;
+import com.dam.accesodatos.model.BatchInsertResult;
+import com.dam.accesodatos.model.User;
+import com.dam.accesodatos.ra2.DatabaseUserServiceImpl;
+
+import java.sql.Connection;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Benchmark: tamaño de bloque y paralelismo de batchInsertUsers sobre H2
+ *
+ * Inserta N usuarios con cada combinación de chunk-size y parallelism,
+ * borrándolos entre pasadas, y muestra las filas por segundo de cada una
+ * y la combinación más rápida (candidata para ra2.batch en application.yml).
+ *
+ * Ejecutar:
+ * ./gradlew benchmark -PbenchClass=com.dam.accesodatos.benchmark.BatchInsertBenchmark
+ *
+ * Argumentos opcionales: [filas=200000] [repeticiones=3]
+ */
+public class BatchInsertBenchmark {
+
+    private static final int[] CHUNK_SIZES = {100, 500, 1000, 5000, 20000};
+    private static final int[] PARALLELISM = {1, 2, 4};
+
+    public static void main(String[] args) throws Exception {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+        int repetitions = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+
+        DatabaseConfig.initializeDatabase();
+        DatabaseUserServiceImpl service = new DatabaseUserServiceImpl();
+        List<User> users = buildUsers(rows);
+
+        System.out.println("=== BENCHMARK: batchInsertUsers POR BLOQUES ===");
+        System.out.printf("Filas: %d | Repeticiones: %d%n%n", rows, repetitions);
+
+        // Calentamiento del JIT y del pool
+        service.batchInsertUsersChunked(users.subList(0, Math.min(rows, 20_000)), 1000, 1);
+        deleteBenchmarkUsers();
+
+        System.out.printf("%-10s %-12s %14s%n", "chunk", "parallelism", "filas/s");
+        double best = 0;
+        String bestLabel = "";
+        for (int parallelism : PARALLELISM) {
+            for (int chunk : CHUNK_SIZES) {
+                double total = 0;
+                for (int r = 0; r < repetitions; r++) {
+                    BatchInsertResult result = service.batchInsertUsersChunked(users, chunk, parallelism);
+                    total += result.getRowsPerSecond();
+                    deleteBenchmarkUsers();
+                }
+                double rowsPerSecond = total / repetitions;
+                System.out.printf("%-10d %-12d %14.0f%n", chunk, parallelism, rowsPerSecond);
+                if (rowsPerSecond > best) {
+                    best = rowsPerSecond;
+                    bestLabel = "chunk-size=" + chunk + ", parallelism=" + parallelism;
+                }
+            }
+        }
+        System.out.printf("%nMejor combinación: %s (%.0f filas/s)%n", bestLabel, best);
+
+        DatabaseConfig.shutdownPool();
+    }
+
+    private static List<User> buildUsers(int rows) {
+        String[] departments = {"IT", "HR", "Finance", "Marketing", "Sales"};
+        List<User> users = new ArrayList<>(rows);
+        for (int i = 0; i < rows; i++) {
+            User user = new User();
+            user.setName("Bench User " + i);
+            user.setEmail("bench" + i + "@bench.com");
+            user.setDepartment(departments[i % departments.length]);
+            user.setRole("Role " + (i % 7));
+            users.add(user);
+        }
+        return users;
+    }
+
+    private static void deleteBenchmarkUsers() throws Exception {
+        try (Connection conn = DatabaseConfig.getConnection();
+             Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate("DELETE FROM users WHERE email LIKE 'bench%@bench.com'");
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package com.dam.accesodatos.benchmark;
+
+import com.dam.accesodatos.config.DatabaseConfig;
+import com.dam.accesodatos.config.Ra2Properties;
+import com.dam.accesodatos.model.UserCreateDto;
+import com.dam.accesodatos.ra2.DatabaseUserServiceImpl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Benchmark: create_user concurrentes con y sin group commit
+ *
+ * N clientes (un virtual thread cada uno) hacen altas seguidas. Se mide el rendimiento
+ * total (altas/s) y la latencia de cada llamada (p50 y p99) para:
+ *
+ * - auto-commit: cada alta es su propia transacción (comportamiento por defecto)
+ * - group commit con varias ventanas (ra2.group-commit.window-micros)
+ *
+ * Una ventana más larga junta grupos más grandes (menos commits) a cambio de que cada
+ * alta espere más antes de insertarse.
+ *
+ * Ejecutar:
+ * ./gradlew benchmark -PbenchClass=com.dam.accesodatos.benchmark.GroupCommitBenchmark
+ *
+ * Argumentos opcionales: [clientes=64] [altasPorCliente=200] [maxRows=100] [ventanasMicros=50,200,1000,5000]
+ */
+public class GroupCommitBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int clients = args.length > 0 ? Integer.parseInt(args[0]) : 64;
+        int callsPerClient = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+        int maxRows = args.length > 2 ? Integer.parseInt(args[2]) : 100;
+        long[] windows = args.length > 3
+                ? Arrays.stream(args[3].split(",")).mapToLong(Long::parseLong).toArray()
+                : new long[]{50, 200, 1000, 5000};
+
+        DatabaseConfig.initializeDatabase();
+
+        System.out.println("=== BENCHMARK: GROUP COMMIT DE CREATE_USER ===");
+        System.out.printf("Clientes: %d | Altas por cliente: %d | max-rows: %d%n%n", clients, callsPerClient, maxRows);
+
+        // Calentamiento (JIT, pool de conexiones, caché de statements)
+        run(service(false, 200, maxRows), "warmup-a", clients, 20);
+        run(service(true, 200, maxRows), "warmup-b", clients, 20);
+
+        System.out.printf("%-22s %10s %10s %10s %12s%n", "Modo", "altas/s", "p50 µs", "p99 µs", "media grupo");
+        Result direct = run(service(false, 0, maxRows), "direct", clients, callsPerClient);
+        print("auto-commit", direct, null);
+        for (long window : windows) {
+            DatabaseUserServiceImpl grouped = service(true, window, maxRows);
+            Result result = run(grouped, "w" + window, clients, callsPerClient);
+            print("ventana " + window + " µs", result, grouped.getGroupCommitStats());
+        }
+
+        DatabaseConfig.shutdownPool();
+    }
+
+    private static DatabaseUserServiceImpl service(boolean groupCommit, long windowMicros, int maxRows) {
+        Ra2Properties properties = new Ra2Properties();
+        properties.getGroupCommit().setEnabled(groupCommit);
+        properties.getGroupCommit().setWindowMicros(windowMicros);
+        properties.getGroupCommit().setMaxRows(maxRows);
+        return new DatabaseUserServiceImpl(properties);
+    }
+
+    private record Result(double perSecond, long p50Micros, long p99Micros) {
+    }
+
+    /**
+     * Cada cliente hace sus altas en serie; se guarda la latencia de todas las llamadas
+     */
+    private static Result run(DatabaseUserServiceImpl service, String prefix, int clients, int callsPerClient)
+            throws Exception {
+        long[] latencies = new long[clients * callsPerClient];
+        long start = System.nanoTime();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<?>> futures = new ArrayList<>(clients);
+            for (int c = 0; c < clients; c++) {
+                final int client = c;
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < callsPerClient; i++) {
+                        String email = prefix + "-" + client + "-" + i + "@bench.local";
+                        long callStart = System.nanoTime();
+                        service.createUser(new UserCreateDto("Bench " + i, email, "BENCH", "Dev"));
+                        latencies[client * callsPerClient + i] = System.nanoTime() - callStart;
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        }
+        double seconds = (System.nanoTime() - start) / 1_000_000_000.0;
+
+        Arrays.sort(latencies);
+        return new Result(latencies.length / seconds,
+                latencies[latencies.length / 2] / 1_000,
+                latencies[(int) (latencies.length * 0.99)] / 1_000);
+    }
+
+    private static void print(String mode, Result result, Map<String, Object> stats) {
+        String avgBatch = stats != null ? String.format("%.1f", (double) stats.get("avg_batch_size")) : "1.0";
+        System.out.printf("%-22s %10.0f %10d %10d %12s%n",
+                mode, result.perSecond(), result.p50Micros(), result.p99Micros(), avgBatch);
+    }
+}
@@ -0,0 +1,139 @@
+package com.dam.accesodatos.benchmark;
+
+import com.dam.accesodatos.model.User;
+import com.dam.accesodatos.ra2.UserRowMapper;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+
+/**
+ * Benchmark: mapeo por nombre de columna vs UserRowMapper (por índice)
+ *
+ * Crea una tabla users en una base de datos H2 en memoria propia, la llena
+ * y la lee completa varias veces con cada estrategia, midiendo filas por segundo.
+ *
+ * - "por nombre": el mapeo que había en el servicio (constructor vacío,
+ *   setters, rs.getString("name"), rs.getTimestamp(...).toLocalDateTime())
+ * - "compilado": UserRowMapper con índices resueltos una vez y getObject(idx, LocalDateTime.class)
+ *
+ * Ejecutar:
+ * ./gradlew benchmark -PbenchClass=com.dam.accesodatos.benchmark.RowMapperBenchmark
+ *
+ * Argumentos opcionales: [filas=200000] [iteraciones=10]
+ */
+public class RowMapperBenchmark {
+
+    private static final String URL = "jdbc:h2:mem:bench_rows;DB_CLOSE_DELAY=-1";
+    private static final String SQL = "SELECT * FROM users";
+
+    public static void main(String[] args) throws Exception {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+        int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+
+        try (Connection conn = DriverManager.getConnection(URL, "sa", "")) {
+            createTable(conn, rows);
+
+            System.out.println("=== BENCHMARK: MAPEO DE ResultSet A User ===");
+            System.out.printf("Filas: %d | Iteraciones: %d%n%n", rows, iterations);
+
+            // Calentamiento del JIT con ambas estrategias
+            for (int i = 0; i < 3; i++) {
+                readByName(conn);
+                readCompiled(conn);
+            }
+
+            long byNameNanos = 0;
+            long compiledNanos = 0;
+            for (int i = 0; i < iterations; i++) {
+                long start = System.nanoTime();
+                readByName(conn);
+                byNameNanos += System.nanoTime() - start;
+
+                start = System.nanoTime();
+                readCompiled(conn);
+                compiledNanos += System.nanoTime() - start;
+            }
+
+            double byName = rowsPerSecond(rows, iterations, byNameNanos);
+            double compiled = rowsPerSecond(rows, iterations, compiledNanos);
+            System.out.printf("%-14s %14s%n", "Estrategia", "filas/s");
+            System.out.printf("%-14s %14.0f%n", "por nombre", byName);
+            System.out.printf("%-14s %14.0f%n", "compilado", compiled);
+            System.out.printf("%nMejora: x%.2f%n", compiled / byName);
+        }
+    }
+
+    private static long readByName(Connection conn) throws Exception {
+        long checksum = 0;
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery(SQL)) {
+            while (rs.next()) {
+                User user = new User();
+                user.setId(rs.getLong("id"));
+                user.setName(rs.getString("name"));
+                user.setEmail(rs.getString("email"));
+                user.setDepartment(rs.getString("department"));
+                user.setRole(rs.getString("role"));
+                user.setActive(rs.getBoolean("active"));
+                user.setCreatedAt(rs.getTimestamp("created_at").toLocalDateTime());
+                user.setUpdatedAt(rs.getTimestamp("updated_at").toLocalDateTime());
+                checksum += user.getId();
+            }
+        }
+        return checksum;
+    }
+
+    private static long readCompiled(Connection conn) throws Exception {
+        long checksum = 0;
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery(SQL)) {
+            UserRowMapper mapper = UserRowMapper.forQuery(SQL, rs);
+            while (rs.next()) {
+                checksum += mapper.map(rs).getId();
+            }
+        }
+        return checksum;
+    }
+
+    private static void createTable(Connection conn, int rows) throws Exception {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("DROP TABLE IF EXISTS users");
+            stmt.execute("CREATE TABLE users (id BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY, "
+                    + "name VARCHAR(50) NOT NULL, email VARCHAR(100) UNIQUE NOT NULL, "
+                    + "department VARCHAR(50) NOT NULL, role VARCHAR(50) NOT NULL, active BOOLEAN DEFAULT TRUE, "
+                    + "created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP, updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP)");
+        }
+        String[] departments = {"IT", "HR", "Finance", "Marketing", "Sales"};
+        conn.setAutoCommit(false);
+        try (PreparedStatement ps = conn.prepareStatement(
+                "INSERT INTO users (name, email, department, role, active, created_at, updated_at) "
+                        + "VALUES (?, ?, ?, ?, ?, ?, ?)")) {
+            Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+            for (int i = 0; i < rows; i++) {
+                ps.setString(1, "User " + i);
+                ps.setString(2, "user" + i + "@bench.com");
+                ps.setString(3, departments[i % departments.length]);
+                ps.setString(4, "Role " + (i % 7));
+                ps.setBoolean(5, i % 10 != 0);
+                ps.setTimestamp(6, now);
+                ps.setTimestamp(7, now);
+                ps.addBatch();
+                if (i % 1000 == 999) {
+                    ps.executeBatch();
+                }
+            }
+            ps.executeBatch();
+        }
+        conn.commit();
+        conn.setAutoCommit(true);
+    }
+
+    private static double rowsPerSecond(int rows, int iterations, long nanos) {
+        return rows * (double) iterations / (nanos / 1_000_000_000.0);
+    }
+}
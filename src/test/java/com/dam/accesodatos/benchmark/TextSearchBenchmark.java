@@ -0,0 +1,112 @@
+package com.dam.accesodatos.benchmark;
+
+import com.dam.accesodatos.config.DatabaseConfig;
+import com.dam.accesodatos.config.Ra2Properties;
+import com.dam.accesodatos.model.User;
+import com.dam.accesodatos.ra2.DatabaseUserServiceImpl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Benchmark: search_users_text con LIKE '%texto%' vs índice de trigramas (ra2.text-index)
+ *
+ * Inserta usuarios sintéticos con nombres y emails variados y repite las mismas
+ * búsquedas por fragmento con ambas implementaciones. La carga inicial del índice
+ * se mide aparte.
+ *
+ * Ejecutar:
+ * ./gradlew benchmark -PbenchClass=com.dam.accesodatos.benchmark.TextSearchBenchmark
+ *
+ * Argumentos opcionales: [filas=1000000] [repeticiones=20]
+ */
+public class TextSearchBenchmark {
+
+    private static final String[] FIRST_NAMES = {
+            "Ana", "Luis", "María", "Carlos", "Lucía", "Javier", "Elena", "Pablo", "Sara", "Diego",
+            "Marta", "Jorge", "Laura", "Sergio", "Paula", "Raúl", "Irene", "Hugo", "Nuria", "Iván"};
+    private static final String[] LAST_NAMES = {
+            "García", "Martínez", "López", "Sánchez", "Pérez", "Gómez", "Martín", "Jiménez", "Ruiz",
+            "Hernández", "Díaz", "Moreno", "Álvarez", "Romero", "Alonso", "Gutiérrez", "Navarro",
+            "Torres", "Domínguez", "Vázquez"};
+    private static final String[] DOMAINS = {"empresa.es", "correo.com", "dam.edu", "bench.org"};
+
+    private static final String[] QUERIES = {"garc", "pérez", "lucía mor", "user4242", "dam.edu", "zzz"};
+
+    public static void main(String[] args) throws Exception {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int repetitions = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+
+        DatabaseConfig.initializeDatabase();
+        DatabaseUserServiceImpl like = new DatabaseUserServiceImpl();
+        Ra2Properties properties = new Ra2Properties();
+        properties.getTextIndex().setEnabled(true);
+        DatabaseUserServiceImpl indexed = new DatabaseUserServiceImpl(properties);
+
+        System.out.println("=== BENCHMARK: search_users_text LIKE vs TRIGRAMAS ===");
+        System.out.printf("Filas: %d | Repeticiones: %d%n%n", rows, repetitions);
+
+        insertUsers(like, rows);
+
+        long start = System.nanoTime();
+        indexed.searchUsersText(QUERIES[0], 10);
+        System.out.printf("Carga del índice: %d ms | %s%n%n",
+                (System.nanoTime() - start) / 1_000_000, indexed.getTextIndexStats());
+
+        System.out.printf("%-12s %8s %14s %14s %10s%n", "Texto", "results", "LIKE ms", "trigramas ms", "mejora");
+        for (String query : QUERIES) {
+            // Calentamiento y comprobación de que ambos devuelven lo mismo
+            int results = like.searchUsersText(query, 10).size();
+            if (results != indexed.searchUsersText(query, 10).size()) {
+                throw new IllegalStateException("Resultados distintos para " + query);
+            }
+
+            long likeNanos = 0;
+            long indexNanos = 0;
+            for (int r = 0; r < repetitions; r++) {
+                start = System.nanoTime();
+                like.searchUsersText(query, 10);
+                likeNanos += System.nanoTime() - start;
+
+                start = System.nanoTime();
+                indexed.searchUsersText(query, 10);
+                indexNanos += System.nanoTime() - start;
+            }
+            double likeMs = likeNanos / 1_000_000.0 / repetitions;
+            double indexMs = indexNanos / 1_000_000.0 / repetitions;
+            System.out.printf("%-12s %8d %14.2f %14.2f %9.0fx%n", query, results, likeMs, indexMs, likeMs / indexMs);
+        }
+
+        // Sin DELETE final: la base de datos en memoria desaparece al terminar
+        DatabaseConfig.shutdownPool();
+    }
+
+    /**
+     * Inserta en transacciones de 50.000 filas, generando cada bloque justo antes:
+     * con un millón de filas en una sola lista y una sola transacción, H2 y el índice
+     * compiten por la misma memoria
+     */
+    private static void insertUsers(DatabaseUserServiceImpl service, int rows) {
+        Random random = new Random(42);
+        for (int from = 0; from < rows; from += 50_000) {
+            service.transferDataBatched(buildUsers(random, from, Math.min(rows, from + 50_000)), 5000, true);
+        }
+    }
+
+    private static List<User> buildUsers(Random random, int from, int to) {
+        List<User> users = new ArrayList<>(to - from);
+        for (int i = from; i < to; i++) {
+            String first = FIRST_NAMES[random.nextInt(FIRST_NAMES.length)];
+            String last = LAST_NAMES[random.nextInt(LAST_NAMES.length)];
+            String second = LAST_NAMES[random.nextInt(LAST_NAMES.length)];
+            User user = new User();
+            user.setName(first + " " + last + " " + second);
+            user.setEmail("user" + i + "." + last.toLowerCase() + "@" + DOMAINS[i % DOMAINS.length]);
+            user.setDepartment("IT");
+            user.setRole("Dev");
+            users.add(user);
+        }
+        return users;
+    }
+}
@@ -0,0 +1,86 @@
+package com.dam.accesodatos.benchmark;
+
+import com.dam.accesodatos.config.DatabaseConfig;
+import com.dam.accesodatos.model.User;
+import com.dam.accesodatos.ra2.DatabaseUserServiceImpl;
+
+import java.sql.Connection;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Benchmark: transferData (executeUpdate por fila) vs transferDataBatched (executeBatch por bloque)
+ *
+ * Ambos insertan los mismos usuarios en una única transacción; los usuarios
+ * se borran entre pasadas.
+ *
+ * Ejecutar:
+ * ./gradlew benchmark -PbenchClass=com.dam.accesodatos.benchmark.TransferBenchmark
+ *
+ * Argumentos opcionales: [filas=100000] [chunkSize=1000] [repeticiones=3]
+ */
+public class TransferBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        int chunkSize = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+        int repetitions = args.length > 2 ? Integer.parseInt(args[2]) : 3;
+
+        DatabaseConfig.initializeDatabase();
+        DatabaseUserServiceImpl service = new DatabaseUserServiceImpl();
+        List<User> users = buildUsers(rows);
+
+        System.out.println("=== BENCHMARK: transferData FILA A FILA vs BATCH ===");
+        System.out.printf("Filas: %d | chunkSize: %d | Repeticiones: %d%n%n", rows, chunkSize, repetitions);
+
+        // Calentamiento del JIT y del pool
+        service.transferData(users.subList(0, Math.min(rows, 10_000)));
+        deleteBenchmarkUsers();
+        service.transferDataBatched(users.subList(0, Math.min(rows, 10_000)), chunkSize, true);
+        deleteBenchmarkUsers();
+
+        long rowByRowNanos = 0;
+        long batchedNanos = 0;
+        for (int r = 0; r < repetitions; r++) {
+            long start = System.nanoTime();
+            service.transferData(users);
+            rowByRowNanos += System.nanoTime() - start;
+            deleteBenchmarkUsers();
+
+            start = System.nanoTime();
+            service.transferDataBatched(users, chunkSize, true);
+            batchedNanos += System.nanoTime() - start;
+            deleteBenchmarkUsers();
+        }
+
+        double rowByRow = rows * (double) repetitions / (rowByRowNanos / 1_000_000_000.0);
+        double batched = rows * (double) repetitions / (batchedNanos / 1_000_000_000.0);
+        System.out.printf("%-14s %14s%n", "Modo", "filas/s");
+        System.out.printf("%-14s %14.0f%n", "fila a fila", rowByRow);
+        System.out.printf("%-14s %14.0f%n", "batch", batched);
+        System.out.printf("%nMejora: x%.2f%n", batched / rowByRow);
+
+        DatabaseConfig.shutdownPool();
+    }
+
+    private static List<User> buildUsers(int rows) {
+        List<User> users = new ArrayList<>(rows);
+        for (int i = 0; i < rows; i++) {
+            User user = new User();
+            user.setName("Transfer User " + i);
+            user.setEmail("transfer" + i + "@bench.com");
+            user.setDepartment("IT");
+            user.setRole("Dev");
+            users.add(user);
+        }
+        return users;
+    }
+
+    private static void deleteBenchmarkUsers() throws Exception {
+        try (Connection conn = DatabaseConfig.getConnection();
+             Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate("DELETE FROM users WHERE email LIKE 'transfer%@bench.com'");
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.dam.accesodatos.benchmark;
+
+import com.dam.accesodatos.config.DatabaseConfig;
+import com.dam.accesodatos.ra2.DatabaseUserServiceImpl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark: llamadas a herramientas en hilos de plataforma vs virtual threads
+ *
+ * Simula N clientes concurrentes que llaman a find_user_by_id. Cada llamada
+ * incluye una espera de I/O fuera de la base de datos (red, serialización,
+ * esperar al cliente) que en producción bloquea el hilo que atiende la petición.
+ *
+ * - Modo "platform": pool fijo de 200 hilos, como el pool por defecto de Tomcat
+ * - Modo "virtual": un virtual thread por llamada (spring.threads.virtual.enabled=true)
+ *
+ * Ejecutar:
+ * ./gradlew benchmark -PbenchClass=com.dam.accesodatos.benchmark.VirtualThreadBenchmark
+ *
+ * Argumentos opcionales: [clientes=2000] [llamadasPorCliente=20] [latenciaIoMs=5]
+ */
+public class VirtualThreadBenchmark {
+
+    private static final int TOMCAT_MAX_THREADS = 200;
+
+    public static void main(String[] args) throws Exception {
+        int clients = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        int callsPerClient = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+        long ioLatencyMs = args.length > 2 ? Long.parseLong(args[2]) : 5;
+
+        DatabaseConfig.initializeDatabase();
+        DatabaseUserServiceImpl service = new DatabaseUserServiceImpl();
+
+        System.out.println("=== BENCHMARK: PLATFORM THREADS vs VIRTUAL THREADS ===");
+        System.out.printf("Clientes: %d | Llamadas por cliente: %d | Latencia I/O simulada: %d ms%n%n",
+                clients, callsPerClient, ioLatencyMs);
+
+        // Calentamiento (JIT, pool de conexiones, caché de statements)
+        run(Executors.newVirtualThreadPerTaskExecutor(), service, 200, 10, ioLatencyMs);
+
+        double platform = run(Executors.newFixedThreadPool(TOMCAT_MAX_THREADS), service,
+                clients, callsPerClient, ioLatencyMs);
+        double virtual = run(Executors.newVirtualThreadPerTaskExecutor(), service,
+                clients, callsPerClient, ioLatencyMs);
+
+        System.out.printf("%-28s %12s%n", "Modo", "llamadas/s");
+        System.out.printf("%-28s %12.0f%n", "platform (" + TOMCAT_MAX_THREADS + " hilos)", platform);
+        System.out.printf("%-28s %12.0f%n", "virtual threads", virtual);
+        System.out.printf("%nMejora: x%.1f%n", virtual / platform);
+
+        DatabaseConfig.shutdownPool();
+    }
+
+    /**
+     * Lanza un cliente por tarea y mide las llamadas por segundo completadas
+     */
+    private static double run(ExecutorService executor, DatabaseUserServiceImpl service,
+                              int clients, int callsPerClient, long ioLatencyMs) throws Exception {
+        long start = System.nanoTime();
+        try (executor) {
+            List<Future<?>> futures = new ArrayList<>(clients);
+            for (int c = 0; c < clients; c++) {
+                final long userId = 1 + (c % 8);
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < callsPerClient; i++) {
+                        service.findUserById(userId);
+                        sleep(ioLatencyMs);
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        }
+        double seconds = (System.nanoTime() - start) / 1_000_000_000.0;
+        return clients * (double) callsPerClient / seconds;
+    }
+
+    private static void sleep(long millis) {
+        try {
+            TimeUnit.MILLISECONDS.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
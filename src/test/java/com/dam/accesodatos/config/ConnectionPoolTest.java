@@ -0,0 +1,183 @@
+package com.dam.accesodatos.config;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.sql.Statement;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests del pool de conexiones propio (sin Spring)
+ *
+ * Usa una base de datos H2 en memoria distinta de la de la aplicación
+ * para no interferir con DatabaseUserServiceTest.
+ */
+class ConnectionPoolTest {
+
+    private static final String URL = "jdbc:h2:mem:pooltest;DB_CLOSE_DELAY=-1";
+
+    private ConnectionPool pool;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        pool = newPool(2, 1000, 30000);
+        try (Connection conn = pool.borrow();
+             Statement stmt = conn.createStatement()) {
+            stmt.execute("DROP TABLE IF EXISTS items");
+            stmt.execute("CREATE TABLE items (id INT PRIMARY KEY)");
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        pool.close();
+    }
+
+    @Test
+    void testClose_shouldReturnPhysicalConnectionForReuse() throws SQLException {
+        // Arrange: Tomar una conexión y recordar la conexión física
+        Connection physical;
+        try (Connection conn = pool.borrow()) {
+            physical = conn.unwrap(Connection.class);
+        }
+
+        // Act: Volver a pedir una conexión
+        try (Connection conn = pool.borrow()) {
+
+            // Assert: Debe ser la misma conexión física (LIFO)
+            assertSame(physical, conn.unwrap(Connection.class), "Debe reutilizar la conexión física");
+            assertFalse(conn.isClosed(), "La conexión prestada debe estar abierta");
+        }
+    }
+
+    @Test
+    void testClose_shouldResetStateAndRollbackPendingWork() throws SQLException {
+        // Arrange: Dejar una transacción sin commit y la conexión en read-only
+        Connection conn = pool.borrow();
+        conn.setAutoCommit(false);
+        try (Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate("INSERT INTO items (id) VALUES (1)");
+        }
+        conn.setReadOnly(true);
+
+        // Act: Devolver la conexión al pool
+        conn.close();
+
+        // Assert: La siguiente conexión sale limpia y sin la fila pendiente
+        assertTrue(conn.isClosed(), "El proxy devuelto debe aparecer como cerrado");
+        assertThrows(SQLException.class, conn::createStatement,
+            "No se debe poder usar una conexión ya devuelta");
+
+        try (Connection next = pool.borrow();
+             Statement stmt = next.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM items")) {
+            assertTrue(next.getAutoCommit(), "auto-commit debe restaurarse");
+            assertFalse(next.isReadOnly(), "read-only debe restaurarse");
+            assertTrue(rs.next());
+            assertEquals(0, rs.getInt(1), "El INSERT sin commit debe haberse deshecho");
+        }
+    }
+
+    @Test
+    void testBorrow_whenExhausted_shouldTimeOut() throws SQLException {
+        // Arrange: Pool de una sola conexión, ya prestada
+        pool.close();
+        pool = newPool(1, 100, 30000);
+        Connection borrowed = pool.borrow();
+        try {
+            // Act & Assert: Un segundo préstamo debe fallar tras el timeout
+            assertThrows(SQLTransientConnectionException.class, pool::borrow,
+                "Debe lanzar timeout si no hay conexiones libres");
+            assertEquals(1, pool.getTimeoutCount(), "Debe contabilizar el timeout");
+        } finally {
+            borrowed.close();
+        }
+    }
+
+    @Test
+    void testBorrow_shouldDiscardInvalidIdleConnection() throws SQLException {
+        // Arrange: Validar siempre y cerrar la conexión física mientras está ociosa
+        pool.close();
+        pool = newPool(2, 1000, 0);
+        Connection physical;
+        try (Connection conn = pool.borrow()) {
+            physical = conn.unwrap(Connection.class);
+        }
+        physical.close();
+
+        // Act: Pedir otra conexión
+        try (Connection conn = pool.borrow()) {
+
+            // Assert: El pool descarta la rota y entrega una nueva válida
+            assertNotSame(physical, conn.unwrap(Connection.class), "No debe entregar la conexión rota");
+            assertTrue(conn.isValid(1), "La nueva conexión debe ser válida");
+            assertEquals(1, pool.getDiscardedCount(), "Debe contabilizar la conexión descartada");
+        }
+    }
+
+    @Test
+    void testPrepareStatement_shouldReuseCachedStatementOnSameConnection() throws SQLException {
+        // Arrange: Preparar y cerrar la misma consulta dos veces
+        String sql = "SELECT COUNT(*) FROM items WHERE id > ?";
+        long missesBefore = pool.getStatementCacheMisses();
+
+        try (Connection conn = pool.borrow()) {
+            try (PreparedStatement ps = conn.prepareStatement(sql)) {
+                ps.setInt(1, 0);
+                ps.executeQuery().close();
+            }
+
+            // Act: Volver a preparar el mismo SQL
+            try (PreparedStatement ps = conn.prepareStatement(sql)) {
+
+                // Assert: Sale de la caché, sin parámetros del uso anterior
+                assertEquals(1, pool.getStatementCacheHits(), "El segundo prepare debe ser un acierto");
+                assertEquals(missesBefore + 1, pool.getStatementCacheMisses(), "Solo el primero debe fallar");
+                assertSame(conn, ps.getConnection(), "getConnection() debe devolver la conexión del pool");
+                assertThrows(SQLException.class, ps::executeQuery,
+                    "Los parámetros del uso anterior deben haberse limpiado");
+            }
+        }
+    }
+
+    @Test
+    void testPrepareStatement_withSameSqlInUse_shouldReturnIndependentStatement() throws SQLException {
+        // Arrange: Mantener abierto un statement cacheado
+        String sql = "SELECT ? FROM DUAL";
+        try (Connection conn = pool.borrow();
+             PreparedStatement outer = conn.prepareStatement(sql)) {
+            outer.setInt(1, 1);
+
+            // Act: Preparar el mismo SQL mientras el primero sigue en uso
+            try (PreparedStatement inner = conn.prepareStatement(sql)) {
+                inner.setInt(1, 2);
+
+                // Assert: Cada statement conserva sus propios parámetros
+                try (ResultSet rs = outer.executeQuery()) {
+                    assertTrue(rs.next());
+                    assertEquals(1, rs.getInt(1));
+                }
+                try (ResultSet rs = inner.executeQuery()) {
+                    assertTrue(rs.next());
+                    assertEquals(2, rs.getInt(1));
+                }
+            }
+        }
+    }
+
+    private static ConnectionPool newPool(int maxSize, long borrowTimeoutMs, long validateAfterIdleMs) {
+        Ra2Properties.Pool settings = new Ra2Properties.Pool();
+        settings.setMaxSize(maxSize);
+        settings.setMinIdle(0);
+        settings.setBorrowTimeoutMs(borrowTimeoutMs);
+        settings.setValidateAfterIdleMs(validateAfterIdleMs);
+        return new ConnectionPool(URL, "sa", "", settings);
+    }
+}
@@ -0,0 +1,100 @@
+package com.dam.accesodatos.config;
+
+import org.junit.jupiter.api.Test;
+
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests de la comprobación de estado cacheada (sin Spring)
+ *
+ * Usa una base de datos H2 en memoria distinta de la de la aplicación.
+ */
+class HealthMonitorTest {
+
+    private static final String URL = "jdbc:h2:mem:healthtest;DB_CLOSE_DELAY=-1";
+
+    @Test
+    void testCheck_withinTtl_shouldReuseLastResult() {
+        // Arrange
+        AtomicInteger opened = new AtomicInteger();
+        HealthMonitor monitor = new HealthMonitor(() -> {
+            opened.incrementAndGet();
+            return DriverManager.getConnection(URL, "sa", "");
+        }, settings(60_000));
+
+        // Act
+        HealthMonitor.Status first = monitor.check();
+        HealthMonitor.Status second = monitor.check();
+        monitor.check();
+
+        // Assert: una sola conexión para las tres llamadas
+        assertTrue(first.up(), "La base de datos debe estar disponible");
+        assertSame(first, second, "Dentro del TTL se devuelve el mismo resultado");
+        assertEquals(1, opened.get());
+        assertEquals(1L, monitor.getStats().get("probes"));
+        assertEquals(2L, monitor.getStats().get("cached_reads"));
+        assertTrue(monitor.getDescription().startsWith("H2"), "Debe recordar el producto");
+    }
+
+    @Test
+    void testCheck_withExpiredTtl_shouldProbeAgain() {
+        // Arrange: TTL 0, cada llamada comprueba
+        HealthMonitor monitor = new HealthMonitor(() -> DriverManager.getConnection(URL, "sa", ""), settings(0));
+
+        // Act
+        HealthMonitor.Status first = monitor.check();
+        HealthMonitor.Status second = monitor.check();
+
+        // Assert
+        assertNotSame(first, second);
+        assertEquals(2L, monitor.getStats().get("probes"));
+    }
+
+    @Test
+    void testCheck_withUnreachableDatabase_shouldReportDown() {
+        // Arrange
+        HealthMonitor monitor = new HealthMonitor(() -> {
+            throw new SQLException("Connection refused");
+        }, settings(60_000));
+
+        // Act
+        HealthMonitor.Status status = monitor.check();
+
+        // Assert
+        assertFalse(status.up());
+        assertEquals("Connection refused", status.error());
+        assertEquals("DOWN", monitor.getStats().get("status"));
+        assertEquals(1L, monitor.getStats().get("failures"));
+        assertNull(monitor.getDescription());
+    }
+
+    @Test
+    void testCheck_withOneShardDown_shouldReportDown() {
+        // Arrange: dos orígenes (shards), el segundo no responde
+        HealthMonitor monitor = new HealthMonitor(List.of(
+                () -> DriverManager.getConnection(URL, "sa", ""),
+                () -> {
+                    throw new SQLException("Connection refused");
+                }), settings(60_000));
+
+        // Act
+        HealthMonitor.Status status = monitor.check();
+
+        // Assert: DOWN aunque el primero esté bien, y el error dice qué shard falla
+        assertFalse(status.up());
+        assertEquals("Shard 1: Connection refused", status.error());
+        assertTrue(monitor.getDescription().startsWith("H2"), "El primer shard sí responde");
+    }
+
+    private static Ra2Properties.Health settings(long ttlMs) {
+        Ra2Properties.Health settings = new Ra2Properties.Health();
+        settings.setTtlMs(ttlMs);
+        settings.setRefreshIntervalMs(0);
+        return settings;
+    }
+}
@@ -0,0 +1,136 @@
+package com.dam.accesodatos.ra2;
+
+import com.dam.accesodatos.config.DatabaseConfig;
+import com.dam.accesodatos.config.Ra2Properties;
+import com.dam.accesodatos.config.TestDataSourceConfig;
+import com.dam.accesodatos.model.User;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.jdbc.Sql;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests de la versión asíncrona del servicio: consultas en paralelo, cancelación y rechazo
+ */
+@SpringBootTest
+@Import(TestDataSourceConfig.class)
+@Sql(scripts = {"/test-schema.sql", "/test-data.sql"},
+     executionPhase = Sql.ExecutionPhase.BEFORE_TEST_METHOD)
+class AsyncDatabaseUserServiceTest {
+
+    @Autowired
+    private DatabaseUserService service;
+
+    @Autowired
+    private AsyncDatabaseUserService asyncService;
+
+    @Test
+    void testFanOut_shouldMatchSynchronousResults() throws Exception {
+        // Act: Tres consultas independientes lanzadas a la vez
+        CompletableFuture<User> user = asyncService.findUserById(1L);
+        CompletableFuture<List<User>> it = asyncService.findUsersByDepartment("IT");
+        CompletableFuture<Integer> hr = asyncService.executeCountByDepartment("HR");
+        CompletableFuture.allOf(user, it, hr).get(10, TimeUnit.SECONDS);
+
+        // Assert
+        assertEquals(service.findUserById(1L).getEmail(), user.get().getEmail());
+        assertEquals(service.findUsersByDepartment("IT").size(), it.get().size());
+        assertEquals(service.executeCountByDepartment("HR"), hr.get());
+    }
+
+    @Test
+    void testFanOut_shouldPropagateErrors() {
+        CompletableFuture<List<Map<String, Object>>> columns = asyncService.getTableColumns(null);
+
+        ExecutionException error = assertThrows(ExecutionException.class, () -> columns.get(10, TimeUnit.SECONDS));
+        assertNotNull(error.getCause());
+    }
+
+    @Test
+    void testCancel_shouldCancelRunningStatement() throws Exception {
+        // Arrange: Una consulta que tardaría minutos
+        AsyncDatabaseUserServiceImpl impl = (AsyncDatabaseUserServiceImpl) asyncService;
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch finished = new CountDownLatch(1);
+        AtomicReference<SQLException> outcome = new AtomicReference<>();
+        CompletableFuture<Long> future = impl.submit(() -> {
+            try (Connection conn = DatabaseConfig.getConnection();
+                 Statement stmt = conn.createStatement()) {
+                started.countDown();
+                try (ResultSet rs = stmt.executeQuery("SELECT SUM(MOD(X, 7)) FROM SYSTEM_RANGE(1, 1000000000000)")) {
+                    rs.next();
+                    return rs.getLong(1);
+                }
+            } catch (SQLException e) {
+                outcome.set(e);
+                throw e;
+            } finally {
+                finished.countDown();
+            }
+        });
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+        // Margen para que la consulta llegue a ejecutarse en H2
+        Thread.sleep(300);
+
+        // Act
+        assertTrue(future.cancel(true));
+
+        // Assert: La consulta termina con QUERY_CANCELED en lugar de seguir en H2
+        assertTrue(finished.await(10, TimeUnit.SECONDS), "La consulta debe abortarse tras cancel()");
+        assertNotNull(outcome.get());
+        assertEquals("57014", outcome.get().getSQLState());
+        assertTrue(future.isCancelled());
+        assertEquals(1L, (long) asyncService.getExecutorStats().get("cancelled"));
+    }
+
+    @Test
+    void testSubmit_shouldRejectWhenExecutorIsFull() throws Exception {
+        for (boolean virtualThreads : new boolean[]{true, false}) {
+            // Arrange: Una sola tarea en ejecución y sin cola
+            Ra2Properties properties = new Ra2Properties();
+            properties.getAsync().setVirtualThreads(virtualThreads);
+            properties.getAsync().setMaxConcurrency(1);
+            properties.getAsync().setQueueCapacity(0);
+            AsyncDatabaseUserServiceImpl bounded = new AsyncDatabaseUserServiceImpl(service, properties);
+            CountDownLatch release = new CountDownLatch(1);
+
+            try {
+                CompletableFuture<Boolean> blocking = bounded.submit(() -> release.await(10, TimeUnit.SECONDS));
+
+                // Act
+                CompletableFuture<User> rejected = bounded.findUserById(1L);
+
+                // Assert
+                ExecutionException error = assertThrows(ExecutionException.class, rejected::get);
+                assertInstanceOf(RejectedExecutionException.class, error.getCause());
+                assertEquals(1L, bounded.getExecutorStats().get("rejected"));
+
+                // El hueco se libera antes de completar el future: la siguiente tarea no se rechaza
+                release.countDown();
+                assertTrue(blocking.get(10, TimeUnit.SECONDS));
+                for (int i = 0; i < 20; i++) {
+                    assertNotNull(bounded.findUserById(1L).get(10, TimeUnit.SECONDS),
+                            "Con hueco libre vuelve a aceptar tareas (virtual threads: " + virtualThreads + ")");
+                }
+            } finally {
+                bounded.shutdown();
+            }
+        }
+    }
+}
@@ -1,9 +1,18 @@
 package com.dam.accesodatos.ra2;
 
+import com.dam.accesodatos.config.DatabaseConfig;
+import com.dam.accesodatos.config.Ra2Properties;
 import com.dam.accesodatos.config.TestDataSourceConfig;
+import com.dam.accesodatos.model.BatchInsertResult;
+import com.dam.accesodatos.model.IngestResult;
+import com.dam.accesodatos.model.TransferResult;
+import com.dam.accesodatos.model.UpsertResult;
 import com.dam.accesodatos.model.User;
 import com.dam.accesodatos.model.UserCreateDto;
+import com.dam.accesodatos.model.UserHistogram;
+import com.dam.accesodatos.model.UserPage;
 import com.dam.accesodatos.model.UserQueryDto;
+import com.dam.accesodatos.model.UserTextMatch;
 import com.dam.accesodatos.model.UserUpdateDto;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -11,10 +20,20 @@ import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.context.annotation.Import;
 import org.springframework.test.context.jdbc.Sql;
 
+import java.sql.Connection;
+import java.sql.Statement;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -95,6 +114,49 @@ class DatabaseUserServiceTest {
             "Debe lanzar RuntimeException por email duplicado");
     }
 
+    @Test
+    void testCreateUser_withGroupCommit_shouldReturnOwnIdOrError() throws Exception {
+        // Arrange: Ventana amplia para que las altas concurrentes caigan en el mismo grupo
+        Ra2Properties properties = new Ra2Properties();
+        properties.getGroupCommit().setEnabled(true);
+        properties.getGroupCommit().setWindowMicros(50_000);
+        properties.getGroupCommit().setMaxRows(10);
+        DatabaseUserServiceImpl grouped = new DatabaseUserServiceImpl(properties);
+
+        // Act: 9 altas nuevas y una con el email de test-data.sql, todas a la vez
+        List<Future<User>> futures = new ArrayList<>();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < 10; i++) {
+                String email = i == 5 ? "test1@example.com" : "group" + i + "@example.com";
+                futures.add(executor.submit(() -> grouped.createUser(new UserCreateDto("Group", email, "IT", "Dev"))));
+            }
+        }
+
+        // Assert: Cada llamada recibe su propio ID; solo la duplicada falla
+        Set<Long> ids = new HashSet<>();
+        for (int i = 0; i < futures.size(); i++) {
+            if (i == 5) {
+                ExecutionException error = assertThrows(ExecutionException.class, futures.get(i)::get);
+                assertTrue(error.getCause().getMessage().contains("ya está registrado"));
+                continue;
+            }
+            User created = futures.get(i).get();
+            assertEquals("group" + i + "@example.com", created.getEmail());
+            assertEquals(created.getEmail(), service.findUserById(created.getId()).getEmail());
+            ids.add(created.getId());
+        }
+        assertEquals(9, ids.size());
+        assertEquals(12, service.findAll().size());
+        Map<String, Object> stats = grouped.getGroupCommitStats();
+        assertEquals(10L, stats.get("rows"));
+        assertTrue((long) stats.get("batches") < 10, "Las altas deben compartir transacción");
+
+        // Después de close() el hilo de agrupación ya no acepta altas
+        grouped.close();
+        assertThrows(IllegalStateException.class,
+                () -> grouped.createUser(new UserCreateDto("Tarde", "tarde@example.com", "IT", "Dev")));
+    }
+
     @Test
     void testFindUserById_shouldReturnUser() {
         // Arrange: ID del usuario a buscar (existe en test-data.sql)
@@ -140,6 +202,26 @@ class DatabaseUserServiceTest {
         assertEquals("test1@example.com", updated.getEmail(), "El email no debe haber cambiado");
     }
 
+    @Test
+    void testUpdateUser_withSingleField_shouldKeepOtherColumns() {
+        // Arrange: Usuario inactivo (Test User 3) y DTO que solo cambia el departamento
+        Long userId = 3L;
+        UserUpdateDto dto = new UserUpdateDto();
+        dto.setDepartment("Finance");
+
+        // Act: Actualizar solo ese campo
+        User updated = service.updateUser(userId, dto);
+
+        // Assert: El resto de columnas no se tocan y updated_at avanza
+        assertEquals("Finance", updated.getDepartment(), "El departamento debe haberse actualizado");
+        assertEquals("Test User 3", updated.getName(), "El nombre no debe cambiar");
+        assertEquals("Analyst", updated.getRole(), "El rol no debe cambiar");
+        assertFalse(updated.getActive(), "active no debe cambiar si no viene en el DTO");
+        assertTrue(updated.getUpdatedAt().isAfter(updated.getCreatedAt()), "updated_at debe actualizarse");
+        assertEquals(updated.getDepartment(), service.findUserById(userId).getDepartment(),
+            "El cambio debe estar persistido");
+    }
+
     @Test
     void testUpdateUser_withNonExistentId_shouldThrowException() {
         // Arrange: Preparar actualización para usuario inexistente
@@ -183,6 +265,136 @@ class DatabaseUserServiceTest {
         assertTrue(allUsers.size() >= 5, "Debe haber al menos 5 usuarios (3 originales + 2 nuevos)");
     }
 
+    @Test
+    void testTransferDataBatched_notAtomic_shouldSkipOnlyFailingRows() {
+        // Arrange: 5 usuarios en bloques de 2; el tercero repite un email de test-data.sql
+        List<User> users = transferUsers("t1@example.com", "t2@example.com", "test1@example.com",
+            "t4@example.com", "t5@example.com");
+
+        // Act: Transferencia no atómica
+        TransferResult result = service.transferDataBatched(users, 2, false);
+
+        // Assert: Solo se descarta la fila duplicada; su bloque se reintentó fila a fila
+        assertEquals(4, result.getInsertedCount(), "Deben insertarse 4 usuarios");
+        assertEquals(1, result.getFailedRows().size(), "Debe fallar 1 fila");
+        assertEquals(2, result.getFailedRows().get(0).index(), "Debe fallar la fila de índice 2");
+        assertEquals(1, result.getRetriedChunks(), "Solo debe reintentarse el bloque con error");
+        assertEquals(7, service.findAll().size(), "Debe haber 3 originales + 4 transferidos");
+    }
+
+    @Test
+    void testTransferDataBatched_atomic_shouldRollbackEverything() {
+        // Arrange: Mismos datos, con la fila duplicada en el segundo bloque
+        List<User> users = transferUsers("t1@example.com", "t2@example.com", "test1@example.com",
+            "t4@example.com");
+
+        // Act & Assert: La excepción indica qué fila falló
+        RuntimeException e = assertThrows(RuntimeException.class,
+            () -> service.transferDataBatched(users, 2, true));
+        assertTrue(e.getMessage().contains("test1@example.com"), "Debe indicar la fila con error");
+
+        // Assert: No queda nada de la transferencia (ni el primer bloque)
+        assertEquals(3, service.findAll().size(), "Solo deben quedar los 3 usuarios originales");
+    }
+
+    @Test
+    void testIngestUsers_shouldInsertValidRowsAndReportProgress() {
+        // Arrange: 2500 filas (3 bloques de 1000); una no se puede leer y otra repite email
+        List<Object> rows = new ArrayList<>();
+        for (int i = 0; i < 2500; i++) {
+            rows.add(transferUsers("ingest" + i + "@example.com").get(0));
+        }
+        rows.set(10, new IllegalArgumentException("Línea 11: JSON inválido"));
+        rows.set(20, transferUsers("test1@example.com").get(0));
+        Iterator<Object> source = rows.iterator();
+        Iterator<User> input = new Iterator<>() {
+            @Override
+            public boolean hasNext() {
+                return source.hasNext();
+            }
+
+            @Override
+            public User next() {
+                Object row = source.next();
+                if (row instanceof IllegalArgumentException e) {
+                    throw e;
+                }
+                return (User) row;
+            }
+        };
+        List<IngestResult> progress = new ArrayList<>();
+
+        // Act: Ingesta con la configuración por defecto (flush-size 1000)
+        IngestResult result = service.ingestUsers(input, progress::add);
+
+        // Assert: Se descartan solo las 2 filas erróneas y hay un aviso por bloque
+        assertEquals(2498, result.getInserted(), "Deben insertarse todas las filas válidas");
+        assertEquals(2, result.getRejected(), "Deben rechazarse la fila ilegible y la duplicada");
+        assertEquals(3, progress.size(), "Debe informarse del progreso tras cada bloque");
+        assertEquals(1000 - 1, progress.get(0).getInserted(), "Del primer bloque solo se descarta la duplicada");
+        assertEquals(2498 + 3, service.findAll().size(), "Deben quedar los 3 originales + los ingeridos");
+    }
+
+    @Test
+    void testUpsertUsers_shouldInsertNewAndUpdateExistingByEmail() {
+        // Arrange: test1 ya existe, nuevo@ no, y nuevo@ aparece dos veces
+        List<User> users = transferUsers("test1@example.com", "nuevo@example.com", "nuevo@example.com");
+        users.get(0).setName("Test User 1 Sync");
+        users.get(2).setRole("Lead");
+
+        // Act: Upsert en bloque
+        UpsertResult result = service.upsertUsers(users);
+
+        // Assert: Resultado por fila en el orden recibido
+        assertEquals(UpsertResult.Action.UPDATED, result.getOutcomes().get(0).action(), "test1 debe actualizarse");
+        assertEquals(1L, result.getOutcomes().get(0).id(), "Debe devolver el ID existente");
+        assertEquals(UpsertResult.Action.INSERTED, result.getOutcomes().get(1).action(), "nuevo@ debe insertarse");
+        assertEquals(UpsertResult.Action.UPDATED, result.getOutcomes().get(2).action(), "La repetición actualiza");
+        assertEquals(1, result.getInsertedCount(), "Debe haber 1 inserción");
+        assertEquals(2, result.getUpdatedCount(), "Debe haber 2 actualizaciones");
+
+        // Assert: Los datos quedan como indica la última aparición de cada email
+        User updated = service.findUserById(1L);
+        assertEquals("Test User 1 Sync", updated.getName(), "El nombre debe actualizarse");
+        assertEquals(LocalDateTime.of(2024, 1, 1, 10, 0), updated.getCreatedAt(), "created_at no cambia");
+        assertEquals("Lead", service.findUserById(result.getOutcomes().get(1).id()).getRole(),
+            "La última aparición del email debe prevalecer");
+        assertEquals(4, service.findAll().size(), "Solo debe añadirse 1 usuario");
+    }
+
+    @Test
+    void testUpsertUsers_shouldKeepExistingValuesForAbsentFields() {
+        // Arrange: test3 está inactivo; el upsert no trae active ni department
+        User user = new User();
+        user.setEmail("test3@example.com");
+        user.setName("Test User 3 Sync");
+        user.setActive(null);
+
+        // Act
+        UpsertResult result = service.upsertUsers(List.of(user));
+
+        // Assert: Solo cambia lo que llega; el usuario sigue inactivo
+        assertEquals(UpsertResult.Action.UPDATED, result.getOutcomes().get(0).action(), "test3 debe actualizarse");
+        User updated = service.findUserById(3L);
+        assertEquals("Test User 3 Sync", updated.getName(), "El nombre debe actualizarse");
+        assertFalse(updated.getActive(), "Un upsert sin active no debe reactivar al usuario");
+        assertEquals("IT", updated.getDepartment(), "department no debe quedar a null");
+        assertEquals("Analyst", updated.getRole(), "role no debe quedar a null");
+    }
+
+    private static List<User> transferUsers(String... emails) {
+        List<User> users = new ArrayList<>();
+        for (String email : emails) {
+            User user = new User();
+            user.setName("Transfer User");
+            user.setEmail(email);
+            user.setDepartment("IT");
+            user.setRole("Dev");
+            users.add(user);
+        }
+        return users;
+    }
+
     // ========== Tests para métodos TODO (implementados por estudiantes) ==========
 
     // CE2.b: CRUD Operations
@@ -217,6 +429,352 @@ class DatabaseUserServiceTest {
         assertFalse(deleted, "Debe retornar false al eliminar usuario inexistente");
     }
 
+    @Test
+    void testFindUserById_withCache_shouldSeeWritesThroughService() {
+        // Arrange: Servicio con la caché activada
+        Ra2Properties properties = new Ra2Properties();
+        properties.getCache().setEnabled(true);
+        DatabaseUserService cached = new DatabaseUserServiceImpl(properties);
+        assertEquals("Test User 1", cached.findUserById(1L).getName());
+
+        // Act: Modificar y borrar a través del servicio
+        UserUpdateDto dto = new UserUpdateDto();
+        dto.setName("Renamed");
+        cached.updateUser(1L, dto);
+        User afterUpdate = cached.findUserById(1L);
+        cached.findUserById(2L);
+        cached.deleteUser(2L);
+
+        // Assert
+        assertEquals("Renamed", afterUpdate.getName(), "El UPDATE debe invalidar la entrada");
+        assertNull(cached.findUserById(2L), "El DELETE debe invalidar la entrada");
+        assertTrue((long) cached.getUserCacheStats().get("invalidations") >= 2);
+    }
+
+    @Test
+    void testExecuteCountByDepartment_withCounters_shouldFollowEveryWritePath() {
+        // Arrange: Servicio con contadores en memoria (IT = 1, HR = 1 en los datos de prueba)
+        Ra2Properties properties = new Ra2Properties();
+        properties.getCounters().setEnabled(true);
+        properties.getCounters().setReconcileIntervalMs(0);
+        DatabaseUserService counted = new DatabaseUserServiceImpl(properties);
+        assertEquals(1, counted.executeCountByDepartment("IT"));
+
+        // Act: Una escritura por cada camino del servicio
+        counted.createUser(new UserCreateDto("New IT", "newit@example.com", "IT", "Developer"));
+        UserUpdateDto activate = new UserUpdateDto();
+        activate.setActive(true);
+        counted.updateUser(3L, activate);
+        UserUpdateDto move = new UserUpdateDto();
+        move.setDepartment("HR");
+        counted.updateUser(1L, move);
+        counted.deleteUser(2L);
+        counted.batchInsertUsers(List.of(new User("Batch", "batchit@example.com", "IT", "Developer")));
+        counted.transferData(List.of(new User("Transfer", "transferhr@example.com", "HR", "Manager")));
+        counted.deleteUsersByIds(List.of(3L));
+        counted.upsertUsers(List.of(new User("Moved back", "test1@example.com", "IT", "Developer")));
+
+        // Assert: Los contadores coinciden con COUNT(*) sobre la tabla
+        for (String department : List.of("IT", "HR", "Finance")) {
+            assertEquals(service.executeCountByDepartment(department), counted.executeCountByDepartment(department),
+                    "Contador descuadrado para " + department);
+        }
+        assertEquals(3, counted.executeCountByDepartment("IT"));
+    }
+
+    @Test
+    void testDepartmentCounters_reconcile_shouldFixDriftFromOutsideWrites() throws Exception {
+        // Arrange: Contadores cargados y una fila insertada sin pasar por el servicio
+        DepartmentCounters counters = new DepartmentCounters();
+        assertEquals(1, counters.count("IT"));
+        try (Connection conn = DatabaseConfig.getConnection();
+             Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate("INSERT INTO users (name, email, department, role, active) "
+                    + "VALUES ('Outside', 'outside@example.com', 'IT', 'Developer', true)");
+        }
+
+        // Act
+        Map<String, Map<String, Long>> drift = counters.reconcile();
+
+        // Assert
+        assertEquals(Map.of("memory", 1L, "database", 2L), drift.get("IT"));
+        assertEquals(2, counters.count("IT"));
+        assertEquals(1L, counters.getStats().get("drifted_departments"));
+    }
+
+    @Test
+    void testGetUserHistogram_shouldGroupAndRollUp() {
+        // Act
+        UserHistogram histogram = service.getUserHistogram(0L);
+
+        // Assert: 3 combinaciones distintas en los datos de prueba
+        assertEquals(3, histogram.getGroups().size());
+        assertTrue(histogram.getGroups().contains(new UserHistogram.Group("IT", "Analyst", false, 1)));
+        assertTrue(histogram.getSubtotals().contains(new UserHistogram.Group("IT", null, null, 2)),
+                "Debe incluir el subtotal del departamento IT");
+        assertTrue(histogram.getSubtotals().contains(new UserHistogram.Group("HR", "Manager", null, 1)));
+        assertEquals(3, histogram.getTotal());
+        assertFalse(histogram.isFromSnapshot());
+    }
+
+    @Test
+    void testGetUserHistogram_withStalenessBound_shouldServeSnapshot() {
+        // Arrange: Recuento inicial y un usuario nuevo
+        service.getUserHistogram(0L);
+        service.createUser(new UserCreateDto("Snapshot", "snapshot@example.com", "IT", "Developer"));
+
+        // Act
+        UserHistogram cached = service.getUserHistogram(60_000L);
+        UserHistogram fresh = service.getUserHistogram(0L);
+
+        // Assert: la instantánea no ve el INSERT; una consulta sin tolerancia sí
+        assertTrue(cached.isFromSnapshot());
+        assertEquals(3, cached.getTotal());
+        assertEquals(4, fresh.getTotal());
+    }
+
+    @Test
+    void testColumnarSnapshot_shouldAnswerLikeSql() {
+        // Arrange: Servicio con réplica en columnas y cambios a través del servicio
+        Ra2Properties properties = new Ra2Properties();
+        properties.getSnapshot().setEnabled(true);
+        DatabaseUserService columnar = new DatabaseUserServiceImpl(properties);
+        assertEquals(1, columnar.executeCountByDepartment("IT"), "La primera llamada carga la réplica");
+
+        columnar.createUser(new UserCreateDto("Columnar", "columnar@example.com", "Sales", "Developer"));
+        UserUpdateDto update = new UserUpdateDto();
+        update.setActive(true);
+        columnar.updateUser(3L, update);
+        columnar.deleteUser(2L);
+
+        // Act
+        UserQueryDto query = new UserQueryDto();
+        query.setRole("Developer");
+        query.setLimit(1);
+        UserPage first = columnar.searchUsersPage(query);
+        query.setAfter(first.getNextCursor());
+        UserPage second = columnar.searchUsersPage(query);
+
+        // Assert: mismas respuestas que las consultas SQL
+        assertEquals(List.of(1L), first.getItems().stream().map(User::getId).toList());
+        assertEquals("columnar@example.com", second.getItems().get(0).getEmail());
+        for (String department : List.of("IT", "HR", "Sales")) {
+            assertEquals(service.executeCountByDepartment(department), columnar.executeCountByDepartment(department));
+        }
+        assertEquals(service.getUserHistogram(0L).getGroups(), columnar.getUserHistogram(0L).getGroups());
+        assertEquals(3, columnar.getColumnarSnapshotStats().get("rows"));
+    }
+
+    @Test
+    void testColumnarSnapshot_bitmapFilters_shouldMatchSqlForEveryCombination() {
+        // Arrange: Réplica con algunos usuarios más y un cambio de departamento
+        Ra2Properties properties = new Ra2Properties();
+        properties.getSnapshot().setEnabled(true);
+        DatabaseUserService columnar = new DatabaseUserServiceImpl(properties);
+        columnar.executeCountByDepartment("IT");
+        List<User> users = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            User user = new User("Bitmap " + i, "bitmap" + i + "@example.com",
+                    i % 3 == 0 ? "IT" : "HR", i % 2 == 0 ? "Developer" : "Analyst");
+            user.setActive(i % 5 != 0);
+            users.add(user);
+        }
+        columnar.batchInsertUsers(users);
+        UserUpdateDto move = new UserUpdateDto();
+        move.setDepartment("HR");
+        columnar.updateUser(1L, move);
+
+        // Act + Assert: cada combinación de filtros devuelve los mismos IDs que el SQL
+        List<String> departments = Arrays.asList(null, "IT", "HR", "Unknown");
+        List<String> roles = Arrays.asList(null, "Developer", "Analyst");
+        List<Boolean> states = Arrays.asList(null, true, false);
+        for (String department : departments) {
+            for (String role : roles) {
+                for (Boolean active : states) {
+                    UserQueryDto query = new UserQueryDto();
+                    query.setDepartment(department);
+                    query.setRole(role);
+                    query.setActive(active);
+                    query.setLimit(100);
+                    assertEquals(service.searchUsers(query).stream().map(User::getId).toList(),
+                            columnar.searchUsers(query).stream().map(User::getId).toList(),
+                            "Filtros: " + department + ", " + role + ", " + active);
+                }
+            }
+        }
+    }
+
+    @Test
+    void testColumnarSnapshot_withManyDeletes_shouldCompactAndKeepIndex() {
+        // Arrange: 3000 usuarios insertados por lotes a través del servicio
+        Ra2Properties properties = new Ra2Properties();
+        properties.getSnapshot().setEnabled(true);
+        DatabaseUserService columnar = new DatabaseUserServiceImpl(properties);
+        columnar.executeCountByDepartment("IT");
+        List<User> users = new ArrayList<>();
+        for (int i = 0; i < 3000; i++) {
+            users.add(new User("Bulk " + i, "bulk" + i + "@example.com", i % 2 == 0 ? "IT" : "HR", "Developer"));
+        }
+        List<Long> ids = columnar.batchInsertUsersDetailed(users).getGeneratedIds();
+
+        // Act: Borrar dos de cada tres (fuerza la compactación)
+        List<Long> toDelete = new ArrayList<>();
+        for (int i = 0; i < ids.size(); i++) {
+            if (i % 3 != 0) {
+                toDelete.add(ids.get(i));
+            }
+        }
+        columnar.deleteUsersByIds(toDelete);
+        UserUpdateDto move = new UserUpdateDto();
+        move.setDepartment("Finance");
+        columnar.updateUser(ids.get(2997), move);
+
+        // Assert
+        assertEquals(service.executeCountByDepartment("IT"), columnar.executeCountByDepartment("IT"));
+        assertEquals(service.executeCountByDepartment("HR"), columnar.executeCountByDepartment("HR"));
+        assertEquals(1, columnar.executeCountByDepartment("Finance"));
+        assertEquals(0, columnar.getColumnarSnapshotStats().get("deleted_slots"), "Debe haberse compactado");
+        UserQueryDto query = new UserQueryDto();
+        query.setDepartment("HR");
+        query.setLimit(5);
+        assertEquals(service.searchUsers(query).stream().map(User::getId).toList(),
+                columnar.searchUsers(query).stream().map(User::getId).toList());
+    }
+
+    @Test
+    void testColumnarSnapshot_writesDuringLoad_shouldSurviveTheSwap() {
+        // Arrange: Réplica cargada y las filas tal como las leería un SELECT empezado antes de las escrituras
+        ColumnarUserSnapshot snapshot = new ColumnarUserSnapshot();
+        assertEquals(1, snapshot.countActive("IT"));
+        List<User> staleRows = service.findAll();
+        User before = service.findUserById(1L);
+        User after = service.findUserById(1L);
+        after.setDepartment("HR");
+        User inserted = new User(100L, "Durante la carga", "carga@example.com", "IT", "Developer",
+                true, LocalDateTime.of(2024, 5, 1, 0, 0), null);
+
+        // Act: Escrituras confirmadas mientras dura la recarga
+        snapshot.startLoading();
+        snapshot.usersInserted(List.of(inserted));
+        snapshot.userUpdated(before, after);
+        snapshot.usersDeleted(List.of(service.findUserById(2L)));
+        snapshot.finishLoading(staleRows);
+
+        // Assert: la carga no las pisa
+        assertArrayEquals(new long[]{3L, 100L},
+                snapshot.searchIds("IT", null, null, Long.MIN_VALUE, 0, 10));
+        assertArrayEquals(new long[]{1L},
+                snapshot.searchIds("HR", null, null, Long.MIN_VALUE, 0, 10));
+
+        // Primera carga: un borrado llegado durante el SELECT tampoco se pierde
+        ColumnarUserSnapshot fresh = new ColumnarUserSnapshot();
+        fresh.startLoading();
+        fresh.usersDeleted(List.of(service.findUserById(3L)));
+        fresh.finishLoading(staleRows);
+        assertArrayEquals(new long[]{1L}, fresh.searchIds("IT", null, null, Long.MIN_VALUE, 0, 10));
+        assertEquals(2, fresh.getStats().get("rows"));
+    }
+
+    @Test
+    void testSearchUsersText_withoutIndex_shouldRankByRelevance() {
+        // Act
+        List<UserTextMatch> exact = service.searchUsersText("TEST USER 2", 10);
+        List<UserTextMatch> domain = service.searchUsersText("example", 2);
+        List<UserTextMatch> escaped = service.searchUsersText("test_", 10);
+
+        // Assert: sin distinguir mayúsculas; a igual puntuación, por id
+        assertEquals(1, exact.size());
+        assertEquals(2L, exact.get(0).getUser().getId());
+        assertTrue(exact.get(0).getScore() >= 100, "La coincidencia exacta debe puntuar más");
+        assertEquals(List.of(1L, 2L), domain.stream().map(match -> match.getUser().getId()).toList());
+        assertTrue(escaped.isEmpty(), "El _ del texto no debe actuar como comodín de LIKE");
+        assertThrows(IllegalArgumentException.class, () -> service.searchUsersText(" ", 10));
+    }
+
+    @Test
+    void testSearchUsersText_withTrigramIndex_shouldMatchLikeAndFollowWrites() {
+        // Arrange
+        Ra2Properties properties = new Ra2Properties();
+        properties.getTextIndex().setEnabled(true);
+        DatabaseUserService indexed = new DatabaseUserServiceImpl(properties);
+
+        // Act + Assert: mismos resultados y puntuaciones que LIKE (también "1", que no tiene trigramas)
+        for (String text : List.of("user", "Example.com", "test1@", "user 3", "1", "nobody")) {
+            assertEquals(textMatches(service.searchUsersText(text, 10)),
+                    textMatches(indexed.searchUsersText(text, 10)), "Texto: " + text);
+        }
+
+        // Las escrituras del servicio actualizan el índice
+        User created = indexed.createUser(new UserCreateDto("Ana García", "agarcia@corp.es", "IT", "Developer"));
+        assertEquals(created.getId(), indexed.searchUsersText("garc", 10).get(0).getUser().getId());
+        UserUpdateDto rename = new UserUpdateDto();
+        rename.setName("Ana Pérez");
+        indexed.updateUser(created.getId(), rename);
+        indexed.deleteUser(2L);
+        assertEquals(created.getId(), indexed.searchUsersText("PÉREZ", 10).get(0).getUser().getId());
+        assertTrue(indexed.searchUsersText("ana garc", 10).isEmpty(), "El nombre anterior ya no debe encontrarse");
+        assertEquals(textMatches(service.searchUsersText("test user", 10)),
+                textMatches(indexed.searchUsersText("test user", 10)));
+        assertEquals(3, indexed.getTextIndexStats().get("rows"));
+    }
+
+    @Test
+    void testTrigramIndex_writesDuringLoad_shouldSurviveTheSwap() {
+        // Arrange: Índice cargado y las filas tal como las leería un SELECT empezado antes de las escrituras
+        TrigramIndex index = new TrigramIndex();
+        assertEquals(3, index.search("test", 10).size());
+        List<User> staleRows = service.findAll();
+        User before = service.findUserById(1L);
+        User after = service.findUserById(1L);
+        after.setName("Renamed Durante");
+
+        // Act: Escrituras confirmadas mientras dura la recarga
+        index.startLoading();
+        index.usersInserted(List.of(new User(100L, "Nueva Durante", "durante@example.com", "IT", "Developer")));
+        index.userUpdated(before, after);
+        index.usersDeleted(List.of(service.findUserById(2L)));
+        index.finishLoading(staleRows);
+
+        // Assert: la carga no las pisa
+        assertEquals(List.of(1L, 100L), index.search("durante", 10).stream()
+                .map(TrigramIndex.Match::id).sorted().toList());
+        assertTrue(index.search("test user 2", 10).isEmpty(), "El borrado debe mantenerse");
+        assertTrue(index.search("test user 1", 10).isEmpty(), "El nombre anterior ya no debe encontrarse");
+
+        // Primera carga: un alta llegada durante el SELECT tampoco se pierde
+        TrigramIndex fresh = new TrigramIndex();
+        fresh.startLoading();
+        fresh.usersInserted(List.of(new User(101L, "Primera Carga", "primera@example.com", "HR", "Manager")));
+        fresh.finishLoading(staleRows);
+        assertEquals(101L, fresh.search("primera", 10).get(0).id());
+        assertEquals(4, fresh.getStats().get("rows"));
+    }
+
+    @Test
+    void testFindUsersByIds_shouldKeepRequestOrderAndSkipMissing() {
+        // Act: IDs desordenados, repetidos y uno inexistente
+        List<User> users = service.findUsersByIds(List.of(3L, 9999L, 1L, 3L));
+
+        // Assert
+        assertEquals(2, users.size(), "Solo deben devolverse los usuarios existentes, sin repetir");
+        assertEquals(3L, users.get(0).getId());
+        assertEquals(1L, users.get(1).getId());
+        assertEquals("test1@example.com", users.get(1).getEmail());
+    }
+
+    @Test
+    void testDeleteUsersByIds_shouldReturnDeletedUsers() {
+        // Act
+        List<User> deleted = service.deleteUsersByIds(List.of(1L, 2L, 9999L));
+
+        // Assert: se devuelven las filas tal como estaban antes del DELETE
+        assertEquals(2, deleted.size());
+        assertEquals("test1@example.com", deleted.get(0).getEmail());
+        assertEquals("HR", deleted.get(1).getDepartment());
+        assertTrue(service.findUsersByIds(List.of(1L, 2L)).isEmpty(), "Los usuarios deben haberse eliminado");
+        assertEquals(1, service.findAll().size(), "El resto de usuarios no debe verse afectado");
+    }
+
     @Test
     void testFindAll_shouldReturnAllUsers() {
         // Arrange: La BD ya tiene usuarios cargados desde test-data.sql
@@ -234,6 +792,55 @@ class DatabaseUserServiceTest {
             "El primer usuario debe ser el más reciente (Test User 3)");
     }
 
+    @Test
+    void testStreamAll_withLimit_shouldContinueFromCursor() {
+        // Arrange: Bloques de 2 filas sobre los 3 usuarios de test-data.sql
+        List<User> firstPage = new ArrayList<>();
+        List<User> secondPage = new ArrayList<>();
+
+        // Act: Primer bloque y continuación con el cursor devuelto
+        String cursor = service.streamAll(null, 2, 1, firstPage::add);
+        String end = service.streamAll(cursor, 2, 1, secondPage::add);
+
+        // Assert: Mismo orden que findAll() y sin repetir ni saltar filas
+        assertNotNull(cursor, "Con el bloque lleno debe devolver cursor de continuación");
+        assertEquals(List.of("Test User 3", "Test User 2"), firstPage.stream().map(User::getName).toList());
+        assertEquals(List.of("Test User 1"), secondPage.stream().map(User::getName).toList());
+        assertNull(end, "Sin más filas no debe devolver cursor");
+        assertThrows(IllegalArgumentException.class, () -> service.streamAll("no-es-un-cursor", 2, 1, user -> { }));
+    }
+
+    @Test
+    void testStreamAll_withNullCreatedAt_shouldPutThoseRowsLast() throws Exception {
+        // Arrange: 3 filas sin created_at (la columna admite NULL)
+        try (Connection conn = DatabaseConfig.getConnection();
+             Statement stmt = conn.createStatement()) {
+            for (int i = 0; i < 3; i++) {
+                stmt.executeUpdate("INSERT INTO users (name, email, department, role, created_at) VALUES "
+                        + "('Sin fecha " + i + "', 'nodate" + i + "@example.com', 'IT', 'Developer', NULL)");
+            }
+        }
+
+        // Act: Bloques de 2 (el tercero termina en una fila sin fecha)
+        List<User> streamed = new ArrayList<>();
+        String cursor = null;
+        do {
+            cursor = service.streamAll(cursor, 2, 1, streamed::add);
+        } while (cursor != null);
+
+        // Assert: Todas las filas una vez, con las de created_at NULL al final por id descendente
+        assertEquals(List.of("Test User 3", "Test User 2", "Test User 1", "Sin fecha 2", "Sin fecha 1", "Sin fecha 0"),
+                streamed.stream().map(User::getName).toList());
+        assertEquals(streamed.stream().map(User::getId).toList(),
+                service.findAll().stream().map(User::getId).toList());
+
+        // Un bloque que termina en una fila sin fecha también sabe continuar
+        List<User> tail = new ArrayList<>();
+        String afterNull = service.streamAll(null, 4, 1, user -> { });
+        assertNull(service.streamAll(afterNull, 4, 1, tail::add));
+        assertEquals(List.of("Sin fecha 1", "Sin fecha 0"), tail.stream().map(User::getName).toList());
+    }
+
     // CE2.c: Advanced Queries
 
     @Test
@@ -304,6 +911,51 @@ class DatabaseUserServiceTest {
         assertTrue(users.size() <= 3, "No debe exceder el límite de 3 usuarios");
     }
 
+    @Test
+    void testSearchUsersPage_withCursor_shouldWalkPagesKeepingFilters() {
+        // Arrange: Usuarios IT (1 y 3 en test-data.sql) en páginas de 1
+        UserQueryDto query = new UserQueryDto();
+        query.setDepartment("IT");
+        query.setLimit(1);
+
+        // Act: Recorrer las páginas siguiendo next_cursor
+        List<Long> ids = new ArrayList<>();
+        UserPage page = service.searchUsersPage(query);
+        ids.addAll(page.getItems().stream().map(User::getId).toList());
+        while (page.hasNext()) {
+            query.setAfter(page.getNextCursor());
+            page = service.searchUsersPage(query);
+            ids.addAll(page.getItems().stream().map(User::getId).toList());
+        }
+
+        // Assert: Todas las filas del filtro, en orden de id y sin repetir
+        assertEquals(List.of(1L, 3L), ids, "Debe recorrer los usuarios IT en orden de id");
+        assertTrue(page.getItems().isEmpty(), "La última página llena lleva a una página vacía");
+
+        // Sin cursor se sigue admitiendo offset
+        UserQueryDto byOffset = new UserQueryDto("IT", null, null, 1, 1);
+        assertEquals(3L, service.searchUsers(byOffset).get(0).getId(), "offset=1 debe saltar el primer usuario IT");
+    }
+
+    @Test
+    void testSearchUsers_shouldUsePrecompiledPlanForFilterCombination() {
+        // Arrange: Plantillas precompiladas y filtros department + active
+        assertTrue(SearchPlanCache.warmUp() >= 16, "Deben prepararse las 16 combinaciones");
+        SearchPlanCache.Plan plan = SearchPlanCache.plan(SearchPlanCache.DEPARTMENT | SearchPlanCache.ACTIVE);
+        long callsBefore = plan.getCalls();
+        UserQueryDto query = new UserQueryDto();
+        query.setDepartment("IT");
+        query.setActive(false);
+
+        // Act: Ejecutar la búsqueda
+        List<User> users = service.searchUsers(query);
+
+        // Assert: Resultado correcto y uso registrado en su combinación
+        assertEquals(List.of(3L), users.stream().map(User::getId).toList(), "Solo Test User 3 es IT inactivo");
+        assertEquals(callsBefore + 1, plan.getCalls(), "Debe contarse la llamada en department+active");
+        assertTrue(SearchPlanCache.getStats().containsKey("department+active"), "Debe aparecer en las métricas");
+    }
+
     @Test
     void testSearchUsers_withRoleFilter_shouldReturnMatchingUsers() {
         // Arrange: Preparar query con filtro de rol
@@ -364,6 +1016,55 @@ class DatabaseUserServiceTest {
         assertEquals(0, insertedCount, "Debe retornar 0 para lista vacía");
     }
 
+    @Test
+    void testBatchInsertUsersChunked_inParallel_shouldReturnIdsInInputOrder() {
+        // Arrange: 7 usuarios en bloques de 3 repartidos en 2 conexiones
+        List<User> users = new ArrayList<>();
+        for (int i = 0; i < 7; i++) {
+            User user = new User();
+            user.setName("Chunk User " + i);
+            user.setEmail("chunk" + i + "@example.com");
+            user.setDepartment("IT");
+            user.setRole("Dev");
+            users.add(user);
+        }
+
+        // Act: Insertar por bloques en paralelo
+        BatchInsertResult result = service.batchInsertUsersChunked(users, 3, 2);
+
+        // Assert: Tramos [0,4) y [4,7) => 2 + 1 bloques, un ID por usuario y en su posición
+        assertEquals(7, result.getInsertedCount(), "Deben insertarse 7 usuarios");
+        assertEquals(2, result.getParallelism(), "Deben usarse 2 conexiones");
+        assertEquals(3, result.getChunks(), "Deben confirmarse 3 bloques");
+        for (int i = 0; i < users.size(); i++) {
+            User stored = service.findUserById(result.getGeneratedIds().get(i));
+            assertEquals("chunk" + i + "@example.com", stored.getEmail(), "El ID " + i + " debe ser el de su usuario");
+        }
+    }
+
+    @Test
+    void testBatchInsertUsersChunked_withFailingChunk_shouldKeepPreviousChunks() {
+        // Arrange: Bloques de 2; el cuarto usuario repite un email de test-data.sql
+        List<User> users = new ArrayList<>();
+        for (String email : List.of("ok1@example.com", "ok2@example.com", "ok3@example.com", "test1@example.com")) {
+            User user = new User();
+            user.setName("Chunk User");
+            user.setEmail(email);
+            user.setDepartment("IT");
+            user.setRole("Dev");
+            users.add(user);
+        }
+
+        // Act & Assert: Falla el segundo bloque
+        assertThrows(RuntimeException.class, () -> service.batchInsertUsersChunked(users, 2, 1),
+            "Debe fallar el bloque con el email duplicado");
+
+        // Assert: El primer bloque quedó confirmado y el segundo se deshizo entero
+        assertEquals(5, service.findAll().size(), "Deben quedar los 3 originales + el primer bloque");
+        assertTrue(service.findAll().stream().noneMatch(u -> "ok3@example.com".equals(u.getEmail())),
+            "El bloque fallido no debe dejar filas");
+    }
+
     // CE2.e: Metadata
 
     @Test
@@ -416,6 +1117,37 @@ class DatabaseUserServiceTest {
         }
     }
 
+    @Test
+    void testGetTableColumns_shouldServeCachedMetadataUntilRefresh() throws Exception {
+        // Arrange: dos llamadas seguidas comparten la misma lista inmutable
+        List<Map<String, Object>> first = service.getTableColumns("users");
+        assertSame(first, service.getTableColumns("USERS"));
+        assertThrows(UnsupportedOperationException.class, () -> first.add(Map.of()));
+        assertThrows(UnsupportedOperationException.class, () -> first.get(0).put("name", "X"));
+
+        try {
+            // Act: DDL fuera de DatabaseConfig; hasta refresh() se sigue sirviendo la copia anterior
+            try (Connection conn = DatabaseConfig.getConnection();
+                 Statement stmt = conn.createStatement()) {
+                stmt.execute("CREATE TABLE metadata_probe (id BIGINT PRIMARY KEY, label VARCHAR(20))");
+            }
+            assertTrue(service.getTableColumns("metadata_probe").isEmpty());
+            MetadataCache.refresh();
+
+            // Assert
+            assertEquals(List.of("ID", "LABEL"), service.getTableColumns("metadata_probe").stream()
+                    .map(column -> column.get("name")).toList());
+            assertNotSame(first, service.getTableColumns("users"), "El refresco debe releer los metadatos");
+        } finally {
+            try (Connection conn = DatabaseConfig.getConnection();
+                 Statement stmt = conn.createStatement()) {
+                stmt.execute("DROP TABLE IF EXISTS metadata_probe");
+            }
+            MetadataCache.refresh();
+        }
+        assertTrue(service.getTableColumns("metadata_probe").isEmpty());
+    }
+
     @Test
     void testGetTableColumns_withNonExistentTable_shouldReturnEmptyList() {
         // Arrange: Nombre de tabla que no existe
@@ -475,4 +1207,8 @@ class DatabaseUserServiceTest {
         assertEquals(hrUsers.size(), hrCount,
             "Debe coincidir con findUsersByDepartment (solo activos)");
     }
+
+    private static List<String> textMatches(List<UserTextMatch> matches) {
+        return matches.stream().map(match -> match.getUser().getId() + ":" + match.getScore()).toList();
+    }
 }
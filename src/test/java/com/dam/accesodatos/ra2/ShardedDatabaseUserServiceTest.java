@@ -0,0 +1,181 @@
+package com.dam.accesodatos.ra2;
+
+import com.dam.accesodatos.config.DatabaseConfig;
+import com.dam.accesodatos.config.HealthMonitor;
+import com.dam.accesodatos.config.Ra2Properties;
+import com.dam.accesodatos.config.TestDataSourceConfig;
+import com.dam.accesodatos.model.UpsertResult;
+import com.dam.accesodatos.model.User;
+import com.dam.accesodatos.model.UserCreateDto;
+import com.dam.accesodatos.model.UserPage;
+import com.dam.accesodatos.model.UserQueryDto;
+import com.dam.accesodatos.model.UserUpdateDto;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.jdbc.Sql;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests del reparto de usuarios entre shards: los resultados deben ser los mismos
+ * (mismo orden, misma paginación) que con una sola base de datos
+ */
+@SpringBootTest
+@Import(TestDataSourceConfig.class)
+@Sql(scripts = {"/test-schema.sql", "/test-data.sql"},
+     executionPhase = Sql.ExecutionPhase.BEFORE_TEST_METHOD)
+class ShardedDatabaseUserServiceTest {
+
+    @Autowired
+    private DatabaseUserService service;
+
+    private ShardedDatabaseUserService sharded;
+
+    @BeforeEach
+    void setUp() {
+        // Arrange: 3 usuarios de test-data.sql + 20 más en la base de datos por defecto,
+        // que el servicio con shards copia a sus 3 bases de datos al arrancar
+        List<User> users = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            User user = new User(null, "Shard User " + i, "shard" + i + "@example.com",
+                    i % 2 == 0 ? "IT" : "Sales", i % 3 == 0 ? "Analyst" : "Developer");
+            user.setActive(i % 5 != 0);
+            user.setCreatedAt(LocalDateTime.of(2024, 3, 1, 0, 0).plusHours(i));
+            users.add(user);
+        }
+        assertTrue(service.transferData(users));
+
+        Ra2Properties properties = new Ra2Properties();
+        properties.getSharding().setEnabled(true);
+        properties.getSharding().setShards(3);
+        properties.getSharding().setUrlTemplate("jdbc:h2:mem:ra2shard_test{n};MODE=PostgreSQL;DB_CLOSE_DELAY=-1");
+        sharded = new ShardedDatabaseUserService(properties);
+    }
+
+    @AfterEach
+    void tearDown() {
+        sharded.shutdown();
+    }
+
+    private static List<String> emails(List<User> users) {
+        return users.stream().map(User::getEmail).toList();
+    }
+
+    @Test
+    void testScatterGather_shouldMatchSingleDatabaseResults() {
+        // Act
+        List<User> all = sharded.findAll();
+
+        // Assert: Mismo orden que sin shards y cada ID lleva a su fila
+        assertEquals(emails(service.findAll()), emails(all));
+        Set<Integer> usedShards = new HashSet<>();
+        for (User user : all) {
+            assertEquals(user.getEmail(), sharded.findUserById(user.getId()).getEmail());
+            usedShards.add((int) ((user.getId() - 1) % 3));
+        }
+        assertEquals(3, usedShards.size(), "Los usuarios deben repartirse entre los 3 shards");
+        assertEquals(service.executeCountByDepartment("IT"), sharded.executeCountByDepartment("IT"));
+        assertEquals(emails(service.findUsersByDepartment("Sales")), emails(sharded.findUsersByDepartment("Sales")));
+        assertEquals(service.getUserHistogram(0L).getSubtotals(), sharded.getUserHistogram(0L).getSubtotals());
+        assertEquals(23, sharded.getUserHistogram(0L).getTotal());
+
+        // streamAll en bloques de 4: mezcla de los 3 shards en el orden de findAll()
+        List<User> streamed = new ArrayList<>();
+        String cursor = null;
+        do {
+            cursor = sharded.streamAll(cursor, 4, 2, streamed::add);
+        } while (cursor != null);
+        assertEquals(emails(all), emails(streamed));
+    }
+
+    @Test
+    void testSearchUsersPage_shouldPaginateLikeSingleDatabase() {
+        // Act: Recorrido con cursor de los activos de IT, de 3 en 3
+        UserQueryDto query = new UserQueryDto("IT", null, true, 3, null);
+        List<User> pages = new ArrayList<>();
+        UserPage page;
+        do {
+            page = sharded.searchUsersPage(query);
+            assertTrue(page.getItems().size() <= 3);
+            pages.addAll(page.getItems());
+            query.setAfter(page.getNextCursor());
+        } while (page.hasNext());
+
+        // Assert: Ordenados por ID y sin repetidos ni huecos
+        List<User> expected = sharded.findUsersByDepartment("IT");
+        assertEquals(expected.size(), pages.size());
+        assertEquals(expected.stream().map(User::getEmail).sorted().toList(),
+                pages.stream().map(User::getEmail).sorted().toList());
+        for (int i = 1; i < pages.size(); i++) {
+            assertTrue(pages.get(i - 1).getId() < pages.get(i).getId());
+        }
+
+        // Con offset: la misma página que en el recorrido con cursor
+        List<User> byOffset = sharded.searchUsers(new UserQueryDto("IT", null, true, 3, 3));
+        assertEquals(emails(pages.subList(3, Math.min(6, pages.size()))), emails(byOffset));
+    }
+
+    @Test
+    void testWrites_shouldRouteToTheEmailShard() {
+        // Act
+        User created = sharded.createUser(new UserCreateDto("Nuevo", "nuevo@example.com", "IT", "Developer"));
+        UpsertResult upsert = sharded.upsertUsers(List.of(
+                new User(null, "Otro", "otro@example.com", "HR", "Manager"),
+                new User(null, "Nuevo 2", "nuevo@example.com", "IT", "Lead"),
+                new User(null, "Tercero", "tercero@example.com", "HR", "Analyst")));
+
+        // Assert: Cada escritura va al shard de su email y los índices son los de la lista original
+        assertEquals(created.getEmail(), sharded.findUserById(created.getId()).getEmail());
+        assertEquals(List.of(0, 1, 2), upsert.getOutcomes().stream().map(UpsertResult.Outcome::index).toList());
+        assertEquals(created.getId(), upsert.getOutcomes().get(1).id());
+        assertEquals(UpsertResult.Action.UPDATED, upsert.getOutcomes().get(1).action());
+        assertEquals("Lead", sharded.findUserById(created.getId()).getRole());
+
+        // Un email de otro shard no se puede asignar (habría que mover la fila)
+        String otherShardEmail = null;
+        for (int i = 0; otherShardEmail == null; i++) {
+            String email = "movido" + i + "@example.com";
+            if (((created.getId() - 1) % 3) != emailShard(email)) {
+                otherShardEmail = email;
+            }
+        }
+        UserUpdateDto update = new UserUpdateDto();
+        update.setEmail(otherShardEmail);
+        assertThrows(RuntimeException.class, () -> sharded.updateUser(created.getId(), update));
+        assertEquals(List.of(created.getId()), sharded.deleteUsersByIds(List.of(created.getId(), 999_999L))
+                .stream().map(User::getId).toList());
+        assertNull(sharded.findUserById(created.getId()));
+    }
+
+    @Test
+    void testHealthAndMetadata_shouldUseTheShards() {
+        // Act
+        HealthMonitor.Status status = DatabaseConfig.getHealthMonitor().refresh();
+        String info = sharded.getDatabaseInfo();
+
+        // Assert: /mcp/health comprueba los shards y los metadatos salen del shard 0
+        assertTrue(status.up(), "Los 3 shards deben responder");
+        assertTrue(info.contains("URL: jdbc:h2:mem:ra2shard_test0"), info);
+        assertFalse(sharded.getTableColumns("users").isEmpty());
+
+        // Al parar el servicio se vuelve a la base de datos por defecto
+        sharded.shutdown();
+        assertFalse(MetadataCache.databaseInfo().contains("ra2shard_test"));
+    }
+
+    /** Mismo reparto por email que ShardSet con 3 shards */
+    private static int emailShard(String email) {
+        int hash = email.hashCode();
+        return Math.floorMod(hash ^ (hash >>> 16), 3);
+    }
+}
@@ -0,0 +1,215 @@
+package com.dam.accesodatos.ra2;
+
+import com.dam.accesodatos.config.QueryCancellation;
+import com.dam.accesodatos.model.User;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests de la agrupación de lecturas simultáneas (sin base de datos: la consulta es una lambda)
+ */
+class SingleFlightTest {
+
+    private final AtomicInteger loads = new AtomicInteger();
+    private final CountDownLatch loading = new CountDownLatch(1);
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    /** Consulta que se queda esperando a release para que las demás llamadas lleguen a tiempo */
+    private Supplier<List<User>> slowQuery() {
+        return () -> {
+            loads.incrementAndGet();
+            loading.countDown();
+            try {
+                release.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return List.of(new User(1L, "User 1", "user1@example.com", "IT", "Developer"));
+        };
+    }
+
+    /** Espera a que las llamadas que se suman estén bloqueadas en el resultado */
+    private static void awaitWaiters(SingleFlight flight, int expected) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while ((long) flight.getStats().get("coalesced") < expected && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+    }
+
+    @Test
+    void testExecute_shouldShareOneQueryBetweenConcurrentCalls() throws Exception {
+        // Arrange
+        SingleFlight flight = new SingleFlight(true);
+        ExecutorService threads = Executors.newVirtualThreadPerTaskExecutor();
+
+        try {
+            // Act: Una llamada lanza la consulta y otras 4 iguales llegan mientras sigue en curso
+            Future<List<User>> leader = threads.submit(
+                    () -> flight.execute("find_users_by_department", "IT", slowQuery(), SingleFlight::copyUsers));
+            assertTrue(loading.await(10, TimeUnit.SECONDS));
+            List<Future<List<User>>> followers = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                followers.add(threads.submit(
+                        () -> flight.execute("find_users_by_department", "IT", slowQuery(), SingleFlight::copyUsers)));
+            }
+            awaitWaiters(flight, 4);
+            release.countDown();
+
+            // Assert
+            User original = leader.get(10, TimeUnit.SECONDS).get(0);
+            for (Future<List<User>> follower : followers) {
+                User shared = follower.get(10, TimeUnit.SECONDS).get(0);
+                assertEquals(original.getEmail(), shared.getEmail());
+                assertNotSame(original, shared, "Cada llamada debe recibir su propia copia");
+            }
+            assertEquals(1, loads.get(), "Solo la primera llamada debe consultar");
+            Map<String, Object> stats = flight.getStats();
+            assertEquals(1L, stats.get("executions"));
+            assertEquals(4L, stats.get("coalesced"));
+            assertEquals(0.8, (double) stats.get("coalescing_ratio"), 0.0001);
+            assertEquals(0, stats.get("in_flight"));
+        } finally {
+            release.countDown();
+            threads.shutdownNow();
+        }
+    }
+
+    @Test
+    void testExecute_shouldNotShareReadsStartedBeforeAWrite() throws Exception {
+        // Arrange: Consulta en curso y, mientras tanto, una escritura
+        SingleFlight flight = new SingleFlight(true);
+        ExecutorService threads = Executors.newVirtualThreadPerTaskExecutor();
+
+        try {
+            Future<List<User>> before = threads.submit(
+                    () -> flight.execute("find_all_users", List.of(), slowQuery(), SingleFlight::copyUsers));
+            assertTrue(loading.await(10, TimeUnit.SECONDS));
+            flight.usersDeleted(List.of(new User(1L, "User 1", "user1@example.com", "IT", "Developer")));
+
+            // Act
+            List<User> after = flight.execute("find_all_users", List.of(), () -> {
+                loads.incrementAndGet();
+                return List.of();
+            }, SingleFlight::copyUsers);
+            release.countDown();
+
+            // Assert: La llamada posterior a la escritura ejecuta su propia consulta
+            assertTrue(after.isEmpty());
+            assertEquals(1, before.get(10, TimeUnit.SECONDS).size());
+            assertEquals(2, loads.get());
+            assertEquals(0L, flight.getStats().get("coalesced"));
+        } finally {
+            release.countDown();
+            threads.shutdownNow();
+        }
+    }
+
+    @Test
+    void testExecute_shouldPropagateErrorsAndNotCoalesceWhenDisabled() {
+        SingleFlight flight = new SingleFlight(true);
+        assertThrows(IllegalStateException.class, () -> flight.execute("search_users", List.of(), () -> {
+            throw new IllegalStateException("fallo");
+        }, users -> users));
+        assertEquals(0, flight.getStats().get("in_flight"), "Un error no debe dejar la consulta registrada");
+
+        SingleFlight disabled = new SingleFlight(false);
+        disabled.execute("search_users", List.of(), () -> loads.incrementAndGet(), count -> count);
+        assertEquals(1, loads.get());
+        assertEquals(0L, disabled.getStats().get("executions"));
+    }
+
+    @Test
+    void testExecute_whenLeaderIsCancelled_shouldLetWaitersRunTheirOwnQuery() throws Exception {
+        // Arrange: La primera llamada se cancela (57014) después de que otra se sume
+        SingleFlight flight = new SingleFlight(true);
+        ExecutorService threads = Executors.newVirtualThreadPerTaskExecutor();
+
+        try {
+            Future<List<User>> leader = threads.submit(() -> flight.execute("find_all_users", List.of(), () -> {
+                slowQuery().get();
+                throw new RuntimeException("Error de base de datos al listar usuarios.",
+                        QueryCancellation.cancelledException());
+            }, SingleFlight::copyUsers));
+            assertTrue(loading.await(10, TimeUnit.SECONDS));
+            Future<List<User>> follower = threads.submit(
+                    () -> flight.execute("find_all_users", List.of(), () -> {
+                        loads.incrementAndGet();
+                        return List.of(new User(2L, "User 2", "user2@example.com", "HR", "Manager"));
+                    }, SingleFlight::copyUsers));
+            awaitWaiters(flight, 1);
+
+            // Act
+            release.countDown();
+
+            // Assert: la cancelación solo le llega a quien se canceló; la otra llamada consulta por su cuenta
+            ExecutionException error = assertThrows(ExecutionException.class, () -> leader.get(10, TimeUnit.SECONDS));
+            assertTrue(QueryCancellation.isCancellation(error.getCause()));
+            assertEquals("user2@example.com", follower.get(10, TimeUnit.SECONDS).get(0).getEmail());
+            assertEquals(2, loads.get());
+            assertEquals(2L, flight.getStats().get("executions"));
+            assertEquals(0L, flight.getStats().get("coalesced"));
+        } finally {
+            release.countDown();
+            threads.shutdownNow();
+        }
+    }
+
+    @Test
+    void testExecute_whenWaiterIsCancelled_shouldStopWaitingWithoutAffectingOthers() throws Exception {
+        // Arrange: Consulta en curso y dos llamadas esperando, una de ellas dentro de un QueryCancellation
+        SingleFlight flight = new SingleFlight(true);
+        ExecutorService threads = Executors.newVirtualThreadPerTaskExecutor();
+        QueryCancellation scope = new QueryCancellation();
+
+        try {
+            Future<List<User>> leader = threads.submit(
+                    () -> flight.execute("find_all_users", List.of(), slowQuery(), SingleFlight::copyUsers));
+            assertTrue(loading.await(10, TimeUnit.SECONDS));
+            Future<List<User>> cancelled = threads.submit(() -> scope.run(
+                    () -> flight.execute("find_all_users", List.of(), slowQuery(), SingleFlight::copyUsers)));
+            AtomicReference<RuntimeException> interruptedError = new AtomicReference<>();
+            Thread interrupted = Thread.ofVirtual().start(() -> {
+                try {
+                    flight.execute("find_all_users", List.of(), slowQuery(), SingleFlight::copyUsers);
+                } catch (RuntimeException e) {
+                    interruptedError.set(e);
+                }
+            });
+            awaitWaiters(flight, 2);
+
+            // Act: Sin soltar la consulta, se cancela una espera y se interrumpe la otra
+            scope.cancel();
+            interrupted.interrupt();
+
+            // Assert: las dos dejan de esperar mientras la consulta sigue en curso
+            ExecutionException error = assertThrows(ExecutionException.class, () -> cancelled.get(10, TimeUnit.SECONDS));
+            assertTrue(QueryCancellation.isCancellation(error.getCause()));
+            assertTrue(interrupted.join(Duration.ofSeconds(10)));
+            assertTrue(QueryCancellation.isCancellation(interruptedError.get()));
+            assertFalse(leader.isDone());
+            assertEquals(1, loads.get());
+
+            release.countDown();
+            assertEquals(1, leader.get(10, TimeUnit.SECONDS).size());
+            assertEquals(0, flight.getStats().get("in_flight"));
+        } finally {
+            release.countDown();
+            threads.shutdownNow();
+        }
+    }
+}
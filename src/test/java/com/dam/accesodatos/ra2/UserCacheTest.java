@@ -0,0 +1,112 @@
+package com.dam.accesodatos.ra2;
+
+import com.dam.accesodatos.model.User;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests de la caché de usuarios por ID (sin base de datos: el loader es una lambda)
+ */
+class UserCacheTest {
+
+    private final AtomicInteger loads = new AtomicInteger();
+
+    private User load(Long id) {
+        loads.incrementAndGet();
+        return id > 100 ? null : new User(id, "User " + id, "user" + id + "@example.com", "IT", "Developer");
+    }
+
+    @Test
+    void testGet_shouldLoadOnceAndServeHitsFromCache() {
+        // Arrange
+        UserCache cache = new UserCache(10, 60000);
+
+        // Act
+        User first = cache.get(1L, this::load);
+        User second = cache.get(1L, this::load);
+
+        // Assert
+        assertEquals(1, loads.get(), "La segunda lectura debe salir de la caché");
+        assertEquals(first.getEmail(), second.getEmail());
+        assertNotSame(first, second, "Cada llamada debe recibir su propia copia");
+        Map<String, Object> stats = cache.getStats();
+        assertEquals(1L, stats.get("hits"));
+        assertEquals(1L, stats.get("misses"));
+        assertEquals(0.5, (double) stats.get("hit_ratio"), 0.0001);
+    }
+
+    @Test
+    void testGet_shouldNotCacheMissingUsers() {
+        UserCache cache = new UserCache(10, 60000);
+
+        assertNull(cache.get(999L, this::load));
+        assertNull(cache.get(999L, this::load));
+
+        assertEquals(2, loads.get(), "Un usuario inexistente no debe quedar en caché");
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    void testGet_shouldEvictLeastRecentlyUsed() {
+        // Arrange: Caché de 2 entradas con 1 y 2; se vuelve a leer 1
+        UserCache cache = new UserCache(2, 60000);
+        cache.get(1L, this::load);
+        cache.get(2L, this::load);
+        cache.get(1L, this::load);
+
+        // Act: Cargar un tercero expulsa al menos usado (2)
+        cache.get(3L, this::load);
+        loads.set(0);
+        cache.get(1L, this::load);
+        cache.get(2L, this::load);
+
+        // Assert
+        assertEquals(1, loads.get(), "Solo el usuario 2 debe haberse recargado");
+        assertTrue((long) cache.getStats().get("evictions") >= 1);
+    }
+
+    @Test
+    void testGet_shouldReloadAfterTtl() throws InterruptedException {
+        UserCache cache = new UserCache(10, 20);
+        cache.get(1L, this::load);
+
+        Thread.sleep(40);
+        cache.get(1L, this::load);
+
+        assertEquals(2, loads.get(), "Una entrada caducada debe recargarse");
+        assertEquals(1L, cache.getStats().get("expirations"));
+    }
+
+    @Test
+    void testInvalidate_duringLoad_shouldNotStoreStaleValue() {
+        // Arrange: El loader simula una escritura que invalida el ID mientras se lee
+        UserCache cache = new UserCache(10, 60000);
+
+        // Act
+        cache.get(1L, id -> {
+            User user = load(id);
+            cache.invalidate(List.of(id));
+            return user;
+        });
+        cache.get(1L, this::load);
+
+        // Assert
+        assertEquals(2, loads.get(), "La carga concurrente con una invalidación no debe guardarse");
+    }
+
+    @Test
+    void testDisabled_shouldAlwaysLoad() {
+        UserCache cache = new UserCache(0, 60000);
+
+        cache.get(1L, this::load);
+        cache.get(1L, this::load);
+
+        assertEquals(2, loads.get());
+        assertEquals(Map.of("enabled", false), cache.getStats());
+    }
+}
@@ -0,0 +1,150 @@
+package com.dam.accesodatos.ra2;
+
+import com.dam.accesodatos.config.DatabaseConfig;
+import com.dam.accesodatos.config.Ra2Properties;
+import com.dam.accesodatos.model.UserQueryDto;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordingStream;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Detector de "pinning" de virtual threads
+ *
+ * Un virtual thread queda pinned cuando se bloquea (I/O, esperar un lock,
+ * esperar una conexión del pool...) dentro de un bloque synchronized: no puede
+ * liberar su hilo portador y la concurrencia vuelve a estar limitada.
+ *
+ * El detector graba el evento JFR jdk.VirtualThreadPinned (umbral 0) mientras se
+ * ejecuta una carga de trabajo y devuelve los eventos cuya pila pasa por nuestro código.
+ */
+class VirtualThreadPinningTest {
+
+    private static final String OUR_PACKAGE = "com.dam.accesodatos";
+
+    private final Object monitor = new Object();
+
+    @BeforeEach
+    void setUp() {
+        // Pool pequeño para que los virtual threads tengan que esperar conexión
+        Ra2Properties.Pool settings = new Ra2Properties.Pool();
+        settings.setMaxSize(2);
+        settings.setMinIdle(0);
+        DatabaseConfig.configurePool(settings);
+        DatabaseConfig.initializeDatabase();
+    }
+
+    @AfterEach
+    void tearDown() {
+        DatabaseConfig.configurePool(new Ra2Properties.Pool());
+    }
+
+    @Test
+    void testDetector_shouldReportBlockingInsideSynchronized() throws Exception {
+        // Arrange: Carga que duerme dentro de synchronized (pinning garantizado)
+        Runnable pinning = () -> {
+            synchronized (monitor) {
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(20));
+            }
+        };
+
+        // Act: Ejecutarla en virtual threads bajo el detector
+        List<RecordedEvent> events = recordPinnedEvents(pinning, 4);
+
+        // Assert: El detector debe verlo (si no, el test de abajo no probaría nada)
+        assertFalse(events.isEmpty(), "El detector debe registrar el pinning provocado");
+    }
+
+    @Test
+    void testServiceCalls_onVirtualThreads_shouldNotPin() throws Exception {
+        // Arrange: Mezcla de lecturas que comparten un pool de 2 conexiones
+        DatabaseUserServiceImpl service = new DatabaseUserServiceImpl();
+        Runnable workload = () -> {
+            service.findUserById(1L);
+            service.findUsersByDepartment("IT");
+            service.executeCountByDepartment("IT");
+            UserQueryDto query = new UserQueryDto();
+            query.setDepartment("IT");
+            service.searchUsers(query);
+        };
+
+        // Act: 200 virtual threads a la vez
+        List<RecordedEvent> events = recordPinnedEvents(workload, 200);
+
+        // Assert: Ningún virtual thread debe quedar pinned en nuestro código
+        assertTrue(events.isEmpty(), "Virtual threads pinned en:\n" + describe(events));
+    }
+
+    // ========== Detector ==========
+
+    /**
+     * Ejecuta la carga en {@code tasks} virtual threads grabando jdk.VirtualThreadPinned.
+     *
+     * @return Eventos de pinning cuya pila incluye clases de com.dam.accesodatos
+     */
+    private static List<RecordedEvent> recordPinnedEvents(Runnable workload, int tasks) throws Exception {
+        List<RecordedEvent> events = Collections.synchronizedList(new ArrayList<>());
+
+        try (RecordingStream stream = new RecordingStream()) {
+            stream.enable("jdk.VirtualThreadPinned").withThreshold(Duration.ZERO).withStackTrace();
+            stream.onEvent("jdk.VirtualThreadPinned", event -> {
+                if (touchesOurCode(event)) {
+                    events.add(event);
+                }
+            });
+            stream.startAsync();
+
+            try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+                List<Future<?>> futures = new ArrayList<>();
+                for (int i = 0; i < tasks; i++) {
+                    futures.add(executor.submit(workload));
+                }
+                for (Future<?> future : futures) {
+                    future.get(30, TimeUnit.SECONDS);
+                }
+            }
+
+            // stop() procesa los eventos pendientes antes de volver
+            stream.stop();
+        }
+        return events;
+    }
+
+    private static boolean touchesOurCode(RecordedEvent event) {
+        if (event.getStackTrace() == null) {
+            return false;
+        }
+        for (RecordedFrame frame : event.getStackTrace().getFrames()) {
+            if (frame.getMethod().getType().getName().startsWith(OUR_PACKAGE)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String describe(List<RecordedEvent> events) {
+        return events.stream()
+                .limit(3)
+                .map(event -> event.getStackTrace().getFrames().stream()
+                        .limit(15)
+                        .map(frame -> "  at " + frame.getMethod().getType().getName()
+                                + "." + frame.getMethod().getName())
+                        .collect(Collectors.joining("\n")))
+                .collect(Collectors.joining("\n---\n"));
+    }
+}
@@ -19,6 +19,7 @@ CREATE INDEX idx_users_department ON users(department);
 CREATE INDEX idx_users_role ON users(role);
 CREATE INDEX idx_users_active ON users(active);
 CREATE INDEX idx_users_email ON users(email);
+CREATE INDEX idx_users_created_at ON users(created_at DESC, id DESC);
 
 CREATE TABLE user_statistics (
     id BIGINT GENERATED BY DEFAULT AS IDENTITY (START WITH 1) PRIMARY KEY,